@@ -5,6 +5,7 @@ plugins {
     id("com.enonic.defaults") version "2.1.7"
     id("com.enonic.xp.app")
     id("com.github.node-gradle.node") version "7.1.0"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 repositories {
@@ -22,6 +23,7 @@ dependencies {
     include(libs.brotli4j.native.linux.aarch64)
     include(libs.brotli4j.native.osx.aarch64)
     include(libs.brotli4j.native.osx.amd64)
+    include(libs.zstd.jni)
     include(xplibs.auth)
     include(xplibs.cluster)
     include(xplibs.content)
@@ -51,6 +53,14 @@ tasks.test {
     useJUnitPlatform()
 }
 
+jmh {
+    // run with ./gradlew jmh, benchmarks are not part of the regular build
+    includes = listOf(".*Benchmark.*")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+}
+
 tasks.jacocoTestReport {
     reports {
         xml.required = true
@@ -0,0 +1,137 @@
+package com.enonic.app.booster;
+
+import java.lang.reflect.Proxy;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.enonic.app.booster.servlet.RequestUtils;
+import com.enonic.app.booster.storage.CacheKeyAlgorithm;
+import com.enonic.app.booster.utils.MessageDigests;
+
+import static java.util.Objects.requireNonNullElseGet;
+
+/**
+ * Cost of computing a cache key on the hit path: query string normalization, then hashing of the normalized URL.
+ * {@link #baselineRequestKey()} is the full path of previous versions, stream based normalization and SHA-256,
+ * to compare {@link #sha256RequestKey()} and {@link #murmur3RequestKey()} with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheKeyBenchmark
+{
+    private final String url = "https://www.example.com/site/news/2024/some-article-about-something?page=2&sort=date";
+
+    private final Map<String, String[]> params =
+        Map.of( "sort", new String[]{"date"}, "page", new String[]{"2"}, "utm_source", new String[]{"newsletter"}, "q",
+                new String[]{"booster cache"} );
+
+    private final Set<String> excludeQueryParams = Set.of( "utm_source", "fbclid", "gclid" );
+
+    private final HttpServletRequest request =
+        request( "https", "www.Example.com", 443, "/site/News/2024/some-article-about-something", params );
+
+    @Benchmark
+    public String baselineRequestKey()
+    {
+        final String requestUrl = baselineRequestURL( request, excludeQueryParams );
+        final byte[] digest = MessageDigests.sha256().digest( requestUrl.getBytes( StandardCharsets.ISO_8859_1 ) );
+        return HexFormat.of().formatHex( digest, 0, 16 );
+    }
+
+    @Benchmark
+    public String sha256RequestKey()
+    {
+        return CacheKeyAlgorithm.SHA256.key( RequestUtils.buildRequestURL( request, excludeQueryParams ).url() );
+    }
+
+    @Benchmark
+    public String murmur3RequestKey()
+    {
+        return CacheKeyAlgorithm.MURMUR3.key( RequestUtils.buildRequestURL( request, excludeQueryParams ).url() );
+    }
+
+    @Benchmark
+    public String sha256Key()
+    {
+        return CacheKeyAlgorithm.SHA256.key( url );
+    }
+
+    @Benchmark
+    public String murmur3Key()
+    {
+        return CacheKeyAlgorithm.MURMUR3.key( url );
+    }
+
+    @Benchmark
+    public String normalizedQueryParams()
+    {
+        return RequestUtils.normalizedQueryParams( params, excludeQueryParams );
+    }
+
+    // RequestUtils.buildRequestURL as it was before query string normalization was rewritten without streams
+    private static String baselineRequestURL( final HttpServletRequest request, final Set<String> excludeQueryParams )
+    {
+        final String scheme = request.getScheme();
+        final String serverName = request.getServerName().toLowerCase( Locale.ROOT );
+        final int serverPort = request.getServerPort();
+        final String path = requireNonNullElseGet( (String) request.getAttribute( RequestDispatcher.FORWARD_REQUEST_URI ),
+                                                   request::getRequestURI ).toLowerCase( Locale.ROOT );
+
+        final String queryString = request.getParameterMap()
+            .entrySet()
+            .stream()
+            .filter( entry -> !excludeQueryParams.contains( entry.getKey() ) )
+            .sorted( Map.Entry.comparingByKey() )
+            .flatMap( entry -> Arrays.stream( entry.getValue() )
+                .map( value -> URLEncoder.encode( entry.getKey(), StandardCharsets.UTF_8 ) + "=" +
+                    URLEncoder.encode( value, StandardCharsets.UTF_8 ) ) )
+            .collect( Collectors.joining( "&" ) );
+
+        final StringBuilder urlBuilder = new StringBuilder();
+        urlBuilder.append( scheme ).append( "://" ).append( serverName );
+        if ( !( ( "http".equals( scheme ) && serverPort == 80 ) || ( "https".equals( scheme ) && serverPort == 443 ) ) )
+        {
+            urlBuilder.append( ":" ).append( serverPort );
+        }
+        urlBuilder.append( path );
+        if ( !queryString.isEmpty() )
+        {
+            urlBuilder.append( "?" ).append( queryString );
+        }
+        return urlBuilder.toString();
+    }
+
+    private static HttpServletRequest request( final String scheme, final String serverName, final int serverPort, final String uri,
+                                               final Map<String, String[]> params )
+    {
+        // no mocking library on the benchmark classpath, only methods used by buildRequestURL are answered
+        return (HttpServletRequest) Proxy.newProxyInstance( HttpServletRequest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+                                                            ( proxy, method, args ) -> switch ( method.getName() )
+                                                            {
+                                                                case "getScheme" -> scheme;
+                                                                case "getServerName" -> serverName;
+                                                                case "getServerPort" -> serverPort;
+                                                                case "getRequestURI" -> uri;
+                                                                case "getParameterMap" -> params;
+                                                                default -> null;
+                                                            } );
+    }
+}
@@ -39,6 +39,16 @@ public record BoosterCacheStatus(String fwd, boolean isCollapsed, String detail)
         return new BoosterCacheStatus( "stale", false, null );
     }
 
+    public static BoosterCacheStatus revalidating()
+    {
+        return new BoosterCacheStatus( "stale", false, "REVALIDATING" );
+    }
+
+    public static BoosterCacheStatus staleOnError()
+    {
+        return new BoosterCacheStatus( "stale", false, "ERROR" );
+    }
+
     public static BoosterCacheStatus bypass( String detail )
     {
         return new BoosterCacheStatus( "bypass", false, detail );
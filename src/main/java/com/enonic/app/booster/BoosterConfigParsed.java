@@ -7,16 +7,40 @@ import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import com.enonic.app.booster.storage.CacheKeyAlgorithm;
+import com.enonic.app.booster.storage.EvictionPolicy;
+import com.enonic.app.booster.storage.InvalidationScope;
 import com.enonic.app.booster.utils.SimpleCsvParser;
 
 public record BoosterConfigParsed(long cacheTtlSeconds, Set<String> excludeQueryParams, boolean disableCacheStatusHeader, int cacheSize,
-                                  Set<String> appsForceInvalidateOnInstall, Map<String, String> overrideHeaders, Set<String> cacheMimeTypes)
+                                  Set<String> appsForceInvalidateOnInstall, Map<String, String> overrideHeaders, Set<String> cacheMimeTypes,
+                                  long memoryCacheMaxBytes, int revalidateMaxConcurrent, EvictionPolicy cacheEvictionPolicy,
+                                  long cacheMaxBytes, InvalidationScope invalidationScope, Set<String> alwaysInvalidatePaths,
+                                  long invalidationQuietPeriodSeconds, long invalidationMaxDelaySeconds, int warmupLimit,
+                                  String warmupBaseUrl, CacheKeyAlgorithm cacheKeyAlgorithm, int maxVariants,
+                                  int brotliQuality, int zstdLevel, Set<String> brotliExcludeMimeTypes,
+                                  Set<String> zstdExcludeMimeTypes, boolean compressionDictionaries, int compressionMinBytes)
 {
     public static BoosterConfigParsed parse( BoosterConfig config )
     {
         var cacheTtlSeconds = config.cacheTtl();
         var cacheSize = config.cacheSize();
         var disableCacheStatusHeader = config.disableCacheStatusHeader();
+        var memoryCacheMaxBytes = Math.max( 0, config.memoryCacheMaxBytes() );
+        var revalidateMaxConcurrent = Math.max( 0, config.revalidateMaxConcurrent() );
+        var cacheEvictionPolicy = EvictionPolicy.from( config.cacheEvictionPolicy() );
+        var cacheMaxBytes = Math.max( 0, config.cacheMaxBytes() );
+        var invalidationScope = InvalidationScope.from( config.invalidationScope() );
+        var invalidationQuietPeriodSeconds = Math.max( 0, config.invalidationQuietPeriod() );
+        var invalidationMaxDelaySeconds = Math.max( invalidationQuietPeriodSeconds, config.invalidationMaxDelay() );
+        var warmupLimit = Math.max( 0, config.warmupLimit() );
+        var warmupBaseUrl = config.warmupBaseUrl() == null ? "" : config.warmupBaseUrl().trim();
+        var cacheKeyAlgorithm = CacheKeyAlgorithm.from( config.cacheKeyAlgorithm() );
+        var maxVariants = Math.max( 1, config.maxVariants() );
+        var brotliQuality = Math.min( 11, Math.max( 0, config.brotliQuality() ) );
+        var zstdLevel = Math.min( 19, Math.max( 1, config.zstdLevel() ) );
+        var compressionDictionaries = config.compressionDictionaries();
+        var compressionMinBytes = Math.max( 0, config.compressionMinBytes() );
 
         var effectiveExcludeQueryParams = new HashSet<String>( SimpleCsvParser.parseLine( config.excludeQueryParamsPreset() )
                                                                    .stream()
@@ -47,6 +71,12 @@ public record BoosterConfigParsed(long cacheTtlSeconds, Set<String> excludeQuery
             .filter( Predicate.not( String::isEmpty ) )
             .collect( Collectors.toUnmodifiableSet() );
 
+        var alwaysInvalidatePaths = SimpleCsvParser.parseLine( config.alwaysInvalidatePaths() )
+            .stream()
+            .map( String::trim )
+            .filter( Predicate.not( String::isEmpty ) )
+            .collect( Collectors.toUnmodifiableSet() );
+
         var overrideHeaders = config.overrideHeaders() == null
             ? Map.<String, String>of()
             : SimpleCsvParser.parseLine( config.overrideHeaders() )
@@ -55,14 +85,27 @@ public record BoosterConfigParsed(long cacheTtlSeconds, Set<String> excludeQuery
                 .filter( a -> a.length == 2 )
                 .collect( Collectors.toUnmodifiableMap( a -> a[0].trim(), a -> a[1].trim() ) );
 
-        var cacheMimeTypes = SimpleCsvParser.parseLine( config.cacheMimeTypes() )
+        var cacheMimeTypes = parseMimeTypes( config.cacheMimeTypes() );
+
+        var brotliExcludeMimeTypes = parseMimeTypes( config.brotliExcludeMimeTypes() );
+
+        var zstdExcludeMimeTypes = parseMimeTypes( config.zstdExcludeMimeTypes() );
+
+        return new BoosterConfigParsed( cacheTtlSeconds, excludeQueryParams, disableCacheStatusHeader, cacheSize, appsForceInvalidateOnInstall, overrideHeaders,
+                                        cacheMimeTypes, memoryCacheMaxBytes, revalidateMaxConcurrent, cacheEvictionPolicy,
+                                        cacheMaxBytes, invalidationScope, alwaysInvalidatePaths, invalidationQuietPeriodSeconds,
+                                        invalidationMaxDelaySeconds, warmupLimit, warmupBaseUrl, cacheKeyAlgorithm, maxVariants,
+                                        brotliQuality, zstdLevel, brotliExcludeMimeTypes, zstdExcludeMimeTypes,
+                                        compressionDictionaries, compressionMinBytes );
+    }
+
+    private static Set<String> parseMimeTypes( final String value )
+    {
+        return SimpleCsvParser.parseLine( value )
             .stream()
             .map( String::trim )
             .map( s -> s.toLowerCase( Locale.ROOT ) )
             .filter( Predicate.not( String::isEmpty ) )
             .collect( Collectors.toUnmodifiableSet() );
-
-        return new BoosterConfigParsed( cacheTtlSeconds, excludeQueryParams, disableCacheStatusHeader, cacheSize, appsForceInvalidateOnInstall, overrideHeaders,
-                                        cacheMimeTypes );
     }
 }
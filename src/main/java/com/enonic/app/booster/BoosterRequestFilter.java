@@ -3,15 +3,27 @@ package com.enonic.app.booster;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.annotation.WebFilter;
@@ -19,13 +31,20 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import com.enonic.app.booster.concurrent.Collapser;
+import com.enonic.app.booster.concurrent.ThreadFactoryImpl;
+import com.enonic.app.booster.io.CompressionPolicy;
 import com.enonic.app.booster.servlet.CachingResponseWrapper;
+import com.enonic.app.booster.servlet.DetachedRequest;
+import com.enonic.app.booster.servlet.DetachedResponse;
 import com.enonic.app.booster.servlet.RequestAttributes;
 import com.enonic.app.booster.servlet.RequestURL;
 import com.enonic.app.booster.servlet.RequestUtils;
 import com.enonic.app.booster.servlet.ResponseFreshness;
+import com.enonic.app.booster.storage.CompressionDictionary;
 import com.enonic.app.booster.storage.NodeCacheStore;
 import com.enonic.xp.annotation.Order;
+import com.enonic.xp.context.Context;
+import com.enonic.xp.context.ContextAccessor;
 import com.enonic.xp.portal.PortalRequest;
 import com.enonic.xp.project.ProjectName;
 import com.enonic.xp.trace.Trace;
@@ -42,19 +61,47 @@ public class BoosterRequestFilter
 {
     private static final Logger LOG = LoggerFactory.getLogger( BoosterRequestFilter.class );
 
+    // dictionaries are addressed by their hash and never change, newer ones are announced by cached responses
+    private static final long DICTIONARY_MAX_AGE_SECONDS = 7 * 24 * 60 * 60;
+
+    // revalidations waiting for a free revalidation thread. When exceeded, stale responses are revalidated by next requests
+    private static final int MAX_PENDING_REVALIDATIONS = 64;
+
     private final NodeCacheStore cacheStore;
 
     private volatile BoosterConfigParsed config;
 
     private final Collapser<CacheItem> requestCollapser = new Collapser<>();
 
+    // cache keys being re-rendered after a stale response was served
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService revalidateExecutor;
+
+    private volatile boolean revalidateEnabled;
+
     private final BoosterLicenseService licenseService;
 
+    private final CompressionMetrics compressionMetrics;
+
+    private volatile CompressionPolicy compressionPolicy = CompressionPolicy.DEFAULT;
+
     @Activate
-    public BoosterRequestFilter( @Reference final NodeCacheStore cacheStore, @Reference final BoosterLicenseService licenseService )
+    public BoosterRequestFilter( @Reference final NodeCacheStore cacheStore, @Reference final BoosterLicenseService licenseService,
+                                 @Reference final CompressionMetrics compressionMetrics )
+    {
+        this( cacheStore, licenseService, compressionMetrics,
+              new ThreadPoolExecutor( 1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>( MAX_PENDING_REVALIDATIONS ),
+                                      new ThreadFactoryImpl( "booster-revalidate-%d" ), new ThreadPoolExecutor.AbortPolicy() ) );
+    }
+
+    BoosterRequestFilter( final NodeCacheStore cacheStore, final BoosterLicenseService licenseService,
+                          final CompressionMetrics compressionMetrics, final ExecutorService revalidateExecutor )
     {
         this.cacheStore = cacheStore;
         this.licenseService = licenseService;
+        this.compressionMetrics = compressionMetrics;
+        this.revalidateExecutor = revalidateExecutor;
     }
 
     @Activate
@@ -62,12 +109,43 @@ public class BoosterRequestFilter
     public void activate( final BoosterConfig config )
     {
         this.config = BoosterConfigParsed.parse( config );
+        final int revalidateMaxConcurrent = this.config.revalidateMaxConcurrent();
+        this.revalidateEnabled = revalidateMaxConcurrent > 0;
+        if ( revalidateEnabled && revalidateExecutor instanceof ThreadPoolExecutor pool )
+        {
+            // maximum pool size can't be below core pool size at any moment
+            if ( revalidateMaxConcurrent >= pool.getMaximumPoolSize() )
+            {
+                pool.setMaximumPoolSize( revalidateMaxConcurrent );
+                pool.setCorePoolSize( revalidateMaxConcurrent );
+            }
+            else
+            {
+                pool.setCorePoolSize( revalidateMaxConcurrent );
+                pool.setMaximumPoolSize( revalidateMaxConcurrent );
+            }
+            pool.allowCoreThreadTimeOut( true );
+        }
+        this.compressionPolicy =
+            CompressionPolicy.create( this.config.compressionMinBytes(), this.config.brotliQuality(), this.config.zstdLevel() );
+    }
+
+    @Deactivate
+    public void deactivate()
+    {
+        revalidateExecutor.shutdownNow();
     }
 
     @Override
     protected void doHandle( final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain )
         throws Exception
     {
+        final String dictionaryId = CompressionDictionary.idFromPath( request.getRequestURI() );
+        if ( dictionaryId != null && writeDictionary( request, response, dictionaryId ) )
+        {
+            return;
+        }
+
         final Preconditions preconditions =
             new Preconditions( new Preconditions.LicensePrecondition( licenseService::isValidLicense )::check );
         final Preconditions.Result preconditionResult = preconditions.check( request );
@@ -86,22 +164,28 @@ public class BoosterRequestFilter
         final RequestURL requestUrl = RequestUtils.buildRequestURL( request, config.excludeQueryParams() );
 
         final String fullUrl = requestUrl.url();
-        final String cacheKey = cacheStore.generateCacheKey( fullUrl );
+        final String primaryKey = config.cacheKeyAlgorithm().key( fullUrl );
 
-        LOG.debug( "Normalized URL of request {} with key {}", fullUrl, cacheKey );
+        LOG.debug( "Normalized URL of request {} with key {}", fullUrl, primaryKey );
 
         final Trace trace = Tracer.newTrace( "booster.fromCache" );
         if ( trace != null )
         {
-            trace.put( "cacheKey", cacheKey );
+            trace.put( "cacheKey", primaryKey );
             trace.put( "url", fullUrl );
         }
+        final Lookup[] lookupHolder = new Lookup[1];
         final CacheStatusCode cacheStatusCode = Tracer.traceEx( trace, () -> {
-            final CacheStatusCode statusCode = tryWriteFromCache( request, response, cacheKey );
+            lookupHolder[0] = lookup( request, fullUrl, primaryKey );
+            final CacheStatusCode statusCode = tryWriteFromCache( request, response, lookupHolder[0] );
             traceStatus( trace, statusCode.name() );
             return statusCode;
         } );
 
+        final Lookup lookup = lookupHolder[0];
+        // known variant key, otherwise the primary one. Actual key of a rendered response is only known after rendering
+        final String cacheKey = lookup.cacheKey();
+
         if ( cacheStatusCode == CacheStatusCode.HIT )
         {
             return;
@@ -113,6 +197,15 @@ public class BoosterRequestFilter
             return;
         }
 
+        // stale response is kept to be served in case rendering of a fresh one fails
+        final Lookup errorFallback = lookup.item() != null && checkStaleIfError( lookup.item() ) ? lookup : null;
+
+        if ( cacheStatusCode == CacheStatusCode.REVALIDATE )
+        {
+            revalidate( request, response, chain, requestUrl, primaryKey, lookup, errorFallback );
+            return;
+        }
+
         final boolean stale = cacheStatusCode == CacheStatusCode.STALE;
 
         // response is very likely cacheable if stored value exists, we can collapse requests (wait for one request to do rendering)
@@ -128,74 +221,296 @@ public class BoosterRequestFilter
                 {
                     LOG.debug( "Cached response generated by another request. Use collapsed request result {}", cacheKey );
 
-                    new CachedResponseWriter( request, res -> writeHeaders( res, BoosterCacheStatus.collapsed() ) ).write( response,
-                                                                                                                           cacheHolder[0] );
+                    new CachedResponseWriter( request, res -> writeHeaders( res, BoosterCacheStatus.collapsed(),
+                                                                            lookup.dimensions() ) ).write( response, cacheHolder[0] );
                     return;
                 }
             }
 
             LOG.debug( "Processing request with cache key {}", cacheKey );
 
-            final StoreConditions storeConditions = new StoreConditions( new StoreConditions.PortalRequestConditions()::check,
-                                                                         new StoreConditions.SiteConfigConditions(
-                                                                             config.excludeQueryParams() )::check,
-                                                                         new StoreConditions.ContentTypeConditions(
-                                                                             config.cacheMimeTypes() )::check );
-
-            final CachingResponseWrapper cachingResponse = new CachingResponseWrapper( request, response, storeConditions::check,
-                                                                                       res -> writeHeaders( res, stale
-                                                                                           ? BoosterCacheStatus.stale()
-                                                                                           : BoosterCacheStatus.miss() ) );
-            try (cachingResponse)
+            cacheHolder[0] = renderAndStore( request, response, chain, requestUrl, primaryKey, stale ? cacheKey : null,
+                                             stale ? BoosterCacheStatus.stale() : BoosterCacheStatus.miss(), errorFallback );
+        }
+        finally
+
+        {
+            if ( latch != null )
             {
-                chain.doFilter( request, cachingResponse );
+                latch.unlock( cacheHolder[0] );
             }
+        }
+    }
 
-            LOG.debug( "Response received for cache key {}. Can be stored: {}", cacheKey, cachingResponse.isStore() );
-
-            if ( cachingResponse.isStore() )
+    /**
+     * Renders response and stores it, if cacheable.
+     *
+     * @param primaryKey cache key of the URL
+     * @param staleKey cache key of the stale response being replaced, {@code null} if there is none
+     */
+    private CacheItem renderAndStore( final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain,
+                                      final RequestURL requestUrl, final String primaryKey, final String staleKey,
+                                      final BoosterCacheStatus cacheStatus, final Lookup errorFallback )
+        throws Exception
+    {
+        final String cacheKey = staleKey != null ? staleKey : primaryKey;
+
+        final StoreConditions storeConditions = new StoreConditions( new StoreConditions.PortalRequestConditions()::check,
+                                                                     new StoreConditions.SiteConfigConditions(
+                                                                         config.excludeQueryParams() )::check,
+                                                                     new StoreConditions.ContentTypeConditions(
+                                                                         config.cacheMimeTypes() )::check );
+
+        // taken before rendering, so that an invalidation during rendering makes the stored response stale
+        final long generation = cacheStore.generation();
+
+        final CachingResponseWrapper cachingResponse =
+            new CachingResponseWrapper( request, response, storeConditions::check,
+                                        res -> writeHeaders( res, cacheStatus, siteKeyDimensions( request ) ), errorFallback != null,
+                                        compressionPolicy );
+        try (cachingResponse)
+        {
+            chain.doFilter( request, cachingResponse );
+        }
+        catch ( Exception e )
+        {
+            if ( errorFallback == null || response.isCommitted() )
             {
-                Tracer.trace( "booster.updateCache", () -> {
+                throw e;
+            }
+            LOG.warn( "Could not render response for cache key {}. Serving stale response", cacheKey, e );
+            writeStaleOnError( request, response, errorFallback );
+            return errorFallback.item();
+        }
 
-                    final CacheMeta cacheMeta = createCacheMeta( request, requestUrl );
-                    final ResponseFreshness freshness = cachingResponse.getFreshness();
+        if ( errorFallback != null && !response.isCommitted() &&
+            ( cachingResponse.isErrorIntercepted() || cachingResponse.getStatus() >= 500 ) )
+        {
+            LOG.debug( "Server error {} for cache key {}. Serving stale response", cachingResponse.getStatus(), cacheKey );
+            writeStaleOnError( request, response, errorFallback );
+            return errorFallback.item();
+        }
 
-                    final BoosterSiteConfig config = BoosterSiteConfig.getSiteConfig( RequestAttributes.getPortalRequest( request ) );
+        LOG.debug( "Response received for cache key {}. Can be stored: {}", cacheKey, cachingResponse.isStore() );
 
-                    final Integer fallbackTTL =
-                        config.componentTTL != null && RequestUtils.isComponentRequest( request ) ? config.componentTTL : config.defaultTTL;
+        final CacheItem[] cacheHolder = new CacheItem[1];
+        if ( cachingResponse.isStore() )
+        {
+            recordGzipCompression( cachingResponse );
+            Tracer.trace( "booster.updateCache", () -> {
 
-                    cacheHolder[0] =
-                        new CacheItem( cachingResponse.getStatus(), cachingResponse.getContentType(), cachingResponse.getCachedHeaders(),
-                                       freshness.time(), freshness.expiresTime( fallbackTTL ), freshness.age(), null,
-                                       cachingResponse.getSize(), cachingResponse.getEtag(), config.bypassHeaders, config.bypassCookies,
-                                       cachingResponse.getCachedGzipBody(), cachingResponse.getCachedBrBody().orElse( null ) );
-                    cacheStore.put( cacheKey, cacheHolder[0], cacheMeta );
-                } );
-            }
-            else if ( stale )
-            {
-                Tracer.trace( "booster.updateCache", () -> {
-                    // Evacuate item from cache immediately if it is no longer cacheable
-                    // to prevent needless request collapsing
-                    cacheStore.remove( cacheKey );
-                } );
-            }
+                final CacheMeta cacheMeta = createCacheMeta( request, requestUrl, cachingResponse.getDependsOn(), generation );
+                final ResponseFreshness freshness = cachingResponse.getFreshness();
+
+                final BoosterSiteConfig config = BoosterSiteConfig.getSiteConfig( RequestAttributes.getPortalRequest( request ) );
+
+                final Integer fallbackTTL =
+                    config.componentTTL != null && RequestUtils.isComponentRequest( request ) ? config.componentTTL : config.defaultTTL;
+
+                final Integer staleWhileRevalidate =
+                    freshness.staleWhileRevalidate() != null ? freshness.staleWhileRevalidate() : config.staleWhileRevalidate;
+
+                final Integer staleIfError = freshness.staleIfError() != null ? freshness.staleIfError() : config.staleIfError;
+
+                cacheHolder[0] =
+                    new CacheItem( cachingResponse.getStatus(), cachingResponse.getContentType(), cachingResponse.getCachedHeaders(),
+                                   freshness.time(), freshness.expiresTime( fallbackTTL ), freshness.age(), null,
+                                   cachingResponse.getSize(), cachingResponse.getEtag(), staleWhileRevalidate, staleIfError,
+                                   config.bypassHeaders, config.bypassCookies, cachingResponse.getCachedGzipBody(), null, null, null );
+
+                final List<KeyDimension> dimensions =
+                    KeyDimension.withVary( config.keyDimensions, cachingResponse.getCachedHeaders().get( "vary" ) );
+                if ( dimensions.isEmpty() )
+                {
+                    cacheStore.put( primaryKey, cacheHolder[0], cacheMeta );
+                }
+                else
+                {
+                    final String variantKey =
+                        this.config.cacheKeyAlgorithm().key( KeyDimension.variantUrl( requestUrl.url(), dimensions, request ) );
+                    LOG.debug( "Storing variant {} of {}", variantKey, primaryKey );
+                    cacheStore.put( variantKey, cacheHolder[0], cacheMeta );
+                    cacheStore.putVariant( primaryKey, dimensions, variantKey, cacheHolder[0], cacheMeta );
+                }
+            } );
         }
-        finally
+        else if ( staleKey != null )
+        {
+            Tracer.trace( "booster.updateCache", () -> {
+                // Evacuate item from cache immediately if it is no longer cacheable
+                // to prevent needless request collapsing
+                cacheStore.remove( cacheKey );
+            } );
+        }
+        return cacheHolder[0];
+    }
 
+    private void recordGzipCompression( final CachingResponseWrapper cachingResponse )
+    {
+        if ( cachingResponse.getGzipLevel() == CompressionPolicy.NO_COMPRESSION )
         {
-            if ( latch != null )
+            compressionMetrics.skipped( "gzip" );
+        }
+        else
+        {
+            compressionMetrics.compressed( "gzip", cachingResponse.getGzipLevel(), cachingResponse.getSize(),
+                                           cachingResponse.getCachedGzipBody().size() );
+        }
+    }
+
+    /**
+     * Serves compression dictionary announced by cached responses. Requests to unknown dictionaries are passed through.
+     */
+    private boolean writeDictionary( final HttpServletRequest request, final HttpServletResponse response, final String dictionaryId )
+        throws IOException
+    {
+        final String method = request.getMethod();
+        if ( !config.compressionDictionaries() || !( "GET".equalsIgnoreCase( method ) || "HEAD".equalsIgnoreCase( method ) ) ||
+            !licenseService.isValidLicense() )
+        {
+            return false;
+        }
+        final CompressionDictionary dictionary = cacheStore.dictionary( dictionaryId );
+        if ( dictionary == null )
+        {
+            LOG.debug( "Compression dictionary not found {}", dictionaryId );
+            return false;
+        }
+
+        LOG.debug( "Writing compression dictionary {}", dictionaryId );
+        response.setStatus( 200 );
+        response.setContentType( "application/octet-stream" );
+        response.setHeader( "Use-As-Dictionary", dictionary.useAsDictionary() );
+        response.setHeader( "Cache-Control", "public, max-age=" + DICTIONARY_MAX_AGE_SECONDS );
+        response.setContentLength( dictionary.data().size() );
+        if ( "GET".equalsIgnoreCase( method ) )
+        {
+            dictionary.data().writeTo( response.getOutputStream() );
+        }
+        else
+        {
+            response.flushBuffer();
+        }
+        return true;
+    }
+
+    private void writeStaleOnError( final HttpServletRequest request, final HttpServletResponse response, final Lookup stored )
+        throws IOException
+    {
+        // discard status and headers set by the failed rendering
+        response.reset();
+        new CachedResponseWriter( request, res -> writeHeaders( res, BoosterCacheStatus.staleOnError(), stored.dimensions() ) ).write(
+            response, stored.item() );
+    }
+
+    /**
+     * Re-renders response in background after the stale one was written to the client.
+     * <p>
+     * The request is put in async mode, so that it stays usable after the request thread returns, and is rendered on a revalidation thread.
+     * Only one request per cache key re-renders, the number of revalidation threads is limited, and revalidations that do not fit
+     * into the queue are dropped.
+     */
+    private void revalidate( final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain,
+                             final RequestURL requestUrl, final String primaryKey, final Lookup stale, final Lookup errorFallback )
+    {
+        final String cacheKey = stale.cacheKey();
+        if ( !revalidateEnabled || !"GET".equalsIgnoreCase( request.getMethod() ) )
+        {
+            return;
+        }
+        if ( !request.isAsyncSupported() )
+        {
+            LOG.debug( "Async requests are not supported. Skip revalidation of {}", cacheKey );
+            return;
+        }
+        if ( !revalidating.add( cacheKey ) )
+        {
+            LOG.debug( "Cached response is already being revalidated {}", cacheKey );
+            return;
+        }
+
+        final AsyncContext asyncContext;
+        try
+        {
+            asyncContext = request.startAsync();
+            // rendering is limited by XP, the request must not be recycled while it is still rendered
+            asyncContext.setTimeout( 0 );
+        }
+        catch ( IllegalStateException e )
+        {
+            revalidating.remove( cacheKey );
+            LOG.debug( "Cannot start async request. Skip revalidation of {}", cacheKey, e );
+            return;
+        }
+
+        final Context context = ContextAccessor.current();
+        final DetachedRequest detachedRequest = new DetachedRequest( request );
+        final DetachedResponse detachedResponse = new DetachedResponse( response );
+        try
+        {
+            revalidateExecutor.execute( () -> {
+                try
+                {
+                    LOG.debug( "Revalidating cached response {}", cacheKey );
+                    final Trace trace = Tracer.newTrace( "booster.revalidate" );
+                    if ( trace != null )
+                    {
+                        trace.put( "cacheKey", cacheKey );
+                    }
+                    context.callWith( () -> Tracer.traceEx( trace, () -> renderAndStore( detachedRequest, detachedResponse, chain,
+                                                                                         requestUrl, primaryKey, cacheKey,
+                                                                                         BoosterCacheStatus.stale(), errorFallback ) ) );
+                }
+                catch ( Exception e )
+                {
+                    LOG.warn( "Could not revalidate cached response {}", cacheKey, e );
+                }
+                finally
+                {
+                    revalidating.remove( cacheKey );
+                    asyncContext.complete();
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            LOG.debug( "Too many pending revalidations. Skip revalidation of {}", cacheKey );
+            revalidating.remove( cacheKey );
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Looks up cached response of the URL. If the URL is cached as variants, looks up the variant the request falls into.
+     * Dimensions of variants are kept in memory, otherwise they are learned from the primary cache key lookup.
+     */
+    private Lookup lookup( final HttpServletRequest request, final String fullUrl, final String primaryKey )
+    {
+        List<KeyDimension> dimensions = cacheStore.keyDimensions( primaryKey );
+        if ( dimensions.isEmpty() )
+        {
+            final CacheItem inCache = cacheStore.get( primaryKey );
+            if ( inCache != null )
             {
-                latch.unlock( cacheHolder[0] );
+                return new Lookup( primaryKey, List.of(), inCache );
+            }
+            // lookup of the primary key reveals dimensions if the URL is cached as variants
+            dimensions = cacheStore.keyDimensions( primaryKey );
+            if ( dimensions.isEmpty() )
+            {
+                return new Lookup( primaryKey, List.of(), null );
             }
         }
+        final String variantKey = config.cacheKeyAlgorithm().key( KeyDimension.variantUrl( fullUrl, dimensions, request ) );
+        LOG.debug( "Looking up variant {} of {}", variantKey, primaryKey );
+        return new Lookup( variantKey, dimensions, cacheStore.get( variantKey ) );
     }
 
-    private CacheStatusCode tryWriteFromCache( final HttpServletRequest request, final HttpServletResponse response, final String cacheKey )
+    private CacheStatusCode tryWriteFromCache( final HttpServletRequest request, final HttpServletResponse response, final Lookup lookup )
         throws IOException
     {
-        final CacheItem inCache = cacheStore.get( cacheKey );
+        final String cacheKey = lookup.cacheKey();
+        final CacheItem inCache = lookup.item();
         if ( inCache == null )
         {
             LOG.debug( "No cached response found {}", cacheKey );
@@ -206,9 +521,19 @@ public class BoosterRequestFilter
             if ( checkFresh( inCache ) )
             {
                 LOG.debug( "Writing directly from cache {}", cacheKey );
-                new CachedResponseWriter( request, res -> writeHeaders( res, BoosterCacheStatus.hit() ) ).write( response, inCache );
+                new CachedResponseWriter( request, res -> writeHeaders( res, BoosterCacheStatus.hit(), lookup.dimensions() ),
+                                          cached -> cacheStore.identityBody( cacheKey, cached ) ).write( response, inCache );
                 return CacheStatusCode.HIT;
             }
+            else if ( checkStaleWhileRevalidate( inCache ) )
+            {
+                LOG.debug( "Writing stale response from cache while revalidating {}", cacheKey );
+                new CachedResponseWriter( request, res -> writeHeaders( res, BoosterCacheStatus.revalidating(), lookup.dimensions() ),
+                                          cached -> cacheStore.identityBody( cacheKey, cached ) ).write( response, inCache );
+                // client gets the complete response before re-rendering starts
+                response.flushBuffer();
+                return CacheStatusCode.REVALIDATE;
+            }
             else
             {
                 LOG.debug( "Cached response is stale {}", cacheKey );
@@ -222,13 +547,24 @@ public class BoosterRequestFilter
         }
     }
 
-    private void writeHeaders( final HttpServletResponse response, final BoosterCacheStatus cacheStatus )
+    private void writeHeaders( final HttpServletResponse response, final BoosterCacheStatus cacheStatus,
+                               final List<KeyDimension> dimensions )
     {
         writeCacheStatusHeader( response, cacheStatus );
         writeVaryContentEncodingHeader( response );
+        for ( String header : KeyDimension.varyHeaders( dimensions ) )
+        {
+            writeVaryHeader( response, header );
+        }
         writeOverrideHeaders( response );
     }
 
+    private static List<KeyDimension> siteKeyDimensions( final HttpServletRequest request )
+    {
+        final BoosterSiteConfig siteConfig = BoosterSiteConfig.getSiteConfig( RequestAttributes.getPortalRequest( request ) );
+        return siteConfig == null ? List.of() : siteConfig.keyDimensions;
+    }
+
     private void writeCacheStatusHeader( final HttpServletResponse response, final BoosterCacheStatus cacheStatus )
     {
         if ( !config.disableCacheStatusHeader() && cacheStatus != null )
@@ -242,9 +578,16 @@ public class BoosterRequestFilter
         // We may send compressed and uncompressed response, so we need to Vary on Accept-Encoding
         // Make sure we don't set the header twice - Jetty also can set this header sometimes
 
-        if ( response.getHeaders( "Vary" ).stream().noneMatch( s -> s.toLowerCase( Locale.ROOT ).contains( "accept-encoding" ) ) )
+        writeVaryHeader( response, "Accept-Encoding" );
+    }
+
+    private static void writeVaryHeader( final HttpServletResponse response, final String header )
+    {
+        if ( response.getHeaders( "Vary" )
+            .stream()
+            .noneMatch( s -> Arrays.stream( s.split( "," ) ).anyMatch( t -> t.trim().equalsIgnoreCase( header ) ) ) )
         {
-            response.addHeader( "Vary", "Accept-Encoding" );
+            response.addHeader( "Vary", header );
         }
     }
 
@@ -260,9 +603,36 @@ public class BoosterRequestFilter
             return false;
         }
 
-        final Instant expireTime =
-            requireNonNullElseGet( stored.expireTime(), () -> stored.cachedTime().plus( config.cacheTtlSeconds(), ChronoUnit.SECONDS ) );
-        return !expireTime.isBefore( Instant.now() );
+        return !expireTime( stored ).isBefore( Instant.now() );
+    }
+
+    private boolean checkStaleWhileRevalidate( final CacheItem stored )
+    {
+        return checkStaleWithin( stored, stored.staleWhileRevalidate() );
+    }
+
+    private boolean checkStaleIfError( final CacheItem stored )
+    {
+        return checkStaleWithin( stored, stored.staleIfError() );
+    }
+
+    private boolean checkStaleWithin( final CacheItem stored, final Integer seconds )
+    {
+        if ( seconds == null || seconds <= 0 )
+        {
+            return false;
+        }
+
+        final Instant expireTime = expireTime( stored );
+        final Instant staleSince =
+            stored.invalidatedTime() != null && stored.invalidatedTime().isBefore( expireTime ) ? stored.invalidatedTime() : expireTime;
+        return Instant.now().isBefore( staleSince.plusSeconds( seconds ) );
+    }
+
+    private Instant expireTime( final CacheItem stored )
+    {
+        return requireNonNullElseGet( stored.expireTime(),
+                                      () -> stored.cachedTime().plus( config.cacheTtlSeconds(), ChronoUnit.SECONDS ) );
     }
 
     private boolean checkSelected( final CacheItem stored, final HttpServletRequest request )
@@ -271,7 +641,8 @@ public class BoosterRequestFilter
             StoreConditions.checkBypassCookies( stored.configBypassCookies(), request );
     }
 
-    private static CacheMeta createCacheMeta( final HttpServletRequest request, RequestURL requestUrl )
+    private static CacheMeta createCacheMeta( final HttpServletRequest request, RequestURL requestUrl, final Set<String> declaredDependsOn,
+                                              final long generation )
     {
         final PortalRequest portalRequest = RequestAttributes.getPortalRequest( request );
 
@@ -299,7 +670,16 @@ public class BoosterRequestFilter
             contentId = null;
             contentPath = null;
         }
-        return new CacheMeta( requestUrl.url(), requestUrl.domain(), requestUrl.path(), project, siteId, contentId, contentPath );
+        final Set<String> declared = new LinkedHashSet<>( declaredDependsOn );
+        declared.addAll( RequestAttributes.getDependsOn( request ) );
+        final Set<String> dependsOn = ContentDependencies.collect( portalRequest, declared );
+        if ( siteId != null )
+        {
+            dependsOn.remove( siteId );
+        }
+
+        return new CacheMeta( requestUrl.url(), requestUrl.domain(), requestUrl.path(), project, siteId, contentId, contentPath,
+                              dependsOn, generation );
     }
 
     private static void traceStatus( final Trace trace, final String status )
@@ -310,8 +690,15 @@ public class BoosterRequestFilter
         }
     }
 
+    /**
+     * Result of cache lookup. Cache key is the one of the variant if the URL is cached as variants.
+     */
+    private record Lookup(String cacheKey, List<KeyDimension> dimensions, CacheItem item)
+    {
+    }
+
     enum CacheStatusCode
     {
-        MISS, HIT, STALE, BYPASS
+        MISS, HIT, STALE, REVALIDATE, BYPASS
     }
 }
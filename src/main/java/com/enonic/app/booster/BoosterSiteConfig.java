@@ -19,20 +19,30 @@ public final class BoosterSiteConfig
 
     public Integer componentTTL;
 
+    public Integer staleWhileRevalidate;
+
+    public Integer staleIfError;
+
     public List<InvertablePattern> patterns;
 
     public List<EntryPattern> bypassHeaders;
 
     public List<EntryPattern> bypassCookies;
 
-    public BoosterSiteConfig( final Integer defaultTTL, final Integer componentTTL, final List<InvertablePattern> patterns,
-                              final List<EntryPattern> bypassHeaders, final List<EntryPattern> bypassCookies )
+    public List<KeyDimension> keyDimensions;
+
+    public BoosterSiteConfig( final Integer defaultTTL, final Integer componentTTL, final Integer staleWhileRevalidate,
+                              final Integer staleIfError, final List<InvertablePattern> patterns, final List<EntryPattern> bypassHeaders,
+                              final List<EntryPattern> bypassCookies, final List<KeyDimension> keyDimensions )
     {
         this.defaultTTL = defaultTTL;
         this.componentTTL = componentTTL;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        this.staleIfError = staleIfError;
         this.patterns = patterns;
         this.bypassCookies = bypassCookies;
         this.bypassHeaders = bypassHeaders;
+        this.keyDimensions = keyDimensions;
     }
 
     private static final ApplicationKey APPLICATION_KEY = ApplicationKey.from( "com.enonic.app.booster" );
@@ -79,8 +89,14 @@ public final class BoosterSiteConfig
 
         final List<EntryPattern> bypassCookies = EntryPatternMapper.mapEntryPatterns( boosterConfig.getSets( "bypassCookies" ) );
 
+        final List<KeyDimension> keyDimensions =
+            KeyDimensionMapper.mapKeyDimensions( boosterConfig.getSets( "keyHeaders" ), boosterConfig.getSets( "keyCookies" ) );
+
         final Integer defaultTTL = Numbers.safeParseInteger( boosterConfig.getString( "defaultTTL" ) );
         final Integer componentTTL = Numbers.safeParseInteger( boosterConfig.getString( "componentTTL" ) );
-        return new BoosterSiteConfig( defaultTTL, componentTTL, patterns, bypassHeaders, bypassCookies );
+        final Integer staleWhileRevalidate = Numbers.safeParseInteger( boosterConfig.getString( "staleWhileRevalidate" ) );
+        final Integer staleIfError = Numbers.safeParseInteger( boosterConfig.getString( "staleIfError" ) );
+        return new BoosterSiteConfig( defaultTTL, componentTTL, staleWhileRevalidate, staleIfError, patterns, bypassHeaders,
+                                      bypassCookies, keyDimensions );
     }
 }
@@ -9,6 +9,7 @@ import com.enonic.app.booster.io.ByteSupply;
 
 public record CacheItem(int status, String contentType, Map<String, ? extends Collection<String>> headers, Instant cachedTime,
                         Instant expireTime, Integer age, Instant invalidatedTime, int contentLength, String etag,
-                        List<EntryPattern> configBypassHeaders, List<EntryPattern> configBypassCookies, ByteSupply gzipData, ByteSupply brotliData)
+                        Integer staleWhileRevalidate, Integer staleIfError, List<EntryPattern> configBypassHeaders, List<EntryPattern> configBypassCookies, ByteSupply gzipData, ByteSupply brotliData,
+                        ByteSupply zstdData, DictionaryCompressed dczData)
 {
 }
@@ -1,5 +1,8 @@
 package com.enonic.app.booster;
 
-public record CacheMeta(String url, String domain, String path, String project, String siteId, String contentId, String contentPath)
+import java.util.Set;
+
+public record CacheMeta(String url, String domain, String path, String project, String siteId, String contentId, String contentPath,
+                        Set<String> dependsOn, long generation)
 {
 }
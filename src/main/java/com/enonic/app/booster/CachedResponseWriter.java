@@ -5,9 +5,11 @@ import java.io.InputStream;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.zip.GZIPInputStream;
 
 import org.slf4j.Logger;
@@ -16,6 +18,7 @@ import org.slf4j.LoggerFactory;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import com.enonic.app.booster.io.ByteSupply;
 import com.enonic.app.booster.servlet.RequestUtils;
 
 import static java.util.Objects.requireNonNullElse;
@@ -25,20 +28,36 @@ public final class CachedResponseWriter
 {
     private static final Logger LOG = LoggerFactory.getLogger( CachedResponseWriter.class );
 
-    final RequestUtils.AcceptEncoding acceptEncoding;
+    final List<RequestUtils.AcceptEncoding> acceptEncodings;
 
     final String expectEtag;
 
+    final String availableDictionary;
+
     final boolean writeBody;
 
     final Consumer<HttpServletResponse> beforeWrite;
 
+    final Function<CacheItem, ByteSupply> identityBody;
+
     public CachedResponseWriter( final HttpServletRequest request, final Consumer<HttpServletResponse> beforeWrite )
     {
-        this.acceptEncoding = RequestUtils.acceptEncoding( request );
+        this( request, beforeWrite, cached -> null );
+    }
+
+    /**
+     * @param identityBody supplies decompressed body for clients that do not accept compression.
+     *                     If it returns {@code null} the body is decompressed from gzip.
+     */
+    public CachedResponseWriter( final HttpServletRequest request, final Consumer<HttpServletResponse> beforeWrite,
+                                 final Function<CacheItem, ByteSupply> identityBody )
+    {
+        this.acceptEncodings = RequestUtils.acceptEncodings( request );
         this.expectEtag = request.getHeader( "If-None-Match" );
+        this.availableDictionary = RequestUtils.availableDictionary( request );
         this.writeBody = request.getMethod().equalsIgnoreCase( "GET" );
         this.beforeWrite = beforeWrite;
+        this.identityBody = identityBody;
     }
 
     /**
@@ -55,9 +74,13 @@ public final class CachedResponseWriter
     public void write( final HttpServletResponse response, final CacheItem cached )
         throws IOException
     {
-        String etagSuffix = switch ( acceptEncoding )
+        final RequestUtils.AcceptEncoding encoding = selectEncoding( cached );
+
+        String etagSuffix = switch ( encoding )
         {
+            case DCZ -> "-dcz-" + cached.dczData().dictionaryId().substring( 0, 8 );
             case BROTLI -> "-br";
+            case ZSTD -> "-zstd";
             case GZIP -> "-gzip";
             case UNSPECIFIED -> "";
         };
@@ -69,6 +92,16 @@ public final class CachedResponseWriter
 
         beforeWrite.accept( response );
 
+        if ( cached.dczData() != null )
+        {
+            // dictionary-compressed body is served only to clients that have the dictionary
+            response.addHeader( "Vary", "Available-Dictionary" );
+            if ( encoding != RequestUtils.AcceptEncoding.DCZ )
+            {
+                response.addHeader( "Link", "<" + cached.dczData().dictionaryUrl() + ">; rel=\"compression-dictionary\"" );
+            }
+        }
+
         response.setHeader( "ETag", eTag );
 
         response.setIntHeader( "Age", (int) Math.max( 0, Math.min( ChronoUnit.SECONDS.between( cached.cachedTime(), Instant.now() ),
@@ -85,8 +118,15 @@ public final class CachedResponseWriter
         response.setContentType( cached.contentType() );
         response.setStatus( cached.status() );
 
-        switch ( acceptEncoding )
+        switch ( encoding )
         {
+            case DCZ ->
+            {
+                LOG.debug( "Request has compression dictionary" );
+                // Headers will tell Jetty to not apply compression, as it is done already
+                response.setHeader( "Content-Encoding", "dcz" );
+                response.setContentLength( cached.dczData().data().size() );
+            }
             case BROTLI ->
             {
                 LOG.debug( "Request accepts brotli" );
@@ -94,6 +134,13 @@ public final class CachedResponseWriter
                 response.setHeader( "Content-Encoding", "br" );
                 response.setContentLength( cached.brotliData().size() );
             }
+            case ZSTD ->
+            {
+                LOG.debug( "Request accepts zstd" );
+                // Headers will tell Jetty to not apply compression, as it is done already
+                response.setHeader( "Content-Encoding", "zstd" );
+                response.setContentLength( cached.zstdData().size() );
+            }
             case GZIP ->
             {
                 LOG.debug( "Request accepts gzip" );
@@ -103,7 +150,7 @@ public final class CachedResponseWriter
             }
             default ->
             {
-                LOG.debug( "Request does not accept brotli or gzip" );
+                LOG.debug( "Request does not accept brotli, zstd or gzip" );
                 response.setContentLength( cached.contentLength() );
             }
         }
@@ -112,15 +159,25 @@ public final class CachedResponseWriter
         {
             LOG.debug( "Writing cached response body" );
 
-            switch ( acceptEncoding )
+            switch ( encoding )
             {
+                case DCZ -> cached.dczData().data().writeTo( response.getOutputStream() );
                 case BROTLI -> cached.brotliData().writeTo( response.getOutputStream() );
+                case ZSTD -> cached.zstdData().writeTo( response.getOutputStream() );
                 case GZIP -> cached.gzipData().writeTo( response.getOutputStream() );
                 default ->
                 {
-                    try (InputStream in = new GZIPInputStream( cached.gzipData().openStream() ))
+                    final ByteSupply identity = identityBody.apply( cached );
+                    if ( identity != null )
+                    {
+                        identity.writeTo( response.getOutputStream() );
+                    }
+                    else
                     {
-                        in.transferTo( response.getOutputStream() );
+                        try (InputStream in = new GZIPInputStream( cached.gzipData().openStream() ))
+                        {
+                            in.transferTo( response.getOutputStream() );
+                        }
                     }
                 }
             }
@@ -133,6 +190,33 @@ public final class CachedResponseWriter
         }
     }
 
+    /**
+     * The most preferred encoding the cached response is stored in.
+     * Brotli is added in background after the response is stored, zstd may be disabled for the content type.
+     * Dictionary-compressed body is only usable by clients that have the same dictionary.
+     * Gzip body is not served if it is not smaller than the body itself, as with bodies smaller than {@code compressionMinBytes}
+     * that are stored without compression.
+     */
+    private RequestUtils.AcceptEncoding selectEncoding( final CacheItem cached )
+    {
+        for ( RequestUtils.AcceptEncoding encoding : acceptEncodings )
+        {
+            final boolean stored = switch ( encoding )
+            {
+                case DCZ -> cached.dczData() != null && cached.dczData().dictionaryId().equals( availableDictionary );
+                case BROTLI -> cached.brotliData() != null;
+                case ZSTD -> cached.zstdData() != null;
+                case GZIP -> cached.gzipData().size() < cached.contentLength();
+                case UNSPECIFIED -> true;
+            };
+            if ( stored )
+            {
+                return encoding;
+            }
+        }
+        return RequestUtils.AcceptEncoding.UNSPECIFIED;
+    }
+
     private void copyHeaders( final HttpServletResponse response, final Map<String, ? extends Collection<String>> headers,
                               final boolean notModified )
     {
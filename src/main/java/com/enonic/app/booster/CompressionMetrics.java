@@ -0,0 +1,146 @@
+package com.enonic.app.booster;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.enonic.app.booster.io.CompressionPolicy;
+
+@Component(immediate = true, service = CompressionMetrics.class)
+public class CompressionMetrics
+    implements CompressionMetricsMXBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger( CompressionMetrics.class );
+
+    public static final String OBJECT_NAME = "com.enonic.app.booster:type=Compression";
+
+    private final ConcurrentMap<String, Totals> totals = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongAdder> levels = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongAdder> skipped = new ConcurrentHashMap<>();
+
+    @Activate
+    public void activate()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName( OBJECT_NAME );
+            if ( !server.isRegistered( name ) )
+            {
+                server.registerMBean( this, name );
+            }
+        }
+        catch ( JMException e )
+        {
+            LOG.warn( "Cannot register compression metrics in JMX", e );
+        }
+    }
+
+    @Deactivate
+    public void deactivate()
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( new ObjectName( OBJECT_NAME ) );
+        }
+        catch ( JMException e )
+        {
+            LOG.debug( "Compression metrics were not registered in JMX", e );
+        }
+    }
+
+    /**
+     * Records a compressed body.
+     *
+     * @param size           body size before compression
+     * @param compressedSize body size after compression
+     */
+    public void compressed( final String encoding, final int level, final long size, final long compressedSize )
+    {
+        final Totals encodingTotals = totals.computeIfAbsent( encoding, k -> new Totals() );
+        encodingTotals.count.increment();
+        encodingTotals.size.add( size );
+        encodingTotals.compressedSize.add( compressedSize );
+        levels.computeIfAbsent( encoding + "-" + level, k -> new LongAdder() ).increment();
+    }
+
+    /**
+     * Records a body that was not compressed because it is too small.
+     */
+    public void skipped( final String encoding )
+    {
+        skipped.computeIfAbsent( encoding, k -> new LongAdder() ).increment();
+    }
+
+    @Override
+    public Map<String, Long> getCompressedCount()
+    {
+        final Map<String, Long> result = new TreeMap<>();
+        totals.forEach( ( encoding, t ) -> result.put( encoding, t.count.sum() ) );
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getSkippedCount()
+    {
+        return sums( skipped );
+    }
+
+    @Override
+    public Map<String, Double> getCompressionRatio()
+    {
+        final Map<String, Double> result = new TreeMap<>();
+        totals.forEach( ( encoding, t ) -> {
+            final long compressedSize = t.compressedSize.sum();
+            if ( compressedSize > 0 )
+            {
+                result.put( encoding, (double) t.size.sum() / compressedSize );
+            }
+        } );
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getLevelCount()
+    {
+        return sums( levels );
+    }
+
+    @Override
+    public double getSystemLoad()
+    {
+        final double load = CompressionPolicy.systemLoad();
+        return Double.isNaN( load ) ? -1 : load;
+    }
+
+    private static Map<String, Long> sums( final Map<String, LongAdder> adders )
+    {
+        final Map<String, Long> result = new TreeMap<>();
+        adders.forEach( ( key, adder ) -> result.put( key, adder.sum() ) );
+        return result;
+    }
+
+    private static final class Totals
+    {
+        final LongAdder count = new LongAdder();
+
+        final LongAdder size = new LongAdder();
+
+        final LongAdder compressedSize = new LongAdder();
+    }
+}
@@ -0,0 +1,35 @@
+package com.enonic.app.booster;
+
+import java.util.Map;
+
+/**
+ * Compression of cached responses, registered in JMX as {@value CompressionMetrics#OBJECT_NAME}.
+ * Values are keyed by content encoding: {@code gzip}, {@code br}, {@code zstd} or {@code dcz}.
+ */
+public interface CompressionMetricsMXBean
+{
+    /**
+     * Number of compressed bodies.
+     */
+    Map<String, Long> getCompressedCount();
+
+    /**
+     * Number of bodies not compressed because they are smaller than {@code compressionMinBytes}.
+     */
+    Map<String, Long> getSkippedCount();
+
+    /**
+     * Total size of compressed bodies before compression divided by their size after compression.
+     */
+    Map<String, Double> getCompressionRatio();
+
+    /**
+     * Number of compressed bodies by encoding and chosen level, keyed like {@code br-11}.
+     */
+    Map<String, Long> getLevelCount();
+
+    /**
+     * Current system load average per available processor, levels are chosen by. Negative if not available.
+     */
+    double getSystemLoad();
+}
@@ -0,0 +1,71 @@
+package com.enonic.app.booster;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.enonic.xp.content.Content;
+import com.enonic.xp.page.Page;
+import com.enonic.xp.portal.PortalRequest;
+import com.enonic.xp.region.Component;
+import com.enonic.xp.region.FragmentComponent;
+import com.enonic.xp.region.LayoutComponent;
+import com.enonic.xp.region.Region;
+
+/**
+ * Collects ids of content a rendered page depends on, other than the page content and its site.
+ * <p>
+ * Fragments and page template of the content are found from its page. Content fetched by controllers is declared by the application.
+ */
+final class ContentDependencies
+{
+    private ContentDependencies()
+    {
+    }
+
+    static Set<String> collect( final PortalRequest portalRequest, final Collection<String> declared )
+    {
+        final Set<String> result = new LinkedHashSet<>( declared );
+
+        final Content content = portalRequest.getContent();
+        final Page page = content != null ? content.getPage() : null;
+        if ( page != null )
+        {
+            if ( page.getTemplate() != null )
+            {
+                result.add( page.getTemplate().toString() );
+            }
+            if ( page.getRegions() != null )
+            {
+                for ( Region region : page.getRegions() )
+                {
+                    collect( region, result );
+                }
+            }
+        }
+        if ( content != null )
+        {
+            // page content and site are stored in their own fields
+            result.remove( content.getId().toString() );
+        }
+        return result;
+    }
+
+    private static void collect( final Region region, final Set<String> result )
+    {
+        for ( Component component : region.getComponents() )
+        {
+            if ( component instanceof FragmentComponent fragmentComponent && fragmentComponent.getFragment() != null )
+            {
+                result.add( fragmentComponent.getFragment().toString() );
+            }
+            else if ( component instanceof LayoutComponent layoutComponent && layoutComponent.getRegions() != null )
+            {
+                for ( Region layoutRegion : layoutComponent.getRegions() )
+                {
+                    collect( layoutRegion, result );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.enonic.app.booster;
+
+import com.enonic.app.booster.io.ByteSupply;
+
+/**
+ * Body of a cached response compressed with a shared compression dictionary, in dictionary-compressed zstd ({@code dcz}) format.
+ *
+ * @param dictionaryId  hex-encoded SHA-256 hash of the dictionary
+ * @param dictionaryUrl path the dictionary is served from, announced to clients that do not have it yet
+ */
+public record DictionaryCompressed(String dictionaryId, String dictionaryUrl, ByteSupply data)
+{
+}
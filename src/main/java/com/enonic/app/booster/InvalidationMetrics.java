@@ -0,0 +1,115 @@
+package com.enonic.app.booster;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Component(immediate = true, service = InvalidationMetrics.class)
+public class InvalidationMetrics
+    implements InvalidationMetricsMXBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger( InvalidationMetrics.class );
+
+    public static final String OBJECT_NAME = "com.enonic.app.booster:type=Invalidation";
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private final LongAdder invalidated = new LongAdder();
+
+    private final LongAdder nanos = new LongAdder();
+
+    private volatile double lastThroughput;
+
+    @Activate
+    public void activate()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName( OBJECT_NAME );
+            if ( !server.isRegistered( name ) )
+            {
+                server.registerMBean( this, name );
+            }
+        }
+        catch ( JMException e )
+        {
+            LOG.warn( "Cannot register invalidation metrics in JMX", e );
+        }
+    }
+
+    @Deactivate
+    public void deactivate()
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( new ObjectName( OBJECT_NAME ) );
+        }
+        catch ( JMException e )
+        {
+            LOG.debug( "Invalidation metrics were not registered in JMX", e );
+        }
+    }
+
+    /**
+     * Records an invalidation.
+     *
+     * @param count number of marked cached responses
+     * @param took  time spent on finding and marking them, in nanoseconds
+     */
+    public void invalidated( final int count, final long took )
+    {
+        invalidations.increment();
+        invalidated.add( count );
+        nanos.add( took );
+        if ( count > 0 )
+        {
+            lastThroughput = throughput( count, took );
+        }
+    }
+
+    @Override
+    public long getInvalidationCount()
+    {
+        return invalidations.sum();
+    }
+
+    @Override
+    public long getInvalidatedCount()
+    {
+        return invalidated.sum();
+    }
+
+    @Override
+    public long getInvalidationMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( nanos.sum() );
+    }
+
+    @Override
+    public double getThroughput()
+    {
+        return throughput( invalidated.sum(), nanos.sum() );
+    }
+
+    @Override
+    public double getLastThroughput()
+    {
+        return lastThroughput;
+    }
+
+    private static double throughput( final long count, final long nanos )
+    {
+        return nanos > 0 ? count * (double) TimeUnit.SECONDS.toNanos( 1 ) / nanos : 0;
+    }
+}
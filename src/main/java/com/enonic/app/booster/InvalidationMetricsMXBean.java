@@ -0,0 +1,32 @@
+package com.enonic.app.booster;
+
+/**
+ * Marking of invalidated cached responses, registered in JMX as {@value InvalidationMetrics#OBJECT_NAME}.
+ */
+public interface InvalidationMetricsMXBean
+{
+    /**
+     * Number of invalidations that looked for cached responses to mark.
+     */
+    long getInvalidationCount();
+
+    /**
+     * Number of cached responses marked as invalidated.
+     */
+    long getInvalidatedCount();
+
+    /**
+     * Total time spent on finding and marking cached responses, in milliseconds.
+     */
+    long getInvalidationMillis();
+
+    /**
+     * Cached responses marked per second, over all invalidations.
+     */
+    double getThroughput();
+
+    /**
+     * Cached responses marked per second by the latest invalidation that marked any.
+     */
+    double getLastThroughput();
+}
@@ -0,0 +1,128 @@
+package com.enonic.app.booster;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+
+import com.enonic.app.booster.utils.Matchers;
+
+/**
+ * Request header or cookie a cached response varies by. Each distinct value of a dimension is stored as a separate variant.
+ * <p>
+ * Values are trimmed and lowercased. If buckets are given, a value is replaced with the value of the first matching bucket,
+ * or with an empty string if no bucket matches, so that arbitrary values do not produce arbitrary number of variants.
+ */
+public record KeyDimension(Source source, String name, List<Bucket> buckets)
+{
+    public String value( final HttpServletRequest request )
+    {
+        final String raw = source == Source.HEADER ? request.getHeader( name ) : cookieValue( request );
+        final String normalized = raw == null ? "" : raw.trim().toLowerCase( Locale.ROOT );
+        if ( buckets.isEmpty() )
+        {
+            return normalized;
+        }
+        for ( Bucket bucket : buckets )
+        {
+            if ( Matchers.matchesPattern( bucket.pattern(), false, List.of( normalized ) ) )
+            {
+                return bucket.value();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * URL of the variant the request falls into. Used to compute the cache key of the variant.
+     */
+    public static String variantUrl( final String url, final List<KeyDimension> dimensions, final HttpServletRequest request )
+    {
+        final StringBuilder sb = new StringBuilder( url.length() + 16 * dimensions.size() ).append( url ).append( '#' );
+        for ( int i = 0; i < dimensions.size(); i++ )
+        {
+            final KeyDimension dimension = dimensions.get( i );
+            if ( i > 0 )
+            {
+                sb.append( '&' );
+            }
+            sb.append( dimension.source() == Source.HEADER ? "h:" : "c:" )
+                .append( dimension.name().toLowerCase( Locale.ROOT ) )
+                .append( '=' )
+                .append( URLEncoder.encode( dimension.value( request ), StandardCharsets.UTF_8 ) );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Adds request headers listed in {@code Vary} response header values to configured dimensions.
+     * Headers already configured keep their buckets. {@code Accept-Encoding} is skipped, as Booster negotiates encoding by itself.
+     */
+    public static List<KeyDimension> withVary( final List<KeyDimension> dimensions, final Collection<String> vary )
+    {
+        if ( vary == null || vary.isEmpty() )
+        {
+            return dimensions;
+        }
+        final List<KeyDimension> result = new ArrayList<>( dimensions );
+        for ( String value : vary )
+        {
+            for ( String token : value.split( "," ) )
+            {
+                final String header = token.trim();
+                if ( header.isEmpty() || header.equalsIgnoreCase( "Accept-Encoding" ) || result.stream()
+                    .anyMatch( d -> d.source() == Source.HEADER && d.name().equalsIgnoreCase( header ) ) )
+                {
+                    continue;
+                }
+                result.add( new KeyDimension( Source.HEADER, header, List.of() ) );
+            }
+        }
+        return List.copyOf( result );
+    }
+
+    /**
+     * Names of request headers to list in {@code Vary} response header.
+     */
+    public static Set<String> varyHeaders( final List<KeyDimension> dimensions )
+    {
+        final Set<String> headers = new LinkedHashSet<>();
+        for ( KeyDimension dimension : dimensions )
+        {
+            headers.add( dimension.source() == Source.HEADER ? dimension.name() : "Cookie" );
+        }
+        return headers;
+    }
+
+    private String cookieValue( final HttpServletRequest request )
+    {
+        final Cookie[] cookies = request.getCookies();
+        if ( cookies != null )
+        {
+            for ( Cookie cookie : cookies )
+            {
+                if ( cookie.getName().equals( name ) )
+                {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    public enum Source
+    {
+        HEADER, COOKIE
+    }
+
+    public record Bucket(String pattern, String value)
+    {
+    }
+}
@@ -0,0 +1,47 @@
+package com.enonic.app.booster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.StreamSupport;
+
+import com.enonic.xp.data.PropertySet;
+
+public class KeyDimensionMapper
+{
+    private KeyDimensionMapper()
+    {
+    }
+
+    public static List<KeyDimension> mapKeyDimensions( final Iterable<PropertySet> headers, final Iterable<PropertySet> cookies )
+    {
+        final List<KeyDimension> dimensions = new ArrayList<>();
+        addKeyDimensions( dimensions, KeyDimension.Source.HEADER, headers );
+        addKeyDimensions( dimensions, KeyDimension.Source.COOKIE, cookies );
+        return List.copyOf( dimensions );
+    }
+
+    private static void addKeyDimensions( final List<KeyDimension> dimensions, final KeyDimension.Source source,
+                                          final Iterable<PropertySet> elements )
+    {
+        if ( elements == null )
+        {
+            return;
+        }
+        for ( PropertySet p : elements )
+        {
+            final String name = p.getString( "name" );
+            if ( name == null || name.isBlank() )
+            {
+                continue;
+            }
+            final List<KeyDimension.Bucket> buckets =
+                StreamSupport.stream( p.getSets( "buckets" ).spliterator(), false ).map( b -> {
+                    final String pattern = Objects.requireNonNullElse( b.getString( "pattern" ), "" );
+                    final String value = Objects.requireNonNullElse( b.getString( "value" ), "" );
+                    return new KeyDimension.Bucket( pattern, value );
+                } ).toList();
+            dimensions.add( new KeyDimension( source, name.trim(), buckets ) );
+        }
+    }
+}
@@ -61,10 +61,11 @@ public class StoreConditions
             return false;
         }
 
-        // We may cache responses with Vary header, but it is quite a bit of work to parse and check it
-        if ( response.getCachedHeaders().containsKey( "vary" ) )
+        // Responses with Vary header are cached as variants keyed by listed request headers, but Vary: * cannot be matched
+        final List<String> vary = response.getCachedHeaders().get( "vary" );
+        if ( vary != null && vary.stream().anyMatch( v -> Arrays.stream( v.split( "," ) ).anyMatch( t -> t.trim().equals( "*" ) ) ) )
         {
-            LOG.debug( "Not cacheable because of Vary header in response" );
+            LOG.debug( "Not cacheable because of Vary: * header in response" );
             return false;
         }
 
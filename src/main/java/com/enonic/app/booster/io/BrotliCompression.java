@@ -0,0 +1,59 @@
+package com.enonic.app.booster.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.BrotliOutputStream;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+
+public final class BrotliCompression
+{
+    private static final boolean AVAILABLE;
+
+    static
+    {
+        boolean available;
+        try
+        {
+            Brotli4jLoader.ensureAvailability();
+            available = true;
+        }
+        catch ( UnsatisfiedLinkError e )
+        {
+            available = false;
+        }
+        AVAILABLE = available;
+    }
+
+    private BrotliCompression()
+    {
+    }
+
+    /**
+     * @return {@code true} if native brotli library is available on this platform
+     */
+    public static boolean isAvailable()
+    {
+        return AVAILABLE;
+    }
+
+    /**
+     * Re-compresses gzip-compressed data with brotli.
+     *
+     * @param quality brotli quality, from 0 (fastest) to 11 (smallest)
+     */
+    public static ByteSupply recompressGzip( final ByteSupply gzipData, final int quality )
+        throws IOException
+    {
+        final ByteArrayOutputStream brotliData = new ByteArrayOutputStream( Math.max( 32, gzipData.size() ) );
+        try (InputStream in = new GZIPInputStream( gzipData.openStream() );
+             BrotliOutputStream out = new BrotliOutputStream( brotliData, new Encoder.Parameters().setQuality( quality ) ))
+        {
+            in.transferTo( out );
+        }
+        return ByteSupply.of( brotliData );
+    }
+}
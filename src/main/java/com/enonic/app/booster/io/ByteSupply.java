@@ -20,6 +20,20 @@ public abstract class ByteSupply
     public abstract InputStream openStream()
         throws IOException;
 
+    public byte[] toByteArray()
+        throws IOException
+    {
+        try (InputStream is = openStream())
+        {
+            return is.readAllBytes();
+        }
+    }
+
+    public static ByteSupply of( final byte[] bytes )
+    {
+        return new ByteArrayByteSupply( bytes );
+    }
+
     public static ByteSupply of( final ByteArrayOutputStream baos )
     {
         return new BaosByteSupply( baos );
@@ -79,6 +93,48 @@ public abstract class ByteSupply
         {
             return new ByteArrayInputStream( baos.toByteArray() );
         }
+
+        @Override
+        public byte[] toByteArray()
+        {
+            return baos.toByteArray();
+        }
+    }
+
+    private static final class ByteArrayByteSupply
+        extends ByteSupply
+    {
+        final byte[] bytes;
+
+        public ByteArrayByteSupply( final byte[] bytes )
+        {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int size()
+        {
+            return bytes.length;
+        }
+
+        @Override
+        public void writeTo( final OutputStream out )
+            throws IOException
+        {
+            out.write( bytes );
+        }
+
+        @Override
+        public InputStream openStream()
+        {
+            return new ByteArrayInputStream( bytes );
+        }
+
+        @Override
+        public byte[] toByteArray()
+        {
+            return bytes;
+        }
     }
 
     private static final class ByteSourceByteSupply
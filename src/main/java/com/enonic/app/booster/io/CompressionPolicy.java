@@ -0,0 +1,131 @@
+package com.enonic.app.booster.io;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.function.DoubleSupplier;
+import java.util.zip.Deflater;
+
+/**
+ * Picks compression levels from body size and system load.
+ * <p>
+ * Under load, fast levels keep rendering of cache misses from waiting on compression. When the system is quiet, the best levels are used.
+ * Load is the system load average per available processor, as reported by {@link OperatingSystemMXBean}.
+ * Where load average is not available, configured levels are used.
+ */
+public final class CompressionPolicy
+{
+    /**
+     * Level of bodies that are not compressed. Gzip bodies are still stored in gzip format, as stored blocks, but served uncompressed.
+     */
+    public static final int NO_COMPRESSION = Deflater.NO_COMPRESSION;
+
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy( 0, 11, 3, () -> Double.NaN );
+
+    // load per processor below which the system is considered quiet
+    static final double QUIET_LOAD = 0.25;
+
+    // load per processor above which the system is considered busy
+    static final double BUSY_LOAD = 1.0;
+
+    // the best levels take too long on bodies of this size or larger, unless the system is quiet
+    static final long LARGE_BYTES = 256 * 1024;
+
+    private static final OperatingSystemMXBean OPERATING_SYSTEM = ManagementFactory.getOperatingSystemMXBean();
+
+    private final int minBytes;
+
+    private final int brotliQuality;
+
+    private final int zstdLevel;
+
+    private final DoubleSupplier load;
+
+    /**
+     * @param minBytes      bodies smaller than this are not compressed
+     * @param brotliQuality brotli quality used unless the system is busy or the body is large
+     * @param zstdLevel     zstd level used unless the system is busy
+     * @param load          current load per processor, {@code NaN} if not known
+     */
+    public CompressionPolicy( final int minBytes, final int brotliQuality, final int zstdLevel, final DoubleSupplier load )
+    {
+        this.minBytes = minBytes;
+        this.brotliQuality = brotliQuality;
+        this.zstdLevel = zstdLevel;
+        this.load = load;
+    }
+
+    public static CompressionPolicy create( final int minBytes, final int brotliQuality, final int zstdLevel )
+    {
+        return new CompressionPolicy( minBytes, brotliQuality, zstdLevel, CompressionPolicy::systemLoad );
+    }
+
+    /**
+     * System load average for the last minute per available processor, {@code NaN} if not available on this platform.
+     */
+    public static double systemLoad()
+    {
+        final double loadAverage = OPERATING_SYSTEM.getSystemLoadAverage();
+        return loadAverage < 0 ? Double.NaN : loadAverage / OPERATING_SYSTEM.getAvailableProcessors();
+    }
+
+    public int minBytes()
+    {
+        return minBytes;
+    }
+
+    /**
+     * Checks if a body of the size is compressed at all.
+     */
+    public boolean shouldCompress( final long size )
+    {
+        return size >= minBytes;
+    }
+
+    /**
+     * Gzip level, from 1 (fastest) to 9 (smallest), or {@link #NO_COMPRESSION}.
+     *
+     * @param size body size, {@code -1} if not known yet
+     */
+    public int gzipLevel( final long size )
+    {
+        if ( size >= 0 && !shouldCompress( size ) )
+        {
+            return NO_COMPRESSION;
+        }
+        final double current = load.getAsDouble();
+        if ( current >= BUSY_LOAD )
+        {
+            return Deflater.BEST_SPEED;
+        }
+        if ( current < QUIET_LOAD && size < LARGE_BYTES )
+        {
+            return Deflater.BEST_COMPRESSION;
+        }
+        return 6;
+    }
+
+    /**
+     * Brotli quality, from 0 (fastest) to 11 (smallest), not above the configured one.
+     */
+    public int brotliQuality( final long size )
+    {
+        final double current = load.getAsDouble();
+        if ( current >= BUSY_LOAD )
+        {
+            return Math.min( brotliQuality, 4 );
+        }
+        if ( !( current < QUIET_LOAD ) && size >= LARGE_BYTES )
+        {
+            return Math.min( brotliQuality, 9 );
+        }
+        return brotliQuality;
+    }
+
+    /**
+     * Zstd level, from 1 (fastest) to 19 (smallest), not above the configured one.
+     */
+    public int zstdLevel()
+    {
+        return load.getAsDouble() >= BUSY_LOAD ? 1 : zstdLevel;
+    }
+}
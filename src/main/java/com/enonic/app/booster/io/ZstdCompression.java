@@ -0,0 +1,82 @@
+package com.enonic.app.booster.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+
+public final class ZstdCompression
+{
+    private static final boolean AVAILABLE;
+
+    // fixed header of dictionary-compressed zstd stream, followed by SHA-256 hash of the dictionary
+    private static final byte[] DCZ_MAGIC = {0x5e, 0x2a, 0x4d, 0x18, 0x20, 0x00, 0x00, 0x00};
+
+    static
+    {
+        boolean available;
+        try
+        {
+            Native.load();
+            available = true;
+        }
+        catch ( UnsatisfiedLinkError e )
+        {
+            available = false;
+        }
+        AVAILABLE = available;
+    }
+
+    private ZstdCompression()
+    {
+    }
+
+    /**
+     * @return {@code true} if native zstd library is available on this platform
+     */
+    public static boolean isAvailable()
+    {
+        return AVAILABLE;
+    }
+
+    /**
+     * Re-compresses gzip-compressed data with zstd.
+     *
+     * @param level zstd compression level, from 1 (fastest) to 19 (smallest)
+     */
+    public static ByteSupply recompressGzip( final ByteSupply gzipData, final int level )
+        throws IOException
+    {
+        final ByteArrayOutputStream zstdData = new ByteArrayOutputStream( Math.max( 32, gzipData.size() ) );
+        try (InputStream in = new GZIPInputStream( gzipData.openStream() ); ZstdOutputStream out = new ZstdOutputStream( zstdData, level ))
+        {
+            in.transferTo( out );
+        }
+        return ByteSupply.of( zstdData );
+    }
+
+    /**
+     * Re-compresses gzip-compressed data with zstd and a raw content dictionary,
+     * in dictionary-compressed zstd ({@code dcz}) format of Compression Dictionary Transport (RFC 9842).
+     *
+     * @param dictionaryHash SHA-256 hash of the dictionary, written to the header of compressed data
+     */
+    public static ByteSupply recompressGzipDcz( final ByteSupply gzipData, final int level, final byte[] dictionary,
+                                                final byte[] dictionaryHash )
+        throws IOException
+    {
+        final ByteArrayOutputStream dczData = new ByteArrayOutputStream( Math.max( 64, gzipData.size() ) );
+        dczData.write( DCZ_MAGIC );
+        dczData.write( dictionaryHash );
+        try (InputStream in = new GZIPInputStream( gzipData.openStream() );
+             ZstdOutputStream out = new ZstdOutputStream( dczData, level ))
+        {
+            out.setDict( dictionary );
+            in.transferTo( out );
+        }
+        return ByteSupply.of( dczData );
+    }
+}
@@ -1,12 +1,18 @@
 package com.enonic.app.booster.query;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import com.enonic.app.booster.storage.BoosterContext;
+import com.enonic.app.booster.storage.EvictionPolicy;
+import com.enonic.app.booster.storage.ScopeGenerations;
 import com.enonic.xp.data.ValueFactory;
 import com.enonic.xp.index.IndexPath;
+import com.enonic.xp.node.NodeId;
 import com.enonic.xp.node.NodeQuery;
+import com.enonic.xp.query.aggregation.metric.StatsAggregationQuery;
 import com.enonic.xp.query.expr.CompareExpr;
 import com.enonic.xp.query.expr.FieldExpr;
 import com.enonic.xp.query.expr.FieldOrderExpr;
@@ -21,16 +27,223 @@ import com.enonic.xp.query.filter.ValueFilter;
 
 public class BoosterQueryBuilder
 {
+    public static final String STORED_SIZE_AGGREGATION = "storedSize";
+
+    // query size to return all hits, node service scrolls through results instead of returning a single page
+    public static final int ALL = -1;
+
+    // indexed node id, pages are read in its order
+    private static final String NODE_ID = "_id";
+
     private BoosterQueryBuilder()
     {
     }
 
     public static NodeQuery queryNodes( final Map<String, Value> fields, final Instant cutOffTime,
                                         final boolean includeInvalidated, int size )
+    {
+        final NodeQuery.Builder builder = nodesQueryBuilder( fields, cutOffTime, includeInvalidated );
+        if ( includeInvalidated )
+        {
+            builder.addOrderBy( FieldOrderExpr.create( IndexPath.from( "invalidatedTime" ), OrderExpr.Direction.ASC ) );
+        }
+        builder.addOrderBy( FieldOrderExpr.create( IndexPath.from( "cachedTime" ), OrderExpr.Direction.ASC ) ).size( size );
+        return builder.build();
+    }
+
+    /**
+     * Query for a page of nodes in node id order, following the given node.
+     * Unlike pages of a scroll, next page can be queried before the index is refreshed after nodes of previous pages were changed.
+     *
+     * @param afterId last node of the previous page, {@code null} for the first page
+     */
+    public static NodeQuery queryNodesPage( final Map<String, Value> fields, final Instant cutOffTime,
+                                            final boolean includeInvalidated, final NodeId afterId, int size )
+    {
+        return page( nodesQueryBuilder( fields, cutOffTime, includeInvalidated ), afterId, size ).build();
+    }
+
+    /**
+     * Query for a page of not yet invalidated nodes of pages of the content, of its site, pages that depend on it,
+     * or pages of the content paths. Pages are in node id order, as in {@link #queryNodesPage}.
+     *
+     * @param afterId last node of the previous page, {@code null} for the first page
+     */
+    public static NodeQuery queryDependentNodesPage( final String project, final Collection<String> contentIds,
+                                                     final Collection<String> contentPaths, final Instant cutOffTime,
+                                                     final NodeId afterId, int size )
+    {
+        final NodeQuery.Builder builder = nodesQueryBuilder( Map.of( "project", Value.Single.of( project ) ), cutOffTime, false );
+        final BooleanFilter.Builder anyField = BooleanFilter.create();
+        if ( !contentIds.isEmpty() )
+        {
+            for ( String field : List.of( "contentId", "siteId", "dependsOn" ) )
+            {
+                anyField.should( ValueFilter.create().fieldName( field ).addValues( contentIds ).build() );
+            }
+        }
+        if ( !contentPaths.isEmpty() )
+        {
+            anyField.should( ValueFilter.create().fieldName( "contentPath" ).addValues( contentPaths ).build() );
+        }
+        return page( builder.addQueryFilter( anyField.build() ), afterId, size ).build();
+    }
+
+    private static NodeQuery.Builder nodesQueryBuilder( final Map<String, Value> fields, final Instant cutOffTime,
+                                                        final boolean includeInvalidated )
+    {
+        final NodeQuery.Builder builder = NodeQuery.create();
+        builder.parent( BoosterContext.CACHE_PARENT_NODE );
+        addFieldFilters( builder, fields );
+
+        if ( !includeInvalidated )
+        {
+            builder.addQueryFilter(
+                BooleanFilter.create().mustNot( ExistsFilter.create().fieldName( "invalidatedTime" ).build() ).build() );
+        }
+
+        if ( cutOffTime != null )
+        {
+            builder.addQueryFilter( RangeFilter.create().fieldName( "cachedTime" ).lt( ValueFactory.newDateTime( cutOffTime ) ).build() );
+        }
+        return builder;
+    }
+
+    private static NodeQuery.Builder page( final NodeQuery.Builder builder, final NodeId afterId, int size )
+    {
+        if ( afterId != null )
+        {
+            builder.addQueryFilter( RangeFilter.create().fieldName( NODE_ID ).gt( ValueFactory.newString( afterId.toString() ) ).build() );
+        }
+        return builder.addOrderBy( FieldOrderExpr.create( IndexPath.from( NODE_ID ), OrderExpr.Direction.ASC ) ).size( size );
+    }
+
+    /**
+     * Query for invalidated nodes, most requested first. Both marked nodes and nodes stale by generations of their scopes are found.
+     *
+     * @param generations generations by scope, as in {@link ScopeGenerations}
+     */
+    public static NodeQuery queryInvalidatedNodes( final Map<String, Long> generations, final Map<String, Value> fields, int size )
+    {
+        final NodeQuery.Builder builder = NodeQuery.create();
+        builder.parent( BoosterContext.CACHE_PARENT_NODE );
+        addFieldFilters( builder, fields );
+
+        final BooleanFilter.Builder invalidated = BooleanFilter.create();
+        invalidated.should( ExistsFilter.create().fieldName( "invalidatedTime" ).build() );
+        addStaleFilters( invalidated, generations );
+        builder.addQueryFilter( invalidated.build() );
+        builder.addOrderBy( FieldOrderExpr.create( IndexPath.from( "hits" ), OrderExpr.Direction.DESC ) );
+        builder.addOrderBy( FieldOrderExpr.create( IndexPath.from( "cachedTime" ), OrderExpr.Direction.DESC ) ).size( size );
+
+        return builder.build();
+    }
+
+    /**
+     * Query for not yet marked nodes, stale by generations of their scopes: stamped with a lower generation than one of their scopes,
+     * or not stamped at all.
+     *
+     * @param generations generations by scope, as in {@link ScopeGenerations}
+     */
+    public static NodeQuery queryStaleNodes( final Map<String, Long> generations, int size )
+    {
+        final BooleanFilter.Builder stale = BooleanFilter.create();
+        if ( !addStaleFilters( stale, generations ) )
+        {
+            // excluded below, so that nothing is found rather than everything
+            stale.should( ExistsFilter.create().fieldName( "invalidatedTime" ).build() );
+        }
+        return NodeQuery.create()
+            .parent( BoosterContext.CACHE_PARENT_NODE )
+            .addQueryFilter( BooleanFilter.create().mustNot( ExistsFilter.create().fieldName( "invalidatedTime" ).build() ).build() )
+            .addQueryFilter( stale.build() )
+            .addOrderBy( FieldOrderExpr.create( IndexPath.from( "cachedTime" ), OrderExpr.Direction.ASC ) )
+            .size( size )
+            .build();
+    }
+
+    private static boolean addStaleFilters( final BooleanFilter.Builder builder, final Map<String, Long> generations )
+    {
+        boolean added = false;
+        final long all = generations.getOrDefault( ScopeGenerations.ALL, 0L );
+        for ( Map.Entry<String, Long> entry : generations.entrySet() )
+        {
+            final Map<String, String> scopeFields = ScopeGenerations.fields( entry.getKey() );
+            // nodes of scopes invalidated before all cache are found by generation of all cache
+            if ( scopeFields == null || ( !scopeFields.isEmpty() && entry.getValue() <= all ) )
+            {
+                continue;
+            }
+            final BooleanFilter.Builder scope = BooleanFilter.create();
+            scopeFields.forEach(
+                ( field, value ) -> scope.must( ValueFilter.create().fieldName( field ).addValue( ValueFactory.newString( value ) ).build() ) );
+            scope.must( BooleanFilter.create()
+                            .should( RangeFilter.create().fieldName( "generation" ).lt( ValueFactory.newLong( entry.getValue() ) ).build() )
+                            .should( BooleanFilter.create().mustNot( ExistsFilter.create().fieldName( "generation" ).build() ).build() )
+                            .build() );
+            builder.should( scope.build() );
+            added = true;
+        }
+        return added;
+    }
+
+    /**
+     * Query for nodes to evict, invalidated first, then in order of eviction policy.
+     */
+    public static NodeQuery queryEvictionCandidates( final Instant cutOffTime, final EvictionPolicy policy, int size )
     {
         final NodeQuery.Builder builder = NodeQuery.create();
         builder.parent( BoosterContext.CACHE_PARENT_NODE );
+        builder.addQueryFilter( RangeFilter.create().fieldName( "cachedTime" ).lt( ValueFactory.newDateTime( cutOffTime ) ).build() );
+        builder.addOrderBy( FieldOrderExpr.create( IndexPath.from( "invalidatedTime" ), OrderExpr.Direction.ASC ) );
+        for ( String field : policy.orderFields() )
+        {
+            builder.addOrderBy( FieldOrderExpr.create( IndexPath.from( field ), OrderExpr.Direction.ASC ) );
+        }
+        return builder.size( size ).build();
+    }
+
+    /**
+     * Query for the total size of stored response bodies.
+     */
+    public static NodeQuery queryStoredSize()
+    {
+        return NodeQuery.create()
+            .parent( BoosterContext.CACHE_PARENT_NODE )
+            .addAggregationQuery( StatsAggregationQuery.create( STORED_SIZE_AGGREGATION ).fieldName( "storedSize" ).build() )
+            .size( 0 )
+            .build();
+    }
 
+    /**
+     * Query for not invalidated HTML pages of sites to train compression dictionaries on, most requested first.
+     */
+    public static NodeQuery queryDictionarySamples( int size )
+    {
+        return NodeQuery.create()
+            .parent( BoosterContext.CACHE_PARENT_NODE )
+            .query( QueryExpr.from( CompareExpr.like( FieldExpr.from( "contentType" ), ValueExpr.string( "text/html*" ) ) ) )
+            .addQueryFilter( ExistsFilter.create().fieldName( "siteId" ).build() )
+            .addQueryFilter( BooleanFilter.create().mustNot( ExistsFilter.create().fieldName( "invalidatedTime" ).build() ).build() )
+            .addOrderBy( FieldOrderExpr.create( IndexPath.from( "hits" ), OrderExpr.Direction.DESC ) )
+            .size( size )
+            .build();
+    }
+
+    /**
+     * Query for stored compression dictionaries, latest first.
+     */
+    public static NodeQuery queryDictionaries()
+    {
+        return NodeQuery.create()
+            .parent( BoosterContext.DICTIONARY_PARENT_NODE )
+            .addOrderBy( FieldOrderExpr.create( IndexPath.from( "createdTime" ), OrderExpr.Direction.DESC ) )
+            .size( ALL )
+            .build();
+    }
+
+    private static void addFieldFilters( final NodeQuery.Builder builder, final Map<String, Value> fields )
+    {
         for ( Map.Entry<String, Value> entry : fields.entrySet() )
         {
             final Value value = entry.getValue();
@@ -55,23 +268,5 @@ public class BoosterQueryBuilder
                 throw new IllegalArgumentException( "Unknown value type: " + value );
             }
         }
-
-        if ( !includeInvalidated )
-        {
-            builder.addQueryFilter(
-                BooleanFilter.create().mustNot( ExistsFilter.create().fieldName( "invalidatedTime" ).build() ).build() );
-        }
-        else
-        {
-            builder.addOrderBy( FieldOrderExpr.create( IndexPath.from( "invalidatedTime" ), OrderExpr.Direction.ASC ) );
-        }
-
-        if ( cutOffTime != null )
-        {
-            builder.addQueryFilter( RangeFilter.create().fieldName( "cachedTime" ).lt( ValueFactory.newDateTime( cutOffTime ) ).build() );
-        }
-        builder.addOrderBy( FieldOrderExpr.create( IndexPath.from( "cachedTime" ), OrderExpr.Direction.ASC ) ).size( size );
-
-        return builder.build();
     }
 }
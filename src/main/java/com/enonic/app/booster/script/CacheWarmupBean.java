@@ -0,0 +1,235 @@
+package com.enonic.app.booster.script;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.enonic.app.booster.query.BoosterQueryBuilder;
+import com.enonic.app.booster.query.Value;
+import com.enonic.app.booster.storage.BoosterContext;
+import com.enonic.app.booster.storage.NodeCacheStore;
+import com.enonic.xp.node.FindNodesByQueryResult;
+import com.enonic.xp.node.Node;
+import com.enonic.xp.node.NodeQuery;
+import com.enonic.xp.node.NodeService;
+import com.enonic.xp.script.bean.BeanContext;
+import com.enonic.xp.script.bean.ScriptBean;
+import com.enonic.xp.web.vhost.VirtualHost;
+import com.enonic.xp.web.vhost.VirtualHostService;
+
+/**
+ * Re-requests URLs of invalidated cache items, so that they get rendered and cached before visitors ask for them.
+ * <p>
+ * Requests go through the regular request pipeline, so responses are rendered and stored by Booster filter as if a visitor made them.
+ * They are sent to the local web server, not to cached URLs, so that they do not go through DNS, CDN or load balancer.
+ * Cached URLs only give path, query and original host, which is passed in {@code X-Forwarded-Host} and {@code X-Forwarded-Proto} headers.
+ * As cached URLs come from visitors' {@code Host} headers, URLs of hosts not mapped by any virtual host are skipped.
+ */
+public class CacheWarmupBean
+    implements ScriptBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger( CacheWarmupBean.class );
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds( 30 );
+
+    static final String DEFAULT_BASE_URL = "http://localhost:8080";
+
+    private final HttpClient httpClient;
+
+    private final Deque<String> urls = new ArrayDeque<>();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private NodeService nodeService;
+
+    private NodeCacheStore nodeCacheStore;
+
+    private VirtualHostService virtualHostService;
+
+    private long nextRequestNanos;
+
+    public CacheWarmupBean()
+    {
+        this( HttpClient.newBuilder()
+                  .connectTimeout( Duration.ofSeconds( 10 ) )
+                  .followRedirects( HttpClient.Redirect.NEVER )
+                  .build() );
+    }
+
+    CacheWarmupBean( final HttpClient httpClient )
+    {
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public void initialize( final BeanContext beanContext )
+    {
+        this.nodeService = beanContext.getService( NodeService.class ).get();
+        this.nodeCacheStore = beanContext.getService( NodeCacheStore.class ).get();
+        this.virtualHostService = beanContext.getService( VirtualHostService.class ).get();
+    }
+
+    /**
+     * Collects URLs of invalidated cache items, most requested first. Items of invalidated projects, sites and domains are found
+     * by generations of their scopes, even before they are marked as invalidated.
+     *
+     * @return number of URLs to warm up
+     */
+    public int prepare( final List<String> projects, final int limit )
+    {
+        final Map<String, Value> fields = projects.isEmpty() ? Map.of() : Map.of( "project", Value.Multiple.of( projects ) );
+        final Map<String, Long> generations = nodeCacheStore.generations();
+
+        BoosterContext.runInContext( () -> {
+            final NodeQuery query = BoosterQueryBuilder.queryInvalidatedNodes( generations, fields, Math.max( 0, limit ) );
+            final FindNodesByQueryResult result = nodeService.findByQuery( query );
+            if ( result.getNodeHits().isEmpty() )
+            {
+                return;
+            }
+            for ( Node node : nodeService.getByIds( result.getNodeHits().getAsNodeIds() ) )
+            {
+                final String url = node.data().getString( "url" );
+                if ( url != null )
+                {
+                    urls.add( url );
+                }
+            }
+        } );
+        LOG.debug( "Found {} URLs to warm up", urls.size() );
+        return urls.size();
+    }
+
+    /**
+     * Requests next URLs.
+     *
+     * @param count       maximum number of URLs to request
+     * @param concurrency maximum number of requests in progress
+     * @param rate        maximum number of requests started per second, not limited if not positive
+     * @param baseUrl     URL of the local web server, {@value #DEFAULT_BASE_URL} if not set
+     * @return number of requested URLs, {@code 0} if there is nothing left to warm up
+     */
+    public int warmup( final int count, final int concurrency, final double rate, final String baseUrl )
+        throws InterruptedException
+    {
+        final Semaphore permits = new Semaphore( Math.max( 1, concurrency ) );
+        final long intervalNanos = rate > 0 ? (long) ( TimeUnit.SECONDS.toNanos( 1 ) / rate ) : 0;
+
+        final List<CompletableFuture<?>> requests = new ArrayList<>();
+        while ( requests.size() < count && !urls.isEmpty() )
+        {
+            final String url = urls.poll();
+            final HttpRequest request;
+            try
+            {
+                final URI uri = URI.create( url );
+                if ( !isMapped( uri ) )
+                {
+                    LOG.debug( "Skip warm up of {}, host is not mapped by any virtual host", url );
+                    failed.incrementAndGet();
+                    continue;
+                }
+                request = buildRequest( uri, baseUrl );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                LOG.debug( "Skip warm up of invalid URL {}", url, e );
+                failed.incrementAndGet();
+                continue;
+            }
+
+            pace( intervalNanos );
+            permits.acquire();
+            requests.add( httpClient.sendAsync( request, HttpResponse.BodyHandlers.discarding() ).whenComplete( ( response, e ) -> {
+                permits.release();
+                if ( e != null || response.statusCode() >= 400 )
+                {
+                    failed.incrementAndGet();
+                    LOG.debug( "Warm up of {} failed {}", request.uri(), e != null ? e.getMessage() : response.statusCode() );
+                }
+            } ) );
+        }
+        CompletableFuture.allOf( requests.toArray( CompletableFuture[]::new ) ).exceptionally( e -> null ).join();
+        return requests.size();
+    }
+
+    public int getFailed()
+    {
+        return failed.get();
+    }
+
+    static HttpRequest buildRequest( final URI uri, final String baseUrl )
+    {
+        if ( !uri.isAbsolute() || uri.getHost() == null )
+        {
+            throw new IllegalArgumentException( "Not an absolute URL " + uri );
+        }
+
+        // Host header can't be set, original host is passed via X-Forwarded headers instead
+        final URI base = URI.create( baseUrl == null || baseUrl.isBlank() ? DEFAULT_BASE_URL : baseUrl.trim() );
+        final String host = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        return HttpRequest.newBuilder()
+            .GET()
+            .timeout( REQUEST_TIMEOUT )
+            .header( "Accept-Encoding", "br, gzip" )
+            .header( "User-Agent", "Booster-Warmup" )
+            .uri( base.resolve( uri.getRawPath() + ( uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "" ) ) )
+            .header( "X-Forwarded-Host", host )
+            .header( "X-Forwarded-Proto", uri.getScheme() )
+            .build();
+    }
+
+    private boolean isMapped( final URI uri )
+    {
+        if ( !virtualHostService.isEnabled() )
+        {
+            // without virtual hosts any host is served, and the request goes to the local web server anyway
+            return true;
+        }
+        final String path = uri.getPath() == null ? "" : uri.getPath().toLowerCase( Locale.ROOT );
+        for ( VirtualHost virtualHost : virtualHostService.getVirtualHosts() )
+        {
+            if ( virtualHost.getHost().equalsIgnoreCase( uri.getHost() ) && isUnder( path, virtualHost.getSource() ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUnder( final String path, final String source )
+    {
+        final String prefix = source.toLowerCase( Locale.ROOT );
+        return prefix.equals( "/" ) || path.equals( prefix ) || path.startsWith( prefix.endsWith( "/" ) ? prefix : prefix + "/" );
+    }
+
+    private void pace( final long intervalNanos )
+        throws InterruptedException
+    {
+        if ( intervalNanos == 0 )
+        {
+            return;
+        }
+        final long now = System.nanoTime();
+        if ( nextRequestNanos - now > 0 )
+        {
+            TimeUnit.NANOSECONDS.sleep( nextRequestNanos - now );
+        }
+        nextRequestNanos = Math.max( now, nextRequestNanos ) + intervalNanos;
+    }
+}
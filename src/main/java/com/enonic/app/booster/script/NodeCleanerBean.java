@@ -3,7 +3,6 @@ package com.enonic.app.booster.script;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,16 +10,12 @@ import org.slf4j.LoggerFactory;
 import com.enonic.app.booster.query.BoosterQueryBuilder;
 import com.enonic.app.booster.query.Value;
 import com.enonic.app.booster.storage.BoosterContext;
-import com.enonic.xp.node.DeleteNodeParams;
+import com.enonic.app.booster.storage.CacheNodeDeleter;
+import com.enonic.app.booster.storage.NodeCacheInvalidator;
+import com.enonic.app.booster.storage.NodeCacheStore;
 import com.enonic.xp.node.FindNodesByQueryResult;
-import com.enonic.xp.node.NodeHit;
-import com.enonic.xp.node.NodeHits;
-import com.enonic.xp.node.NodeId;
-import com.enonic.xp.node.NodeNotFoundException;
 import com.enonic.xp.node.NodeQuery;
 import com.enonic.xp.node.NodeService;
-import com.enonic.xp.node.RefreshMode;
-import com.enonic.xp.node.UpdateNodeParams;
 import com.enonic.xp.script.bean.BeanContext;
 import com.enonic.xp.script.bean.ScriptBean;
 
@@ -31,53 +26,59 @@ public class NodeCleanerBean
 
     private NodeService nodeService;
 
+    private NodeCacheStore nodeCacheStore;
+
+    private NodeCacheInvalidator nodeCacheInvalidator;
+
     @Override
     public void initialize( final BeanContext beanContext )
     {
         this.nodeService = beanContext.getService( NodeService.class ).get();
+        this.nodeCacheStore = beanContext.getService( NodeCacheStore.class ).get();
+        this.nodeCacheInvalidator = beanContext.getService( NodeCacheInvalidator.class ).get();
     }
 
     public void invalidateProjects( final List<String> projects )
     {
-        if ( projects.isEmpty() )
-        {
-            return;
-        }
-        invalidateByQuery( Map.of( "project", Value.Multiple.of( projects ) ) );
+        nodeCacheInvalidator.invalidateProjects( projects );
     }
 
     public void invalidateContent( final String project, final String contentId )
     {
-        invalidateByQuery( Map.of( "project", Value.Single.of( project ), "contentId", Value.Single.of( contentId ) ) );
+        nodeCacheInvalidator.invalidateContent( project, contentId );
+    }
+
+    public void invalidateDependents( final String project, final List<String> contentIds, final List<String> contentPaths )
+    {
+        nodeCacheInvalidator.invalidateDependents( project, contentIds, contentPaths );
     }
 
     public void invalidateSite( final String project, final String siteId )
     {
-        invalidateByQuery( Map.of( "project", Value.Single.of( project ), "siteId", Value.Single.of( siteId ) ) );
+        nodeCacheInvalidator.invalidateSite( project, siteId );
     }
 
     public void invalidateDomain( final String domain )
     {
-        invalidateByQuery( Map.of( "domain", Value.Single.of( domain ) ) );
+        nodeCacheInvalidator.invalidateDomain( domain );
     }
 
     public void invalidatePathPrefix( final String domain, final String path )
     {
-        invalidateByQuery( Map.of( "domain", Value.Single.of( domain ), "path", Value.PathPrefix.of( path ) ) );
+        nodeCacheInvalidator.invalidatePathPrefix( domain, path );
     }
 
     public void invalidateAll()
     {
-        invalidateByQuery( Map.of() );
+        nodeCacheInvalidator.invalidateAll();
     }
 
     public void purgeAll()
     {
         final Instant now = Instant.now();
         BoosterContext.runInContext( () -> {
-            final NodeQuery query = BoosterQueryBuilder.queryNodes( Map.of(), now, true, 10_000 );
-
-            process( query, this::delete );
+            final int deleted = new CacheNodeDeleter( nodeService, nodeCacheStore ).deleteAll( Map.of(), now );
+            LOG.debug( "Purged {} nodes", deleted );
         } );
     }
 
@@ -106,56 +107,4 @@ public class NodeCleanerBean
         } );
         return (int) Math.max( 0, Math.min( nodesToInvalidate.getTotalHits(), Integer.MAX_VALUE ) );
     }
-
-    private void invalidateByQuery( final Map<String, Value> fields )
-    {
-        final Instant now = Instant.now();
-        BoosterContext.runInContext( () -> {
-            final NodeQuery query = BoosterQueryBuilder.queryNodes( fields, now, false, 10_000 );
-            process( query, ( n ) -> setInvalidatedTime( n, now ) );
-        } );
-    }
-
-    private void process( final NodeQuery query, final Consumer<NodeId> op )
-    {
-        FindNodesByQueryResult nodesToInvalidate = nodeService.findByQuery( query );
-
-        int hits = nodesToInvalidate.getNodeHits().getSize();
-        LOG.debug( "Found {} nodes total to be processed", nodesToInvalidate.getTotalHits() );
-
-        while ( hits > 0 )
-        {
-            final NodeHits nodeHits = nodesToInvalidate.getNodeHits();
-            for ( NodeHit nodeHit : nodeHits )
-            {
-                op.accept( nodeHit.getNodeId() );
-            }
-            LOG.debug( "Processed nodes {}", nodeHits.getSize() );
-
-            nodeService.refresh( RefreshMode.SEARCH );
-            nodesToInvalidate = nodeService.findByQuery( query );
-
-            hits = nodesToInvalidate.getNodeHits().getSize();
-        }
-    }
-
-    private void setInvalidatedTime( final NodeId nodeId, final Instant invalidatedTime )
-    {
-        try
-        {
-            nodeService.update( UpdateNodeParams.create()
-                                    .id( nodeId )
-                                    .editor( editor -> editor.data.setInstant( "invalidatedTime", invalidatedTime ) )
-                                    .build() );
-        }
-        catch ( NodeNotFoundException e )
-        {
-            LOG.debug( "Node for invalidate was already deleted", e );
-        }
-    }
-
-    private void delete( final NodeId nodeId )
-    {
-        nodeService.delete( DeleteNodeParams.create().nodeId( nodeId ).build() );
-    }
 }
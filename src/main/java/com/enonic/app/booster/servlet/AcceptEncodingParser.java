@@ -1,24 +1,46 @@
 package com.enonic.app.booster.servlet;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 
 final class AcceptEncodingParser
 {
+    // codings in server preference order, indexes match DCZ, BROTLI, ZSTD and GZIP
+    private static final RequestUtils.AcceptEncoding[] ENCODINGS =
+        {RequestUtils.AcceptEncoding.DCZ, RequestUtils.AcceptEncoding.BROTLI, RequestUtils.AcceptEncoding.ZSTD,
+            RequestUtils.AcceptEncoding.GZIP};
+
+    private static final int DCZ = 0;
+
+    private static final int BROTLI = 1;
+
+    private static final int ZSTD = 2;
+
+    private static final int GZIP = 3;
+
+    private static final int WILDCARD = 4;
+
+    private static final List<RequestUtils.AcceptEncoding> UNSPECIFIED_ONLY = List.of( RequestUtils.AcceptEncoding.UNSPECIFIED );
+
     private AcceptEncodingParser()
     {
     }
 
-    static RequestUtils.AcceptEncoding parse( final Enumeration<String> headers )
+    /**
+     * @return encodings acceptable by the client, most preferred first. Encodings with higher q-value are preferred.
+     * Equal q-values are ordered dictionary-compressed zstd, brotli, zstd, gzip.
+     * The list always ends with {@link RequestUtils.AcceptEncoding#UNSPECIFIED}.
+     */
+    static List<RequestUtils.AcceptEncoding> parse( final Enumeration<String> headers )
     {
         if ( headers == null )
         {
-            return RequestUtils.AcceptEncoding.UNSPECIFIED;
+            return UNSPECIFIED_ONLY;
         }
 
-        boolean acceptBrotli = false;
-        boolean gzipListed = false;
-        boolean gzipAccepted = false;
-        boolean wildcardAccepted = false;
+        // highest q-value per coding, in thousandths. -1 when the coding is not listed
+        final int[] qValues = {-1, -1, -1, -1, -1};
 
         while ( headers.hasMoreElements() )
         {
@@ -33,44 +55,50 @@ final class AcceptEncodingParser
             {
                 final int idx = header.indexOf( ',', i );
                 final int tokenEnd = idx < 0 ? len : idx;
-                switch ( parseToken( header, i, tokenEnd ) )
-                {
-                    case BROTLI:
-                        acceptBrotli = true;
-                        break;
-                    case GZIP_ACCEPT:
-                        gzipListed = true;
-                        gzipAccepted = true;
-                        break;
-                    case GZIP_REJECT:
-                        gzipListed = true;
-                        break;
-                    case WILDCARD_ACCEPT:
-                        wildcardAccepted = true;
-                        break;
-                    case NONE:
-                        break;
-                }
+                parseToken( header, i, tokenEnd, qValues );
                 i = tokenEnd + 1;
             }
         }
 
-        if ( acceptBrotli )
+        // RFC 9110 §12.5.3: `*` matches only codings not explicitly listed.
+        // Policy: wildcard never elevates dcz, brotli or zstd — only gzip.
+        if ( qValues[GZIP] < 0 )
         {
-            return RequestUtils.AcceptEncoding.BROTLI;
+            qValues[GZIP] = qValues[WILDCARD];
         }
-        // RFC 9110 §12.5.3: `*` matches only codings not explicitly listed.
-        // Policy: wildcard never elevates brotli — only gzip.
-        final boolean acceptGzip = gzipAccepted || ( wildcardAccepted && !gzipListed );
-        return acceptGzip ? RequestUtils.AcceptEncoding.GZIP : RequestUtils.AcceptEncoding.UNSPECIFIED;
-    }
 
-    private enum Outcome
-    {
-        BROTLI, GZIP_ACCEPT, GZIP_REJECT, WILDCARD_ACCEPT, NONE
+        // insertion sort by q-value. Codings are inserted in server preference order, which is kept for equal q-values
+        final int[] order = new int[ENCODINGS.length];
+        int count = 0;
+        for ( int coding = 0; coding < ENCODINGS.length; coding++ )
+        {
+            if ( qValues[coding] <= 0 )
+            {
+                continue;
+            }
+            int at = count++;
+            while ( at > 0 && qValues[order[at - 1]] < qValues[coding] )
+            {
+                order[at] = order[at - 1];
+                at--;
+            }
+            order[at] = coding;
+        }
+        if ( count == 0 )
+        {
+            return UNSPECIFIED_ONLY;
+        }
+
+        final List<RequestUtils.AcceptEncoding> result = new ArrayList<>( count + 1 );
+        for ( int i = 0; i < count; i++ )
+        {
+            result.add( ENCODINGS[order[i]] );
+        }
+        result.add( RequestUtils.AcceptEncoding.UNSPECIFIED );
+        return result;
     }
 
-    private static Outcome parseToken( final String s, final int start, final int end )
+    private static void parseToken( final String s, final int start, final int end, final int[] qValues )
     {
         int b = start;
         int e = end;
@@ -84,7 +112,7 @@ final class AcceptEncodingParser
         }
         if ( b == e )
         {
-            return Outcome.NONE;
+            return;
         }
 
         int nameEnd = b;
@@ -98,16 +126,34 @@ final class AcceptEncodingParser
             nameTrimEnd--;
         }
 
-        final boolean isBrotli = equalsAsciiIgnoreCase( s, b, nameTrimEnd, "br" );
-        final boolean isGzip = !isBrotli && equalsAsciiIgnoreCase( s, b, nameTrimEnd, "gzip" );
-        // Wildcard `*` (RFC 9110 §12.5.3): treat as gzip when q>0 — never elevate brotli on a generic wildcard.
-        final boolean isWildcard = !isBrotli && !isGzip && nameTrimEnd - b == 1 && s.charAt( b ) == '*';
-        if ( !isBrotli && !isGzip && !isWildcard )
+        final int coding;
+        if ( equalsAsciiIgnoreCase( s, b, nameTrimEnd, "dcz" ) )
         {
-            return Outcome.NONE;
+            coding = DCZ;
+        }
+        else if ( equalsAsciiIgnoreCase( s, b, nameTrimEnd, "br" ) )
+        {
+            coding = BROTLI;
+        }
+        else if ( equalsAsciiIgnoreCase( s, b, nameTrimEnd, "zstd" ) )
+        {
+            coding = ZSTD;
+        }
+        else if ( equalsAsciiIgnoreCase( s, b, nameTrimEnd, "gzip" ) )
+        {
+            coding = GZIP;
+        }
+        else if ( nameTrimEnd - b == 1 && s.charAt( b ) == '*' )
+        {
+            // Wildcard `*` (RFC 9110 §12.5.3): treat as gzip when q>0 — never elevate brotli or zstd on a generic wildcard.
+            coding = WILDCARD;
+        }
+        else
+        {
+            return;
         }
 
-        boolean qPositive = true;
+        int q = 1000;
         boolean qSet = false;
         int p = nameEnd;
         while ( p < e )
@@ -146,50 +192,44 @@ final class AcceptEncodingParser
             }
             if ( isQ )
             {
-                qPositive = isPositiveQValue( value );
+                q = qValue( value );
                 qSet = true;
             }
         }
 
-        if ( isBrotli )
-        {
-            return qPositive ? Outcome.BROTLI : Outcome.NONE;
-        }
-        if ( isGzip )
-        {
-            return qPositive ? Outcome.GZIP_ACCEPT : Outcome.GZIP_REJECT;
-        }
-        // isWildcard
-        return qPositive ? Outcome.WILDCARD_ACCEPT : Outcome.NONE;
+        qValues[coding] = Math.max( qValues[coding], q );
     }
 
-    private static boolean isPositiveQValue( final String v )
+    /**
+     * @return q-value in thousandths, 0 for malformed values
+     */
+    private static int qValue( final String v )
     {
         if ( v == null || v.isEmpty() || v.length() > 5 )
         {
-            return false;
+            return 0;
         }
         final char c0 = v.charAt( 0 );
         if ( c0 != '0' && c0 != '1' )
         {
-            return false;
+            return 0;
         }
         for ( int i = 1; i < v.length(); i++ )
         {
             final char c = v.charAt( i );
             if ( c != '.' && ( c < '0' || c > '9' ) )
             {
-                return false;
+                return 0;
             }
         }
         try
         {
             final double q = Double.parseDouble( v );
-            return q > 0.0 && q <= 1.0;
+            return q > 0.0 && q <= 1.0 ? (int) Math.round( q * 1000 ) : 0;
         }
         catch ( NumberFormatException e )
         {
-            return false;
+            return 0;
         }
     }
 
@@ -2,7 +2,6 @@ package com.enonic.app.booster.servlet;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -13,8 +12,6 @@ public interface CachingResponse
 {
     ByteSupply getCachedGzipBody();
 
-    Optional<ByteSupply> getCachedBrBody();
-
     String getEtag();
 
     int getSize();
@@ -2,9 +2,9 @@ package com.enonic.app.booster.servlet;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.UncheckedIOException;
-import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -12,10 +12,11 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HexFormat;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -24,10 +25,6 @@ import java.util.zip.GZIPOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.aayushatharva.brotli4j.Brotli4jLoader;
-import com.aayushatharva.brotli4j.encoder.BrotliOutputStream;
-import com.aayushatharva.brotli4j.encoder.Encoder;
-
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.Cookie;
@@ -36,6 +33,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpServletResponseWrapper;
 
 import com.enonic.app.booster.io.ByteSupply;
+import com.enonic.app.booster.io.CompressionPolicy;
 import com.enonic.app.booster.utils.MessageDigests;
 
 public final class CachingResponseWrapper
@@ -44,20 +42,32 @@ public final class CachingResponseWrapper
 {
     private static final Logger LOG = LoggerFactory.getLogger( CachingResponseWrapper.class );
 
+    /**
+     * Comma separated content ids the response depends on. Consumed by Booster, never sent to the client.
+     */
+    public static final String DEPENDS_HEADER = "X-Booster-Depends";
+
     String etag;
 
     final ByteArrayOutputStream gzipData = new ByteArrayOutputStream();
 
-    final ByteArrayOutputStream brotliData;
+    final MessageDigest digest = MessageDigests.sha256();
+
+    // body written before its size reaches compressionMinBytes, compressed once it does
+    final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    OutputStream gzipStream;
 
-    final DigestOutputStream digestOutputStream;
+    int gzipLevel = -1;
 
-    final BrotliOutputStream brotliOutputStream;
+    final CompressionPolicy compressionPolicy;
 
     int size;
 
     final Map<String, List<String>> headers = new LinkedHashMap<>();
 
+    final Set<String> dependsOn = new LinkedHashSet<>();
+
     final HttpServletRequest request;
 
     final HttpServletResponse response;
@@ -72,41 +82,44 @@ public final class CachingResponseWrapper
 
     final Consumer<HttpServletResponse> beforeWrite;
 
-    static boolean BROTLI_SUPPORTED;
+    final boolean interceptErrors;
+
+    boolean errorIntercepted;
 
-    static
+    public CachingResponseWrapper( final HttpServletRequest request, final HttpServletResponse response,
+                                   final BiFunction<HttpServletRequest, CachingResponse, Boolean> storeConditions,
+                                   final Consumer<HttpServletResponse> beforeWrite )
     {
-        try
-        {
-            Brotli4jLoader.ensureAvailability();
-            BROTLI_SUPPORTED = true;
-        }
-        catch ( UnsatisfiedLinkError e )
-        {
-            BROTLI_SUPPORTED = false;
-        }
+        this( request, response, storeConditions, beforeWrite, false );
     }
 
+    /**
+     * @param interceptErrors when {@code true} server errors (5xx) are not written to the client response.
+     *                        Caller is expected to check {@link #isErrorIntercepted()} and write a response on its own.
+     */
     public CachingResponseWrapper( final HttpServletRequest request, final HttpServletResponse response,
                                    final BiFunction<HttpServletRequest, CachingResponse, Boolean> storeConditions,
-                                   final Consumer<HttpServletResponse> beforeWrite )
+                                   final Consumer<HttpServletResponse> beforeWrite, final boolean interceptErrors )
+    {
+        this( request, response, storeConditions, beforeWrite, interceptErrors, CompressionPolicy.DEFAULT );
+    }
+
+    /**
+     * @param compressionPolicy picks gzip level of the cached body. Bodies smaller than its minimum size are stored uncompressed,
+     *                          in gzip format.
+     */
+    public CachingResponseWrapper( final HttpServletRequest request, final HttpServletResponse response,
+                                   final BiFunction<HttpServletRequest, CachingResponse, Boolean> storeConditions,
+                                   final Consumer<HttpServletResponse> beforeWrite, final boolean interceptErrors,
+                                   final CompressionPolicy compressionPolicy )
     {
         super( response );
         this.request = request;
         this.response = response;
         this.storeConditions = storeConditions;
         this.beforeWrite = beforeWrite;
-        try
-        {
-            this.brotliData = BROTLI_SUPPORTED ? new ByteArrayOutputStream() : null;
-            this.brotliOutputStream =
-                BROTLI_SUPPORTED ? new BrotliOutputStream( brotliData, new Encoder.Parameters().setQuality( 4 ) ) : null;
-            this.digestOutputStream = new DigestOutputStream( new GZIPOutputStream( gzipData ), MessageDigests.sha256() );
-        }
-        catch ( IOException e )
-        {
-            throw new UncheckedIOException( e );
-        }
+        this.interceptErrors = interceptErrors;
+        this.compressionPolicy = compressionPolicy;
     }
 
     @Override
@@ -121,18 +134,12 @@ public final class CachingResponseWrapper
         return ByteSupply.of( gzipData );
     }
 
-    @Override
-    public Optional<ByteSupply> getCachedBrBody()
-    {
-        return Optional.ofNullable( brotliData ).map( ByteSupply::of );
-    }
-
     @Override
     public String getEtag()
     {
         if ( etag == null )
         {
-            etag = HexFormat.of().formatHex( digestOutputStream.getMessageDigest().digest(), 0, 16 );
+            etag = HexFormat.of().formatHex( digest.digest(), 0, 16 );
         }
 
         return etag;
@@ -149,6 +156,28 @@ public final class CachingResponseWrapper
         return freshness;
     }
 
+    public boolean isErrorIntercepted()
+    {
+        return errorIntercepted;
+    }
+
+    /**
+     * Gzip level the cached body was compressed with, {@link CompressionPolicy#NO_COMPRESSION} if it was too small to compress.
+     * Known once the wrapper is closed.
+     */
+    public int getGzipLevel()
+    {
+        return gzipLevel;
+    }
+
+    /**
+     * Content ids declared via {@link #DEPENDS_HEADER} header.
+     */
+    public Set<String> getDependsOn()
+    {
+        return dependsOn;
+    }
+
     @Override
     public int getSize()
     {
@@ -164,6 +193,12 @@ public final class CachingResponseWrapper
     @Override
     public void setHeader( final String name, final String value )
     {
+        if ( DEPENDS_HEADER.equalsIgnoreCase( name ) )
+        {
+            dependsOn.clear();
+            addDependsOn( value );
+            return;
+        }
         super.setHeader( name, value );
         setCachedHeader( name, value );
     }
@@ -171,6 +206,11 @@ public final class CachingResponseWrapper
     @Override
     public void addHeader( final String name, final String value )
     {
+        if ( DEPENDS_HEADER.equalsIgnoreCase( name ) )
+        {
+            addDependsOn( value );
+            return;
+        }
         super.addHeader( name, value );
         addCachedHeader( name, value );
     }
@@ -206,6 +246,22 @@ public final class CachingResponseWrapper
         addHeader( name, Integer.toString( value ) );
     }
 
+    private void addDependsOn( final String value )
+    {
+        if ( value == null )
+        {
+            return;
+        }
+        for ( String contentId : value.split( "," ) )
+        {
+            final String trimmed = contentId.trim();
+            if ( !trimmed.isEmpty() )
+            {
+                dependsOn.add( trimmed );
+            }
+        }
+    }
+
     private void setCachedHeader( String name, String value )
     {
         final String lowerCaseName = name.toLowerCase( Locale.ROOT );
@@ -245,6 +301,13 @@ public final class CachingResponseWrapper
             return outputStreamCached;
         }
 
+        if ( interceptServerError( getStatus() ) )
+        {
+            final ServletOutputStream outputStream = new NullServletOutputStream();
+            outputStreamHolder.set( outputStream );
+            return outputStream;
+        }
+
         final ServletOutputStream delegateStream = super.getOutputStream();
 
         if ( store == null )
@@ -283,6 +346,10 @@ public final class CachingResponseWrapper
     {
         store = false;
         LOG.debug( "Do not store because error sent" );
+        if ( interceptServerError( sc ) )
+        {
+            return;
+        }
         super.sendError( sc, msg );
     }
 
@@ -292,6 +359,10 @@ public final class CachingResponseWrapper
     {
         store = false;
         LOG.debug( "Do not store because error sent" );
+        if ( interceptServerError( sc ) )
+        {
+            return;
+        }
         super.sendError( sc );
     }
 
@@ -310,9 +381,25 @@ public final class CachingResponseWrapper
     {
         store = false;
         LOG.debug( "Do not store because Writer requested" );
+        if ( interceptServerError( getStatus() ) )
+        {
+            return new PrintWriter( new NullServletOutputStream() );
+        }
         return super.getWriter();
     }
 
+    private boolean interceptServerError( final int sc )
+    {
+        if ( interceptErrors && sc >= 500 )
+        {
+            store = false;
+            errorIntercepted = true;
+            LOG.debug( "Server error {} intercepted", sc );
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void reset()
     {
@@ -340,16 +427,52 @@ public final class CachingResponseWrapper
     private void closeStreams()
         throws IOException
     {
+        if ( gzipStream == null )
+        {
+            startCompression( compressionPolicy.gzipLevel( size ) );
+        }
+        gzipStream.close();
+    }
+
+    private void cacheWritten()
+        throws IOException
+    {
+        if ( gzipStream == null && pending.size() >= compressionPolicy.minBytes() )
+        {
+            startCompression( compressionPolicy.gzipLevel( contentLength() ) );
+        }
+    }
+
+    private void startCompression( final int level )
+        throws IOException
+    {
+        gzipLevel = level;
+        gzipStream = new LeveledGZIPOutputStream( gzipData, level );
+        pending.writeTo( gzipStream );
+        pending.reset();
+    }
+
+    private long contentLength()
+    {
+        final String contentLength = response.getHeader( "Content-Length" );
         try
         {
-            if ( brotliOutputStream != null )
-            {
-                brotliOutputStream.close();
-            }
+            return contentLength == null ? -1 : Long.parseLong( contentLength );
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
         }
-        finally
+    }
+
+    private static final class LeveledGZIPOutputStream
+        extends GZIPOutputStream
+    {
+        LeveledGZIPOutputStream( final OutputStream out, final int level )
+            throws IOException
         {
-            digestOutputStream.close();
+            super( out );
+            def.setLevel( level );
         }
     }
 
@@ -380,12 +503,17 @@ public final class CachingResponseWrapper
             throws IOException
         {
             delegate.write( b );
-            digestOutputStream.write( b );
-            if ( brotliOutputStream != null )
+            digest.update( (byte) b );
+            size++;
+            if ( gzipStream == null )
             {
-                brotliOutputStream.write( b );
+                pending.write( b );
+                cacheWritten();
+            }
+            else
+            {
+                gzipStream.write( b );
             }
-            size++;
         }
 
         @Override
@@ -393,12 +521,17 @@ public final class CachingResponseWrapper
             throws IOException
         {
             delegate.write( b, off, len );
-            digestOutputStream.write( b, off, len );
-            if ( brotliOutputStream != null )
+            digest.update( b, off, len );
+            size += len;
+            if ( gzipStream == null )
             {
-                brotliOutputStream.write( b, off, len );
+                pending.write( b, off, len );
+                cacheWritten();
+            }
+            else
+            {
+                gzipStream.write( b, off, len );
             }
-            size += len;
         }
     }
 }
@@ -0,0 +1,66 @@
+package com.enonic.app.booster.servlet;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Set;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * Request to render a complete response for the cache on behalf of a client request.
+ * <p>
+ * Conditional and range headers of the client request are hidden, otherwise the response may be partial or have no body at all.
+ */
+public final class DetachedRequest
+    extends HttpServletRequestWrapper
+{
+    private static final Set<String> HIDDEN_HEADERS =
+        Set.of( "if-none-match", "if-modified-since", "if-match", "if-unmodified-since", "if-range", "range" );
+
+    public DetachedRequest( final HttpServletRequest request )
+    {
+        super( request );
+    }
+
+    @Override
+    public String getHeader( final String name )
+    {
+        return isHidden( name ) ? null : super.getHeader( name );
+    }
+
+    @Override
+    public Enumeration<String> getHeaders( final String name )
+    {
+        return isHidden( name ) ? Collections.emptyEnumeration() : super.getHeaders( name );
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames()
+    {
+        final Enumeration<String> headerNames = super.getHeaderNames();
+        if ( headerNames == null )
+        {
+            return null;
+        }
+        return Collections.enumeration( Collections.list( headerNames ).stream().filter( name -> !isHidden( name ) ).toList() );
+    }
+
+    @Override
+    public long getDateHeader( final String name )
+    {
+        return isHidden( name ) ? -1 : super.getDateHeader( name );
+    }
+
+    @Override
+    public int getIntHeader( final String name )
+    {
+        return isHidden( name ) ? -1 : super.getIntHeader( name );
+    }
+
+    private static boolean isHidden( final String name )
+    {
+        return HIDDEN_HEADERS.contains( name.toLowerCase( Locale.ROOT ) );
+    }
+}
@@ -0,0 +1,258 @@
+package com.enonic.app.booster.servlet;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response that is not connected to the client.
+ * <p>
+ * Used to render a response for the cache after the client response was already written and committed.
+ * Status, headers and content type are kept in memory, body is discarded.
+ */
+public final class DetachedResponse
+    extends HttpServletResponseWrapper
+{
+    private final Map<String, List<String>> headers = new LinkedHashMap<>();
+
+    private int status = SC_OK;
+
+    private String contentType;
+
+    private String characterEncoding;
+
+    private Locale locale = Locale.getDefault();
+
+    private ServletOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    public DetachedResponse( final HttpServletResponse response )
+    {
+        super( response );
+    }
+
+    @Override
+    public void setStatus( final int sc )
+    {
+        this.status = sc;
+    }
+
+    @Override
+    public int getStatus()
+    {
+        return status;
+    }
+
+    @Override
+    public void sendError( final int sc, final String msg )
+    {
+        this.status = sc;
+    }
+
+    @Override
+    public void sendError( final int sc )
+    {
+        this.status = sc;
+    }
+
+    @Override
+    public void sendRedirect( final String location )
+    {
+        this.status = SC_FOUND;
+        setHeader( "Location", location );
+    }
+
+    @Override
+    public void setContentType( final String type )
+    {
+        this.contentType = type;
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return contentType;
+    }
+
+    @Override
+    public void setCharacterEncoding( final String charset )
+    {
+        this.characterEncoding = charset;
+    }
+
+    @Override
+    public String getCharacterEncoding()
+    {
+        return characterEncoding != null ? characterEncoding : StandardCharsets.ISO_8859_1.name();
+    }
+
+    @Override
+    public void setLocale( final Locale loc )
+    {
+        this.locale = loc;
+    }
+
+    @Override
+    public Locale getLocale()
+    {
+        return locale;
+    }
+
+    @Override
+    public void setContentLength( final int len )
+    {
+        setIntHeader( "Content-Length", len );
+    }
+
+    @Override
+    public void setContentLengthLong( final long len )
+    {
+        setHeader( "Content-Length", Long.toString( len ) );
+    }
+
+    @Override
+    public void setHeader( final String name, final String value )
+    {
+        if ( value == null )
+        {
+            headers.remove( name.toLowerCase( Locale.ROOT ) );
+        }
+        else
+        {
+            headers.put( name.toLowerCase( Locale.ROOT ), new ArrayList<>( List.of( value ) ) );
+        }
+    }
+
+    @Override
+    public void addHeader( final String name, final String value )
+    {
+        if ( value != null )
+        {
+            headers.computeIfAbsent( name.toLowerCase( Locale.ROOT ), k -> new ArrayList<>() ).add( value );
+        }
+    }
+
+    @Override
+    public void setIntHeader( final String name, final int value )
+    {
+        setHeader( name, Integer.toString( value ) );
+    }
+
+    @Override
+    public void addIntHeader( final String name, final int value )
+    {
+        addHeader( name, Integer.toString( value ) );
+    }
+
+    @Override
+    public void setDateHeader( final String name, final long date )
+    {
+        setHeader( name, formatDateTime( date ) );
+    }
+
+    @Override
+    public void addDateHeader( final String name, final long date )
+    {
+        addHeader( name, formatDateTime( date ) );
+    }
+
+    @Override
+    public boolean containsHeader( final String name )
+    {
+        return headers.containsKey( name.toLowerCase( Locale.ROOT ) );
+    }
+
+    @Override
+    public String getHeader( final String name )
+    {
+        final List<String> values = headers.get( name.toLowerCase( Locale.ROOT ) );
+        return values == null || values.isEmpty() ? null : values.get( 0 );
+    }
+
+    @Override
+    public Collection<String> getHeaders( final String name )
+    {
+        return List.copyOf( headers.getOrDefault( name.toLowerCase( Locale.ROOT ), List.of() ) );
+    }
+
+    @Override
+    public Collection<String> getHeaderNames()
+    {
+        return List.copyOf( headers.keySet() );
+    }
+
+    @Override
+    public void addCookie( final Cookie cookie )
+    {
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream()
+    {
+        if ( outputStream == null )
+        {
+            outputStream = new NullServletOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter()
+    {
+        if ( writer == null )
+        {
+            writer = new PrintWriter( OutputStream.nullOutputStream() );
+        }
+        return writer;
+    }
+
+    @Override
+    public void setBufferSize( final int size )
+    {
+    }
+
+    @Override
+    public void flushBuffer()
+    {
+    }
+
+    @Override
+    public boolean isCommitted()
+    {
+        return false;
+    }
+
+    @Override
+    public void reset()
+    {
+        headers.clear();
+        status = SC_OK;
+        contentType = null;
+    }
+
+    @Override
+    public void resetBuffer()
+    {
+    }
+
+    private static String formatDateTime( final long date )
+    {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format( ZonedDateTime.ofInstant( Instant.ofEpochMilli( date ), ZoneId.of( "GMT" ) ) );
+    }
+}
@@ -0,0 +1,43 @@
+package com.enonic.app.booster.servlet;
+
+import java.io.IOException;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+/**
+ * Output stream that discards all data written to it.
+ */
+final class NullServletOutputStream
+    extends ServletOutputStream
+{
+    @Override
+    public boolean isReady()
+    {
+        return true;
+    }
+
+    @Override
+    public void setWriteListener( final WriteListener writeListener )
+    {
+        // writing is always possible, async output is discarded as well
+        try
+        {
+            writeListener.onWritePossible();
+        }
+        catch ( IOException e )
+        {
+            writeListener.onError( e );
+        }
+    }
+
+    @Override
+    public void write( final int b )
+    {
+    }
+
+    @Override
+    public void write( final byte[] b, final int off, final int len )
+    {
+    }
+}
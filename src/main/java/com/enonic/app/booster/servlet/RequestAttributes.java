@@ -1,11 +1,21 @@
 package com.enonic.app.booster.servlet;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
 import jakarta.servlet.http.HttpServletRequest;
 
 import com.enonic.xp.portal.PortalRequest;
 
 public final class RequestAttributes
 {
+    /**
+     * Request attribute with content ids rendered response depends on, in addition to the ones Booster finds by itself.
+     * Value is a collection of content ids.
+     */
+    public static final String DEPENDS_ON = "com.enonic.app.booster.dependsOn";
+
     private RequestAttributes()
     {
     }
@@ -14,4 +24,14 @@ public final class RequestAttributes
     {
         return (PortalRequest) request.getAttribute( PortalRequest.class.getName() );
     }
+
+    public static Collection<String> getDependsOn( final HttpServletRequest request )
+    {
+        final Object dependsOn = request.getAttribute( DEPENDS_ON );
+        if ( dependsOn instanceof Collection<?> collection )
+        {
+            return collection.stream().filter( Objects::nonNull ).map( Object::toString ).toList();
+        }
+        return List.of();
+    }
 }
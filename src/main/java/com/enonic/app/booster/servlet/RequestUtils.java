@@ -3,13 +3,14 @@ package com.enonic.app.booster.servlet;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.http.Cookie;
@@ -34,18 +35,21 @@ public final class RequestUtils
 
         final var params = request.getParameterMap();// we only support GET requests, no POST data can sneak in.
 
-        final String queryString = normalizedQueryParams( params, excludeQueryParams );
-
-        final StringBuilder urlBuilder = new StringBuilder();
+        final StringBuilder urlBuilder = new StringBuilder( 128 );
         urlBuilder.append( scheme ).append( "://" ).append( serverName );
         if ( !( ( "http".equals( scheme ) && serverPort == 80 ) || ( "https".equals( scheme ) && serverPort == 443 ) ) )
         {
-            urlBuilder.append( ":" ).append( serverPort );
+            urlBuilder.append( ':' ).append( serverPort );
         }
         urlBuilder.append( path );
-        if ( !queryString.isEmpty() )
+
+        // query string is appended in place, without building it separately
+        final int queryStart = urlBuilder.length();
+        urlBuilder.append( '?' );
+        appendQueryParams( urlBuilder, params, excludeQueryParams );
+        if ( urlBuilder.length() == queryStart + 1 )
         {
-            urlBuilder.append( "?" ).append( queryString );
+            urlBuilder.setLength( queryStart );
         }
 
         return new RequestURL( urlBuilder.toString(), serverName, path );
@@ -59,21 +63,105 @@ public final class RequestUtils
             return "";
         }
 
-        return params.entrySet()
-            .stream()
-            .filter( entry -> !exclude.contains( entry.getKey() ) )
-            .sorted( Map.Entry.comparingByKey() )
-            .flatMap( entry -> Arrays.stream( entry.getValue() )
-                .map( value -> URLEncoder.encode( entry.getKey(), StandardCharsets.UTF_8 ) + "=" +
-                    URLEncoder.encode( value, StandardCharsets.UTF_8 ) ) )
-            .collect( Collectors.joining( "&" ) );
+        final StringBuilder builder = new StringBuilder();
+        appendQueryParams( builder, params, exclude );
+        return builder.toString();
+    }
+
+    private static void appendQueryParams( final StringBuilder builder, final Map<String, String[]> params, final Set<String> exclude )
+    {
+        if ( params.isEmpty() )
+        {
+            return;
+        }
+
+        final String[] names = params.keySet().toArray( new String[0] );
+        Arrays.sort( names );
+
+        boolean first = true;
+        for ( String name : names )
+        {
+            if ( exclude.contains( name ) )
+            {
+                continue;
+            }
+            for ( String value : params.get( name ) )
+            {
+                if ( !first )
+                {
+                    builder.append( '&' );
+                }
+                first = false;
+                appendEncoded( builder, name );
+                builder.append( '=' );
+                appendEncoded( builder, value );
+            }
+        }
+    }
+
+    private static void appendEncoded( final StringBuilder builder, final String value )
+    {
+        // most names and values are left as is by URLEncoder, there is no need to call it for them
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            if ( !isUnreserved( value.charAt( i ) ) )
+            {
+                builder.append( URLEncoder.encode( value, StandardCharsets.UTF_8 ) );
+                return;
+            }
+        }
+        builder.append( value );
+    }
+
+    private static boolean isUnreserved( final char c )
+    {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' ) || c == '.' || c == '-' || c == '*' ||
+            c == '_';
     }
 
     public static AcceptEncoding acceptEncoding( final HttpServletRequest request )
+    {
+        return acceptEncodings( request ).get( 0 );
+    }
+
+    /**
+     * Encodings acceptable by the client, most preferred first. Always ends with {@link AcceptEncoding#UNSPECIFIED}.
+     */
+    public static List<AcceptEncoding> acceptEncodings( final HttpServletRequest request )
     {
         return AcceptEncodingParser.parse( request.getHeaders( "Accept-Encoding" ) );
     }
 
+    /**
+     * Compression dictionary the client has for the request, from {@code Available-Dictionary} header.
+     *
+     * @return hex-encoded SHA-256 hash of the dictionary or {@code null}
+     */
+    public static String availableDictionary( final HttpServletRequest request )
+    {
+        final String header = request.getHeader( "Available-Dictionary" );
+        if ( header == null )
+        {
+            return null;
+        }
+        // structured field byte sequence: base64 between colons
+        final String value = header.trim();
+        if ( value.length() < 2 || value.charAt( 0 ) != ':' || value.charAt( value.length() - 1 ) != ':' )
+        {
+            return null;
+        }
+        final byte[] hash;
+        try
+        {
+            hash = Base64.getDecoder().decode( value.substring( 1, value.length() - 1 ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return null;
+        }
+        return hash.length == 32 ? HexFormat.of().formatHex( hash ) : null;
+    }
+
     public static boolean isComponentRequest( final HttpServletRequest request )
     {
         final String requestURI = request.getRequestURI();
@@ -98,6 +186,6 @@ public final class RequestUtils
 
     public enum AcceptEncoding
     {
-        GZIP, BROTLI, UNSPECIFIED
+        GZIP, BROTLI, ZSTD, DCZ, UNSPECIFIED
     }
 }
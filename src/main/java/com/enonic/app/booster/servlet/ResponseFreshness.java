@@ -11,7 +11,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import com.enonic.app.booster.utils.Numbers;
 
 public record ResponseFreshness(Integer maxAge, Integer sMaxAge, boolean noStore, boolean privateCache, boolean noCache, Instant time,
-                                Integer age)
+                                Integer age, Integer staleWhileRevalidate, Integer staleIfError)
 {
     public Instant expiresTime( final Integer fallbackTTL )
     {
@@ -61,6 +61,8 @@ public record ResponseFreshness(Integer maxAge, Integer sMaxAge, boolean noStore
         Integer maxAge = null;
         Integer sMaxAge = null;
         Integer age = null;
+        Integer staleWhileRevalidate = null;
+        Integer staleIfError = null;
         boolean noStore = false;
         boolean noCache = false;
         boolean privateCache = false;
@@ -87,6 +89,9 @@ public record ResponseFreshness(Integer maxAge, Integer sMaxAge, boolean noStore
                     {
                         case "max-age" -> maxAge = maxAge != null ? maxAge : Numbers.safeParseInteger( value );
                         case "s-maxage" -> sMaxAge = sMaxAge != null ? sMaxAge : Numbers.safeParseInteger( value );
+                        case "stale-while-revalidate" -> staleWhileRevalidate =
+                            staleWhileRevalidate != null ? staleWhileRevalidate : Numbers.safeParseInteger( value );
+                        case "stale-if-error" -> staleIfError = staleIfError != null ? staleIfError : Numbers.safeParseInteger( value );
                     }
                 }
                 else
@@ -107,6 +112,6 @@ public record ResponseFreshness(Integer maxAge, Integer sMaxAge, boolean noStore
             age = safe;
         }
 
-        return new ResponseFreshness( maxAge, sMaxAge, noStore, privateCache, noCache, time, age );
+        return new ResponseFreshness( maxAge, sMaxAge, noStore, privateCache, noCache, time, age, staleWhileRevalidate, staleIfError );
     }
 }
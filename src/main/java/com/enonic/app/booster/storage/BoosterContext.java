@@ -17,6 +17,7 @@ public interface BoosterContext
     RepositoryId REPOSITORY_ID = RepositoryId.from( "com.enonic.app.booster" );
     NodePath CACHE_PARENT_NODE = NodePath.create().addElement( "cache" ).build();
     NodePath SCHEDULED_PARENT_NODE = NodePath.create().addElement( "scheduled" ).build();
+    NodePath DICTIONARY_PARENT_NODE = NodePath.create().addElement( "dictionaries" ).build();
 
     static void runInContext( final RunnableWithException runnable )
     {
@@ -32,7 +32,8 @@ public class BoosterInitializer
     protected boolean isInitialized()
     {
         return BoosterContext.callInContext( () -> repositoryService.get( BoosterContext.REPOSITORY_ID ) != null &&
-            nodeService.nodeExists( BoosterContext.CACHE_PARENT_NODE ) && nodeService.nodeExists( BoosterContext.SCHEDULED_PARENT_NODE ) );
+            nodeService.nodeExists( BoosterContext.CACHE_PARENT_NODE ) && nodeService.nodeExists( BoosterContext.SCHEDULED_PARENT_NODE ) &&
+            nodeService.nodeExists( BoosterContext.DICTIONARY_PARENT_NODE ) );
     }
 
     @Override
@@ -58,6 +59,11 @@ public class BoosterInitializer
                                             ChildOrder.create().add( FieldOrderExpr.create( IndexPath.from( "time" ), OrderExpr.Direction.DESC ) ).build() )
                                         .build() );
             }
+            if ( !nodeService.nodeExists( BoosterContext.DICTIONARY_PARENT_NODE ) )
+            {
+                nodeService.create(
+                    CreateNodeParams.create().parent( NodePath.ROOT ).name( BoosterContext.DICTIONARY_PARENT_NODE.getName() ).build() );
+            }
         } );
     }
 
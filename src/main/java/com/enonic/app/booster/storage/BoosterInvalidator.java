@@ -1,7 +1,9 @@
 package com.enonic.app.booster.storage;
 
-import java.util.Collection;
-import java.util.Collections;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -29,7 +31,6 @@ import com.enonic.xp.index.IndexService;
 import com.enonic.xp.project.ProjectConstants;
 import com.enonic.xp.project.ProjectName;
 import com.enonic.xp.repository.RepositoryId;
-import com.enonic.xp.task.TaskId;
 
 @Component(immediate = true, configurationPid = "com.enonic.app.booster")
 public class BoosterInvalidator
@@ -37,36 +38,56 @@ public class BoosterInvalidator
 {
     private static final Logger LOG = LoggerFactory.getLogger( BoosterInvalidator.class );
 
+    private static final String CONTENT_ROOT_PATH = "/content";
+
+    // scheduled content is tracked this far ahead, later instants are loaded as time goes by
+    private static final Duration SCHEDULE_HORIZON = Duration.ofHours( 1 );
+
     private final ScheduledExecutorService executorService;
 
     private final IndexService indexService;
 
     private final BoosterTasksFacade boosterTasksFacade;
 
+    private final NodeCacheInvalidator nodeCacheInvalidator;
+
     private final BoosterProjectMatchers boosterProjectMatchers;
 
-    private volatile BoosterConfigParsed config;
+    private final NodeCacheStore nodeCacheStore;
+
+    private final InvalidationQueue queue = new InvalidationQueue();
+
+    private final PublishSchedule schedule = new PublishSchedule();
+
+    // end of the loaded schedule, or null if scheduled content is not tracked. Accessed by the worker thread only
+    private Instant scheduleLoadedUntil;
 
-    // permits null. null = all projects
-    private volatile Set<ProjectName> projects = new HashSet<>();
+    private volatile BoosterConfigParsed config;
 
     @Activate
     public BoosterInvalidator( final BundleContext context, @Reference final BoosterTasksFacade boosterTasksFacade,
-                               @Reference final IndexService indexService, @Reference final BoosterProjectMatchers boosterProjectMatchers )
+                               @Reference final IndexService indexService, @Reference final BoosterProjectMatchers boosterProjectMatchers,
+                               @Reference final NodeCacheStore nodeCacheStore, @Reference final NodeCacheInvalidator nodeCacheInvalidator )
     {
-        this( boosterTasksFacade, indexService, boosterProjectMatchers, Executors.newSingleThreadScheduledExecutor( new ThreadFactoryImpl(
-            context.getBundle().getSymbolicName() + "-" + context.getBundle().getBundleId() + "-invalidator-%d" ) ) );
+        this( boosterTasksFacade, indexService, boosterProjectMatchers, nodeCacheStore, nodeCacheInvalidator,
+              Executors.newSingleThreadScheduledExecutor( new ThreadFactoryImpl(
+                  context.getBundle().getSymbolicName() + "-" + context.getBundle().getBundleId() + "-invalidator-%d" ) ) );
     }
 
     BoosterInvalidator( final BoosterTasksFacade boosterTasksFacade, final IndexService indexService,
-                        final BoosterProjectMatchers boosterProjectMatchers, final ScheduledExecutorService executorService )
+                        final BoosterProjectMatchers boosterProjectMatchers, final NodeCacheStore nodeCacheStore,
+                        final NodeCacheInvalidator nodeCacheInvalidator, final ScheduledExecutorService executorService )
     {
         this.boosterTasksFacade = boosterTasksFacade;
         this.executorService = executorService;
         this.indexService = indexService;
         this.boosterProjectMatchers = boosterProjectMatchers;
+        this.nodeCacheStore = nodeCacheStore;
+        this.nodeCacheInvalidator = nodeCacheInvalidator;
 
-        this.executorService.scheduleWithFixedDelay( this::invalidatePublished, 10, 10, TimeUnit.SECONDS );
+        // single thread runs invalidations one after another, in order they were released from the queue
+        this.executorService.scheduleWithFixedDelay( this::loadSchedule, 10, 10, TimeUnit.SECONDS );
+        this.executorService.scheduleWithFixedDelay( this::invalidateQueued, 1, 1, TimeUnit.SECONDS );
     }
 
     @Activate
@@ -101,12 +122,36 @@ public class BoosterInvalidator
             return;
         }
 
+        // scheduled content is tracked on the master node, which gets node events from other nodes as well
+        trackProjectChanges( event );
+
         if ( !event.isLocalOrigin() )
         {
+            if ( type.equals( NodeCacheStore.EVICT_EVENT_TYPE ) )
+            {
+                final List<String> keys = (List<String>) event.getData().get( "keys" );
+                if ( keys != null )
+                {
+                    LOG.debug( "Evicting {} cached responses from memory due to event from other node", keys.size() );
+                    nodeCacheStore.evictLocally( keys );
+                }
+            }
+            else if ( type.equals( NodeCacheStore.GENERATION_EVENT_TYPE ) )
+            {
+                final List<String> scopes = (List<String>) event.getData().get( "scopes" );
+                final Number generation = (Number) event.getData().get( "generation" );
+                if ( scopes != null && generation != null )
+                {
+                    LOG.debug( "Applying generation {} of scopes {} due to event from other node", generation, scopes );
+                    nodeCacheStore.applyGenerations( scopes, generation.longValue() );
+                }
+            }
             return;
         }
 
         final Set<ProjectName> projects = new HashSet<>();
+        final Map<ProjectName, Set<String>> dependents = new HashMap<>();
+        final Map<ProjectName, Set<String>> dependentPaths = new HashMap<>();
         if ( type.startsWith( "repository." ) )
         {
             final String repo = (String) event.getData().get( "id" );
@@ -127,29 +172,134 @@ public class BoosterInvalidator
                     final String repo = node.get( "repo" ).toString();
                     if ( repo.startsWith( ProjectConstants.PROJECT_REPO_ID_PREFIX ) )
                     {
-                        final ProjectName project = ProjectName.from( RepositoryId.from( repo ) );
-                        final boolean added = projects.add( project );
-                        if ( added )
-                        {
-                            LOG.debug( "Added project {} to cleanup list due to event {}", project, event.getType() );
-                        }
+                        final Object id = node.get( "id" );
+                        final Object path = node.get( "path" );
+                        collect( ProjectName.from( RepositoryId.from( repo ) ), id == null ? null : id.toString(),
+                                 path == null ? null : path.toString(), config, projects, dependents, dependentPaths );
                     }
                 }
             }
         }
-        addProjects( projects );
+        enqueue( projects, dependents, dependentPaths, false );
     }
 
-    private synchronized void addProjects( Collection<ProjectName> projects )
+    private void collect( final ProjectName project, final String id, final String path, final BoosterConfigParsed config,
+                          final Set<ProjectName> projects, final Map<ProjectName, Set<String>> dependents,
+                          final Map<ProjectName, Set<String>> dependentPaths )
     {
-        this.projects.addAll( projects );
+        if ( config.invalidationScope() != InvalidationScope.PROJECT && id != null )
+        {
+            dependents.computeIfAbsent( project, k -> new HashSet<>() ).add( id );
+            if ( config.invalidationScope() == InvalidationScope.PATH && path != null )
+            {
+                addPathAndAncestors( path, dependentPaths.computeIfAbsent( project, k -> new HashSet<>() ) );
+            }
+            return;
+        }
+        final boolean added = projects.add( project );
+        if ( added )
+        {
+            LOG.debug( "Added project {} to cleanup list", project );
+        }
     }
 
-    private synchronized Set<ProjectName> poll()
+    private void enqueue( final Set<ProjectName> projects, final Map<ProjectName, Set<String>> dependents,
+                          final Map<ProjectName, Set<String>> dependentPaths, final boolean urgent )
     {
-        final Set<ProjectName> result = projects;
-        projects = new HashSet<>();
-        return result;
+        final long now = System.nanoTime();
+        queue.addProjects( projects, now, urgent );
+        dependents.forEach(
+            ( project, ids ) -> queue.addContent( project, ids, dependentPaths.getOrDefault( project, Set.of() ), now, urgent ) );
+    }
+
+    private void trackProjectChanges( final Event event )
+    {
+        final String type = event.getType();
+        if ( type.startsWith( "repository." ) )
+        {
+            final Object repo = event.getData().get( "id" );
+            if ( repo != null && repo.toString().startsWith( ProjectConstants.PROJECT_REPO_ID_PREFIX ) )
+            {
+                boosterProjectMatchers.invalidateIndex( ProjectName.from( RepositoryId.from( repo.toString() ) ) );
+            }
+        }
+        else if ( type.equals( "node.pushed" ) || type.equals( "node.deleted" ) )
+        {
+            final Map<ProjectName, Set<String>> changed = new HashMap<>();
+            final List<Map<String, Object>> nodes = (List<Map<String, Object>>) event.getData().get( "nodes" );
+            for ( Map<String, Object> node : nodes )
+            {
+                final Object repo = node.get( "repo" );
+                if ( "master".equals( node.get( "branch" ) ) && repo != null &&
+                    repo.toString().startsWith( ProjectConstants.PROJECT_REPO_ID_PREFIX ) )
+                {
+                    final ProjectName project = ProjectName.from( RepositoryId.from( repo.toString() ) );
+                    boosterProjectMatchers.invalidateIndex( project );
+                    final Object id = node.get( "id" );
+                    if ( id != null )
+                    {
+                        changed.computeIfAbsent( project, k -> new HashSet<>() ).add( id.toString() );
+                    }
+                }
+            }
+
+            if ( !changed.isEmpty() )
+            {
+                final boolean pushed = type.equals( "node.pushed" );
+                try
+                {
+                    executorService.execute( () -> reschedule( changed, pushed ) );
+                }
+                catch ( Exception e )
+                {
+                    LOG.debug( "Could not update schedule of {} projects", changed.size(), e );
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the schedule with publish times of pushed content, or removes deleted content from it.
+     */
+    private void reschedule( final Map<ProjectName, Set<String>> changed, final boolean pushed )
+    {
+        final Instant until = scheduleLoadedUntil;
+        if ( until == null )
+        {
+            // not tracked on this node
+            return;
+        }
+        try
+        {
+            final Instant now = Instant.now();
+            for ( Map.Entry<ProjectName, Set<String>> entry : changed.entrySet() )
+            {
+                // later instants are loaded with the rest of the schedule
+                final Map<PublishSchedule.Content, List<Instant>> scheduled =
+                    pushed ? boosterProjectMatchers.findScheduled( entry.getKey(), entry.getValue(), now, until ) : Map.of();
+                entry.getValue().forEach( id -> schedule.remove( entry.getKey(), id ) );
+                scheduled.forEach( schedule::put );
+            }
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Could not update schedule of published content", e );
+        }
+    }
+
+    private static void addPathAndAncestors( final String nodePath, final Set<String> contentPaths )
+    {
+        // cached pages store content path, which is the node path without the content root
+        if ( !nodePath.startsWith( CONTENT_ROOT_PATH + "/" ) )
+        {
+            return;
+        }
+        String contentPath = nodePath.substring( CONTENT_ROOT_PATH.length() );
+        while ( !contentPath.isEmpty() )
+        {
+            contentPaths.add( contentPath );
+            contentPath = contentPath.substring( 0, contentPath.lastIndexOf( '/' ) );
+        }
     }
 
     private void invalidateApp( ApplicationKey applicationKey )
@@ -160,12 +310,12 @@ public class BoosterInvalidator
             {
                 if ( config.appsForceInvalidateOnInstall().contains( applicationKey.getName() ) )
                 {
-                    doInvalidate( Collections.singleton( null ) );
+                    queue.addAll( System.nanoTime(), true );
                 }
                 else
                 {
                     final List<ProjectName> toInvalidate = boosterProjectMatchers.findByAppForInvalidation( List.of( applicationKey ) );
-                    doInvalidate( toInvalidate );
+                    queue.addProjects( toInvalidate, System.nanoTime(), true );
                 }
             }
         }
@@ -175,45 +325,121 @@ public class BoosterInvalidator
         }
     }
 
-    private void invalidatePublished()
+    /**
+     * Loads upcoming publish times on the master node. Content whose time came while nobody tracked it is invalidated by project.
+     */
+    private void loadSchedule()
     {
         try
         {
-            final Set<ProjectName> toInvalidate = new HashSet<>();
-            if ( indexService.isMaster() )
+            if ( !indexService.isMaster() )
+            {
+                schedule.clear();
+                scheduleLoadedUntil = null;
+                return;
+            }
+
+            final Instant now = Instant.now().truncatedTo( ChronoUnit.SECONDS );
+            if ( scheduleLoadedUntil == null )
             {
-                toInvalidate.addAll( boosterProjectMatchers.findScheduledForInvalidation() );
+                queue.addProjects( boosterProjectMatchers.findScheduledForInvalidation( now ), System.nanoTime(), false );
+                scheduleLoadedUntil = now;
+            }
+
+            if ( scheduleLoadedUntil.isBefore( now.plus( SCHEDULE_HORIZON.dividedBy( 2 ) ) ) )
+            {
+                final Instant until = now.plus( SCHEDULE_HORIZON );
+                boosterProjectMatchers.findScheduled( scheduleLoadedUntil, until ).forEach( schedule::put );
+                scheduleLoadedUntil = until;
+                boosterProjectMatchers.updateLastChecked( now );
+                LOG.debug( "Tracking {} scheduled content items until {}", schedule.size(), until );
             }
-            toInvalidate.addAll( this.poll() );
-            doInvalidate( toInvalidate );
         }
         catch ( Exception e )
         {
-            LOG.warn( "Could not invalidate cache", e );
+            LOG.warn( "Could not load scheduled content", e );
+        }
+    }
+
+    /**
+     * Invalidates content that got published or expired on schedule, without waiting for the quiet period.
+     */
+    private void invalidateDue( final BoosterConfigParsed config )
+    {
+        final List<PublishSchedule.Content> due = schedule.poll( Instant.now() );
+        if ( due.isEmpty() )
+        {
+            return;
+        }
+        LOG.debug( "{} content items got published or expired on schedule", due.size() );
+
+        final Set<ProjectName> projects = new HashSet<>();
+        final Map<ProjectName, Set<String>> dependents = new HashMap<>();
+        final Map<ProjectName, Set<String>> dependentPaths = new HashMap<>();
+        for ( PublishSchedule.Content content : due )
+        {
+            collect( content.project(), content.id(), content.path(), config, projects, dependents, dependentPaths );
         }
+        enqueue( projects, dependents, dependentPaths, true );
     }
 
-    private void doInvalidate( final Collection<ProjectName> toInvalidate )
+    private void invalidateQueued()
     {
-        if ( toInvalidate.isEmpty() )
+        final BoosterConfigParsed config = this.config;
+        if ( config == null )
         {
             return;
         }
-        final TaskId taskId;
+        invalidateDue( config );
 
-        if ( toInvalidate.contains( null ) )
+        final InvalidationQueue.Batch batch =
+            queue.poll( System.nanoTime(), TimeUnit.SECONDS.toNanos( config.invalidationQuietPeriodSeconds() ),
+                        TimeUnit.SECONDS.toNanos( config.invalidationMaxDelaySeconds() ) );
+        if ( batch == null )
         {
-            taskId = boosterTasksFacade.invalidateAll();
+            return;
         }
-        else
+
+        try
         {
-            taskId = boosterTasksFacade.invalidate( toInvalidate );
+            invalidate( batch, config );
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Could not invalidate cache. Adding back for later invalidation", e );
+            queue.requeue( batch, System.nanoTime() );
+            return;
         }
 
-        if ( taskId == null )
+        if ( config.warmupLimit() > 0 )
         {
-            LOG.debug( "Task was not submitted. Adding back projects for later invalidation" );
-            addProjects( toInvalidate );
+            boosterTasksFacade.warmup( batch.all() ? List.of() : batch.allProjects(), config.warmupLimit(), config.warmupBaseUrl() );
+        }
+    }
+
+    private void invalidate( final InvalidationQueue.Batch batch, final BoosterConfigParsed config )
+    {
+        if ( batch.all() )
+        {
+            LOG.debug( "Invalidating all projects" );
+            nodeCacheInvalidator.invalidateAll();
+            return;
+        }
+
+        // broader scopes first, they take effect immediately
+        if ( !batch.projects().isEmpty() )
+        {
+            LOG.debug( "Invalidating projects {}", batch.projects() );
+            nodeCacheInvalidator.invalidateProjects( batch.projects().stream().map( ProjectName::toString ).toList() );
+        }
+
+        for ( Map.Entry<ProjectName, Set<String>> entry : batch.contentIds().entrySet() )
+        {
+            final Set<String> paths = new HashSet<>( batch.contentPaths().getOrDefault( entry.getKey(), Set.of() ) );
+            paths.addAll( config.alwaysInvalidatePaths() );
+
+            LOG.debug( "Invalidating pages depending on {} content items of project {}", entry.getValue().size(), entry.getKey() );
+            nodeCacheInvalidator.invalidateDependents( entry.getKey().toString(), entry.getValue(), paths );
         }
     }
 }
@@ -2,23 +2,40 @@ package com.enonic.app.booster.storage;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.enonic.xp.aggregation.Bucket;
+import com.enonic.xp.aggregation.BucketAggregation;
 import com.enonic.xp.app.ApplicationKey;
 import com.enonic.xp.branch.Branch;
 import com.enonic.xp.context.ContextAccessor;
 import com.enonic.xp.context.ContextBuilder;
+import com.enonic.xp.node.FindNodesByQueryResult;
 import com.enonic.xp.node.Node;
+import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeIds;
 import com.enonic.xp.node.NodeQuery;
 import com.enonic.xp.node.NodeService;
 import com.enonic.xp.node.UpdateNodeParams;
 import com.enonic.xp.project.Project;
 import com.enonic.xp.project.ProjectName;
 import com.enonic.xp.project.ProjectService;
+import com.enonic.xp.query.aggregation.TermsAggregationQuery;
 import com.enonic.xp.query.expr.CompareExpr;
 import com.enonic.xp.query.expr.FieldExpr;
 import com.enonic.xp.query.expr.LogicalExpr;
@@ -30,12 +47,24 @@ import static java.util.Objects.requireNonNullElse;
 @Component(service = BoosterProjectMatchers.class)
 public class BoosterProjectMatchers
 {
+    private static final Logger LOG = LoggerFactory.getLogger( BoosterProjectMatchers.class );
+
+    private static final String APPS_AGGREGATION = "apps";
+
+    private static final int MAX_APPS = 1000;
+
+    // per project and load. Loads cover a short time ahead, so this is far more than is normally scheduled
+    private static final int MAX_SCHEDULED = 10_000;
+
     private static volatile Instant LAST_CHECKED_CACHE;
 
     private final NodeService nodeService;
 
     private final ProjectService projectService;
 
+    // applications used by sites per project, projects are added lazily and removed when their content changes
+    private final Map<ProjectName, Set<String>> appsIndex = new ConcurrentHashMap<>();
+
     @Activate
     public BoosterProjectMatchers( @Reference final NodeService nodeService, @Reference final ProjectService projectService )
     {
@@ -43,70 +72,171 @@ public class BoosterProjectMatchers
         this.projectService = projectService;
     }
 
-    public List<ProjectName> findByAppForInvalidation( final List<ApplicationKey> app )
+    /**
+     * Forgets applications used by the project. Called when content of the project changes.
+     */
+    public void invalidateIndex( final ProjectName project )
     {
-        return BoosterContext.callInContext( () -> {
-            final List<String> projects = projectService.list().stream().map( Project::getName ).map( Object::toString ).toList();
-
-            final NodeQuery.Builder nodeQueryBuilder = NodeQuery.create().size( 0 );
-
-            final NodeQuery nodeQuery = nodeQueryBuilder.query( QueryExpr.from(
-                CompareExpr.in( FieldExpr.from( "data.siteConfig.applicationkey" ),
-                                app.stream().map( ApplicationKey::getName ).map( ValueExpr::string ).toList() ) ) ).build();
-            return projects.stream()
-                .filter( name -> ContextBuilder.from( ContextAccessor.current() )
-                    .branch( Branch.from( "master" ) )
-                    .repositoryId( ProjectName.from( name ).getRepoId() )
-                    .build()
-                    .callWith( () -> nodeService.findByQuery( nodeQuery ).getTotalHits() > 0 ) )
-                .map( ProjectName::from )
-                .toList();
-        } );
+        appsIndex.remove( project );
     }
 
-    public List<ProjectName> findScheduledForInvalidation()
+    public List<ProjectName> findByAppForInvalidation( final List<ApplicationKey> app )
     {
-        final Instant now = Instant.now().truncatedTo( ChronoUnit.SECONDS );
+        final Set<String> appNames = app.stream().map( ApplicationKey::getName ).collect( Collectors.toSet() );
 
+        return BoosterContext.callInContext( () -> listProjects().stream()
+            .filter( project -> appsIndex.computeIfAbsent( project, this::loadApps ).stream().anyMatch( appNames::contains ) )
+            .toList() );
+    }
+
+    /**
+     * Finds projects where content got published or expired since the last check, until now.
+     * Used to catch up on scheduled content nobody was tracking, for instance while the cluster was down.
+     */
+    public List<ProjectName> findScheduledForInvalidation( final Instant now )
+    {
         return BoosterContext.callInContext( () -> {
-            final List<String> projects = projectService.list().stream().map( Project::getName ).map( Object::toString ).toList();
+            final List<ProjectName> projects = listProjects();
+            appsIndex.keySet().retainAll( projects );
 
             final Node scheduledParentNode = nodeService.getByPath( BoosterContext.SCHEDULED_PARENT_NODE );
 
-            final Instant lastCheckedStored =
-                requireNonNullElse( scheduledParentNode.data().getInstant( "lastChecked" ), scheduledParentNode.getTimestamp() );
+            final Instant lastChecked = requireNonNullElse( LAST_CHECKED_CACHE, lastCheckedStored( scheduledParentNode ) );
 
-            final Instant lastChecked = requireNonNullElse( LAST_CHECKED_CACHE, lastCheckedStored );
+            final NodeQuery nodeQuery = NodeQuery.create().size( 0 ).query( scheduledBetween( lastChecked, now ) ).build();
 
-            final NodeQuery.Builder nodeQueryBuilder = NodeQuery.create().size( 0 );
-            final ValueExpr nowValue = ValueExpr.instant( now.toString() );
-            final ValueExpr lastCheckedValue = ValueExpr.instant( lastChecked.toString() );
+            final List<ProjectName> filteredProjects = new ArrayList<>();
+            for ( ProjectName project : projects )
+            {
+                if ( callInProject( project, () -> nodeService.findByQuery( nodeQuery ).getTotalHits() > 0 ) )
+                {
+                    filteredProjects.add( project );
+                }
+            }
 
-            nodeQueryBuilder.query( QueryExpr.from( LogicalExpr.or(
-                LogicalExpr.and( CompareExpr.gt( FieldExpr.from( "publish.from" ), lastCheckedValue ),
-                                 CompareExpr.lte( FieldExpr.from( "publish.from" ), nowValue ) ),
-                LogicalExpr.and( CompareExpr.gt( FieldExpr.from( "publish.to" ), lastCheckedValue ),
-                                 CompareExpr.lte( FieldExpr.from( "publish.to" ), nowValue ) ) ) ) );
+            updateLastChecked( scheduledParentNode, now );
+            return filteredProjects;
+        } );
+    }
 
-            final NodeQuery nodeQuery = nodeQueryBuilder.build();
+    /**
+     * Remembers that scheduled content is handled until now. The stored value is updated at most once an hour.
+     */
+    void updateLastChecked( final Instant now )
+    {
+        BoosterContext.runInContext( () -> updateLastChecked( nodeService.getByPath( BoosterContext.SCHEDULED_PARENT_NODE ), now ) );
+    }
 
-            final List<String> filteredProjects = projects.stream()
-                .filter( name -> ContextBuilder.from( ContextAccessor.current() )
-                    .branch( Branch.from( "master" ) )
-                    .repositoryId( ProjectName.from( name ).getRepoId() )
-                    .build()
-                    .callWith( () -> nodeService.findByQuery( nodeQuery ).getTotalHits() > 0 ) )
-                .toList();
+    /**
+     * Finds content of all projects that gets published or expires after one instant, until another.
+     */
+    Map<PublishSchedule.Content, List<Instant>> findScheduled( final Instant after, final Instant until )
+    {
+        final NodeQuery nodeQuery = NodeQuery.create().size( MAX_SCHEDULED ).query( scheduledBetween( after, until ) ).build();
 
-            LAST_CHECKED_CACHE = now;
-            if ( lastCheckedStored.plus( 1, ChronoUnit.HOURS ).isBefore( now ) )
+        return BoosterContext.callInContext( () -> {
+            final Map<PublishSchedule.Content, List<Instant>> result = new HashMap<>();
+            for ( ProjectName project : listProjects() )
             {
-                nodeService.update( UpdateNodeParams.create()
-                                        .id( scheduledParentNode.id() )
-                                        .editor( editor -> editor.data.setInstant( "lastChecked", now ) )
-                                        .build() );
+                callInProject( project, () -> {
+                    final FindNodesByQueryResult hits = nodeService.findByQuery( nodeQuery );
+                    if ( hits.getTotalHits() > MAX_SCHEDULED )
+                    {
+                        LOG.warn( "Too much content scheduled in project {} until {}, only {} items are tracked", project, until,
+                                  MAX_SCHEDULED );
+                    }
+                    collectScheduled( project, hits.getNodeHits().getAsNodeIds(), after, until, result );
+                    return null;
+                } );
             }
-            return filteredProjects.stream().map( ProjectName::from ).toList();
+            return result;
         } );
     }
+
+    /**
+     * Finds which of the given content of the project gets published or expires after one instant, until another.
+     */
+    Map<PublishSchedule.Content, List<Instant>> findScheduled( final ProjectName project, final Collection<String> ids,
+                                                               final Instant after, final Instant until )
+    {
+        return BoosterContext.callInContext( () -> callInProject( project, () -> {
+            final Map<PublishSchedule.Content, List<Instant>> result = new HashMap<>();
+            collectScheduled( project, NodeIds.from( ids.stream().map( NodeId::from ).toList() ), after, until, result );
+            return result;
+        } ) );
+    }
+
+    private void collectScheduled( final ProjectName project, final NodeIds ids, final Instant after, final Instant until,
+                                   final Map<PublishSchedule.Content, List<Instant>> result )
+    {
+        if ( ids.isEmpty() )
+        {
+            return;
+        }
+        for ( Node node : nodeService.getByIds( ids ) )
+        {
+            final List<Instant> instants = Stream.of( node.data().getInstant( "publish.from" ), node.data().getInstant( "publish.to" ) )
+                .filter( instant -> instant != null && instant.isAfter( after ) && !instant.isAfter( until ) )
+                .toList();
+            if ( !instants.isEmpty() )
+            {
+                result.put( new PublishSchedule.Content( project, node.id().toString(), node.path().toString() ), instants );
+            }
+        }
+    }
+
+    private List<ProjectName> listProjects()
+    {
+        return projectService.list().stream().map( Project::getName ).toList();
+    }
+
+    private Set<String> loadApps( final ProjectName project )
+    {
+        return callInProject( project, () -> {
+            final NodeQuery appsQuery = NodeQuery.create()
+                .addAggregationQuery(
+                    TermsAggregationQuery.create( APPS_AGGREGATION ).fieldName( "data.siteConfig.applicationkey" ).size( MAX_APPS ).build() )
+                .size( 0 )
+                .build();
+            final BucketAggregation apps = (BucketAggregation) nodeService.findByQuery( appsQuery ).getAggregations().get( APPS_AGGREGATION );
+            return apps == null ? Set.of() : apps.getBuckets().stream().map( Bucket::getKey ).collect( Collectors.toUnmodifiableSet() );
+        } );
+    }
+
+    private void updateLastChecked( final Node scheduledParentNode, final Instant now )
+    {
+        LAST_CHECKED_CACHE = now;
+        if ( lastCheckedStored( scheduledParentNode ).plus( 1, ChronoUnit.HOURS ).isBefore( now ) )
+        {
+            nodeService.update( UpdateNodeParams.create()
+                                    .id( scheduledParentNode.id() )
+                                    .editor( editor -> editor.data.setInstant( "lastChecked", now ) )
+                                    .build() );
+        }
+    }
+
+    private static Instant lastCheckedStored( final Node scheduledParentNode )
+    {
+        return requireNonNullElse( scheduledParentNode.data().getInstant( "lastChecked" ), scheduledParentNode.getTimestamp() );
+    }
+
+    private static QueryExpr scheduledBetween( final Instant after, final Instant until )
+    {
+        final ValueExpr afterValue = ValueExpr.instant( after.toString() );
+        final ValueExpr untilValue = ValueExpr.instant( until.toString() );
+
+        return QueryExpr.from( LogicalExpr.or( LogicalExpr.and( CompareExpr.gt( FieldExpr.from( "publish.from" ), afterValue ),
+                                                                CompareExpr.lte( FieldExpr.from( "publish.from" ), untilValue ) ),
+                                               LogicalExpr.and( CompareExpr.gt( FieldExpr.from( "publish.to" ), afterValue ),
+                                                                CompareExpr.lte( FieldExpr.from( "publish.to" ), untilValue ) ) ) );
+    }
+
+    private <T> T callInProject( final ProjectName project, final Callable<T> callable )
+    {
+        return ContextBuilder.from( ContextAccessor.current() )
+            .branch( Branch.from( "master" ) )
+            .repositoryId( project.getRepoId() )
+            .build()
+            .callWith( callable );
+    }
 }
@@ -1,10 +1,22 @@
 package com.enonic.app.booster.storage;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
@@ -15,16 +27,25 @@ import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.io.ByteSource;
+
 import com.enonic.app.booster.BoosterConfig;
 import com.enonic.app.booster.BoosterConfigParsed;
 import com.enonic.app.booster.concurrent.ThreadFactoryImpl;
+import com.enonic.app.booster.io.ZstdCompression;
 import com.enonic.app.booster.query.BoosterQueryBuilder;
-import com.enonic.xp.node.DeleteNodeParams;
+import com.enonic.xp.aggregation.StatsAggregation;
+import com.enonic.xp.index.IndexService;
 import com.enonic.xp.node.FindNodesByQueryResult;
-import com.enonic.xp.node.NodeHits;
-import com.enonic.xp.node.NodeQuery;
+import com.enonic.xp.node.Node;
+import com.enonic.xp.node.NodeHit;
+import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeIds;
+import com.enonic.xp.node.NodeNotFoundException;
 import com.enonic.xp.node.NodeService;
+import com.enonic.xp.node.Nodes;
 import com.enonic.xp.node.RefreshMode;
+import com.enonic.xp.node.UpdateNodeParams;
 import com.enonic.xp.trace.Tracer;
 
 @Component(immediate = true, configurationPid = "com.enonic.app.booster")
@@ -34,23 +55,58 @@ public class BoosterScavenger
 
     private final NodeService nodeService;
 
+    private final NodeCacheStore nodeCacheStore;
+
+    private final IndexService indexService;
+
     private final ScheduledExecutorService executorService;
 
+    // number of first eviction candidates ranked by hits per byte
+    private static final int RANK_WINDOW = 10_000;
+
+    // nodes evicted from cache over cacheSize in a single run, the rest is evicted on next runs
+    private static final int MAX_EVICTIONS = 10_000;
+
+    // nodes stale by generations of their scopes marked in a single run, the rest are marked on next runs
+    private static final int MARK_LIMIT = 2_000;
+
+    // most requested pages considered for training of compression dictionaries, of all sites
+    private static final int DICTIONARY_CANDIDATES = 5_000;
+
+    // pages a compression dictionary of a site is trained on
+    private static final int DICTIONARY_SAMPLES = 32;
+
+    // larger pages are not used for training
+    private static final int MAX_SAMPLE_BYTES = 1024 * 1024;
+
+    private static final int MAX_DICTIONARY_BYTES = 128 * 1024;
+
+    // smaller dictionaries are not worth an extra request of the client
+    private static final int MIN_DICTIONARY_BYTES = 1024;
+
+    private static final Duration DICTIONARY_MAX_AGE = Duration.ofDays( 1 );
+
     private volatile BoosterConfigParsed config;
 
     @Activate
-    public BoosterScavenger( final BundleContext context, @Reference final NodeService nodeService )
+    public BoosterScavenger( final BundleContext context, @Reference final NodeService nodeService,
+                             @Reference final NodeCacheStore nodeCacheStore, @Reference final IndexService indexService )
     {
-        this( nodeService, Executors.newSingleThreadScheduledExecutor(
+        this( nodeService, nodeCacheStore, indexService, Executors.newSingleThreadScheduledExecutor(
             new ThreadFactoryImpl( context.getBundle().getSymbolicName() + "-" + context.getBundle().getBundleId() + "-scavenge-%d" ) ) );
     }
 
-    public BoosterScavenger( final NodeService nodeService, final ScheduledExecutorService executorService )
+    public BoosterScavenger( final NodeService nodeService, final NodeCacheStore nodeCacheStore, final IndexService indexService,
+                             final ScheduledExecutorService executorService )
     {
         this.nodeService = nodeService;
+        this.nodeCacheStore = nodeCacheStore;
+        this.indexService = indexService;
         this.executorService = executorService;
 
         this.executorService.scheduleWithFixedDelay( this::scavenge, 1, 60, TimeUnit.SECONDS );
+        this.executorService.scheduleWithFixedDelay( this::flushEvictions, 5, 5, TimeUnit.SECONDS );
+        this.executorService.scheduleWithFixedDelay( this::trainDictionaries, 10, 60, TimeUnit.MINUTES );
     }
 
     @Activate
@@ -66,29 +122,358 @@ public class BoosterScavenger
         executorService.shutdownNow();
     }
 
+    public void flushEvictions()
+    {
+        Tracer.trace( "booster.flushEvictions", nodeCacheStore::flushEvictions );
+    }
+
     public void scavenge()
     {
+        Tracer.trace( "booster.flushHits", nodeCacheStore::flushHits );
+        Tracer.trace( "booster.reloadGenerations", nodeCacheStore::reloadGenerations );
+        Tracer.trace( "booster.markStale", this::markStale );
+        Tracer.trace( "booster.reloadDictionaries", nodeCacheStore::reloadDictionaries );
+
         final int cacheSize = config.cacheSize();
+        final long cacheMaxBytes = config.cacheMaxBytes();
+        final EvictionPolicy policy = config.cacheEvictionPolicy();
         final Instant now = Instant.now();
         Tracer.trace( "booster.scavenge", () -> BoosterContext.runInContext( () -> {
-            final NodeQuery query = BoosterQueryBuilder.queryNodes( Map.of(), now, true, 10_000 );
-            FindNodesByQueryResult nodesToDelete = nodeService.findByQuery( query );
+            // counting is cheap, candidates are only loaded when a limit is exceeded
+            final long excessCount =
+                nodeService.findByQuery( BoosterQueryBuilder.queryEvictionCandidates( now, policy, 0 ) ).getTotalHits() - cacheSize;
+            final long excessBytes = cacheMaxBytes > 0 ? storedSize() - cacheMaxBytes : 0;
+            if ( excessCount <= 0 && excessBytes <= 0 )
+            {
+                return;
+            }
 
-            long diff = nodesToDelete.getTotalHits() - cacheSize;
+            // a single page of candidates, otherwise the index would need to be refreshed after each deleted page.
+            // Whatever is left over is evicted on next runs
+            final boolean rank = excessBytes > 0 || policy == EvictionPolicy.GREEDY_DUAL;
+            final int pageSize = rank ? RANK_WINDOW : (int) Math.min( excessCount, MAX_EVICTIONS );
+            final List<NodeId> ordered = nodeService.findByQuery( BoosterQueryBuilder.queryEvictionCandidates( now, policy, pageSize ) )
+                .getNodeHits()
+                .stream()
+                .map( NodeHit::getNodeId )
+                .toList();
 
-            while ( diff > 0 )
+            final Set<NodeId> victims = new LinkedHashSet<>();
+
+            List<Node> ranked = null;
+            if ( excessBytes > 0 )
             {
-                final NodeHits nodeHits = nodesToDelete.getNodeHits();
-                for ( int i = 0; i < diff; i++ )
+                // largest and least requested items free the budget at the lowest loss of hits, regardless of the policy
+                ranked = rankGreedyDual( ordered );
+                long freed = 0;
+                for ( Node node : ranked )
                 {
-                    nodeService.delete( DeleteNodeParams.create().nodeId( nodeHits.get( i ).getNodeId() ).build() );
+                    if ( freed >= excessBytes )
+                    {
+                        break;
+                    }
+                    victims.add( node.id() );
+                    freed += storedSize( node );
+                }
+            }
+
+            final long diff = Math.min( excessCount, MAX_EVICTIONS ) - victims.size();
+            if ( diff > 0 )
+            {
+                final List<NodeId> order;
+                if ( policy == EvictionPolicy.GREEDY_DUAL )
+                {
+                    ranked = ranked != null ? ranked : rankGreedyDual( ordered );
+                    order = ranked.stream().map( Node::id ).toList();
+                }
+                else
+                {
+                    order = ordered;
+                }
+                order.stream().filter( Predicate.not( victims::contains ) ).limit( diff ).forEach( victims::add );
+            }
+
+            if ( !victims.isEmpty() )
+            {
+                final int deleted = new CacheNodeDeleter( nodeService, nodeCacheStore ).delete( List.copyOf( victims ) );
+                LOG.debug( "Scavenger deleted {} nodes", deleted );
+                if ( ranked != null )
+                {
+                    inflate( ranked, victims );
                 }
-                LOG.debug( "Scavenger deleted {} nodes", diff );
-                nodeService.refresh( RefreshMode.SEARCH );
-                nodesToDelete = nodeService.findByQuery( query );
-                diff = nodesToDelete.getTotalHits() - cacheSize;
             }
         } ) );
+    }
+
+    /**
+     * Marks nodes stale by generations of their scopes as invalidated, as scope invalidations don't mark nodes themselves.
+     * Marked nodes are evicted first and are not counted in cache size of their project, site or content.
+     */
+    private void markStale()
+    {
+        final Map<String, Long> generations = nodeCacheStore.generations();
+        if ( generations.isEmpty() )
+        {
+            return;
+        }
+        BoosterContext.runInContext( () -> {
+            final List<NodeId> nodeIds = nodeService.findByQuery( BoosterQueryBuilder.queryStaleNodes( generations, MARK_LIMIT ) )
+                .getNodeHits()
+                .stream()
+                .map( NodeHit::getNodeId )
+                .toList();
+            int marked = 0;
+            try
+            {
+                for ( NodeId nodeId : nodeIds )
+                {
+                    if ( markStale( nodeId ) )
+                    {
+                        marked++;
+                    }
+                }
+            }
+            finally
+            {
+                if ( marked > 0 )
+                {
+                    nodeService.refresh( RefreshMode.SEARCH );
+                }
+            }
+            LOG.debug( "Scavenger marked {} stale nodes", marked );
+        } );
+    }
+
+    private boolean markStale( final NodeId nodeId )
+    {
+        try
+        {
+            nodeService.update( UpdateNodeParams.create().id( nodeId ).editor( editor -> {
+                // node could be stored again after it was found
+                if ( editor.data.getInstant( "invalidatedTime" ) == null )
+                {
+                    final Instant invalidatedTime = nodeCacheStore.resolveInvalidatedTime( editor.data );
+                    if ( invalidatedTime != null )
+                    {
+                        editor.data.setInstant( "invalidatedTime", invalidatedTime );
+                    }
+                }
+            } ).build() );
+            return true;
+        }
+        catch ( NodeNotFoundException e )
+        {
+            LOG.debug( "Stale node was already deleted {}", nodeId );
+            return false;
+        }
+    }
+
+    /**
+     * Trains compression dictionaries of sites on their most requested cached pages.
+     * Pages are grouped by site and origin, as clients use a dictionary only for URLs of the origin it was fetched from.
+     * A dictionary is retrained once it is older than a day.
+     * Dictionaries are only trained on the master node, other nodes load them in {@link NodeCacheStore#reloadDictionaries()}.
+     */
+    public void trainDictionaries()
+    {
+        if ( !config.compressionDictionaries() || !ZstdCompression.isAvailable() || !indexService.isMaster() )
+        {
+            return;
+        }
+        final Instant now = Instant.now();
+        Tracer.trace( "booster.trainDictionaries", () -> BoosterContext.runInContext( () -> {
+            final FindNodesByQueryResult candidates =
+                nodeService.findByQuery( BoosterQueryBuilder.queryDictionarySamples( DICTIONARY_CANDIDATES ) );
+            if ( candidates.getNodeHits().isEmpty() )
+            {
+                return;
+            }
+            final List<NodeId> ids = candidates.getNodeHits().stream().map( NodeHit::getNodeId ).toList();
+            final Map<NodeId, Node> nodes = new HashMap<>();
+            nodeService.getByIds( NodeIds.from( ids ) ).forEach( node -> nodes.put( node.id(), node ) );
 
+            // most requested pages first, by site and origin
+            final Map<String, List<Node>> groups = new LinkedHashMap<>();
+            for ( NodeId id : ids )
+            {
+                final Node node = nodes.get( id );
+                if ( node == null )
+                {
+                    continue;
+                }
+                final String siteId = node.data().getString( "siteId" );
+                final String url = node.data().getString( "url" );
+                final String origin = url == null ? null : CompressionDictionary.origin( url );
+                if ( siteId == null || origin == null )
+                {
+                    continue;
+                }
+                final List<Node> group = groups.computeIfAbsent( siteId + " " + origin, k -> new ArrayList<>() );
+                if ( group.size() < DICTIONARY_SAMPLES )
+                {
+                    group.add( node );
+                }
+            }
+
+            for ( List<Node> group : groups.values() )
+            {
+                if ( group.size() >= DictionaryTrainer.MIN_SAMPLES )
+                {
+                    trainDictionary( group, now );
+                }
+            }
+        } ) );
+    }
+
+    private void trainDictionary( final List<Node> samples, final Instant now )
+    {
+        final String siteId = samples.get( 0 ).data().getString( "siteId" );
+        final String origin = CompressionDictionary.origin( samples.get( 0 ).data().getString( "url" ) );
+
+        final CompressionDictionary latest = nodeCacheStore.latestDictionary( siteId, origin );
+        if ( latest != null && latest.createdTime().isAfter( now.minus( DICTIONARY_MAX_AGE ) ) )
+        {
+            return;
+        }
+
+        final List<byte[]> bodies = new ArrayList<>();
+        final List<String> cacheKeys = new ArrayList<>();
+        String pathPrefix = null;
+        for ( Node node : samples )
+        {
+            final byte[] body = readBody( node );
+            if ( body == null )
+            {
+                continue;
+            }
+            bodies.add( body );
+            cacheKeys.add( node.id().toString() );
+            final String url = node.data().getString( "url" );
+            final int queryStart = url.indexOf( '?' );
+            final String path = url.substring( origin.length(), queryStart == -1 ? url.length() : queryStart );
+            pathPrefix = pathPrefix == null ? directory( path ) : commonDirectory( pathPrefix, path );
+        }
+
+        final byte[] data = DictionaryTrainer.train( bodies, MAX_DICTIONARY_BYTES );
+        if ( data.length < MIN_DICTIONARY_BYTES )
+        {
+            LOG.debug( "Not enough shared content to train compression dictionary of site {} on {}", siteId, origin );
+            return;
+        }
+
+        final CompressionDictionary dictionary = CompressionDictionary.create( siteId, origin, pathPrefix, now, data );
+        if ( latest != null && latest.id().equals( dictionary.id() ) )
+        {
+            return;
+        }
+        LOG.debug( "Trained compression dictionary {} of site {} on {} from {} pages", dictionary.id(), siteId, origin, bodies.size() );
+        nodeCacheStore.putDictionary( dictionary, cacheKeys );
+    }
+
+    private byte[] readBody( final Node node )
+    {
+        final ByteSource gzipBody = nodeService.getBinary( node.id(), NodeCacheStore.GZIP_DATA_BINARY_REFERENCE );
+        if ( gzipBody == null )
+        {
+            return null;
+        }
+        try (InputStream in = new GZIPInputStream( gzipBody.openStream() ))
+        {
+            final byte[] body = in.readNBytes( MAX_SAMPLE_BYTES + 1 );
+            return body.length > MAX_SAMPLE_BYTES ? null : body;
+        }
+        catch ( IOException e )
+        {
+            LOG.debug( "Cannot read cached response {}", node.id(), e );
+            return null;
+        }
+    }
+
+    private static String directory( final String path )
+    {
+        final int lastSlash = path.lastIndexOf( '/' );
+        return lastSlash == -1 ? "/" : path.substring( 0, lastSlash + 1 );
+    }
+
+    private static String commonDirectory( final String directory, final String path )
+    {
+        int common = 0;
+        while ( common < directory.length() && common < path.length() && directory.charAt( common ) == path.charAt( common ) )
+        {
+            common++;
+        }
+        return directory( directory.substring( 0, common ) );
+    }
+
+    private long storedSize()
+    {
+        final FindNodesByQueryResult result = nodeService.findByQuery( BoosterQueryBuilder.queryStoredSize() );
+        final StatsAggregation stats = (StatsAggregation) result.getAggregations().get( BoosterQueryBuilder.STORED_SIZE_AGGREGATION );
+        return stats == null ? 0 : (long) stats.getSum();
+    }
+
+    /**
+     * Orders candidates by GreedyDual-Size-Frequency priority, lowest first. Invalidated nodes, marked or stale by generations of their
+     * scopes, go first regardless of priority.
+     * Only first candidates in policy order are ranked, to limit the number of nodes loaded at once.
+     */
+    private List<Node> rankGreedyDual( final List<NodeId> candidates )
+    {
+        final List<NodeId> window = candidates.subList( 0, Math.min( candidates.size(), RANK_WINDOW ) );
+        if ( window.isEmpty() )
+        {
+            return List.of();
+        }
+        final Nodes nodes = nodeService.getByIds( NodeIds.from( window ) );
+        return nodes.stream()
+            .sorted( Comparator.comparing( this::isValid ).thenComparingDouble( BoosterScavenger::greedyDualPriority ) )
+            .toList();
+    }
+
+    /**
+     * Raises the inflation value to the highest priority of evicted valid nodes, so that nodes stored or requested from now on
+     * outrank the ones that were not requested since.
+     */
+    private void inflate( final List<Node> ranked, final Set<NodeId> victims )
+    {
+        double evicted = -1;
+        for ( Node node : ranked )
+        {
+            if ( victims.contains( node.id() ) && isValid( node ) )
+            {
+                evicted = Math.max( evicted, greedyDualPriority( node ) );
+            }
+        }
+        if ( evicted >= 0 )
+        {
+            nodeCacheStore.inflate( evicted );
+        }
+    }
+
+    private boolean isValid( final Node node )
+    {
+        return nodeCacheStore.resolveInvalidatedTime( node.data() ) == null;
+    }
+
+    /**
+     * Inflation value the node was stamped with when it was last stored or requested, plus hits per stored byte.
+     */
+    private static double greedyDualPriority( final Node node )
+    {
+        final Double inflation = node.data().getDouble( "inflation" );
+        final Long hits = node.data().getLong( "hits" );
+        return ( inflation == null ? 0 : inflation ) + ( 1 + ( hits == null ? 0 : hits ) ) / (double) Math.max( 1, storedSize( node ) );
+    }
+
+    private static long storedSize( final Node node )
+    {
+        final Long storedSize = node.data().getLong( "storedSize" );
+        if ( storedSize != null )
+        {
+            return storedSize;
+        }
+        // nodes stored before storedSize was introduced
+        final Long contentLength = node.data().getLong( "contentLength" );
+        return contentLength == null ? 0 : contentLength;
     }
 }
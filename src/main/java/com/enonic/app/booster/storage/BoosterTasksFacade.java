@@ -2,10 +2,11 @@ package com.enonic.app.booster.storage;
 
 import java.security.MessageDigest;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HexFormat;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -19,6 +20,7 @@ import com.enonic.xp.descriptor.DescriptorKey;
 import com.enonic.xp.project.ProjectName;
 import com.enonic.xp.task.SubmitTaskParams;
 import com.enonic.xp.task.TaskId;
+import com.enonic.xp.task.TaskInfo;
 import com.enonic.xp.task.TaskService;
 
 @Component(service = BoosterTasksFacade.class)
@@ -26,41 +28,61 @@ public class BoosterTasksFacade
 {
     private static final Logger LOG = LoggerFactory.getLogger( BoosterTasksFacade.class );
 
+    // tasks of distinct scopes tracked before done ones are removed
+    private static final int MAX_IN_FLIGHT = 100;
+
     private final TaskService taskService;
 
+    // tasks submitted by this node and not known to be done yet, by task name
+    private final Map<String, TaskId> inFlight = new ConcurrentHashMap<>();
+
     @Activate
     public BoosterTasksFacade( @Reference final TaskService taskService )
     {
         this.taskService = taskService;
     }
 
-    public TaskId invalidateAll()
+    /**
+     * Submits warm-up of invalidated pages of the projects, or of all projects if none given.
+     */
+    public TaskId warmup( final Collection<ProjectName> projects, final int limit, final String baseUrl )
     {
-        return invalidate( Collections.emptyList() );
+        final PropertyTree data = new PropertyTree();
+        if ( !projects.isEmpty() )
+        {
+            data.addStrings( "project", projects.stream().map( Objects::toString ).toArray( String[]::new ) );
+        }
+        data.addLong( "limit", (long) limit );
+        if ( baseUrl != null && !baseUrl.isEmpty() )
+        {
+            data.addString( "baseUrl", baseUrl );
+        }
+        return submit( "warmup", generateNameSuffix( projects ), data );
     }
 
-    public TaskId invalidate( final Collection<ProjectName> projects )
+    private TaskId submit( final String taskName, final String nameSuffix, final PropertyTree data )
     {
         return logWarn( () -> {
-            final String taskName = "com.enonic.app.booster:invalidate~" + generateNameSuffix( projects );
+            final String descriptorKey = "com.enonic.app.booster:" + taskName;
+            final String fullName = descriptorKey + "~" + nameSuffix;
             // This does not precisely prevent duplicate tasks, but prevents hundreds simultaneous tasks
-            if ( taskAlreadyExists( taskName ) )
+            if ( taskAlreadyExists( fullName ) )
             {
                 LOG.debug( "Same task is already running" );
                 return null;
             }
 
-            final PropertyTree data = new PropertyTree();
-            if ( !projects.isEmpty() )
+            final TaskId taskId = taskService.submitTask(
+                SubmitTaskParams.create().descriptorKey( DescriptorKey.from( descriptorKey ) ).name( fullName ).data( data ).build() );
+            LOG.debug( "Task submitted {}", taskId );
+            if ( taskId != null )
             {
-                data.addStrings( "project", projects.stream().map( Objects::toString ).toArray( String[]::new ) );
+                inFlight.put( fullName, taskId );
+                if ( inFlight.size() > MAX_IN_FLIGHT )
+                {
+                    inFlight.keySet().removeIf( name -> !taskAlreadyExists( name ) );
+                }
             }
-            final TaskId taskId = taskService.submitTask( SubmitTaskParams.create()
-                                                              .descriptorKey( DescriptorKey.from( "com.enonic.app.booster:invalidate" ) )
-                                                              .name( taskName )
-                                                              .data( data )
-                                                              .build() );
-            LOG.debug( "Cleanup task submitted {}", taskId );
             return taskId;
         } );
     }
@@ -75,15 +97,31 @@ public class BoosterTasksFacade
         {
             return projects.iterator().next().toString();
         }
+        return hash( projects.stream().map( ProjectName::toString ).toList() );
+    }
+
+    private static String hash( final Collection<String> values )
+    {
         final MessageDigest digest = MessageDigests.sha256();
-        projects.stream().map( ProjectName::toString ).sorted().map( String::getBytes ).forEach( digest::update );
+        values.stream().sorted().map( String::getBytes ).forEach( digest::update );
         return HexFormat.of().formatHex( digest.digest(), 0, 16 );
     }
 
     private boolean taskAlreadyExists( final String taskName )
     {
-        return taskService.getAllTasks().stream().filter( ti -> taskName.equals( ti.getName() ) ) // lookup for specific name
-            .anyMatch( ti -> !ti.isDone() ); // only WAITING and RUNNING are considered submitted, others are done
+        final TaskId taskId = inFlight.get( taskName );
+        if ( taskId == null )
+        {
+            return false;
+        }
+        final TaskInfo taskInfo = taskService.getTaskInfo( taskId );
+        // only WAITING and RUNNING are considered submitted, others are done. Info of finished tasks is eventually removed
+        if ( taskInfo == null || taskInfo.isDone() )
+        {
+            inFlight.remove( taskName, taskId );
+            return false;
+        }
+        return true;
     }
 
     private TaskId logWarn( final Callable<TaskId> callable )
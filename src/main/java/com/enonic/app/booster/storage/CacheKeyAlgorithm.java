@@ -0,0 +1,61 @@
+package com.enonic.app.booster.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.Locale;
+
+import com.enonic.app.booster.utils.MessageDigests;
+import com.enonic.app.booster.utils.Murmur3;
+
+/**
+ * How cache keys are computed from normalized request URLs. Keys are 32 hex digits with either algorithm.
+ */
+public enum CacheKeyAlgorithm
+{
+    /**
+     * 128-bit MurmurHash3. Fast, and the URL is hashed without encoding it to bytes first.
+     * Keys differ from the ones of previous versions, so cached items stored by them are not found after switching.
+     */
+    MURMUR3
+        {
+            @Override
+            public String key( final String url )
+            {
+                return Murmur3.hash128Hex( url );
+            }
+        },
+
+    /**
+     * First 128 bits of SHA-256. Keys are the same as in previous versions, so cached items stored by them are still found.
+     */
+    SHA256
+        {
+            @Override
+            public String key( final String url )
+            {
+                final byte[] digest = MessageDigests.sha256().digest( url.getBytes( StandardCharsets.ISO_8859_1 ) );
+                return HexFormat.of().formatHex( digest, 0, 16 );
+            }
+        };
+
+    public abstract String key( String url );
+
+    /**
+     * Parses configured algorithm name. Falls back to {@link #SHA256}, so that keys of cached items are kept across upgrades.
+     */
+    public static CacheKeyAlgorithm from( final String value )
+    {
+        if ( value == null || value.isBlank() )
+        {
+            return SHA256;
+        }
+        try
+        {
+            return valueOf( value.trim().toUpperCase( Locale.ROOT ).replace( "-", "" ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return SHA256;
+        }
+    }
+}
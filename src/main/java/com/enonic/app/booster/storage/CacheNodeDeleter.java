@@ -0,0 +1,126 @@
+package com.enonic.app.booster.storage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import com.enonic.app.booster.query.BoosterQueryBuilder;
+import com.enonic.app.booster.query.Value;
+import com.enonic.xp.node.DeleteNodeParams;
+import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeNotFoundException;
+import com.enonic.xp.node.NodeService;
+import com.enonic.xp.node.RefreshMode;
+
+/**
+ * Deletes many cache nodes in batches.
+ * <p>
+ * Search index is refreshed once, after all nodes are deleted. Between batches deleter pauses as long as the previous batch took,
+ * so it never keeps the repository busy more than half of the time, and backs off by itself when the repository is slow.
+ * Must be called in {@link BoosterContext}.
+ */
+public final class CacheNodeDeleter
+{
+    private static final Logger LOG = LoggerFactory.getLogger( CacheNodeDeleter.class );
+
+    static final int BATCH_SIZE = 500;
+
+    private static final long MAX_PAUSE_MILLIS = 1_000;
+
+    private final NodeService nodeService;
+
+    private final NodeCacheStore nodeCacheStore;
+
+    public CacheNodeDeleter( final NodeService nodeService, final NodeCacheStore nodeCacheStore )
+    {
+        this.nodeService = nodeService;
+        this.nodeCacheStore = nodeCacheStore;
+    }
+
+    /**
+     * @return number of deleted nodes
+     */
+    public int delete( final List<NodeId> nodeIds )
+    {
+        return delete( Lists.partition( nodeIds, BATCH_SIZE ).iterator() );
+    }
+
+    /**
+     * Deletes all nodes with matching fields, cached before the cut-off time, invalidated or not.
+     * Nodes are read page by page, so that they are never all loaded at once.
+     *
+     * @return number of deleted nodes
+     */
+    public int deleteAll( final Map<String, Value> fields, final Instant cutOffTime )
+    {
+        return delete( new QueryPages( nodeService, BATCH_SIZE,
+                                       afterId -> BoosterQueryBuilder.queryNodesPage( fields, cutOffTime, true, afterId, BATCH_SIZE ) ) );
+    }
+
+    private int delete( final Iterator<List<NodeId>> batches )
+    {
+        int deleted = 0;
+        long lastBatchNanos = 0;
+        try
+        {
+            while ( batches.hasNext() )
+            {
+                if ( lastBatchNanos > 0 && !pause( lastBatchNanos ) )
+                {
+                    LOG.debug( "Deletion interrupted after {} nodes", deleted );
+                    break;
+                }
+
+                final long start = System.nanoTime();
+                final List<NodeId> batch = batches.next();
+                final List<String> batchKeys = new ArrayList<>( batch.size() );
+                for ( NodeId nodeId : batch )
+                {
+                    try
+                    {
+                        nodeService.delete( DeleteNodeParams.create().nodeId( nodeId ).build() );
+                        deleted++;
+                    }
+                    catch ( NodeNotFoundException e )
+                    {
+                        LOG.debug( "Node was already deleted {}", nodeId );
+                    }
+                    batchKeys.add( nodeId.toString() );
+                }
+                nodeCacheStore.evict( batchKeys );
+                lastBatchNanos = System.nanoTime() - start;
+            }
+        }
+        finally
+        {
+            if ( deleted > 0 )
+            {
+                nodeService.refresh( RefreshMode.SEARCH );
+            }
+        }
+        LOG.debug( "Deleted {} nodes", deleted );
+        return deleted;
+    }
+
+    private static boolean pause( final long nanos )
+    {
+        try
+        {
+            TimeUnit.NANOSECONDS.sleep( Math.min( nanos, TimeUnit.MILLISECONDS.toNanos( MAX_PAUSE_MILLIS ) ) );
+            return true;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.enonic.app.booster.storage;
+
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+
+import com.enonic.app.booster.io.ByteSupply;
+import com.enonic.app.booster.utils.MessageDigests;
+
+/**
+ * Shared compression dictionary of a site, trained on cached responses of the site on one origin.
+ * <p>
+ * Dictionary is served under {@code pathPrefix} and used by clients for all URLs under it (Compression Dictionary Transport, RFC 9842).
+ *
+ * @param id         hex-encoded SHA-256 hash of the dictionary
+ * @param origin     scheme, host and port of URLs the dictionary was trained on
+ * @param pathPrefix longest common path of URLs the dictionary was trained on, ends with {@code /}
+ */
+public record CompressionDictionary(String id, String siteId, String origin, String pathPrefix, Instant createdTime, ByteSupply data)
+{
+    static final String PATH = "_/booster/dictionary/";
+
+    public static CompressionDictionary create( final String siteId, final String origin, final String pathPrefix,
+                                                final Instant createdTime, final byte[] data )
+    {
+        final String id = HexFormat.of().formatHex( MessageDigests.sha256().digest( data ) );
+        return new CompressionDictionary( id, siteId, origin, pathPrefix, createdTime, ByteSupply.of( data ) );
+    }
+
+    /**
+     * Id of the dictionary requested by the path, if it is a dictionary path.
+     *
+     * @return dictionary id or {@code null}
+     */
+    public static String idFromPath( final String path )
+    {
+        final int index = path.indexOf( "/" + PATH );
+        if ( index == -1 )
+        {
+            return null;
+        }
+        final String id = path.substring( index + 1 + PATH.length() );
+        return id.length() == 64 && id.chars().allMatch( HexFormat::isHexDigit ) ? id.toLowerCase( Locale.ROOT ) : null;
+    }
+
+    /**
+     * Origin of the URL, {@code null} if the URL is not absolute.
+     */
+    public static String origin( final String url )
+    {
+        final int schemeEnd = url.indexOf( "://" );
+        if ( schemeEnd == -1 )
+        {
+            return null;
+        }
+        final int pathStart = url.indexOf( '/', schemeEnd + 3 );
+        return pathStart == -1 ? url : url.substring( 0, pathStart );
+    }
+
+    public byte[] hash()
+    {
+        return HexFormat.of().parseHex( id );
+    }
+
+    public String url()
+    {
+        return pathPrefix + PATH + id;
+    }
+
+    /**
+     * Checks if the dictionary is used for the URL by clients.
+     */
+    public boolean matches( final String url )
+    {
+        return url.startsWith( origin ) && url.startsWith( pathPrefix, origin.length() );
+    }
+
+    /**
+     * Value of {@code Use-As-Dictionary} header: the dictionary is used for documents under the path prefix.
+     */
+    public String useAsDictionary()
+    {
+        final StringBuilder pattern = new StringBuilder( pathPrefix.length() + 1 );
+        for ( int i = 0; i < pathPrefix.length(); i++ )
+        {
+            final char c = pathPrefix.charAt( i );
+            // special characters of URL pattern syntax
+            if ( "\\:*?+(){}".indexOf( c ) != -1 )
+            {
+                pattern.append( '\\' );
+            }
+            pattern.append( c );
+        }
+        pattern.append( '*' );
+        // pattern is a structured field string
+        return "match=\"" + pattern.toString().replace( "\\", "\\\\" ).replace( "\"", "\\\"" ) + "\", match-dest=(\"document\")";
+    }
+}
@@ -0,0 +1,109 @@
+package com.enonic.app.booster.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds raw content dictionary from response bodies of a site.
+ * <p>
+ * Bodies are split into segments ending with a tag or a line, so markup shared by pages (header, footer, navigation, scripts)
+ * becomes identical segments. Segments found in at least half of the bodies are kept, most common first when the size is limited.
+ * Kept segments are written in the order they appear in the bodies, so shared blocks of markup stay contiguous.
+ */
+final class DictionaryTrainer
+{
+    static final int MIN_SAMPLES = 4;
+
+    private DictionaryTrainer()
+    {
+    }
+
+    /**
+     * @return dictionary, empty if there are too few samples
+     */
+    static byte[] train( final List<byte[]> samples, final int maxBytes )
+    {
+        if ( samples.size() < MIN_SAMPLES )
+        {
+            return new byte[0];
+        }
+
+        final List<List<String>> segmented = new ArrayList<>( samples.size() );
+        // number of samples each segment is found in, in order of first appearance
+        final Map<String, Integer> frequency = new LinkedHashMap<>();
+        for ( byte[] sample : samples )
+        {
+            final List<String> segments = segments( sample );
+            segmented.add( segments );
+            for ( String segment : new HashSet<>( segments ) )
+            {
+                frequency.merge( segment, 1, Integer::sum );
+            }
+        }
+
+        final int threshold = ( samples.size() + 1 ) / 2;
+        final List<Map.Entry<String, Integer>> common = new ArrayList<>();
+        for ( Map.Entry<String, Integer> entry : frequency.entrySet() )
+        {
+            if ( entry.getValue() >= threshold )
+            {
+                common.add( entry );
+            }
+        }
+        // stable sort keeps order of first appearance among equally common segments
+        common.sort( Map.Entry.<String, Integer>comparingByValue( Comparator.reverseOrder() ) );
+
+        final Set<String> selected = new HashSet<>();
+        long size = 0;
+        for ( Map.Entry<String, Integer> entry : common )
+        {
+            final int length = entry.getKey().length();
+            if ( size + length <= maxBytes )
+            {
+                selected.add( entry.getKey() );
+                size += length;
+            }
+        }
+
+        final StringBuilder dictionary = new StringBuilder( (int) size );
+        for ( List<String> segments : segmented )
+        {
+            for ( String segment : segments )
+            {
+                if ( selected.remove( segment ) )
+                {
+                    dictionary.append( segment );
+                }
+            }
+        }
+        return dictionary.toString().getBytes( StandardCharsets.ISO_8859_1 );
+    }
+
+    private static List<String> segments( final byte[] body )
+    {
+        // ISO-8859-1 maps bytes to chars one to one, so multibyte characters are kept intact
+        final String text = new String( body, StandardCharsets.ISO_8859_1 );
+        final List<String> segments = new ArrayList<>();
+        int start = 0;
+        for ( int i = 0; i < text.length(); i++ )
+        {
+            final char c = text.charAt( i );
+            if ( c == '>' || c == '\n' )
+            {
+                segments.add( text.substring( start, i + 1 ) );
+                start = i + 1;
+            }
+        }
+        if ( start < text.length() )
+        {
+            segments.add( text.substring( start ) );
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,63 @@
+package com.enonic.app.booster.storage;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Order in which cached items are evicted once the cache is over its size. Invalidated items are always evicted first.
+ */
+public enum EvictionPolicy
+{
+    /**
+     * Least recently rendered first.
+     */
+    FIFO( List.of( "cachedTime" ) ),
+
+    /**
+     * Least recently requested first.
+     */
+    LRU( List.of( "lastAccess", "cachedTime" ) ),
+
+    /**
+     * Least frequently requested first.
+     */
+    LFU( List.of( "hits", "lastAccess" ) ),
+
+    /**
+     * Lowest number of requests per byte of response body first, so that many small popular pages are kept instead of a few large ones.
+     * Candidates are picked in least recently requested order. Priorities age: each eviction raises an inflation value that is added
+     * to priorities of items stored or requested afterwards, so formerly popular items that are no longer requested are evicted eventually.
+     */
+    GREEDY_DUAL( List.of( "lastAccess", "cachedTime" ) );
+
+    private final List<String> orderFields;
+
+    EvictionPolicy( final List<String> orderFields )
+    {
+        this.orderFields = orderFields;
+    }
+
+    /**
+     * Fields to order eviction candidates by, ascending.
+     */
+    public List<String> orderFields()
+    {
+        return orderFields;
+    }
+
+    public static EvictionPolicy from( final String value )
+    {
+        if ( value == null || value.isBlank() )
+        {
+            return FIFO;
+        }
+        try
+        {
+            return valueOf( value.trim().toUpperCase( Locale.ROOT ).replace( '-', '_' ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return FIFO;
+        }
+    }
+}
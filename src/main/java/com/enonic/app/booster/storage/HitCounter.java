@@ -0,0 +1,97 @@
+package com.enonic.app.booster.storage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts cache hits per key in memory, so request threads never write access statistics to the repository.
+ * <p>
+ * Counts are drained periodically and added to the cache nodes. Counts of rarely requested keys are kept in memory for a while, so
+ * that each drain writes only a few cache nodes. Hits recorded concurrently with a drain may be lost, counts are approximate.
+ */
+final class HitCounter
+{
+    // limits memory used between drains, hits of keys beyond the limit are not counted
+    static final int MAX_KEYS = 100_000;
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    void record( final String cacheKey, final Instant time )
+    {
+        Counter counter = counters.get( cacheKey );
+        if ( counter == null )
+        {
+            if ( counters.size() >= MAX_KEYS )
+            {
+                return;
+            }
+            counter = counters.computeIfAbsent( cacheKey, k -> new Counter( time.toEpochMilli() ) );
+        }
+        counter.hits.increment();
+        counter.lastAccess.accumulate( time.toEpochMilli() );
+    }
+
+    /**
+     * Removes and returns counts of keys due for a write: requested at least {@code minHits} times, or first requested at least
+     * {@code maxDelay} before {@code now}. At most {@code limit} keys are returned, those waiting longest first.
+     * Counts of other keys are kept for next drains.
+     */
+    Map<String, Hits> drain( final Instant now, final long minHits, final Duration maxDelay, final int limit )
+    {
+        final long deadline = now.minus( maxDelay ).toEpochMilli();
+        final List<Map.Entry<String, Counter>> due = new ArrayList<>();
+        for ( Map.Entry<String, Counter> entry : counters.entrySet() )
+        {
+            final Counter counter = entry.getValue();
+            if ( counter.hits.sum() >= minHits || counter.firstAccess <= deadline )
+            {
+                due.add( entry );
+            }
+        }
+        due.sort( Comparator.comparingLong( entry -> entry.getValue().firstAccess ) );
+
+        final Map<String, Hits> result = new HashMap<>();
+        for ( Map.Entry<String, Counter> entry : due.subList( 0, Math.min( due.size(), limit ) ) )
+        {
+            final Counter counter = entry.getValue();
+            if ( counters.remove( entry.getKey(), counter ) )
+            {
+                result.put( entry.getKey(), new Hits( counter.hits.sum(), Instant.ofEpochMilli( counter.lastAccess.get() ) ) );
+            }
+        }
+        return result;
+    }
+
+    int size()
+    {
+        return counters.size();
+    }
+
+    record Hits(long hits, Instant lastAccess)
+    {
+    }
+
+    // LongAdder and LongAccumulator are striped internally, concurrent hits of the same key do not contend on a single field
+    private static final class Counter
+    {
+        final LongAdder hits = new LongAdder();
+
+        final LongAccumulator lastAccess = new LongAccumulator( Math::max, Long.MIN_VALUE );
+
+        // time of the first hit not written yet
+        final long firstAccess;
+
+        Counter( final long firstAccess )
+        {
+            this.firstAccess = firstAccess;
+        }
+    }
+}
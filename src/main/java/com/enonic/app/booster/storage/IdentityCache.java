@@ -0,0 +1,140 @@
+package com.enonic.app.booster.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import com.enonic.app.booster.CacheItem;
+import com.enonic.app.booster.io.ByteSupply;
+
+/**
+ * Bounded in-heap cache of decompressed bodies of cached responses, for clients that do not accept any compression.
+ * <p>
+ * A body is decompressed only on a repeated uncompressed request, so responses requested only by compression-aware clients
+ * never take space here. Entries are checked against the etag of the cached response, so a replaced response is never served.
+ */
+final class IdentityCache
+{
+    // uncompressed requests of a response before its decompressed body is kept
+    static final int MIN_REQUESTS = 2;
+
+    // responses with counted uncompressed requests, but without decompressed body yet
+    private static final int MAX_CANDIDATES = 10_000;
+
+    private final long maxBytes;
+
+    private final long maxEntryBytes;
+
+    // access-ordered: iteration starts from the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private final LinkedHashMap<String, Integer> candidates = new LinkedHashMap<>( 16, 0.75f, true )
+    {
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<String, Integer> eldest )
+        {
+            return size() > MAX_CANDIDATES;
+        }
+    };
+
+    private long bytes;
+
+    IdentityCache( final long maxBytes )
+    {
+        this.maxBytes = Math.max( 0, maxBytes );
+        // only small responses are worth keeping twice
+        this.maxEntryBytes = this.maxBytes / 8;
+    }
+
+    long maxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Decompressed body of the cached response, if it is requested uncompressed often enough. Every call counts as such request.
+     *
+     * @return decompressed body or {@code null} if the caller should decompress the body on its own
+     */
+    ByteSupply get( final String key, final CacheItem item )
+    {
+        if ( maxBytes == 0 || item.etag() == null || item.contentLength() > maxEntryBytes )
+        {
+            return null;
+        }
+
+        synchronized ( this )
+        {
+            final Entry entry = entries.get( key );
+            if ( entry != null && entry.etag.equals( item.etag() ) )
+            {
+                return entry.body;
+            }
+            if ( candidates.merge( key, 1, Integer::sum ) < MIN_REQUESTS )
+            {
+                return null;
+            }
+            candidates.remove( key );
+        }
+
+        final ByteSupply body;
+        try (InputStream in = new GZIPInputStream( item.gzipData().openStream() ))
+        {
+            body = ByteSupply.of( in.readAllBytes() );
+        }
+        catch ( IOException e )
+        {
+            return null;
+        }
+        if ( body.size() > maxEntryBytes )
+        {
+            return body;
+        }
+
+        synchronized ( this )
+        {
+            removeEntry( key );
+            entries.put( key, new Entry( item.etag(), body ) );
+            bytes += body.size();
+            while ( bytes > maxBytes )
+            {
+                final Iterator<Entry> iterator = entries.values().iterator();
+                bytes -= iterator.next().body.size();
+                iterator.remove();
+            }
+        }
+        return body;
+    }
+
+    synchronized void remove( final String key )
+    {
+        removeEntry( key );
+        candidates.remove( key );
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    synchronized long weightedSize()
+    {
+        return bytes;
+    }
+
+    private void removeEntry( final String key )
+    {
+        final Entry removed = entries.remove( key );
+        if ( removed != null )
+        {
+            bytes -= removed.body.size();
+        }
+    }
+
+    private record Entry(String etag, ByteSupply body)
+    {
+    }
+}
@@ -0,0 +1,159 @@
+package com.enonic.app.booster.storage;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.enonic.xp.project.ProjectName;
+
+/**
+ * Pending invalidations, merged and debounced.
+ * <p>
+ * Broader scopes subsume narrower ones: invalidation of all projects subsumes projects, and a project subsumes its content.
+ * Pending invalidations are released once no new ones arrive during the quiet period, but not later than max delay after the first one.
+ * Urgent invalidations are released without waiting.
+ */
+final class InvalidationQueue
+{
+    // more published content than this is invalidated by project, as most of the project pages are likely affected anyway
+    static final int MAX_DEPENDENTS = 100;
+
+    private boolean all;
+
+    private Set<ProjectName> projects = new HashSet<>();
+
+    // ids of published content per project, for invalidation of dependent pages only
+    private Map<ProjectName, Set<String>> contentIds = new HashMap<>();
+
+    // paths of published content and their ancestors per project, for invalidation of dependent pages only
+    private Map<ProjectName, Set<String>> contentPaths = new HashMap<>();
+
+    private boolean empty = true;
+
+    private boolean urgent;
+
+    private long firstAddedNanos;
+
+    private long lastAddedNanos;
+
+    synchronized void addAll( final long nanos, final boolean urgent )
+    {
+        all = true;
+        added( nanos, urgent );
+    }
+
+    synchronized void addProjects( final Collection<ProjectName> projects, final long nanos, final boolean urgent )
+    {
+        if ( projects.isEmpty() )
+        {
+            return;
+        }
+        this.projects.addAll( projects );
+        added( nanos, urgent );
+    }
+
+    synchronized void addContent( final ProjectName project, final Collection<String> contentIds, final Collection<String> contentPaths,
+                                  final long nanos, final boolean urgent )
+    {
+        this.contentIds.computeIfAbsent( project, k -> new HashSet<>() ).addAll( contentIds );
+        this.contentPaths.computeIfAbsent( project, k -> new HashSet<>() ).addAll( contentPaths );
+        added( nanos, urgent );
+    }
+
+    synchronized void requeue( final Batch batch, final long nanos )
+    {
+        if ( batch.all() )
+        {
+            all = true;
+        }
+        projects.addAll( batch.projects() );
+        batch.contentIds().forEach( ( project, ids ) -> contentIds.computeIfAbsent( project, k -> new HashSet<>() ).addAll( ids ) );
+        batch.contentPaths().forEach( ( project, paths ) -> contentPaths.computeIfAbsent( project, k -> new HashSet<>() ).addAll( paths ) );
+        added( nanos, false );
+    }
+
+    /**
+     * Takes pending invalidations if they are due.
+     *
+     * @return merged invalidations, or {@code null} if there are none or they are not due yet
+     */
+    synchronized Batch poll( final long nanos, final long quietPeriodNanos, final long maxDelayNanos )
+    {
+        if ( empty )
+        {
+            return null;
+        }
+        if ( !urgent && nanos - lastAddedNanos < quietPeriodNanos && nanos - firstAddedNanos < maxDelayNanos )
+        {
+            return null;
+        }
+
+        final Batch batch = merge();
+
+        all = false;
+        projects = new HashSet<>();
+        contentIds = new HashMap<>();
+        contentPaths = new HashMap<>();
+        empty = true;
+        urgent = false;
+        return batch;
+    }
+
+    private Batch merge()
+    {
+        if ( all )
+        {
+            return new Batch( true, Set.of(), Map.of(), Map.of() );
+        }
+
+        final Set<ProjectName> mergedProjects = new HashSet<>( projects );
+        for ( Map.Entry<ProjectName, Set<String>> entry : contentIds.entrySet() )
+        {
+            if ( entry.getValue().size() > MAX_DEPENDENTS )
+            {
+                mergedProjects.add( entry.getKey() );
+            }
+        }
+
+        final Map<ProjectName, Set<String>> mergedContentIds = new HashMap<>();
+        final Map<ProjectName, Set<String>> mergedContentPaths = new HashMap<>();
+        for ( Map.Entry<ProjectName, Set<String>> entry : contentIds.entrySet() )
+        {
+            // whole project is invalidated anyway
+            if ( !mergedProjects.contains( entry.getKey() ) )
+            {
+                mergedContentIds.put( entry.getKey(), entry.getValue() );
+                mergedContentPaths.put( entry.getKey(), contentPaths.getOrDefault( entry.getKey(), Set.of() ) );
+            }
+        }
+        return new Batch( false, mergedProjects, mergedContentIds, mergedContentPaths );
+    }
+
+    private void added( final long nanos, final boolean urgent )
+    {
+        if ( empty )
+        {
+            firstAddedNanos = nanos;
+            empty = false;
+        }
+        lastAddedNanos = nanos;
+        this.urgent |= urgent;
+    }
+
+    /**
+     * Merged invalidations. Projects and content are empty if all projects are invalidated,
+     * content is empty for projects that are invalidated as a whole.
+     */
+    record Batch(boolean all, Set<ProjectName> projects, Map<ProjectName, Set<String>> contentIds,
+                 Map<ProjectName, Set<String>> contentPaths)
+    {
+        Set<ProjectName> allProjects()
+        {
+            final Set<ProjectName> result = new HashSet<>( projects );
+            result.addAll( contentIds.keySet() );
+            return result;
+        }
+    }
+}
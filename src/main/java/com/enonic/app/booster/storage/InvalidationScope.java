@@ -0,0 +1,40 @@
+package com.enonic.app.booster.storage;
+
+import java.util.Locale;
+
+/**
+ * What is invalidated when content is published or unpublished.
+ */
+public enum InvalidationScope
+{
+    /**
+     * All cached pages of the project.
+     */
+    PROJECT,
+
+    /**
+     * Only cached pages of the published content, of its site, and pages that declared a dependency on it.
+     */
+    CONTENT,
+
+    /**
+     * Same as {@link #CONTENT}, and also cached pages of ancestors of the published content up to the site.
+     */
+    PATH;
+
+    public static InvalidationScope from( final String value )
+    {
+        if ( value == null || value.isBlank() )
+        {
+            return PROJECT;
+        }
+        try
+        {
+            return valueOf( value.trim().toUpperCase( Locale.ROOT ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return PROJECT;
+        }
+    }
+}
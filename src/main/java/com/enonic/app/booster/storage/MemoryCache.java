@@ -0,0 +1,185 @@
+package com.enonic.app.booster.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.enonic.app.booster.CacheItem;
+
+/**
+ * Bounded in-heap cache of hot {@link CacheItem}s with bodies held as byte arrays.
+ * <p>
+ * Segmented LRU weighted by the size of stored bodies: new entries land in the probation segment and are promoted to the protected
+ * segment on a second access, so a single pass over cold pages (crawlers) cannot flush frequently requested ones.
+ */
+final class MemoryCache
+{
+    // rough estimate of headers, patterns and object overhead per entry
+    static final long ENTRY_OVERHEAD = 1024;
+
+    private final long maxBytes;
+
+    private final long protectedMaxBytes;
+
+    private final long maxEntryBytes;
+
+    // access-ordered: iteration starts from the least recently used entry
+    private final LinkedHashMap<String, Entry> probationSegment = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private final LinkedHashMap<String, Entry> protectedSegment = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private long probationBytes;
+
+    private long protectedBytes;
+
+    // incremented on every modification. Lets loaders detect that a put or eviction happened while they were reading the node
+    private long version;
+
+    MemoryCache( final long maxBytes )
+    {
+        this.maxBytes = Math.max( 0, maxBytes );
+        this.protectedMaxBytes = this.maxBytes / 5 * 4;
+        // a single entry should not be able to flush a significant part of the cache
+        this.maxEntryBytes = this.maxBytes / 8;
+    }
+
+    long maxBytes()
+    {
+        return maxBytes;
+    }
+
+    boolean isEnabled()
+    {
+        return maxBytes > 0;
+    }
+
+    boolean accepts( final long weight )
+    {
+        return isEnabled() && weight <= maxEntryBytes;
+    }
+
+    synchronized CacheItem get( final String key )
+    {
+        final Entry hot = protectedSegment.get( key );
+        if ( hot != null )
+        {
+            return hot.item;
+        }
+
+        final Entry entry = probationSegment.remove( key );
+        if ( entry == null )
+        {
+            return null;
+        }
+        probationBytes -= entry.weight;
+
+        protectedSegment.put( key, entry );
+        protectedBytes += entry.weight;
+        while ( protectedBytes > protectedMaxBytes )
+        {
+            final Map.Entry<String, Entry> eldest = removeEldest( protectedSegment );
+            protectedBytes -= eldest.getValue().weight;
+            probationSegment.put( eldest.getKey(), eldest.getValue() );
+            probationBytes += eldest.getValue().weight;
+        }
+        return entry.item;
+    }
+
+    synchronized long version()
+    {
+        return version;
+    }
+
+    /**
+     * Puts an item loaded from the repository unless the cache was modified after {@code loadVersion} was taken.
+     */
+    synchronized void load( final String key, final CacheItem item, final long loadVersion )
+    {
+        if ( version == loadVersion )
+        {
+            put( key, item );
+        }
+    }
+
+    synchronized void put( final String key, final CacheItem item )
+    {
+        final long weight = weigh( item );
+        removeEntry( key );
+        if ( !accepts( weight ) )
+        {
+            return;
+        }
+
+        probationSegment.put( key, new Entry( item, weight ) );
+        probationBytes += weight;
+
+        while ( probationBytes + protectedBytes > maxBytes )
+        {
+            if ( !probationSegment.isEmpty() )
+            {
+                probationBytes -= removeEldest( probationSegment ).getValue().weight;
+            }
+            else
+            {
+                protectedBytes -= removeEldest( protectedSegment ).getValue().weight;
+            }
+        }
+    }
+
+    synchronized void remove( final String key )
+    {
+        removeEntry( key );
+    }
+
+    synchronized void clear()
+    {
+        version++;
+        probationSegment.clear();
+        protectedSegment.clear();
+        probationBytes = 0;
+        protectedBytes = 0;
+    }
+
+    synchronized int size()
+    {
+        return probationSegment.size() + protectedSegment.size();
+    }
+
+    synchronized long weightedSize()
+    {
+        return probationBytes + protectedBytes;
+    }
+
+    static long weigh( final CacheItem item )
+    {
+        return ENTRY_OVERHEAD + item.gzipData().size() + ( item.brotliData() == null ? 0 : item.brotliData().size() ) +
+            ( item.zstdData() == null ? 0 : item.zstdData().size() ) + ( item.dczData() == null ? 0 : item.dczData().data().size() );
+    }
+
+    private void removeEntry( final String key )
+    {
+        version++;
+        final Entry probation = probationSegment.remove( key );
+        if ( probation != null )
+        {
+            probationBytes -= probation.weight;
+        }
+        final Entry hot = protectedSegment.remove( key );
+        if ( hot != null )
+        {
+            protectedBytes -= hot.weight;
+        }
+    }
+
+    private static Map.Entry<String, Entry> removeEldest( final LinkedHashMap<String, Entry> segment )
+    {
+        final Iterator<Map.Entry<String, Entry>> iterator = segment.entrySet().iterator();
+        final Map.Entry<String, Entry> eldest = iterator.next();
+        iterator.remove();
+        return Map.entry( eldest.getKey(), eldest.getValue() );
+    }
+
+    private record Entry(CacheItem item, long weight)
+    {
+    }
+}
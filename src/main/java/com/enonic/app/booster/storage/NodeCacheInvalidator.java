@@ -0,0 +1,171 @@
+package com.enonic.app.booster.storage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.enonic.app.booster.InvalidationMetrics;
+import com.enonic.app.booster.query.BoosterQueryBuilder;
+import com.enonic.app.booster.query.Value;
+import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeNotFoundException;
+import com.enonic.xp.node.NodeQuery;
+import com.enonic.xp.node.NodeService;
+import com.enonic.xp.node.RefreshMode;
+import com.enonic.xp.node.UpdateNodeParams;
+
+/**
+ * Invalidates cached responses. Used both by the invalidate task and by the in-process invalidation queue.
+ * <p>
+ * Invalidation of all cache, a project, a site or a domain only raises the generation of the scope, regardless of the number of cached
+ * responses. Nodes of the scope are marked later by {@link BoosterScavenger}. Other invalidations mark matching nodes right away.
+ */
+@Component(service = NodeCacheInvalidator.class)
+public class NodeCacheInvalidator
+{
+    private static final Logger LOG = LoggerFactory.getLogger( NodeCacheInvalidator.class );
+
+    private static final int BATCH_SIZE = 500;
+
+    private final NodeService nodeService;
+
+    private final NodeCacheStore nodeCacheStore;
+
+    private final InvalidationMetrics invalidationMetrics;
+
+    @Activate
+    public NodeCacheInvalidator( @Reference final NodeService nodeService, @Reference final NodeCacheStore nodeCacheStore,
+                                 @Reference final InvalidationMetrics invalidationMetrics )
+    {
+        this.nodeService = nodeService;
+        this.nodeCacheStore = nodeCacheStore;
+        this.invalidationMetrics = invalidationMetrics;
+    }
+
+    public void invalidateProjects( final Collection<String> projects )
+    {
+        if ( projects.isEmpty() )
+        {
+            return;
+        }
+        nodeCacheStore.invalidateScopes( projects.stream().map( ScopeGenerations::project ).toList() );
+    }
+
+    public void invalidateContent( final String project, final String contentId )
+    {
+        invalidateByQuery( Map.of( "project", Value.Single.of( project ), "contentId", Value.Single.of( contentId ) ) );
+    }
+
+    /**
+     * Invalidates pages of the content, pages of the site if the content is a site, pages that depend on the content,
+     * and pages of the content paths.
+     */
+    public void invalidateDependents( final String project, final Collection<String> contentIds, final Collection<String> contentPaths )
+    {
+        if ( contentIds.isEmpty() && contentPaths.isEmpty() )
+        {
+            return;
+        }
+        final Instant now = Instant.now();
+        invalidateByQuery(
+            afterId -> BoosterQueryBuilder.queryDependentNodesPage( project, contentIds, contentPaths, now, afterId, BATCH_SIZE ), now );
+    }
+
+    public void invalidateSite( final String project, final String siteId )
+    {
+        nodeCacheStore.invalidateScopes( List.of( ScopeGenerations.site( project, siteId ) ) );
+    }
+
+    public void invalidateDomain( final String domain )
+    {
+        nodeCacheStore.invalidateScopes( List.of( ScopeGenerations.domain( domain ) ) );
+    }
+
+    public void invalidatePathPrefix( final String domain, final String path )
+    {
+        invalidateByQuery( Map.of( "domain", Value.Single.of( domain ), "path", Value.PathPrefix.of( path ) ) );
+    }
+
+    public void invalidateAll()
+    {
+        nodeCacheStore.invalidateScopes( List.of( ScopeGenerations.ALL ) );
+    }
+
+    /**
+     * Marks nodes as invalidated.
+     */
+    private void invalidateByQuery( final Map<String, Value> fields )
+    {
+        final Instant now = Instant.now();
+        invalidateByQuery( afterId -> BoosterQueryBuilder.queryNodesPage( fields, now, false, afterId, BATCH_SIZE ), now );
+    }
+
+    /**
+     * Marks nodes found page by page. The index is refreshed once, after all nodes are marked.
+     *
+     * @param pageQuery query for a page of nodes following the given node, as in {@link BoosterQueryBuilder#queryNodesPage}
+     */
+    private void invalidateByQuery( final Function<NodeId, NodeQuery> pageQuery, final Instant now )
+    {
+        BoosterContext.runInContext( () -> {
+            final long start = System.nanoTime();
+            int invalidated = 0;
+            try
+            {
+                final QueryPages pages = new QueryPages( nodeService, BATCH_SIZE, pageQuery );
+                while ( pages.hasNext() )
+                {
+                    final List<NodeId> batch = pages.next();
+                    final List<String> batchKeys = new ArrayList<>( batch.size() );
+                    for ( NodeId nodeId : batch )
+                    {
+                        if ( setInvalidatedTime( nodeId, now ) )
+                        {
+                            invalidated++;
+                        }
+                        batchKeys.add( nodeId.toString() );
+                    }
+                    nodeCacheStore.evict( batchKeys );
+                }
+            }
+            finally
+            {
+                if ( invalidated > 0 )
+                {
+                    nodeService.refresh( RefreshMode.SEARCH );
+                }
+            }
+
+            final long took = System.nanoTime() - start;
+            invalidationMetrics.invalidated( invalidated, took );
+            LOG.debug( "Invalidated {} nodes in {} ms", invalidated, TimeUnit.NANOSECONDS.toMillis( took ) );
+        } );
+    }
+
+    private boolean setInvalidatedTime( final NodeId nodeId, final Instant invalidatedTime )
+    {
+        try
+        {
+            nodeService.update( UpdateNodeParams.create()
+                                    .id( nodeId )
+                                    .editor( editor -> editor.data.setInstant( "invalidatedTime", invalidatedTime ) )
+                                    .build() );
+            return true;
+        }
+        catch ( NodeNotFoundException e )
+        {
+            LOG.debug( "Node for invalidate was already deleted", e );
+            return false;
+        }
+    }
+}
@@ -1,40 +1,72 @@
 package com.enonic.app.booster.storage;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HexFormat;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.io.ByteSource;
 
+import com.enonic.app.booster.BoosterConfig;
+import com.enonic.app.booster.BoosterConfigParsed;
 import com.enonic.app.booster.CacheItem;
 import com.enonic.app.booster.CacheMeta;
+import com.enonic.app.booster.CompressionMetrics;
+import com.enonic.app.booster.DictionaryCompressed;
 import com.enonic.app.booster.EntryPattern;
 import com.enonic.app.booster.EntryPatternMapper;
+import com.enonic.app.booster.KeyDimension;
+import com.enonic.app.booster.KeyDimensionMapper;
+import com.enonic.app.booster.concurrent.ThreadFactoryImpl;
+import com.enonic.app.booster.io.BrotliCompression;
 import com.enonic.app.booster.io.ByteSupply;
-import com.enonic.app.booster.utils.MessageDigests;
+import com.enonic.app.booster.io.CompressionPolicy;
+import com.enonic.app.booster.io.ZstdCompression;
+import com.enonic.app.booster.query.BoosterQueryBuilder;
+import com.enonic.app.booster.utils.MimeTypes;
 import com.enonic.app.booster.utils.Numbers;
 import com.enonic.xp.data.PropertySet;
 import com.enonic.xp.data.PropertyTree;
+import com.enonic.xp.event.Event;
+import com.enonic.xp.event.EventPublisher;
 import com.enonic.xp.node.CreateNodeParams;
 import com.enonic.xp.node.DeleteNodeParams;
+import com.enonic.xp.node.FindNodesByQueryResult;
 import com.enonic.xp.node.Node;
 import com.enonic.xp.node.NodeId;
 import com.enonic.xp.node.NodeNotFoundException;
+import com.enonic.xp.node.NodeHit;
 import com.enonic.xp.node.NodeService;
+import com.enonic.xp.node.RefreshMode;
 import com.enonic.xp.node.UpdateNodeParams;
 import com.enonic.xp.util.BinaryReference;
 
-@Component(immediate = true, service = NodeCacheStore.class)
+@Component(immediate = true, service = NodeCacheStore.class, configurationPid = "com.enonic.app.booster")
 public class NodeCacheStore
 {
     private static final Logger LOG = LoggerFactory.getLogger( NodeCacheStore.class );
@@ -43,16 +75,135 @@ public class NodeCacheStore
 
     public static final BinaryReference BROTLI_DATA_BINARY_REFERENCE = BinaryReference.from( "data.br" );
 
+    public static final BinaryReference ZSTD_DATA_BINARY_REFERENCE = BinaryReference.from( "data.zst" );
+
+    public static final BinaryReference DCZ_DATA_BINARY_REFERENCE = BinaryReference.from( "data.dcz" );
+
+    public static final BinaryReference DICTIONARY_BINARY_REFERENCE = BinaryReference.from( "dictionary" );
+
+    public static final String EVICT_EVENT_TYPE = "custom.booster.evict";
+
+    public static final String GENERATION_EVENT_TYPE = "custom.booster.generation";
+
+    private static final int MAX_KNOWN_VARIANTS = 10_000;
+
+    // compressions waiting for the compress thread. When exceeded, responses stay gzip-only until stored again
+    private static final int MAX_PENDING_COMPRESSIONS = 256;
+
+    // dictionaries kept per site and origin. Cached responses stored before the latest dictionary still link the previous one
+    private static final int KEPT_DICTIONARIES = 2;
+
+    // hits of a response written on next flush. Fewer hits wait in memory for FLUSH_MAX_DELAY
+    private static final int FLUSH_MIN_HITS = 10;
+
+    // lastAccess of rarely requested cache nodes lags behind by this delay, coarse enough for eviction order
+    private static final Duration FLUSH_MAX_DELAY = Duration.ofMinutes( 10 );
+
+    // cache nodes updated in a single flush, hits of the rest are written on next flushes
+    private static final int MAX_FLUSH_WRITES = 2_000;
+
+    private static final int MAX_EVICT_EVENT_KEYS = 1_000;
+
     private final NodeService nodeService;
 
+    private final EventPublisher eventPublisher;
+
+    private volatile MemoryCache memoryCache = new MemoryCache( 0 );
+
+    private volatile IdentityCache identityCache = new IdentityCache( 0 );
+
+    private final HitCounter hitCounter = new HitCounter();
+
+    private final ScopeGenerations scopeGenerations = new ScopeGenerations();
+
+    // GreedyDual inflation value, raised by the scavenger and shared with other cluster nodes through the cache parent node
+    private volatile double inflation;
+
+    // keys of responses stored or compressed on this cluster node since the previous flush, to be evicted on other cluster nodes
+    private final Set<String> pendingEvictions = ConcurrentHashMap.newKeySet();
+
+    // URLs cached as variants, by cache key of the URL
+    private final ConcurrentMap<String, Variants> variants = new ConcurrentHashMap<>();
+
+    private volatile int maxVariants = 32;
+
+    private volatile CompressionPolicy compressionPolicy = CompressionPolicy.DEFAULT;
+
+    private volatile Set<String> brotliExcludeMimeTypes = Set.of();
+
+    private volatile Set<String> zstdExcludeMimeTypes = Set.of();
+
+    private volatile boolean compressionDictionaries;
+
+    // compression dictionaries by id
+    private volatile Map<String, CompressionDictionary> dictionaries = Map.of();
+
+    private final Executor compressExecutor;
+
+    private final CompressionMetrics compressionMetrics;
+
     @Activate
-    public NodeCacheStore( @Reference final NodeService nodeService )
+    public NodeCacheStore( @Reference final NodeService nodeService, @Reference final EventPublisher eventPublisher,
+                           @Reference final CompressionMetrics compressionMetrics )
+    {
+        this( nodeService, eventPublisher,
+              new ThreadPoolExecutor( 1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>( MAX_PENDING_COMPRESSIONS ),
+                                      new ThreadFactoryImpl( "booster-compress-%d" ), new ThreadPoolExecutor.DiscardPolicy() ),
+              compressionMetrics );
+    }
+
+    public NodeCacheStore( final NodeService nodeService, final EventPublisher eventPublisher, final Executor compressExecutor,
+                           final CompressionMetrics compressionMetrics )
     {
         this.nodeService = nodeService;
+        this.eventPublisher = eventPublisher;
+        this.compressExecutor = compressExecutor;
+        this.compressionMetrics = compressionMetrics;
+    }
+
+    @Activate
+    @Modified
+    public void activate( final BoosterConfig config )
+    {
+        final BoosterConfigParsed parsed = BoosterConfigParsed.parse( config );
+        this.maxVariants = parsed.maxVariants();
+        this.compressionPolicy = CompressionPolicy.create( parsed.compressionMinBytes(), parsed.brotliQuality(), parsed.zstdLevel() );
+        this.brotliExcludeMimeTypes = parsed.brotliExcludeMimeTypes();
+        this.zstdExcludeMimeTypes = parsed.zstdExcludeMimeTypes();
+        this.compressionDictionaries = parsed.compressionDictionaries();
+        final long memoryCacheMaxBytes = parsed.memoryCacheMaxBytes();
+        if ( memoryCacheMaxBytes != memoryCache.maxBytes() )
+        {
+            this.memoryCache = new MemoryCache( memoryCacheMaxBytes );
+        }
+        // decompressed bodies take a part of the memory tier budget
+        if ( memoryCacheMaxBytes / 8 != identityCache.maxBytes() )
+        {
+            this.identityCache = new IdentityCache( memoryCacheMaxBytes / 8 );
+        }
+    }
+
+    @Deactivate
+    public void deactivate()
+    {
+        if ( compressExecutor instanceof ExecutorService executorService )
+        {
+            executorService.shutdownNow();
+        }
     }
 
     public CacheItem get( final String cacheKey )
     {
+        final MemoryCache memoryCache = this.memoryCache;
+        final CacheItem hot = memoryCache.get( cacheKey );
+        if ( hot != null )
+        {
+            LOG.debug( "Cached response {} found in memory", cacheKey );
+            hitCounter.record( cacheKey, Instant.now() );
+            return hot;
+        }
+        final long loadVersion = memoryCache.version();
+
         return BoosterContext.callInContext( () -> {
 
             final NodeId nodeId = NodeId.from( cacheKey );
@@ -62,6 +213,13 @@ public class NodeCacheStore
             try
             {
                 node = nodeService.getById( nodeId );
+                if ( Boolean.TRUE.equals( node.data().getBoolean( "variants" ) ) )
+                {
+                    LOG.debug( "Cached response {} is stored as variants", nodeId );
+                    rememberVariants( cacheKey, mapVariants( node.data() ) );
+                    return null;
+                }
+
                 final Integer contentLength = Numbers.safeLongToInteger( node.data().getLong( "contentLength" ), null );
                 if ( contentLength == null )
                 {
@@ -74,9 +232,11 @@ public class NodeCacheStore
                 final int status = Numbers.safeLongToInteger( node.data().getLong( "status" ), 200 );
                 final String etag = node.data().getString( "etag" );
                 final Instant cachedTime = node.data().getInstant( "cachedTime" );
-                final Instant invalidatedTime = node.data().getInstant( "invalidatedTime" );
+                final Instant invalidatedTime = resolveInvalidatedTime( node.data() );
                 final Instant expireTime = node.data().getInstant( "expireTime" );
                 final Integer age = Numbers.safeLongToInteger( node.data().getLong( "age" ), null );
+                final Integer staleWhileRevalidate = Numbers.safeLongToInteger( node.data().getLong( "staleWhileRevalidate" ), null );
+                final Integer staleIfError = Numbers.safeLongToInteger( node.data().getLong( "staleIfError" ), null );
                 final List<EntryPattern> bypassHeaders = EntryPatternMapper.mapEntryPatterns( node.data().getSets( "configBypassHeaders" ) );
                 final List<EntryPattern> bypassCookies = EntryPatternMapper.mapEntryPatterns( node.data().getSets( "configBypassCookies" ) );
 
@@ -87,12 +247,33 @@ public class NodeCacheStore
                     return null;
                 }
 
-                // Might want to move brotli compression in background process. In this case brotli-compressed body would be optional
+                // brotli-compressed body is attached in background, after the response is stored
                 final ByteSource brotliBody = nodeService.getBinary( nodeId, BROTLI_DATA_BINARY_REFERENCE );
 
-                return new CacheItem( status, contentType, headers, cachedTime, expireTime, age, invalidatedTime, contentLength, etag,
-                                      bypassHeaders, bypassCookies, ByteSupply.of( gzipBody ),
-                                      brotliBody == null ? null : ByteSupply.of( brotliBody ) );
+                // absent for responses stored before zstd support or with zstd disabled for the content type
+                final ByteSource zstdBody = nodeService.getBinary( nodeId, ZSTD_DATA_BINARY_REFERENCE );
+
+                // absent for responses stored before the site had a compression dictionary
+                final DictionaryCompressed dczData = mapDictionaryCompressed( nodeId, node.data() );
+
+                final CacheItem cacheItem =
+                    new CacheItem( status, contentType, headers, cachedTime, expireTime, age, invalidatedTime, contentLength, etag,
+                                   staleWhileRevalidate, staleIfError, bypassHeaders, bypassCookies, ByteSupply.of( gzipBody ),
+                                   brotliBody == null ? null : ByteSupply.of( brotliBody ),
+                                   zstdBody == null ? null : ByteSupply.of( zstdBody ), dczData );
+
+                hitCounter.record( cacheKey, Instant.now() );
+
+                if ( memoryCache.isEnabled() && memoryCache.accepts( MemoryCache.weigh( cacheItem ) ) )
+                {
+                    final CacheItem inMemory = toInMemory( cacheItem );
+                    if ( inMemory != null )
+                    {
+                        memoryCache.load( cacheKey, inMemory, loadVersion );
+                        return inMemory;
+                    }
+                }
+                return cacheItem;
             }
             catch ( NodeNotFoundException e )
             {
@@ -104,7 +285,23 @@ public class NodeCacheStore
         } );
     }
 
-    public void put( final String cacheKey, CacheItem cacheItem, final CacheMeta cacheMeta )
+    /**
+     * Invalidation time of the cached response, either set on the node or derived from the generations of its scopes.
+     */
+    Instant resolveInvalidatedTime( final PropertyTree data )
+    {
+        final Instant invalidatedTime = data.getInstant( "invalidatedTime" );
+        if ( invalidatedTime != null )
+        {
+            return invalidatedTime;
+        }
+        final Long generation = data.getLong( "generation" );
+        final long scopeGeneration =
+            scopeGenerations.of( data.getString( "project" ), data.getString( "siteId" ), data.getString( "domain" ) );
+        return scopeGeneration > ( generation == null ? 0 : generation ) ? Instant.ofEpochMilli( scopeGeneration ) : null;
+    }
+
+    public void put( final String cacheKey, final CacheItem cacheItem, final CacheMeta cacheMeta )
     {
         final NodeId nodeId = NodeId.from( cacheKey );
 
@@ -112,8 +309,17 @@ public class NodeCacheStore
 
         final ByteSource brotliByteSource = cacheItem.brotliData() == null ? null : ByteSupply.asByteSource( cacheItem.brotliData() );
 
+        final ByteSource zstdByteSource = cacheItem.zstdData() == null ? null : ByteSupply.asByteSource( cacheItem.zstdData() );
+
+        final ByteSource dczByteSource = cacheItem.dczData() == null ? null : ByteSupply.asByteSource( cacheItem.dczData().data() );
+
+        final MemoryCache memoryCache = this.memoryCache;
+        memoryCache.remove( cacheKey );
+        identityCache.remove( cacheKey );
+        variants.remove( cacheKey );
+
         BoosterContext.runInContext( () -> {
-            final PropertyTree data = buildData( cacheItem, cacheMeta, brotliByteSource != null );
+            final PropertyTree data = buildData( cacheItem, cacheMeta );
 
             if ( nodeService.nodeExists( nodeId ) )
             {
@@ -123,13 +329,25 @@ public class NodeCacheStore
                 {
                     final UpdateNodeParams.Builder updateParams = UpdateNodeParams.create()
                         .id( nodeId )
-                        .editor( editor -> editor.data = data )
+                        .editor( editor -> {
+                            copyAccessStats( editor.data, data );
+                            editor.data = data;
+                        } )
                         .attachBinary( GZIP_DATA_BINARY_REFERENCE, gzipByteSource );
                     if ( brotliByteSource != null )
                     {
                         updateParams.attachBinary( BROTLI_DATA_BINARY_REFERENCE, brotliByteSource );
                     }
+                    if ( zstdByteSource != null )
+                    {
+                        updateParams.attachBinary( ZSTD_DATA_BINARY_REFERENCE, zstdByteSource );
+                    }
+                    if ( dczByteSource != null )
+                    {
+                        updateParams.attachBinary( DCZ_DATA_BINARY_REFERENCE, dczByteSource );
+                    }
                     nodeService.update( updateParams.build() );
+                    rememberInMemory( memoryCache, cacheKey, cacheItem, cacheMeta );
                 }
                 catch ( Exception e )
                 {
@@ -151,8 +369,17 @@ public class NodeCacheStore
                     {
                         createParams.attachBinary( BROTLI_DATA_BINARY_REFERENCE, brotliByteSource );
                     }
+                    if ( zstdByteSource != null )
+                    {
+                        createParams.attachBinary( ZSTD_DATA_BINARY_REFERENCE, zstdByteSource );
+                    }
+                    if ( dczByteSource != null )
+                    {
+                        createParams.attachBinary( DCZ_DATA_BINARY_REFERENCE, dczByteSource );
+                    }
 
                     nodeService.create( createParams.build() );
+                    rememberInMemory( memoryCache, cacheKey, cacheItem, cacheMeta );
                 }
                 catch ( Exception e )
                 {
@@ -160,9 +387,530 @@ public class NodeCacheStore
                 }
             }
         } );
+
+        // other cluster nodes may hold the previous version of the response in memory
+        pendingEvictions.add( cacheKey );
+
+        // zstd goes first, it takes less time and is preferred by more clients
+        if ( zstdByteSource == null )
+        {
+            compressZstdInBackground( cacheKey, cacheItem );
+        }
+        if ( dczByteSource == null )
+        {
+            compressWithDictionaryInBackground( cacheKey, cacheItem, cacheMeta );
+        }
+        if ( brotliByteSource == null )
+        {
+            compressBrotliInBackground( cacheKey, cacheItem );
+        }
+    }
+
+    /**
+     * Decompressed body of the cached response for clients that do not accept compression.
+     * Kept in memory for small responses repeatedly requested uncompressed, so they are not decompressed on every request.
+     *
+     * @return decompressed body or {@code null} if the caller should decompress the body on its own
+     */
+    public ByteSupply identityBody( final String cacheKey, final CacheItem cacheItem )
+    {
+        return identityCache.get( cacheKey, cacheItem );
+    }
+
+    private void compressZstdInBackground( final String cacheKey, final CacheItem cacheItem )
+    {
+        if ( !ZstdCompression.isAvailable() || isExcluded( zstdExcludeMimeTypes, cacheItem.contentType() ) )
+        {
+            return;
+        }
+        if ( !compressionPolicy.shouldCompress( cacheItem.contentLength() ) )
+        {
+            compressionMetrics.skipped( "zstd" );
+            return;
+        }
+        try
+        {
+            compressExecutor.execute( () -> attachZstd( cacheKey, cacheItem ) );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            LOG.debug( "Zstd compression of cached response {} is skipped", cacheKey );
+        }
+    }
+
+    private void compressBrotliInBackground( final String cacheKey, final CacheItem cacheItem )
+    {
+        if ( !BrotliCompression.isAvailable() || isExcluded( brotliExcludeMimeTypes, cacheItem.contentType() ) )
+        {
+            return;
+        }
+        if ( !compressionPolicy.shouldCompress( cacheItem.contentLength() ) )
+        {
+            compressionMetrics.skipped( "br" );
+            return;
+        }
+        try
+        {
+            compressExecutor.execute( () -> attachBrotli( cacheKey, cacheItem ) );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            LOG.debug( "Brotli compression of cached response {} is skipped", cacheKey );
+        }
+    }
+
+    /**
+     * Compresses the response with the compression dictionary of the site in background, if the site has one for the URL.
+     */
+    private void compressWithDictionaryInBackground( final String cacheKey, final CacheItem cacheItem, final CacheMeta cacheMeta )
+    {
+        if ( !compressionDictionaries || !ZstdCompression.isAvailable() || isExcluded( zstdExcludeMimeTypes, cacheItem.contentType() ) ||
+            !compressionPolicy.shouldCompress( cacheItem.contentLength() ) )
+        {
+            return;
+        }
+        final CompressionDictionary dictionary = dictionaryFor( cacheMeta.siteId(), cacheMeta.url() );
+        if ( dictionary != null )
+        {
+            submitDictionaryCompression( cacheKey, dictionary );
+        }
+    }
+
+    private void submitDictionaryCompression( final String cacheKey, final CompressionDictionary dictionary )
+    {
+        try
+        {
+            compressExecutor.execute( () -> attachDictionaryCompressed( cacheKey, dictionary ) );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            LOG.debug( "Dictionary compression of cached response {} is skipped", cacheKey );
+        }
+    }
+
+    private DictionaryCompressed compress( final ByteSupply gzipData, final long size, final CompressionDictionary dictionary )
+        throws IOException
+    {
+        final int level = compressionPolicy.zstdLevel();
+        final ByteSupply dczData =
+            ZstdCompression.recompressGzipDcz( gzipData, level, dictionary.data().toByteArray(), dictionary.hash() );
+        compressionMetrics.compressed( "dcz", level, size, dczData.size() );
+        return new DictionaryCompressed( dictionary.id(), dictionary.url(), dczData );
+    }
+
+    private static boolean isExcluded( final Set<String> excludeMimeTypes, final String contentType )
+    {
+        return contentType != null && MimeTypes.isContentTypeSupported( excludeMimeTypes, contentType );
+    }
+
+    /**
+     * Compresses stored response with brotli and attaches it to the cache node,
+     * unless the node was replaced with another response in the meantime.
+     */
+    private void attachBrotli( final String cacheKey, final CacheItem cacheItem )
+    {
+        final ByteSupply brotliData;
+        try
+        {
+            final int quality = compressionPolicy.brotliQuality( cacheItem.contentLength() );
+            brotliData = BrotliCompression.recompressGzip( cacheItem.gzipData(), quality );
+            compressionMetrics.compressed( "br", quality, cacheItem.contentLength(), brotliData.size() );
+        }
+        catch ( IOException e )
+        {
+            LOG.debug( "Cannot compress cached response {} with brotli", cacheKey, e );
+            return;
+        }
+        attach( cacheKey, cacheItem, "brotliData", BROTLI_DATA_BINARY_REFERENCE, brotliData );
+    }
+
+    /**
+     * Compresses stored response with zstd and attaches it to the cache node,
+     * unless the node was replaced with another response in the meantime.
+     * Until then, the response is served with gzip to clients that prefer zstd.
+     */
+    private void attachZstd( final String cacheKey, final CacheItem cacheItem )
+    {
+        final ByteSupply zstdData;
+        try
+        {
+            final int level = compressionPolicy.zstdLevel();
+            zstdData = ZstdCompression.recompressGzip( cacheItem.gzipData(), level );
+            compressionMetrics.compressed( "zstd", level, cacheItem.contentLength(), zstdData.size() );
+        }
+        catch ( IOException e )
+        {
+            LOG.debug( "Cannot compress cached response {} with zstd", cacheKey, e );
+            return;
+        }
+        attach( cacheKey, cacheItem, "zstdData", ZSTD_DATA_BINARY_REFERENCE, zstdData );
+    }
+
+    private void attach( final String cacheKey, final CacheItem cacheItem, final String field, final BinaryReference reference,
+                         final ByteSupply compressed )
+    {
+        final NodeId nodeId = NodeId.from( cacheKey );
+        BoosterContext.runInContext( () -> {
+            try
+            {
+                nodeService.update( UpdateNodeParams.create().id( nodeId ).editor( editor -> {
+                    if ( !Objects.equals( editor.data.getString( "etag" ), cacheItem.etag() ) ||
+                        !Objects.equals( editor.data.getInstant( "cachedTime" ), cacheItem.cachedTime() ) )
+                    {
+                        // attached binary is dropped, as it is not referenced
+                        LOG.debug( "Cached response {} was replaced before {} compression completed", nodeId, field );
+                        return;
+                    }
+                    final Long storedSize = editor.data.getLong( "storedSize" );
+                    editor.data.setLong( "storedSize", ( storedSize == null ? 0 : storedSize ) + compressed.size() );
+                    editor.data.setBinaryReference( field, reference );
+                } ).attachBinary( reference, ByteSupply.asByteSource( compressed ) ).build() );
+            }
+            catch ( NodeNotFoundException e )
+            {
+                LOG.debug( "Cached node was deleted before {} compression completed {}", field, nodeId );
+            }
+        } );
+
+        // in-memory copies do not have the compressed body yet
+        evictLocally( List.of( cacheKey ) );
+        pendingEvictions.add( cacheKey );
+    }
+
+    /**
+     * Compression dictionary by its id, {@code null} if it is not known on this cluster node.
+     */
+    public CompressionDictionary dictionary( final String id )
+    {
+        return dictionaries.get( id );
+    }
+
+    /**
+     * The latest compression dictionary of the site trained on URLs of the origin, {@code null} if there is none.
+     */
+    public CompressionDictionary latestDictionary( final String siteId, final String origin )
+    {
+        CompressionDictionary latest = null;
+        for ( CompressionDictionary dictionary : dictionaries.values() )
+        {
+            if ( Objects.equals( siteId, dictionary.siteId() ) && Objects.equals( origin, dictionary.origin() ) &&
+                ( latest == null || dictionary.createdTime().isAfter( latest.createdTime() ) ) )
+            {
+                latest = dictionary;
+            }
+        }
+        return latest;
+    }
+
+    private CompressionDictionary dictionaryFor( final String siteId, final String url )
+    {
+        if ( siteId == null || url == null )
+        {
+            return null;
+        }
+        final CompressionDictionary latest = latestDictionary( siteId, CompressionDictionary.origin( url ) );
+        return latest != null && latest.matches( url ) ? latest : null;
+    }
+
+    /**
+     * Stores a trained compression dictionary and compresses cached responses it was trained on with it, in background.
+     * Other cached responses of the site are compressed with the dictionary, in background as well, once they are stored again.
+     * Only the latest dictionaries of the site and origin are kept.
+     */
+    public void putDictionary( final CompressionDictionary dictionary, final Collection<String> cacheKeys )
+    {
+        BoosterContext.runInContext( () -> {
+            final NodeId nodeId = NodeId.from( dictionary.id() );
+            if ( nodeService.nodeExists( nodeId ) )
+            {
+                return;
+            }
+            LOG.debug( "Creating compression dictionary {} of site {} on {}", nodeId, dictionary.siteId(), dictionary.origin() );
+            final PropertyTree data = new PropertyTree();
+            data.setString( "siteId", dictionary.siteId() );
+            data.setString( "origin", dictionary.origin() );
+            data.setString( "pathPrefix", dictionary.pathPrefix() );
+            data.setInstant( "createdTime", dictionary.createdTime() );
+            data.setLong( "size", (long) dictionary.data().size() );
+            data.setBinaryReference( "dictionary", DICTIONARY_BINARY_REFERENCE );
+            nodeService.create( CreateNodeParams.create()
+                                    .name( dictionary.id() )
+                                    .parent( BoosterContext.DICTIONARY_PARENT_NODE )
+                                    .setNodeId( nodeId )
+                                    .data( data )
+                                    .attachBinary( DICTIONARY_BINARY_REFERENCE, ByteSupply.asByteSource( dictionary.data() ) )
+                                    .build() );
+            nodeService.refresh( RefreshMode.SEARCH );
+        } );
+        reloadDictionaries();
+
+        final List<CompressionDictionary> outdated = dictionaries.values()
+            .stream()
+            .filter( d -> Objects.equals( d.siteId(), dictionary.siteId() ) && Objects.equals( d.origin(), dictionary.origin() ) )
+            .sorted( Comparator.comparing( CompressionDictionary::createdTime ).reversed() )
+            .skip( KEPT_DICTIONARIES )
+            .toList();
+        if ( !outdated.isEmpty() )
+        {
+            BoosterContext.runInContext( () -> {
+                for ( CompressionDictionary removed : outdated )
+                {
+                    LOG.debug( "Deleting outdated compression dictionary {}", removed.id() );
+                    try
+                    {
+                        nodeService.delete( DeleteNodeParams.create().nodeId( NodeId.from( removed.id() ) ).build() );
+                    }
+                    catch ( NodeNotFoundException e )
+                    {
+                        LOG.debug( "Compression dictionary was already deleted {}", removed.id() );
+                    }
+                }
+                nodeService.refresh( RefreshMode.SEARCH );
+            } );
+            reloadDictionaries();
+        }
+
+        for ( String cacheKey : cacheKeys )
+        {
+            submitDictionaryCompression( cacheKey, dictionary );
+        }
+    }
+
+    /**
+     * Reloads compression dictionaries stored in repository, in case they were trained on other cluster node.
+     * Only dictionaries not yet known are read.
+     */
+    public void reloadDictionaries()
+    {
+        if ( !compressionDictionaries )
+        {
+            this.dictionaries = Map.of();
+            return;
+        }
+        final Map<String, CompressionDictionary> known = this.dictionaries;
+        this.dictionaries = BoosterContext.callInContext( () -> {
+            final FindNodesByQueryResult result = nodeService.findByQuery( BoosterQueryBuilder.queryDictionaries() );
+            final Map<String, CompressionDictionary> loaded = new HashMap<>();
+            for ( NodeHit hit : result.getNodeHits() )
+            {
+                final String id = hit.getNodeId().toString();
+                final CompressionDictionary dictionary = known.containsKey( id ) ? known.get( id ) : loadDictionary( hit.getNodeId() );
+                if ( dictionary != null )
+                {
+                    loaded.put( id, dictionary );
+                }
+            }
+            return Map.copyOf( loaded );
+        } );
+    }
+
+    private CompressionDictionary loadDictionary( final NodeId nodeId )
+    {
+        try
+        {
+            final Node node = nodeService.getById( nodeId );
+            final ByteSource data = nodeService.getBinary( nodeId, DICTIONARY_BINARY_REFERENCE );
+            if ( data == null )
+            {
+                return null;
+            }
+            return new CompressionDictionary( nodeId.toString(), node.data().getString( "siteId" ), node.data().getString( "origin" ),
+                                              node.data().getString( "pathPrefix" ), node.data().getInstant( "createdTime" ),
+                                              ByteSupply.of( data.read() ) );
+        }
+        catch ( NodeNotFoundException | IOException e )
+        {
+            LOG.debug( "Cannot read compression dictionary {}", nodeId, e );
+            return null;
+        }
+    }
+
+    /**
+     * Compresses stored response with the dictionary and attaches it to the cache node, replacing the one compressed with a
+     * previous dictionary, unless the node was replaced with another response in the meantime.
+     */
+    private void attachDictionaryCompressed( final String cacheKey, final CompressionDictionary dictionary )
+    {
+        final NodeId nodeId = NodeId.from( cacheKey );
+        BoosterContext.runInContext( () -> {
+            try
+            {
+                final Node node = nodeService.getById( nodeId );
+                final Long contentLength = node.data().getLong( "contentLength" );
+                if ( dictionary.id().equals( node.data().getString( "dictionaryId" ) ) || contentLength == null ||
+                    !compressionPolicy.shouldCompress( contentLength ) )
+                {
+                    return;
+                }
+                final ByteSource gzipBody = nodeService.getBinary( nodeId, GZIP_DATA_BINARY_REFERENCE );
+                if ( gzipBody == null )
+                {
+                    return;
+                }
+                final String etag = node.data().getString( "etag" );
+                final Instant cachedTime = node.data().getInstant( "cachedTime" );
+                final ByteSource previous =
+                    node.data().getString( "dictionaryId" ) == null ? null : nodeService.getBinary( nodeId, DCZ_DATA_BINARY_REFERENCE );
+                final long previousSize = previous == null ? 0 : previous.size();
+
+                final DictionaryCompressed dczData = compress( ByteSupply.of( gzipBody ), contentLength, dictionary );
+                nodeService.update( UpdateNodeParams.create().id( nodeId ).editor( editor -> {
+                    if ( !Objects.equals( editor.data.getString( "etag" ), etag ) ||
+                        !Objects.equals( editor.data.getInstant( "cachedTime" ), cachedTime ) )
+                    {
+                        // attached binary is dropped, as it is not referenced
+                        LOG.debug( "Cached response {} was replaced before dictionary compression completed", nodeId );
+                        return;
+                    }
+                    final Long storedSize = editor.data.getLong( "storedSize" );
+                    editor.data.setLong( "storedSize", ( storedSize == null ? 0 : storedSize ) - previousSize + dczData.data().size() );
+                    editor.data.setString( "dictionaryId", dczData.dictionaryId() );
+                    editor.data.setString( "dictionaryUrl", dczData.dictionaryUrl() );
+                    editor.data.setBinaryReference( "dczData", DCZ_DATA_BINARY_REFERENCE );
+                } ).attachBinary( DCZ_DATA_BINARY_REFERENCE, ByteSupply.asByteSource( dczData.data() ) ).build() );
+            }
+            catch ( NodeNotFoundException e )
+            {
+                LOG.debug( "Cached node was deleted before dictionary compression completed {}", nodeId );
+            }
+            catch ( IOException e )
+            {
+                LOG.debug( "Cannot compress cached response {} with dictionary", nodeId, e );
+            }
+        } );
+
+        // in-memory copies are compressed with a previous dictionary or not at all
+        evictLocally( List.of( cacheKey ) );
+        pendingEvictions.add( cacheKey );
+    }
+
+    /**
+     * Dimensions of a URL cached as variants, if known on this cluster node. Learned from {@link #get} or {@link #putVariant}.
+     */
+    public List<KeyDimension> keyDimensions( final String cacheKey )
+    {
+        final Variants known = variants.get( cacheKey );
+        return known == null ? List.of() : known.dimensions();
     }
 
-    private static PropertyTree buildData( final CacheItem cacheItem, final CacheMeta cacheMeta, boolean withBrotli )
+    /**
+     * Registers a stored variant of a URL. The cache key of the URL holds a node without response body,
+     * that lists dimensions variants are keyed by and keys of cached variants, earliest first.
+     * <p>
+     * If the URL has more than {@code maxVariants} variants, the earliest ones are removed.
+     * Variants keyed by previous dimensions are removed as well.
+     * Concurrent registrations on different cluster nodes may lose track of a variant, it is then only removed by regular eviction.
+     */
+    public void putVariant( final String cacheKey, final List<KeyDimension> dimensions, final String variantKey, final CacheItem variant,
+                            final CacheMeta cacheMeta )
+    {
+        final Variants known = variants.get( cacheKey );
+        final List<String> keys = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        if ( known != null && known.dimensions().equals( dimensions ) )
+        {
+            if ( known.keys().contains( variantKey ) )
+            {
+                return;
+            }
+            keys.addAll( known.keys() );
+        }
+        else if ( known != null )
+        {
+            removed.addAll( known.keys() );
+            removed.remove( variantKey );
+        }
+        keys.add( variantKey );
+        while ( keys.size() > maxVariants )
+        {
+            removed.add( keys.remove( 0 ) );
+        }
+
+        final NodeId nodeId = NodeId.from( cacheKey );
+        memoryCache.remove( cacheKey );
+
+        BoosterContext.runInContext( () -> {
+            final PropertyTree data = new PropertyTree();
+            data.setBoolean( "variants", true );
+            setKeyDimensionsToPropertyTree( data, dimensions );
+            data.addStrings( "variantKeys", keys.toArray( String[]::new ) );
+            setMeta( data, cacheMeta );
+            data.setLong( "storedSize", 0L );
+            data.setInstant( "cachedTime", variant.cachedTime() );
+            data.setLong( "hits", 0L );
+            data.setInstant( "lastAccess", variant.cachedTime() );
+            data.setInstant( "expireTime", variant.expireTime() );
+            try
+            {
+                if ( nodeService.nodeExists( nodeId ) )
+                {
+                    LOG.debug( "Updating existing cache node with variants {}", nodeId );
+                    nodeService.update( UpdateNodeParams.create().id( nodeId ).editor( editor -> editor.data = data ).build() );
+                }
+                else
+                {
+                    LOG.debug( "Creating new cache node with variants {}", nodeId );
+                    nodeService.create( CreateNodeParams.create()
+                                            .name( cacheKey )
+                                            .parent( BoosterContext.CACHE_PARENT_NODE )
+                                            .setNodeId( nodeId )
+                                            .data( data )
+                                            .build() );
+                }
+                rememberVariants( cacheKey, new Variants( dimensions, List.copyOf( keys ) ) );
+            }
+            catch ( Exception e )
+            {
+                LOG.debug( "Cannot store node with variants {}", nodeId, e );
+            }
+        } );
+
+        // other cluster nodes may hold previous variants or the previous response in memory
+        pendingEvictions.add( cacheKey );
+
+        for ( String removedKey : removed )
+        {
+            LOG.debug( "Removing variant {} of {}", removedKey, cacheKey );
+            remove( removedKey );
+        }
+    }
+
+    private void rememberVariants( final String cacheKey, final Variants known )
+    {
+        if ( variants.size() >= MAX_KNOWN_VARIANTS )
+        {
+            // variants are re-read from storage on demand
+            variants.clear();
+        }
+        variants.put( cacheKey, known );
+    }
+
+    private static Variants mapVariants( final PropertyTree data )
+    {
+        final List<KeyDimension> dimensions =
+            KeyDimensionMapper.mapKeyDimensions( data.getSets( "keyHeaders" ), data.getSets( "keyCookies" ) );
+        final List<String> keys = new ArrayList<>();
+        for ( String key : data.getStrings( "variantKeys" ) )
+        {
+            keys.add( key );
+        }
+        return new Variants( dimensions, List.copyOf( keys ) );
+    }
+
+    private DictionaryCompressed mapDictionaryCompressed( final NodeId nodeId, final PropertyTree data )
+    {
+        final String dictionaryId = data.getString( "dictionaryId" );
+        if ( dictionaryId == null )
+        {
+            return null;
+        }
+        final ByteSource dczBody = nodeService.getBinary( nodeId, DCZ_DATA_BINARY_REFERENCE );
+        return dczBody == null
+            ? null
+            : new DictionaryCompressed( dictionaryId, data.getString( "dictionaryUrl" ), ByteSupply.of( dczBody ) );
+    }
+
+    private PropertyTree buildData( final CacheItem cacheItem, final CacheMeta cacheMeta )
     {
         final PropertyTree data = new PropertyTree();
         data.setLong( "status", (long) cacheItem.status() );
@@ -171,19 +919,32 @@ public class NodeCacheStore
         data.setLong( "contentLength", Numbers.longValue( cacheItem.contentLength() ) );
         data.setLong( "age", Numbers.longValue( cacheItem.age() ) );
         data.setString( "etag", cacheItem.etag() );
+        data.setLong( "staleWhileRevalidate", Numbers.longValue( cacheItem.staleWhileRevalidate() ) );
+        data.setLong( "staleIfError", Numbers.longValue( cacheItem.staleIfError() ) );
+        data.setLong( "storedSize", cacheItem.gzipData().size() + ( cacheItem.brotliData() == null ? 0L : cacheItem.brotliData().size() ) +
+            ( cacheItem.zstdData() == null ? 0L : cacheItem.zstdData().size() ) +
+            ( cacheItem.dczData() == null ? 0L : cacheItem.dczData().data().size() ) );
         data.setBinaryReference( "gzipData", GZIP_DATA_BINARY_REFERENCE );
-        if ( withBrotli )
+        if ( cacheItem.brotliData() != null )
         {
             data.setBinaryReference( "brotliData", BROTLI_DATA_BINARY_REFERENCE );
         }
-        data.setString( "url", cacheMeta.url() );
-        data.setString( "domain", cacheMeta.domain() );
-        data.setString( "path", cacheMeta.path() );
-        data.setString( "project", cacheMeta.project() );
-        data.setString( "siteId", cacheMeta.siteId() );
-        data.setString( "contentId", cacheMeta.contentId() );
-        data.setString( "contentPath", cacheMeta.contentPath() );
+        if ( cacheItem.zstdData() != null )
+        {
+            data.setBinaryReference( "zstdData", ZSTD_DATA_BINARY_REFERENCE );
+        }
+        if ( cacheItem.dczData() != null )
+        {
+            data.setString( "dictionaryId", cacheItem.dczData().dictionaryId() );
+            data.setString( "dictionaryUrl", cacheItem.dczData().dictionaryUrl() );
+            data.setBinaryReference( "dczData", DCZ_DATA_BINARY_REFERENCE );
+        }
+        setMeta( data, cacheMeta );
         data.setInstant( "cachedTime", cacheItem.cachedTime() );
+        // replaced with actual access statistics when the node is updated
+        data.setLong( "hits", 0L );
+        data.setInstant( "lastAccess", cacheItem.cachedTime() );
+        data.setDouble( "inflation", inflation );
         data.setInstant( "expireTime", cacheItem.expireTime() );
         setEntryPatternsToPropertyTree( data, cacheItem.configBypassHeaders(), "configBypassHeaders" );
         setEntryPatternsToPropertyTree( data, cacheItem.configBypassCookies(), "configBypassCookies" );
@@ -193,6 +954,81 @@ public class NodeCacheStore
         return data;
     }
 
+    private static void setMeta( final PropertyTree data, final CacheMeta cacheMeta )
+    {
+        data.setString( "url", cacheMeta.url() );
+        data.setString( "domain", cacheMeta.domain() );
+        data.setString( "path", cacheMeta.path() );
+        data.setString( "project", cacheMeta.project() );
+        data.setString( "siteId", cacheMeta.siteId() );
+        data.setString( "contentId", cacheMeta.contentId() );
+        data.setString( "contentPath", cacheMeta.contentPath() );
+        if ( !cacheMeta.dependsOn().isEmpty() )
+        {
+            data.addStrings( "dependsOn", cacheMeta.dependsOn().toArray( String[]::new ) );
+        }
+        data.setLong( "generation", cacheMeta.generation() );
+    }
+
+    private static void copyAccessStats( final PropertyTree from, final PropertyTree to )
+    {
+        final Long hits = from.getLong( "hits" );
+        if ( hits != null )
+        {
+            to.setLong( "hits", hits );
+        }
+        final Instant lastAccess = from.getInstant( "lastAccess" );
+        if ( lastAccess != null )
+        {
+            to.setInstant( "lastAccess", lastAccess );
+        }
+    }
+
+    /**
+     * Adds hits counted in memory since the previous flush to {@code hits} and {@code lastAccess} fields of cache nodes.
+     * Requested nodes are stamped with the current {@link #inflation()}.
+     * Only nodes with many hits or hits waiting for long are updated, at most {@value #MAX_FLUSH_WRITES} per flush.
+     */
+    public void flushHits()
+    {
+        flushHits( Instant.now() );
+    }
+
+    void flushHits( final Instant now )
+    {
+        final Map<String, HitCounter.Hits> drained = hitCounter.drain( now, FLUSH_MIN_HITS, FLUSH_MAX_DELAY, MAX_FLUSH_WRITES );
+        if ( drained.isEmpty() )
+        {
+            return;
+        }
+        LOG.debug( "Flushing hits of {} cached responses", drained.size() );
+        final double inflation = this.inflation;
+
+        BoosterContext.runInContext( () -> {
+            for ( Map.Entry<String, HitCounter.Hits> entry : drained.entrySet() )
+            {
+                final HitCounter.Hits hits = entry.getValue();
+                try
+                {
+                    nodeService.update( UpdateNodeParams.create().id( NodeId.from( entry.getKey() ) ).editor( editor -> {
+                        final Long stored = editor.data.getLong( "hits" );
+                        editor.data.setLong( "hits", ( stored == null ? 0 : stored ) + hits.hits() );
+                        final Instant lastAccess = editor.data.getInstant( "lastAccess" );
+                        if ( lastAccess == null || lastAccess.isBefore( hits.lastAccess() ) )
+                        {
+                            editor.data.setInstant( "lastAccess", hits.lastAccess() );
+                        }
+                        editor.data.setDouble( "inflation", inflation );
+                    } ).build() );
+                }
+                catch ( NodeNotFoundException e )
+                {
+                    LOG.debug( "Cached node for hits was already deleted {}", entry.getKey() );
+                }
+            }
+        } );
+    }
+
     public void remove( final String cacheKey )
     {
         BoosterContext.runInContext( () -> {
@@ -206,12 +1042,256 @@ public class NodeCacheStore
                 LOG.debug( "Cached node not found {}", nodeId );
             }
         } );
+        variants.remove( cacheKey );
+        evict( List.of( cacheKey ) );
+    }
+
+    /**
+     * Drops in-memory copies of cached responses on all cluster nodes.
+     * Must be called after cache nodes were invalidated or deleted bypassing this store.
+     */
+    public void evict( final Collection<String> cacheKeys )
+    {
+        if ( cacheKeys.isEmpty() )
+        {
+            return;
+        }
+        evictLocally( cacheKeys );
+        pendingEvictions.removeAll( cacheKeys );
+        broadcastEvict( cacheKeys );
+    }
+
+    /**
+     * Drops in-memory copies of cached responses on this cluster node only. Used to apply evictions received from other nodes.
+     */
+    public void evictLocally( final Collection<String> cacheKeys )
+    {
+        final MemoryCache memoryCache = this.memoryCache;
+        final IdentityCache identityCache = this.identityCache;
+        for ( String cacheKey : cacheKeys )
+        {
+            memoryCache.remove( cacheKey );
+            identityCache.remove( cacheKey );
+            variants.remove( cacheKey );
+        }
+    }
+
+    /**
+     * Drops in-memory copies of responses stored or compressed on this cluster node since the previous flush on other cluster nodes.
+     * Evictions are sent in batches, so that storing responses does not publish a distributed event each.
+     */
+    public void flushEvictions()
+    {
+        final List<String> cacheKeys = new ArrayList<>();
+        for ( Iterator<String> iterator = pendingEvictions.iterator(); iterator.hasNext(); )
+        {
+            cacheKeys.add( iterator.next() );
+            iterator.remove();
+            if ( cacheKeys.size() >= MAX_EVICT_EVENT_KEYS )
+            {
+                broadcastEvict( cacheKeys );
+                cacheKeys.clear();
+            }
+        }
+        if ( !cacheKeys.isEmpty() )
+        {
+            broadcastEvict( cacheKeys );
+        }
     }
 
-    public String generateCacheKey( final String url )
+    private void broadcastEvict( final Collection<String> cacheKeys )
     {
-        final byte[] digest = MessageDigests.sha256().digest( ( url ).getBytes( StandardCharsets.ISO_8859_1 ) );
-        return HexFormat.of().formatHex( digest, 0, 16 );
+        // known variants and identity bodies are kept on every cluster node, even without memory tier
+        try
+        {
+            eventPublisher.publish( Event.create( EVICT_EVENT_TYPE ).distributed( true ).value( "keys", List.copyOf( cacheKeys ) ).build() );
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Could not publish cache eviction event", e );
+        }
+    }
+
+    /**
+     * Latest invalidation generation. Must be taken before rendering of a response to be stored.
+     */
+    public long generation()
+    {
+        return scopeGenerations.latest();
+    }
+
+    /**
+     * Current generations by scope, as in {@link ScopeGenerations}.
+     */
+    public Map<String, Long> generations()
+    {
+        return scopeGenerations.snapshot();
+    }
+
+    /**
+     * Invalidates all cached responses of the scopes on all cluster nodes at once. Scopes are created by {@link ScopeGenerations}.
+     */
+    public void invalidateScopes( final Collection<String> scopes )
+    {
+        if ( scopes.isEmpty() )
+        {
+            return;
+        }
+        final long generation = scopeGenerations.next();
+        applyGenerations( scopes, generation );
+
+        BoosterContext.runInContext( () -> {
+            final Node cacheParentNode = nodeService.getByPath( BoosterContext.CACHE_PARENT_NODE );
+            nodeService.update( UpdateNodeParams.create().id( cacheParentNode.id() ).editor( editor -> {
+                final Map<String, Long> generations = readGenerations( editor.data );
+                for ( String scope : scopes )
+                {
+                    generations.merge( scope, generation, Math::max );
+                }
+                editor.data.removeProperties( "generations" );
+                generations.forEach( ( scope, value ) -> {
+                    final PropertySet set = editor.data.addSet( "generations" );
+                    set.setString( "scope", scope );
+                    set.setLong( "generation", value );
+                } );
+            } ).build() );
+        } );
+
+        try
+        {
+            eventPublisher.publish( Event.create( GENERATION_EVENT_TYPE )
+                                        .distributed( true )
+                                        .value( "scopes", List.copyOf( scopes ) )
+                                        .value( "generation", generation )
+                                        .build() );
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Could not publish cache generation event", e );
+        }
+    }
+
+    /**
+     * Applies generations raised on this or other cluster node.
+     */
+    public void applyGenerations( final Collection<String> scopes, final long generation )
+    {
+        if ( scopeGenerations.merge( scopes, generation ) )
+        {
+            // in-memory responses were checked against previous generations
+            memoryCache.clear();
+        }
+    }
+
+    /**
+     * Reloads generations and inflation value stored in repository, in case events from other cluster nodes were missed.
+     */
+    public void reloadGenerations()
+    {
+        final Node cacheParentNode = BoosterContext.callInContext( () -> nodeService.getByPath( BoosterContext.CACHE_PARENT_NODE ) );
+        if ( cacheParentNode == null )
+        {
+            return;
+        }
+        if ( scopeGenerations.merge( readGenerations( cacheParentNode.data() ) ) )
+        {
+            memoryCache.clear();
+        }
+        final Double storedInflation = cacheParentNode.data().getDouble( "inflation" );
+        if ( storedInflation != null && storedInflation > inflation )
+        {
+            inflation = storedInflation;
+        }
+    }
+
+    /**
+     * GreedyDual inflation value: priority of the last response evicted by {@link EvictionPolicy#GREEDY_DUAL} ranking.
+     * Responses are stamped with it when stored or requested, their priority is the stamp plus hits per stored byte.
+     * Responses not requested for a while keep a low stamp, so they are eventually evicted, however many hits they had.
+     */
+    public double inflation()
+    {
+        return inflation;
+    }
+
+    /**
+     * Raises the inflation value, on this cluster node and in repository. Lower values are ignored.
+     */
+    public void inflate( final double value )
+    {
+        if ( !( value > inflation ) )
+        {
+            return;
+        }
+        inflation = value;
+        BoosterContext.runInContext( () -> {
+            final Node cacheParentNode = nodeService.getByPath( BoosterContext.CACHE_PARENT_NODE );
+            nodeService.update( UpdateNodeParams.create().id( cacheParentNode.id() ).editor( editor -> {
+                final Double stored = editor.data.getDouble( "inflation" );
+                if ( stored == null || stored < value )
+                {
+                    editor.data.setDouble( "inflation", value );
+                }
+            } ).build() );
+        } );
+    }
+
+    private static Map<String, Long> readGenerations( final PropertyTree data )
+    {
+        final Map<String, Long> generations = new HashMap<>();
+        for ( PropertySet set : data.getSets( "generations" ) )
+        {
+            final String scope = set.getString( "scope" );
+            final Long generation = set.getLong( "generation" );
+            if ( scope != null && generation != null )
+            {
+                generations.merge( scope, generation, Math::max );
+            }
+        }
+        return generations;
+    }
+
+    private void rememberInMemory( final MemoryCache memoryCache, final String cacheKey, final CacheItem cacheItem,
+                                   final CacheMeta cacheMeta )
+    {
+        if ( memoryCache.isEnabled() && memoryCache.accepts( MemoryCache.weigh( cacheItem ) ) )
+        {
+            final CacheItem inMemory = toInMemory( cacheItem );
+            if ( inMemory != null )
+            {
+                memoryCache.put( cacheKey, inMemory );
+                // scope was invalidated while the response was rendered.
+                // Checked after put, because invalidation clears memory only after generation is raised
+                if ( scopeGenerations.of( cacheMeta.project(), cacheMeta.siteId(), cacheMeta.domain() ) > cacheMeta.generation() )
+                {
+                    memoryCache.remove( cacheKey );
+                }
+            }
+        }
+    }
+
+    private static CacheItem toInMemory( final CacheItem cacheItem )
+    {
+        try
+        {
+            final ByteSupply gzipData = ByteSupply.of( cacheItem.gzipData().toByteArray() );
+            final ByteSupply brotliData = cacheItem.brotliData() == null ? null : ByteSupply.of( cacheItem.brotliData().toByteArray() );
+            final ByteSupply zstdData = cacheItem.zstdData() == null ? null : ByteSupply.of( cacheItem.zstdData().toByteArray() );
+            final DictionaryCompressed dczData = cacheItem.dczData() == null
+                ? null
+                : new DictionaryCompressed( cacheItem.dczData().dictionaryId(), cacheItem.dczData().dictionaryUrl(),
+                                            ByteSupply.of( cacheItem.dczData().data().toByteArray() ) );
+            return new CacheItem( cacheItem.status(), cacheItem.contentType(), cacheItem.headers(), cacheItem.cachedTime(),
+                                  cacheItem.expireTime(), cacheItem.age(), cacheItem.invalidatedTime(), cacheItem.contentLength(),
+                                  cacheItem.etag(), cacheItem.staleWhileRevalidate(), cacheItem.staleIfError(),
+                                  cacheItem.configBypassHeaders(),
+                                  cacheItem.configBypassCookies(), gzipData, brotliData, zstdData, dczData );
+        }
+        catch ( IOException e )
+        {
+            LOG.debug( "Cannot read cached response body into memory", e );
+            return null;
+        }
     }
 
     private Map<String, List<String>> adaptHeaders( final PropertySet headers )
@@ -250,4 +1330,23 @@ public class NodeCacheStore
             }
         }
     }
+
+    public static void setKeyDimensionsToPropertyTree( final PropertyTree data, final List<KeyDimension> dimensions )
+    {
+        for ( KeyDimension dimension : dimensions )
+        {
+            final PropertySet ps = data.addSet( dimension.source() == KeyDimension.Source.HEADER ? "keyHeaders" : "keyCookies" );
+            ps.setString( "name", dimension.name() );
+            for ( KeyDimension.Bucket bucket : dimension.buckets() )
+            {
+                final PropertySet bs = ps.addSet( "buckets" );
+                bs.setString( "pattern", bucket.pattern() );
+                bs.setString( "value", bucket.value() );
+            }
+        }
+    }
+
+    private record Variants(List<KeyDimension> dimensions, List<String> keys)
+    {
+    }
 }
@@ -0,0 +1,123 @@
+package com.enonic.app.booster.storage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.enonic.xp.project.ProjectName;
+
+/**
+ * Upcoming instants when content gets published or expires, in time order.
+ * <p>
+ * Only instants within a limited horizon are kept, later ones are loaded as time goes by.
+ * Not thread-safe, used by the invalidation worker thread only.
+ */
+final class PublishSchedule
+{
+    private final NavigableMap<Instant, Set<ContentKey>> timeline = new TreeMap<>();
+
+    private final Map<ContentKey, Scheduled> scheduled = new HashMap<>();
+
+    /**
+     * Schedules content at given instants, replacing instants it was scheduled at before.
+     */
+    void put( final Content content, final Collection<Instant> instants )
+    {
+        final ContentKey key = new ContentKey( content.project(), content.id() );
+        remove( key );
+        if ( instants.isEmpty() )
+        {
+            return;
+        }
+        scheduled.put( key, new Scheduled( content, new HashSet<>( instants ) ) );
+        for ( Instant instant : instants )
+        {
+            timeline.computeIfAbsent( instant, k -> new HashSet<>() ).add( key );
+        }
+    }
+
+    void remove( final ProjectName project, final String id )
+    {
+        remove( new ContentKey( project, id ) );
+    }
+
+    /**
+     * Takes content scheduled at or before the given instant.
+     *
+     * @return due content, each item once
+     */
+    List<Content> poll( final Instant now )
+    {
+        final Set<Content> due = new LinkedHashSet<>();
+        final Iterator<Map.Entry<Instant, Set<ContentKey>>> iterator = timeline.headMap( now, true ).entrySet().iterator();
+        while ( iterator.hasNext() )
+        {
+            final Map.Entry<Instant, Set<ContentKey>> entry = iterator.next();
+            for ( ContentKey key : entry.getValue() )
+            {
+                final Scheduled s = scheduled.get( key );
+                due.add( s.content() );
+                s.instants().remove( entry.getKey() );
+                if ( s.instants().isEmpty() )
+                {
+                    scheduled.remove( key );
+                }
+            }
+            iterator.remove();
+        }
+        return new ArrayList<>( due );
+    }
+
+    int size()
+    {
+        return scheduled.size();
+    }
+
+    void clear()
+    {
+        timeline.clear();
+        scheduled.clear();
+    }
+
+    private void remove( final ContentKey key )
+    {
+        final Scheduled removed = scheduled.remove( key );
+        if ( removed == null )
+        {
+            return;
+        }
+        for ( Instant instant : removed.instants() )
+        {
+            final Set<ContentKey> keys = timeline.get( instant );
+            keys.remove( key );
+            if ( keys.isEmpty() )
+            {
+                timeline.remove( instant );
+            }
+        }
+    }
+
+    /**
+     * Scheduled content. Path is the node path, it is used for invalidation of ancestor pages.
+     */
+    record Content(ProjectName project, String id, String path)
+    {
+    }
+
+    private record ContentKey(ProjectName project, String id)
+    {
+    }
+
+    private record Scheduled(Content content, Set<Instant> instants)
+    {
+    }
+}
@@ -0,0 +1,62 @@
+package com.enonic.app.booster.storage;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import com.enonic.xp.node.NodeHit;
+import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeQuery;
+import com.enonic.xp.node.NodeService;
+
+/**
+ * Pages of node ids found by a query in node id order, each page following the last node of the previous one.
+ * Unlike a scroll, never loads all nodes at once, and next page can be read before the index is refreshed.
+ */
+final class QueryPages
+    implements Iterator<List<NodeId>>
+{
+    private final NodeService nodeService;
+
+    private final int pageSize;
+
+    private final Function<NodeId, NodeQuery> pageQuery;
+
+    private NodeId afterId;
+
+    private boolean last;
+
+    /**
+     * @param pageQuery query for a page of {@code pageSize} nodes following the given node, {@code null} for the first page
+     */
+    QueryPages( final NodeService nodeService, final int pageSize, final Function<NodeId, NodeQuery> pageQuery )
+    {
+        this.nodeService = nodeService;
+        this.pageSize = pageSize;
+        this.pageQuery = pageQuery;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return !last;
+    }
+
+    @Override
+    public List<NodeId> next()
+    {
+        if ( last )
+        {
+            throw new NoSuchElementException();
+        }
+        final List<NodeId> page =
+            nodeService.findByQuery( pageQuery.apply( afterId ) ).getNodeHits().stream().map( NodeHit::getNodeId ).toList();
+        last = page.size() < pageSize;
+        if ( !page.isEmpty() )
+        {
+            afterId = page.get( page.size() - 1 );
+        }
+        return page;
+    }
+}
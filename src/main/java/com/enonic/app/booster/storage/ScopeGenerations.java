@@ -0,0 +1,149 @@
+package com.enonic.app.booster.storage;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Invalidation generations of cache scopes: all, project, site and domain.
+ * <p>
+ * Each cached response is stamped with the latest generation known when its rendering started. Response is stale once any of its scopes
+ * has a greater generation, so a whole scope is invalidated by a single write regardless of the number of cached responses.
+ * Generations are milliseconds since epoch of the invalidation, so they can be used as invalidation time.
+ */
+public final class ScopeGenerations
+{
+    public static final String ALL = "all";
+
+    private static final String PROJECT_PREFIX = "project:";
+
+    private static final String SITE_PREFIX = "site:";
+
+    private static final String DOMAIN_PREFIX = "domain:";
+
+    private volatile Map<String, Long> generations = Map.of();
+
+    private volatile long latest;
+
+    public static String project( final String project )
+    {
+        return PROJECT_PREFIX + project;
+    }
+
+    public static String site( final String project, final String siteId )
+    {
+        return SITE_PREFIX + project + "/" + siteId;
+    }
+
+    public static String domain( final String domain )
+    {
+        return DOMAIN_PREFIX + domain;
+    }
+
+    /**
+     * Fields of cached responses that belong to the scope, with their values. Empty for {@link #ALL}, {@code null} for unknown scopes.
+     */
+    public static Map<String, String> fields( final String scope )
+    {
+        if ( ALL.equals( scope ) )
+        {
+            return Map.of();
+        }
+        if ( scope.startsWith( PROJECT_PREFIX ) )
+        {
+            return Map.of( "project", scope.substring( PROJECT_PREFIX.length() ) );
+        }
+        if ( scope.startsWith( SITE_PREFIX ) )
+        {
+            // project names can't contain slashes
+            final int slash = scope.indexOf( '/', SITE_PREFIX.length() );
+            return slash == -1
+                ? null
+                : Map.of( "project", scope.substring( SITE_PREFIX.length(), slash ), "siteId", scope.substring( slash + 1 ) );
+        }
+        if ( scope.startsWith( DOMAIN_PREFIX ) )
+        {
+            return Map.of( "domain", scope.substring( DOMAIN_PREFIX.length() ) );
+        }
+        return null;
+    }
+
+    /**
+     * Latest generation of all scopes. Used to stamp responses.
+     */
+    long latest()
+    {
+        return latest;
+    }
+
+    /**
+     * Latest generation of scopes the response belongs to.
+     */
+    long of( final String project, final String siteId, final String domain )
+    {
+        final Map<String, Long> generations = this.generations;
+        long result = generations.getOrDefault( ALL, 0L );
+        if ( project != null )
+        {
+            result = Math.max( result, generations.getOrDefault( project( project ), 0L ) );
+            if ( siteId != null )
+            {
+                result = Math.max( result, generations.getOrDefault( site( project, siteId ), 0L ) );
+            }
+        }
+        if ( domain != null )
+        {
+            result = Math.max( result, generations.getOrDefault( domain( domain ), 0L ) );
+        }
+        return result;
+    }
+
+    /**
+     * Generation for a new invalidation. Always greater than any known generation, even if clocks of cluster nodes are not in sync.
+     */
+    long next()
+    {
+        return Math.max( System.currentTimeMillis(), latest + 1 );
+    }
+
+    /**
+     * Raises generations of the scopes. Lower generations are ignored, so updates can be applied in any order.
+     *
+     * @return {@code true} if any generation was raised
+     */
+    synchronized boolean merge( final Map<String, Long> updates )
+    {
+        final Map<String, Long> merged = new HashMap<>( generations );
+        boolean raised = false;
+        for ( Map.Entry<String, Long> update : updates.entrySet() )
+        {
+            final Long previous = merged.get( update.getKey() );
+            if ( previous == null || previous < update.getValue() )
+            {
+                merged.put( update.getKey(), update.getValue() );
+                latest = Math.max( latest, update.getValue() );
+                raised = true;
+            }
+        }
+        if ( raised )
+        {
+            generations = Map.copyOf( merged );
+        }
+        return raised;
+    }
+
+    synchronized boolean merge( final Collection<String> scopes, final long generation )
+    {
+        final Map<String, Long> updates = new HashMap<>();
+        for ( String scope : scopes )
+        {
+            updates.put( scope, generation );
+        }
+        return merge( updates );
+    }
+
+    Map<String, Long> snapshot()
+    {
+        return generations;
+    }
+}
@@ -0,0 +1,126 @@
+package com.enonic.app.booster.utils;
+
+import java.util.HexFormat;
+
+/**
+ * MurmurHash3 x64 128-bit variant with seed 0. Not cryptographic, only for keys of trusted-origin data like normalized URLs.
+ */
+public final class Murmur3
+{
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3()
+    {
+    }
+
+    /**
+     * Hashes characters as ISO-8859-1 bytes, characters outside of it are hashed as {@code '?'}, like {@link String#getBytes} does.
+     * Characters are read directly, without encoding them to a byte array first.
+     *
+     * @return 16 bytes of the hash in little-endian order, as 32 lowercase hex digits
+     */
+    public static String hash128Hex( final CharSequence data )
+    {
+        final int length = data.length();
+        long h1 = 0;
+        long h2 = 0;
+
+        final int blocksEnd = length - length % 16;
+        for ( int i = 0; i < blocksEnd; i += 16 )
+        {
+            long k1 = getLong( data, i );
+            long k2 = getLong( data, i + 8 );
+
+            h1 ^= mixK1( k1 );
+            h1 = Long.rotateLeft( h1, 27 );
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2( k2 );
+            h2 = Long.rotateLeft( h2, 31 );
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        for ( int i = length - 1; i >= blocksEnd; i-- )
+        {
+            final int shift = ( ( i - blocksEnd ) & 7 ) * 8;
+            if ( i - blocksEnd >= 8 )
+            {
+                k2 |= (long) getByte( data, i ) << shift;
+            }
+            else
+            {
+                k1 |= (long) getByte( data, i ) << shift;
+            }
+        }
+        h1 ^= mixK1( k1 );
+        h2 ^= mixK2( k2 );
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix64( h1 );
+        h2 = fmix64( h2 );
+
+        h1 += h2;
+        h2 += h1;
+
+        final byte[] bytes = new byte[16];
+        for ( int i = 0; i < 8; i++ )
+        {
+            bytes[i] = (byte) ( h1 >>> ( i * 8 ) );
+            bytes[i + 8] = (byte) ( h2 >>> ( i * 8 ) );
+        }
+        return HexFormat.of().formatHex( bytes );
+    }
+
+    private static int getByte( final CharSequence data, final int index )
+    {
+        final char c = data.charAt( index );
+        return c <= 0xFF ? c : '?';
+    }
+
+    private static long getLong( final CharSequence data, final int index )
+    {
+        long result = 0;
+        for ( int i = 7; i >= 0; i-- )
+        {
+            result = result << 8 | getByte( data, index + i );
+        }
+        return result;
+    }
+
+    private static long mixK1( long k1 )
+    {
+        k1 *= C1;
+        k1 = Long.rotateLeft( k1, 31 );
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2( long k2 )
+    {
+        k2 *= C2;
+        k2 = Long.rotateLeft( k2, 33 );
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix64( long k )
+    {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
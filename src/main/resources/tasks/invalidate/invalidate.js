@@ -1,7 +1,19 @@
+const taskLib = require('/lib/xp/task');
+
 exports.run = function (params, taskId) {
     log.debug('Running booster invalidate task with params: ' + JSON.stringify(params));
+    invalidate(params);
+    warmup(params);
+};
+
+function invalidate(params) {
     let nodeCleanerBean = __.newBean('com.enonic.app.booster.script.NodeCleanerBean');
 
+    if (params.dependsOn || params.contentPath) {
+        nodeCleanerBean.invalidateDependents(params.project, [].concat(params.dependsOn || []), [].concat(params.contentPath || []));
+        return;
+    }
+
     if (params.content) {
         nodeCleanerBean.invalidateContent(params.project, params.content);
         return;
@@ -28,4 +40,19 @@ exports.run = function (params, taskId) {
     }
 
     nodeCleanerBean.invalidateAll();
-};
+}
+
+function warmup(params) {
+    const limit = parseInt(app.config.warmupLimit || '0', 10);
+    if (!(limit > 0)) {
+        return;
+    }
+    taskLib.submitTask({
+        descriptor: 'warmup',
+        config: {
+            project: params.project,
+            limit: limit,
+            baseUrl: app.config.warmupBaseUrl
+        }
+    });
+}
@@ -0,0 +1,21 @@
+const taskLib = require('/lib/xp/task');
+
+const BATCH_SIZE = 50;
+
+exports.run = function (params, taskId) {
+    log.debug('Running booster warm up task with params: ' + JSON.stringify(params));
+    const cacheWarmupBean = __.newBean('com.enonic.app.booster.script.CacheWarmupBean');
+
+    const projects = params.project ? [].concat(params.project) : [];
+    const total = cacheWarmupBean.prepare(projects, params.limit || 1000);
+
+    let current = 0;
+    taskLib.progress({current: current, total: total, info: 'Warming up'});
+
+    let requested;
+    while ((requested = cacheWarmupBean.warmup(BATCH_SIZE, params.concurrency || 4, params.rate || 10, params.baseUrl || null)) > 0) {
+        current += requested;
+        taskLib.progress({current: current, total: total, info: 'Failed: ' + cacheWarmupBean.getFailed()});
+    }
+    log.debug('Booster warm up requested ' + current + ' pages, failed ' + cacheWarmupBean.getFailed());
+};
@@ -18,6 +18,18 @@ class BoosterCacheStatusTest
         assertEquals( "Booster; fwd=stale",BoosterCacheStatus.stale().toString());
     }
 
+    @Test
+    void revalidating()
+    {
+        assertEquals( "Booster; fwd=stale; detail=REVALIDATING",BoosterCacheStatus.revalidating().toString());
+    }
+
+    @Test
+    void staleOnError()
+    {
+        assertEquals( "Booster; fwd=stale; detail=ERROR",BoosterCacheStatus.staleOnError().toString());
+    }
+
     @Test
     void bypass()
     {
@@ -7,6 +7,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.enonic.app.booster.storage.CacheKeyAlgorithm;
+import com.enonic.app.booster.storage.EvictionPolicy;
+import com.enonic.app.booster.storage.InvalidationScope;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -30,6 +34,23 @@ class BoosterConfigParsedTest
         assertFalse( parse.disableCacheStatusHeader() );
         assertEquals( Map.of(), parse.overrideHeaders() );
         assertEquals( Set.of( "text/html", "text/xhtml" ), parse.cacheMimeTypes() );
+        assertEquals( 0, parse.memoryCacheMaxBytes() );
+        assertEquals( 4, parse.revalidateMaxConcurrent() );
+        assertEquals( EvictionPolicy.FIFO, parse.cacheEvictionPolicy() );
+        assertEquals( 0, parse.cacheMaxBytes() );
+        assertEquals( InvalidationScope.PROJECT, parse.invalidationScope() );
+        assertEquals( Set.of(), parse.alwaysInvalidatePaths() );
+        assertEquals( 2, parse.invalidationQuietPeriodSeconds() );
+        assertEquals( 10, parse.invalidationMaxDelaySeconds() );
+        assertEquals( 0, parse.warmupLimit() );
+        assertEquals( CacheKeyAlgorithm.SHA256, parse.cacheKeyAlgorithm() );
+        assertEquals( 32, parse.maxVariants() );
+        assertEquals( 11, parse.brotliQuality() );
+        assertEquals( 3, parse.zstdLevel() );
+        assertEquals( Set.of(), parse.brotliExcludeMimeTypes() );
+        assertEquals( Set.of(), parse.zstdExcludeMimeTypes() );
+        assertFalse( parse.compressionDictionaries() );
+        assertEquals( 1024, parse.compressionMinBytes() );
     }
 
     @Test
@@ -39,12 +60,36 @@ class BoosterConfigParsedTest
         when( config.excludeQueryParamsPreset() ).thenReturn( "b, a" );
         when( config.appsForceInvalidateOnInstall() ).thenReturn( "app2, app1" );
         when( config.cacheTtl() ).thenReturn( 86400L );
+        when( config.memoryCacheMaxBytes() ).thenReturn( 67108864L );
+        when( config.cacheEvictionPolicy() ).thenReturn( "greedy-dual" );
+        when( config.invalidationScope() ).thenReturn( "Content" );
+        when( config.alwaysInvalidatePaths() ).thenReturn( "/site, /site/menu" );
+        when( config.invalidationQuietPeriod() ).thenReturn( 30L );
+        when( config.invalidationMaxDelay() ).thenReturn( 5L );
+        when( config.cacheKeyAlgorithm() ).thenReturn( "murmur3" );
+        when( config.maxVariants() ).thenReturn( 0 );
+        when( config.brotliQuality() ).thenReturn( 12 );
+        when( config.zstdLevel() ).thenReturn( 0 );
+        when( config.zstdExcludeMimeTypes() ).thenReturn( "Image/SVG+XML, " );
+        when( config.compressionMinBytes() ).thenReturn( -1 );
         when( config.cacheMimeTypes() ).thenReturn( "text/html, text/xhtml, application/json" );
         when( config.overrideHeaders() ).thenReturn( "\"Cache-Control: private, no-store\", \"X-Instance: \"\"jupiter\"\"\"" );
         final BoosterConfigParsed parse = BoosterConfigParsed.parse( config );
         assertEquals( Set.of( "a", "b" ), parse.excludeQueryParams() );
         assertEquals( Set.of( "app1", "app2" ), parse.appsForceInvalidateOnInstall() );
         assertEquals( 86400L, parse.cacheTtlSeconds() );
+        assertEquals( 67108864L, parse.memoryCacheMaxBytes() );
+        assertEquals( EvictionPolicy.GREEDY_DUAL, parse.cacheEvictionPolicy() );
+        assertEquals( InvalidationScope.CONTENT, parse.invalidationScope() );
+        assertEquals( Set.of( "/site", "/site/menu" ), parse.alwaysInvalidatePaths() );
+        assertEquals( 30, parse.invalidationQuietPeriodSeconds() );
+        assertEquals( 30, parse.invalidationMaxDelaySeconds() );
+        assertEquals( CacheKeyAlgorithm.MURMUR3, parse.cacheKeyAlgorithm() );
+        assertEquals( 1, parse.maxVariants() );
+        assertEquals( 11, parse.brotliQuality() );
+        assertEquals( 1, parse.zstdLevel() );
+        assertEquals( Set.of( "image/svg+xml" ), parse.zstdExcludeMimeTypes() );
+        assertEquals( 0, parse.compressionMinBytes() );
         assertEquals( Map.of( "Cache-Control", "private, no-store", "X-Instance", "\"jupiter\"" ), parse.overrideHeaders() );
         assertEquals( Set.of( "text/html", "text/xhtml", "application/json" ), parse.cacheMimeTypes() );
     }
@@ -5,34 +5,48 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
 import com.enonic.app.booster.concurrent.Collapser;
 import com.enonic.app.booster.io.ByteSupply;
+import com.enonic.app.booster.servlet.DetachedRequest;
+import com.enonic.app.booster.servlet.RequestAttributes;
 import com.enonic.app.booster.storage.NodeCacheStore;
 import com.enonic.xp.portal.PortalRequest;
 import com.enonic.xp.repository.RepositoryId;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.mockito.ArgumentCaptor.captor;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockConstruction;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -60,7 +74,7 @@ class BoosterRequestFilterTest
     void preconditionsFail()
         throws Exception
     {
-        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService );
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
         filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
 
         var preconditionsConstruction = mockConstruction( Preconditions.class,
@@ -80,7 +94,7 @@ class BoosterRequestFilterTest
         throws Exception
     {
         mockRequest();
-        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService );
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
         filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
 
         final CacheItem cacheItem = freshCacheItem();
@@ -93,7 +107,6 @@ class BoosterRequestFilterTest
 
         try (preconditionsConstruction; cachedResponseWriterConstruction)
         {
-            when( cacheStore.generateCacheKey( "https://example.com/site/repo/branch/s" ) ).thenCallRealMethod();
             when( cacheStore.get( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn( cacheItem );
 
             filter.doHandle( request, response, filterChain );
@@ -104,6 +117,39 @@ class BoosterRequestFilterTest
         }
     }
 
+    @Test
+    void cached_variant()
+        throws Exception
+    {
+        mockRequest();
+        when( request.getHeader( "Accept-Language" ) ).thenReturn( "no-NO,no;q=0.9" );
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
+        filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
+
+        final CacheItem cacheItem = freshCacheItem();
+
+        var preconditionsConstruction = mockConstruction( Preconditions.class,
+                                                          ( mock, context ) -> when( mock.check( request ) ).thenReturn(
+                                                              Preconditions.Result.PROCEED ) );
+
+        var cachedResponseWriterConstruction = mockConstruction( CachedResponseWriter.class );
+
+        try (preconditionsConstruction; cachedResponseWriterConstruction)
+        {
+            // dimensions are learned from the primary cache key lookup
+            when( cacheStore.keyDimensions( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn( List.of(),
+                List.of( new KeyDimension( KeyDimension.Source.HEADER, "Accept-Language",
+                                           List.of( new KeyDimension.Bucket( "no.*", "no" ) ) ) ) );
+            when( cacheStore.get( "5b4958dab6f5617e356077dc5ae1e300" ) ).thenReturn( cacheItem );
+
+            filter.doHandle( request, response, filterChain );
+
+            verify( cacheStore ).get( "1ddd92089d02d31e68f1c6db45db255c" );
+            verify( cachedResponseWriterConstruction.constructed().get( 0 ) ).write( same( response ), same( cacheItem ) );
+            verifyNoInteractions( filterChain );
+        }
+    }
+
     @Test
     void hit_and_not_selected_header_bypass()
         throws Exception
@@ -111,7 +157,7 @@ class BoosterRequestFilterTest
         mockRequest();
         when( request.getHeaders( "Pragma" ) ).thenReturn( Collections.enumeration( List.of( "no-cache" ) ) );
 
-        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService );
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
         filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
 
         final CacheItem cacheItem = freshCacheItemWithBypassHeader();
@@ -123,14 +169,14 @@ class BoosterRequestFilterTest
         var siteConfigStatic = mockStatic( BoosterSiteConfig.class );
         try (preconditionsConstruction; siteConfigStatic)
         {
-            when( cacheStore.generateCacheKey( "https://example.com/site/repo/branch/s" ) ).thenCallRealMethod();
             when( cacheStore.get( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn( cacheItem );
 
             when( BoosterSiteConfig.getSiteConfig( any() ) ).thenReturn(
-                new BoosterSiteConfig( null, null, List.of(), List.of(), List.of() ) );
+                new BoosterSiteConfig( null, null, null, null, List.of(), List.of(), List.of(), List.of() ) );
 
             filter.doHandle( request, response, filterChain );
 
+            verify( cacheStore ).keyDimensions( "1ddd92089d02d31e68f1c6db45db255c" );
             verify( cacheStore ).get( "1ddd92089d02d31e68f1c6db45db255c" );
             verify( response ).setHeader( "Cache-Status", "Booster; fwd=bypass; detail=HEADER" );
 
@@ -167,7 +213,7 @@ class BoosterRequestFilterTest
         final BoosterRequestFilter filter;
         try (collapserConstruction)
         {
-            filter = new BoosterRequestFilter( cacheStore, licenseService );
+            filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
         }
 
         filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
@@ -180,7 +226,6 @@ class BoosterRequestFilterTest
 
         try (preconditionsConstruction; cachedResponseWriterConstruction)
         {
-            when( cacheStore.generateCacheKey( "https://example.com/site/repo/branch/s" ) ).thenCallRealMethod();
             when( cacheStore.get( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn( cacheItemFromStore );
 
             filter.doHandle( request, response, filterChain );
@@ -201,7 +246,7 @@ class BoosterRequestFilterTest
         when( request.getAttribute( PortalRequest.class.getName() ) ).thenReturn( portalRequest );
         when( portalRequest.getRepositoryId() ).thenReturn( RepositoryId.from( "com.enonic.cms.repo1" ) );
 
-        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService );
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
         filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
 
         var preconditionsConstruction = mockConstruction( Preconditions.class,
@@ -212,12 +257,14 @@ class BoosterRequestFilterTest
         var siteConfigStatic = mockStatic( BoosterSiteConfig.class );
         try (preconditionsConstruction; storeConditionsConstruction; siteConfigStatic)
         {
-            when( cacheStore.generateCacheKey( "https://example.com/site/repo/branch/s" ) ).thenCallRealMethod();
             when( cacheStore.get( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn( null );
+            when( cacheStore.generation() ).thenReturn( 7L );
+            when( request.getAttribute( RequestAttributes.DEPENDS_ON ) ).thenReturn( List.of( "content2" ) );
             when( BoosterSiteConfig.getSiteConfig( any() ) ).thenReturn(
-                new BoosterSiteConfig( null, null, List.of(), List.of(), List.of() ) );
+                new BoosterSiteConfig( null, null, null, null, List.of(), List.of(), List.of(), List.of() ) );
             doAnswer( invocation -> {
                 HttpServletResponse response = invocation.getArgument( 1, HttpServletResponse.class );
+                response.addHeader( "X-Booster-Depends", "content1" );
                 response.getOutputStream(); // simulate call, otherwise response won't be cacheable
 
                 return null;
@@ -236,6 +283,52 @@ class BoosterRequestFilterTest
             assertEquals( "e3b0c44298fc1c149afbf4c8996fb924", cacheItem.etag() );
             assertEquals( "https://example.com/site/repo/branch/s", cacheMeta.url() );
             assertEquals( "repo1", cacheMeta.project() );
+            assertEquals( Set.of( "content1", "content2" ), cacheMeta.dependsOn() );
+            assertEquals( 7L, cacheMeta.generation() );
+            verify( response, never() ).addHeader( eq( "X-Booster-Depends" ), any() );
+        }
+    }
+
+    @Test
+    void notCached_vary()
+        throws Exception
+    {
+        mockRequest();
+        when( request.getHeader( "Accept-Language" ) ).thenReturn( "NO" );
+        final PortalRequest portalRequest = mock( PortalRequest.class );
+        when( request.getAttribute( PortalRequest.class.getName() ) ).thenReturn( portalRequest );
+        when( portalRequest.getRepositoryId() ).thenReturn( RepositoryId.from( "com.enonic.cms.repo1" ) );
+
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
+        filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
+
+        var preconditionsConstruction = mockConstruction( Preconditions.class,
+                                                          ( mock, context ) -> when( mock.check( request ) ).thenReturn(
+                                                              Preconditions.Result.PROCEED ) );
+        var storeConditionsConstruction =
+            mockConstruction( StoreConditions.class, ( mock, context ) -> when( mock.check( eq( request ), any() ) ).thenReturn( true ) );
+        var siteConfigStatic = mockStatic( BoosterSiteConfig.class );
+        try (preconditionsConstruction; storeConditionsConstruction; siteConfigStatic)
+        {
+            when( BoosterSiteConfig.getSiteConfig( any() ) ).thenReturn(
+                new BoosterSiteConfig( null, null, null, null, List.of(), List.of(), List.of(), List.of() ) );
+            doAnswer( invocation -> {
+                HttpServletResponse response = invocation.getArgument( 1, HttpServletResponse.class );
+                response.addHeader( "Vary", "Accept-Language" );
+                response.getOutputStream(); // simulate call, otherwise response won't be cacheable
+
+                return null;
+            } ).when( filterChain ).doFilter( any(), any() );
+
+            filter.doHandle( request, response, filterChain );
+
+            final List<KeyDimension> dimensions =
+                List.of( new KeyDimension( KeyDimension.Source.HEADER, "Accept-Language", List.of() ) );
+            final ArgumentCaptor<CacheItem> cacheCaptor = captor();
+            verify( cacheStore ).put( eq( "5b4958dab6f5617e356077dc5ae1e300" ), cacheCaptor.capture(), any() );
+            verify( cacheStore ).putVariant( eq( "1ddd92089d02d31e68f1c6db45db255c" ), eq( dimensions ),
+                                             eq( "5b4958dab6f5617e356077dc5ae1e300" ), same( cacheCaptor.getValue() ), any() );
+            verify( cacheStore, never() ).put( eq( "1ddd92089d02d31e68f1c6db45db255c" ), any(), any() );
         }
     }
 
@@ -245,7 +338,7 @@ class BoosterRequestFilterTest
     {
         mockRequest();
 
-        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService );
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
         filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
 
         var preconditionsConstruction = mockConstruction( Preconditions.class,
@@ -257,7 +350,6 @@ class BoosterRequestFilterTest
 
         try (preconditionsConstruction; storeConditionsConstruction)
         {
-            when( cacheStore.generateCacheKey( "https://example.com/site/repo/branch/s" ) ).thenCallRealMethod();
             when( cacheStore.get( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn( expiredCacheITem() );
 
             filter.doHandle( request, response, filterChain );
@@ -268,32 +360,213 @@ class BoosterRequestFilterTest
         }
     }
 
+    @Test
+    void stale_while_revalidate()
+        throws Exception
+    {
+        mockRequest();
+        final PortalRequest portalRequest = mock( PortalRequest.class );
+        when( request.getAttribute( PortalRequest.class.getName() ) ).thenReturn( portalRequest );
+
+        final AsyncContext asyncContext = mock( AsyncContext.class );
+        when( request.isAsyncSupported() ).thenReturn( true );
+        when( request.startAsync() ).thenReturn( asyncContext );
+
+        // revalidation runs on the calling thread, so that mocked constructions apply
+        final BoosterRequestFilter filter =
+            new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics(), MoreExecutors.newDirectExecutorService() );
+        filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
+
+        final CacheItem staleItem = staleWhileRevalidateCacheItem();
+
+        var preconditionsConstruction = mockConstruction( Preconditions.class,
+                                                          ( mock, context ) -> when( mock.check( request ) ).thenReturn(
+                                                              Preconditions.Result.PROCEED ) );
+        var storeConditionsConstruction =
+            mockConstruction( StoreConditions.class, ( mock, context ) -> when( mock.check( any(), any() ) ).thenReturn( true ) );
+        var cachedResponseWriterConstruction = mockConstruction( CachedResponseWriter.class );
+        var siteConfigStatic = mockStatic( BoosterSiteConfig.class );
+        try (preconditionsConstruction; storeConditionsConstruction; cachedResponseWriterConstruction; siteConfigStatic)
+        {
+            when( cacheStore.get( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn( staleItem );
+            when( BoosterSiteConfig.getSiteConfig( any() ) ).thenReturn(
+                new BoosterSiteConfig( null, null, 60, null, List.of(), List.of(), List.of(), List.of() ) );
+            doAnswer( invocation -> {
+                HttpServletResponse response = invocation.getArgument( 1, HttpServletResponse.class );
+                response.getOutputStream(); // simulate call, otherwise response won't be cacheable
+
+                return null;
+            } ).when( filterChain ).doFilter( any(), any() );
+
+            filter.doHandle( request, response, filterChain );
+
+            verify( cachedResponseWriterConstruction.constructed().get( 0 ) ).write( same( response ), same( staleItem ) );
+            verify( response ).flushBuffer();
+
+            final ArgumentCaptor<HttpServletRequest> requestCaptor = captor();
+            final ArgumentCaptor<HttpServletResponse> responseCaptor = captor();
+            verify( filterChain ).doFilter( requestCaptor.capture(), responseCaptor.capture() );
+            assertInstanceOf( DetachedRequest.class, requestCaptor.getValue() );
+            assertNotSame( response, responseCaptor.getValue() );
+
+            final ArgumentCaptor<CacheItem> cacheCaptor = captor();
+            verify( cacheStore ).put( eq( "1ddd92089d02d31e68f1c6db45db255c" ), cacheCaptor.capture(), any() );
+            assertEquals( 60, cacheCaptor.getValue().staleWhileRevalidate() );
+            verify( asyncContext ).complete();
+        }
+    }
+
+    @Test
+    void stale_while_revalidate_queue_full()
+        throws Exception
+    {
+        mockRequest();
+        final AsyncContext asyncContext = mock( AsyncContext.class );
+        when( request.isAsyncSupported() ).thenReturn( true );
+        when( request.startAsync() ).thenReturn( asyncContext );
+
+        final ExecutorService revalidateExecutor = mock( ExecutorService.class );
+        doThrow( RejectedExecutionException.class ).when( revalidateExecutor ).execute( any() );
+
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics(), revalidateExecutor );
+        filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
+
+        final CacheItem staleItem = staleWhileRevalidateCacheItem();
+
+        var preconditionsConstruction = mockConstruction( Preconditions.class,
+                                                          ( mock, context ) -> when( mock.check( request ) ).thenReturn(
+                                                              Preconditions.Result.PROCEED ) );
+        var cachedResponseWriterConstruction = mockConstruction( CachedResponseWriter.class );
+        try (preconditionsConstruction; cachedResponseWriterConstruction)
+        {
+            when( cacheStore.get( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn( staleItem );
+
+            filter.doHandle( request, response, filterChain );
+
+            verify( cachedResponseWriterConstruction.constructed().get( 0 ) ).write( same( response ), same( staleItem ) );
+            verify( asyncContext ).complete();
+            verifyNoInteractions( filterChain );
+            verify( cacheStore, never() ).put( any(), any(), any() );
+        }
+    }
+
+    @Test
+    void stale_while_revalidate_window_passed()
+        throws Exception
+    {
+        mockRequest();
+
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
+        filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
+
+        var preconditionsConstruction = mockConstruction( Preconditions.class,
+                                                          ( mock, context ) -> when( mock.check( request ) ).thenReturn(
+                                                              Preconditions.Result.PROCEED ) );
+        var storeConditionsConstruction =
+            mockConstruction( StoreConditions.class, ( mock, context ) -> when( mock.check( eq( request ), any() ) ).thenReturn( false ) );
+        var cachedResponseWriterConstruction = mockConstruction( CachedResponseWriter.class );
+
+        try (preconditionsConstruction; storeConditionsConstruction; cachedResponseWriterConstruction)
+        {
+            when( cacheStore.get( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn(
+                new CacheItem( 200, "text/html", Map.of(), Instant.EPOCH, Instant.EPOCH, null, null, 1234, "1234567890", 60, null, List.of(),
+                               List.of(), ByteSupply.of( new ByteArrayOutputStream() ), ByteSupply.of( new ByteArrayOutputStream() ), null,
+                               null ) );
+
+            filter.doHandle( request, response, filterChain );
+
+            assertEquals( 0, cachedResponseWriterConstruction.constructed().size() );
+            verify( filterChain ).doFilter( same( request ), any() );
+            verify( cacheStore ).remove( eq( "1ddd92089d02d31e68f1c6db45db255c" ) );
+        }
+    }
+
+    @Test
+    void stale_if_error_server_error()
+        throws Exception
+    {
+        staleIfError( invocation -> {
+            invocation.getArgument( 1, HttpServletResponse.class ).sendError( 503 );
+            return null;
+        } );
+    }
+
+    @Test
+    void stale_if_error_exception()
+        throws Exception
+    {
+        staleIfError( invocation -> {
+            throw new IllegalStateException( "Rendering failed" );
+        } );
+    }
+
+    private void staleIfError( final Answer<?> rendering )
+        throws Exception
+    {
+        mockRequest();
+
+        final BoosterRequestFilter filter = new BoosterRequestFilter( cacheStore, licenseService, new CompressionMetrics() );
+        filter.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
+
+        final CacheItem staleItem =
+            new CacheItem( 200, "text/html", Map.of(), Instant.now().minusSeconds( 20 ), Instant.now().minusSeconds( 10 ), null, null,
+                           1234, "1234567890", null, 60, List.of(), List.of(), ByteSupply.of( new ByteArrayOutputStream() ),
+                           ByteSupply.of( new ByteArrayOutputStream() ), null, null );
+
+        var preconditionsConstruction = mockConstruction( Preconditions.class,
+                                                          ( mock, context ) -> when( mock.check( request ) ).thenReturn(
+                                                              Preconditions.Result.PROCEED ) );
+        var storeConditionsConstruction = mockConstruction( StoreConditions.class );
+        var cachedResponseWriterConstruction = mockConstruction( CachedResponseWriter.class );
+
+        try (preconditionsConstruction; storeConditionsConstruction; cachedResponseWriterConstruction)
+        {
+            when( cacheStore.get( "1ddd92089d02d31e68f1c6db45db255c" ) ).thenReturn( staleItem );
+            doAnswer( rendering ).when( filterChain ).doFilter( any(), any() );
+
+            filter.doHandle( request, response, filterChain );
+
+            verify( response ).reset();
+            verify( response, never() ).sendError( anyInt() );
+            verify( cachedResponseWriterConstruction.constructed().get( 0 ) ).write( same( response ), same( staleItem ) );
+            verify( cacheStore, never() ).remove( any() );
+            verify( cacheStore, never() ).put( any(), any(), any() );
+        }
+    }
+
+    static CacheItem staleWhileRevalidateCacheItem()
+    {
+        return new CacheItem( 200, "text/html", Map.of( "header1", List.of( "value1" ) ), Instant.now().minusSeconds( 20 ),
+                              Instant.now().minusSeconds( 10 ), null, null, 1234, "1234567890", 60, null, List.of(), List.of(),
+                              ByteSupply.of( new ByteArrayOutputStream() ), ByteSupply.of( new ByteArrayOutputStream() ), null, null );
+    }
+
     static CacheItem invalidatedCacheItem()
     {
         return new CacheItem( 200, "text/html", Map.of( "header1", List.of( "value1" ) ), Instant.EPOCH, Instant.EPOCH, null, null, 1234,
-                              "1234567890", List.of(), List.of(), ByteSupply.of( new ByteArrayOutputStream() ),
-                              ByteSupply.of( new ByteArrayOutputStream() ) );
+                              "1234567890", null, null, List.of(), List.of(), ByteSupply.of( new ByteArrayOutputStream() ),
+                              ByteSupply.of( new ByteArrayOutputStream() ), null, null );
     }
 
     static CacheItem expiredCacheITem()
     {
         return new CacheItem( 200, "text/html", Map.of( "header1", List.of( "value1" ) ), Instant.EPOCH, null, null, null, 1234,
-                              "1234567890", List.of(), List.of(), ByteSupply.of( new ByteArrayOutputStream() ),
-                              ByteSupply.of( new ByteArrayOutputStream() ) );
+                              "1234567890", null, null, List.of(), List.of(), ByteSupply.of( new ByteArrayOutputStream() ),
+                              ByteSupply.of( new ByteArrayOutputStream() ), null, null );
     }
 
     static CacheItem freshCacheItem()
     {
         return new CacheItem( 200, "text/html", Map.of( "header1", List.of( "value1" ) ), Instant.now(), null, null, null, 1234,
-                              "1234567890", List.of(), List.of(), ByteSupply.of( new ByteArrayOutputStream() ),
-                              ByteSupply.of( new ByteArrayOutputStream() ) );
+                              "1234567890", null, null, List.of(), List.of(), ByteSupply.of( new ByteArrayOutputStream() ),
+                              ByteSupply.of( new ByteArrayOutputStream() ), null, null );
     }
 
     static CacheItem freshCacheItemWithBypassHeader()
     {
         return new CacheItem( 200, "text/html", Map.of( "header1", List.of( "value1" ) ), Instant.now(), null, null, null, 1234,
-                              "1234567890", List.of( new EntryPattern( "Pragma", "no-cache", false ) ), List.of(),
-                              ByteSupply.of( new ByteArrayOutputStream() ), ByteSupply.of( new ByteArrayOutputStream() ) );
+                              "1234567890", null, null, List.of( new EntryPattern( "Pragma", "no-cache", false ) ), List.of(),
+                              ByteSupply.of( new ByteArrayOutputStream() ), ByteSupply.of( new ByteArrayOutputStream() ), null, null );
     }
 
     void mockRequest()
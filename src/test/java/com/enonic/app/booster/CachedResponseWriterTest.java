@@ -16,6 +16,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.aayushatharva.brotli4j.Brotli4jLoader;
 import com.aayushatharva.brotli4j.encoder.BrotliOutputStream;
+import com.github.luben.zstd.ZstdOutputStream;
 
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServletRequest;
@@ -41,6 +42,8 @@ class CachedResponseWriterTest
     @Mock
     HttpServletResponse response;
 
+    private static final String DICTIONARY_ID = "a591a6d40bf420404a011733cfb7b190d62c65bf0bcda32b57b277d9ad9f146e";
+
     static
     {
         Brotli4jLoader.ensureAvailability();
@@ -55,7 +58,7 @@ class CachedResponseWriterTest
         {
             when( request.getMethod() ).thenReturn( "GET" );
             when( request.getHeader( "If-None-Match" ) ).thenReturn( "\"etag\"" );
-            requestUtils.when( () -> RequestUtils.acceptEncoding( request ) ).thenReturn( RequestUtils.AcceptEncoding.UNSPECIFIED );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) ).thenReturn( List.of( RequestUtils.AcceptEncoding.UNSPECIFIED ) );
             writer = new CachedResponseWriter( request, r -> {
             } );
         }
@@ -78,7 +81,7 @@ class CachedResponseWriterTest
         try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
         {
             when( request.getMethod() ).thenReturn( "HEAD" );
-            requestUtils.when( () -> RequestUtils.acceptEncoding( request ) ).thenReturn( RequestUtils.AcceptEncoding.UNSPECIFIED );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) ).thenReturn( List.of( RequestUtils.AcceptEncoding.UNSPECIFIED ) );
             writer = new CachedResponseWriter( request, r -> {
             } );
         }
@@ -104,7 +107,7 @@ class CachedResponseWriterTest
         try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
         {
             when( request.getMethod() ).thenReturn( "GET" );
-            requestUtils.when( () -> RequestUtils.acceptEncoding( request ) ).thenReturn( RequestUtils.AcceptEncoding.UNSPECIFIED );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) ).thenReturn( List.of( RequestUtils.AcceptEncoding.UNSPECIFIED ) );
             writer = new CachedResponseWriter( request, r -> response.setHeader( "Cache-Status", "Booster; hit" ) );
         }
         when( response.getOutputStream() ).thenReturn( mock( ServletOutputStream.class ) );
@@ -121,6 +124,25 @@ class CachedResponseWriterTest
         verifyNoMoreInteractions( response );
     }
 
+    @Test
+    void write_identity_body()
+        throws Exception
+    {
+        final CachedResponseWriter writer;
+        try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
+        {
+            when( request.getMethod() ).thenReturn( "GET" );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) ).thenReturn( List.of( RequestUtils.AcceptEncoding.UNSPECIFIED ) );
+            writer = new CachedResponseWriter( request, r -> {
+            }, cached -> ByteSupply.of( "Hello World!".getBytes( StandardCharsets.UTF_8 ) ) );
+        }
+        final ServletOutputStream outputStream = mock( ServletOutputStream.class );
+        when( response.getOutputStream() ).thenReturn( outputStream );
+        writer.write( response, newCacheItem() );
+        verify( response ).setContentLength( 12 );
+        verify( outputStream ).write( "Hello World!".getBytes( StandardCharsets.UTF_8 ) );
+    }
+
     @Test
     void write_no_booster_header()
         throws Exception
@@ -129,7 +151,7 @@ class CachedResponseWriterTest
         try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
         {
             when( request.getMethod() ).thenReturn( "GET" );
-            requestUtils.when( () -> RequestUtils.acceptEncoding( request ) ).thenReturn( RequestUtils.AcceptEncoding.UNSPECIFIED );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) ).thenReturn( List.of( RequestUtils.AcceptEncoding.UNSPECIFIED ) );
             writer = new CachedResponseWriter( request, r -> {
             } );
         }
@@ -155,7 +177,9 @@ class CachedResponseWriterTest
         {
             when( request.getMethod() ).thenReturn( "GET" );
 
-            requestUtils.when( () -> RequestUtils.acceptEncoding( request ) ).thenReturn( RequestUtils.AcceptEncoding.BROTLI );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) )
+                .thenReturn( List.of( RequestUtils.AcceptEncoding.BROTLI, RequestUtils.AcceptEncoding.GZIP,
+                                      RequestUtils.AcceptEncoding.UNSPECIFIED ) );
             writer = new CachedResponseWriter( request, r -> {
             } );
         }
@@ -173,6 +197,118 @@ class CachedResponseWriterTest
         verifyNoMoreInteractions( response );
     }
 
+    @Test
+    void write_brotli_not_ready()
+        throws Exception
+    {
+        final CachedResponseWriter writer;
+        try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
+        {
+            when( request.getMethod() ).thenReturn( "GET" );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) )
+                .thenReturn( List.of( RequestUtils.AcceptEncoding.BROTLI, RequestUtils.AcceptEncoding.GZIP,
+                                      RequestUtils.AcceptEncoding.UNSPECIFIED ) );
+            writer = new CachedResponseWriter( request, r -> {
+            } );
+        }
+        when( response.getOutputStream() ).thenReturn( mock( ServletOutputStream.class ) );
+        final CacheItem cached = withoutBrotli( newCacheItem( "Hello World! ".repeat( 100 ) ) );
+        writer.write( response, cached );
+        verify( response ).setContentType( "text/xhtml" );
+        verify( response ).setHeader( "ETag", "\"etag-gzip\"" );
+        verify( response ).setHeader( "Content-Encoding", "gzip" );
+        verify( response ).addHeader( "vary", "Accept-Language" );
+        verify( response ).addHeader( "cache-control", "max-age=60" );
+        verify( response ).setIntHeader( eq( "Age" ), anyInt() );
+        verify( response ).setContentLength( cached.gzipData().size() );
+        verify( response ).setStatus( 200 );
+        verify( response ).getOutputStream();
+        verifyNoMoreInteractions( response );
+    }
+
+    @Test
+    void write_zstd()
+        throws Exception
+    {
+        final CachedResponseWriter writer;
+        try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
+        {
+            when( request.getMethod() ).thenReturn( "GET" );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) )
+                .thenReturn( List.of( RequestUtils.AcceptEncoding.BROTLI, RequestUtils.AcceptEncoding.ZSTD,
+                                      RequestUtils.AcceptEncoding.GZIP, RequestUtils.AcceptEncoding.UNSPECIFIED ) );
+            writer = new CachedResponseWriter( request, r -> {
+            } );
+        }
+        when( response.getOutputStream() ).thenReturn( mock( ServletOutputStream.class ) );
+        final CacheItem cached = withoutBrotli( newCacheItem() );
+        writer.write( response, cached );
+        verify( response ).setContentType( "text/xhtml" );
+        verify( response ).setHeader( "ETag", "\"etag-zstd\"" );
+        verify( response ).setHeader( "Content-Encoding", "zstd" );
+        verify( response ).addHeader( "vary", "Accept-Language" );
+        verify( response ).addHeader( "cache-control", "max-age=60" );
+        verify( response ).setIntHeader( eq( "Age" ), anyInt() );
+        verify( response ).setContentLength( cached.zstdData().size() );
+        verify( response ).setStatus( 200 );
+        verify( response ).getOutputStream();
+        verifyNoMoreInteractions( response );
+    }
+
+    @Test
+    void write_dcz()
+        throws Exception
+    {
+        final CachedResponseWriter writer;
+        try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
+        {
+            when( request.getMethod() ).thenReturn( "GET" );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) )
+                .thenReturn( List.of( RequestUtils.AcceptEncoding.DCZ, RequestUtils.AcceptEncoding.BROTLI, RequestUtils.AcceptEncoding.GZIP,
+                                      RequestUtils.AcceptEncoding.UNSPECIFIED ) );
+            requestUtils.when( () -> RequestUtils.availableDictionary( request ) ).thenReturn( DICTIONARY_ID );
+            writer = new CachedResponseWriter( request, r -> {
+            } );
+        }
+        when( response.getOutputStream() ).thenReturn( mock( ServletOutputStream.class ) );
+        final CacheItem cached = withDictionary( newCacheItem() );
+        writer.write( response, cached );
+        verify( response ).setContentType( "text/xhtml" );
+        verify( response ).setHeader( "ETag", "\"etag-dcz-a591a6d4\"" );
+        verify( response ).setHeader( "Content-Encoding", "dcz" );
+        verify( response ).addHeader( "Vary", "Available-Dictionary" );
+        verify( response ).addHeader( "vary", "Accept-Language" );
+        verify( response ).addHeader( "cache-control", "max-age=60" );
+        verify( response ).setIntHeader( eq( "Age" ), anyInt() );
+        verify( response ).setContentLength( cached.dczData().data().size() );
+        verify( response ).setStatus( 200 );
+        verify( response ).getOutputStream();
+        verifyNoMoreInteractions( response );
+    }
+
+    @Test
+    void write_dictionary_link()
+        throws Exception
+    {
+        final CachedResponseWriter writer;
+        try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
+        {
+            when( request.getMethod() ).thenReturn( "GET" );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) )
+                .thenReturn( List.of( RequestUtils.AcceptEncoding.BROTLI, RequestUtils.AcceptEncoding.GZIP,
+                                      RequestUtils.AcceptEncoding.UNSPECIFIED ) );
+            writer = new CachedResponseWriter( request, r -> {
+            } );
+        }
+        when( response.getOutputStream() ).thenReturn( mock( ServletOutputStream.class ) );
+        final CacheItem cached = withDictionary( newCacheItem() );
+        writer.write( response, cached );
+        verify( response ).setHeader( "ETag", "\"etag-br\"" );
+        verify( response ).setHeader( "Content-Encoding", "br" );
+        verify( response ).addHeader( "Vary", "Available-Dictionary" );
+        verify( response ).addHeader( "Link", "</news/_/booster/dictionary/" + DICTIONARY_ID + ">; rel=\"compression-dictionary\"" );
+    }
+
     @Test
     void write_gzip()
         throws Exception
@@ -181,28 +317,63 @@ class CachedResponseWriterTest
         try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
         {
             when( request.getMethod() ).thenReturn( "GET" );
-            requestUtils.when( () -> RequestUtils.acceptEncoding( request ) ).thenReturn( RequestUtils.AcceptEncoding.GZIP );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) )
+                .thenReturn( List.of( RequestUtils.AcceptEncoding.GZIP, RequestUtils.AcceptEncoding.UNSPECIFIED ) );
             writer = new CachedResponseWriter( request, r -> {
             } );
         }
         when( response.getOutputStream() ).thenReturn( mock( ServletOutputStream.class ) );
-        writer.write( response, newCacheItem() );
+        final CacheItem cached = newCacheItem( "Hello World! ".repeat( 100 ) );
+        writer.write( response, cached );
         verify( response ).setContentType( "text/xhtml" );
         verify( response ).setHeader( "ETag", "\"etag-gzip\"" );
         verify( response ).setHeader( "Content-Encoding", "gzip" );
         verify( response ).addHeader( "vary", "Accept-Language" );
         verify( response ).addHeader( "cache-control", "max-age=60" );
         verify( response ).setIntHeader( eq( "Age" ), anyInt() );
-        verify( response ).setContentLength( 32 );
+        verify( response ).setContentLength( cached.gzipData().size() );
         verify( response ).setStatus( 200 );
         verify( response ).getOutputStream();
         verifyNoMoreInteractions( response );
     }
 
+    @Test
+    void write_gzip_not_smaller()
+        throws Exception
+    {
+        final CachedResponseWriter writer;
+        try (MockedStatic<RequestUtils> requestUtils = mockStatic( RequestUtils.class ))
+        {
+            when( request.getMethod() ).thenReturn( "GET" );
+            requestUtils.when( () -> RequestUtils.acceptEncodings( request ) )
+                .thenReturn( List.of( RequestUtils.AcceptEncoding.GZIP, RequestUtils.AcceptEncoding.UNSPECIFIED ) );
+            writer = new CachedResponseWriter( request, r -> {
+            }, cached -> ByteSupply.of( "Hello World!".getBytes( StandardCharsets.UTF_8 ) ) );
+        }
+        final ServletOutputStream outputStream = mock( ServletOutputStream.class );
+        when( response.getOutputStream() ).thenReturn( outputStream );
+        writer.write( response, newCacheItem() );
+        verify( response ).setContentType( "text/xhtml" );
+        verify( response ).setHeader( "ETag", "\"etag\"" );
+        verify( response ).addHeader( "vary", "Accept-Language" );
+        verify( response ).addHeader( "cache-control", "max-age=60" );
+        verify( response ).setIntHeader( eq( "Age" ), anyInt() );
+        verify( response ).setContentLength( 12 );
+        verify( response ).setStatus( 200 );
+        verify( response ).getOutputStream();
+        verify( outputStream ).write( "Hello World!".getBytes( StandardCharsets.UTF_8 ) );
+        verifyNoMoreInteractions( response );
+    }
+
     CacheItem newCacheItem()
         throws IOException
     {
-        final String data = "Hello World!";
+        return newCacheItem( "Hello World!" );
+    }
+
+    CacheItem newCacheItem( final String data )
+        throws IOException
+    {
 
         final ByteArrayOutputStream baosBrotli = new ByteArrayOutputStream();
         try (BrotliOutputStream osBr = new BrotliOutputStream( baosBrotli ))
@@ -216,11 +387,35 @@ class CachedResponseWriterTest
             osBr.write( data.getBytes( StandardCharsets.UTF_8 ) );
         }
 
+        final ByteArrayOutputStream baosZstd = new ByteArrayOutputStream();
+        try (ZstdOutputStream osZstd = new ZstdOutputStream( baosZstd ))
+        {
+            osZstd.write( data.getBytes( StandardCharsets.UTF_8 ) );
+        }
+
         final Map<String, List<String>> headers =
             Map.of( "x-booster-cache", List.of( "ignored" ), "vary", List.of( "Accept-Language" ), "cache-control",
                     List.of( "max-age=60" ) );
 
-        return new CacheItem( 200, "text/xhtml", headers, Instant.EPOCH, null, null, null, data.length(), "etag", List.of(), List.of(),
-                              ByteSupply.of( baosGzip ), ByteSupply.of( baosBrotli ) );
+        return new CacheItem( 200, "text/xhtml", headers, Instant.EPOCH, null, null, null, data.length(), "etag", null, null, List.of(),
+                              List.of(), ByteSupply.of( baosGzip ), ByteSupply.of( baosBrotli ), ByteSupply.of( baosZstd ), null );
+    }
+
+    static CacheItem withDictionary( final CacheItem cached )
+    {
+        return new CacheItem( cached.status(), cached.contentType(), cached.headers(), cached.cachedTime(), cached.expireTime(), cached.age(),
+                              cached.invalidatedTime(), cached.contentLength(), cached.etag(), cached.staleWhileRevalidate(),
+                              cached.staleIfError(), cached.configBypassHeaders(), cached.configBypassCookies(), cached.gzipData(),
+                              cached.brotliData(), cached.zstdData(),
+                              new DictionaryCompressed( DICTIONARY_ID, "/news/_/booster/dictionary/" + DICTIONARY_ID,
+                                                        ByteSupply.of( new byte[]{1, 2, 3} ) ) );
+    }
+
+    static CacheItem withoutBrotli( final CacheItem cached )
+    {
+        return new CacheItem( cached.status(), cached.contentType(), cached.headers(), cached.cachedTime(), cached.expireTime(), cached.age(),
+                              cached.invalidatedTime(), cached.contentLength(), cached.etag(), cached.staleWhileRevalidate(),
+                              cached.staleIfError(), cached.configBypassHeaders(), cached.configBypassCookies(), cached.gzipData(), null,
+                              cached.zstdData(), cached.dczData() );
     }
 }
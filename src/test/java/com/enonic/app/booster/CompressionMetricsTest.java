@@ -0,0 +1,54 @@
+package com.enonic.app.booster;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionMetricsTest
+{
+    @Test
+    void record()
+    {
+        final CompressionMetrics metrics = new CompressionMetrics();
+        metrics.compressed( "gzip", 6, 1000, 250 );
+        metrics.compressed( "gzip", 1, 3000, 1000 );
+        metrics.compressed( "br", 11, 1000, 200 );
+        metrics.skipped( "gzip" );
+
+        assertEquals( Map.of( "br", 1L, "gzip", 2L ), metrics.getCompressedCount() );
+        assertEquals( Map.of( "gzip", 1L ), metrics.getSkippedCount() );
+        assertEquals( Map.of( "br", 5.0, "gzip", 3.2 ), metrics.getCompressionRatio() );
+        assertEquals( Map.of( "br-11", 1L, "gzip-1", 1L, "gzip-6", 1L ), metrics.getLevelCount() );
+    }
+
+    @Test
+    void registration()
+        throws Exception
+    {
+        final CompressionMetrics metrics = new CompressionMetrics();
+        final ObjectName name = new ObjectName( CompressionMetrics.OBJECT_NAME );
+
+        metrics.activate();
+        try
+        {
+            assertTrue( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
+            metrics.compressed( "zstd", 3, 100, 50 );
+            final TabularData compressedCount =
+                (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute( name, "CompressedCount" );
+            assertEquals( 1, compressedCount.size() );
+        }
+        finally
+        {
+            metrics.deactivate();
+        }
+        assertFalse( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
+    }
+}
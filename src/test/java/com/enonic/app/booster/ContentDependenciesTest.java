@@ -0,0 +1,63 @@
+package com.enonic.app.booster;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.enonic.xp.content.Content;
+import com.enonic.xp.content.ContentId;
+import com.enonic.xp.page.Page;
+import com.enonic.xp.page.PageRegions;
+import com.enonic.xp.page.PageTemplateKey;
+import com.enonic.xp.portal.PortalRequest;
+import com.enonic.xp.region.FragmentComponent;
+import com.enonic.xp.region.LayoutComponent;
+import com.enonic.xp.region.LayoutRegions;
+import com.enonic.xp.region.Region;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ContentDependenciesTest
+{
+    @Test
+    void collect()
+    {
+        final LayoutComponent layout = LayoutComponent.create()
+            .regions( LayoutRegions.create()
+                          .add( Region.create()
+                                    .name( "left" )
+                                    .add( FragmentComponent.create().fragment( ContentId.from( "fragment2" ) ).build() )
+                                    .build() )
+                          .build() )
+            .build();
+        final Page page = Page.create()
+            .template( PageTemplateKey.from( "template1" ) )
+            .regions( PageRegions.create()
+                          .add( Region.create()
+                                    .name( "main" )
+                                    .add( FragmentComponent.create().fragment( ContentId.from( "fragment1" ) ).build() )
+                                    .add( layout )
+                                    .build() )
+                          .build() )
+            .build();
+
+        final Content content = mock( Content.class );
+        when( content.getId() ).thenReturn( ContentId.from( "content1" ) );
+        when( content.getPage() ).thenReturn( page );
+        final PortalRequest portalRequest = new PortalRequest();
+        portalRequest.setContent( content );
+
+        assertThat( ContentDependencies.collect( portalRequest, List.of( "declared1", "content1" ) ) ).containsExactly( "declared1",
+                                                                                                                         "template1",
+                                                                                                                         "fragment1",
+                                                                                                                         "fragment2" );
+    }
+
+    @Test
+    void collect_no_content()
+    {
+        assertThat( ContentDependencies.collect( new PortalRequest(), List.of( "declared1" ) ) ).containsExactly( "declared1" );
+    }
+}
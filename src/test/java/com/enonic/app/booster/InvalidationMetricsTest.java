@@ -0,0 +1,51 @@
+package com.enonic.app.booster;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvalidationMetricsTest
+{
+    @Test
+    void record()
+    {
+        final InvalidationMetrics metrics = new InvalidationMetrics();
+        metrics.invalidated( 1000, TimeUnit.SECONDS.toNanos( 1 ) );
+        metrics.invalidated( 3000, TimeUnit.SECONDS.toNanos( 1 ) );
+        metrics.invalidated( 0, TimeUnit.SECONDS.toNanos( 2 ) );
+
+        assertEquals( 3, metrics.getInvalidationCount() );
+        assertEquals( 4000, metrics.getInvalidatedCount() );
+        assertEquals( 4000, metrics.getInvalidationMillis() );
+        assertEquals( 1000.0, metrics.getThroughput() );
+        assertEquals( 3000.0, metrics.getLastThroughput() );
+    }
+
+    @Test
+    void registration()
+        throws Exception
+    {
+        final InvalidationMetrics metrics = new InvalidationMetrics();
+        final ObjectName name = new ObjectName( InvalidationMetrics.OBJECT_NAME );
+
+        metrics.activate();
+        try
+        {
+            assertTrue( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
+            metrics.invalidated( 10, TimeUnit.MILLISECONDS.toNanos( 5 ) );
+            assertEquals( 10L, ManagementFactory.getPlatformMBeanServer().getAttribute( name, "InvalidatedCount" ) );
+        }
+        finally
+        {
+            metrics.deactivate();
+        }
+        assertFalse( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
+    }
+}
@@ -0,0 +1,113 @@
+package com.enonic.app.booster;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+
+import com.enonic.xp.data.PropertySet;
+import com.enonic.xp.data.PropertyTree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeyDimensionTest
+{
+    private static final KeyDimension DEVICE =
+        new KeyDimension( KeyDimension.Source.HEADER, "User-Agent", List.of( new KeyDimension.Bucket( ".*\\bipad\\b.*", "tablet" ),
+                                                                            new KeyDimension.Bucket( ".*\\bmobile\\b.*", "mobile" ) ) );
+
+    private static final KeyDimension LANGUAGE = new KeyDimension( KeyDimension.Source.COOKIE, "lang", List.of() );
+
+    @Mock
+    HttpServletRequest request;
+
+    @Test
+    void value_bucket()
+    {
+        when( request.getHeader( "User-Agent" ) ).thenReturn( "Mozilla/5.0 (iPhone) Mobile Safari" );
+        assertEquals( "mobile", DEVICE.value( request ) );
+    }
+
+    @Test
+    void value_first_matching_bucket()
+    {
+        when( request.getHeader( "User-Agent" ) ).thenReturn( "Mozilla/5.0 (iPad) Mobile Safari" );
+        assertEquals( "tablet", DEVICE.value( request ) );
+    }
+
+    @Test
+    void value_no_bucket()
+    {
+        when( request.getHeader( "User-Agent" ) ).thenReturn( "Mozilla/5.0 (Windows NT 10.0)" );
+        assertEquals( "", DEVICE.value( request ) );
+    }
+
+    @Test
+    void value_normalized()
+    {
+        when( request.getCookies() ).thenReturn( new Cookie[]{new Cookie( "other", "x" ), new Cookie( "lang", " NO " )} );
+        assertEquals( "no", LANGUAGE.value( request ) );
+    }
+
+    @Test
+    void value_missing()
+    {
+        assertEquals( "", LANGUAGE.value( request ) );
+    }
+
+    @Test
+    void variantUrl()
+    {
+        when( request.getHeader( "User-Agent" ) ).thenReturn( "Mobile" );
+        when( request.getCookies() ).thenReturn( new Cookie[]{new Cookie( "lang", "en&no" )} );
+
+        assertEquals( "https://example.com/?a=1#h:user-agent=mobile&c:lang=en%26no",
+                      KeyDimension.variantUrl( "https://example.com/?a=1", List.of( DEVICE, LANGUAGE ), request ) );
+    }
+
+    @Test
+    void varyHeaders()
+    {
+        assertEquals( Set.of( "User-Agent", "Cookie" ), KeyDimension.varyHeaders(
+            List.of( DEVICE, LANGUAGE, new KeyDimension( KeyDimension.Source.COOKIE, "device", List.of() ) ) ) );
+    }
+
+    @Test
+    void withVary()
+    {
+        assertEquals( List.of( DEVICE, LANGUAGE, new KeyDimension( KeyDimension.Source.HEADER, "Accept-Language", List.of() ) ),
+                      KeyDimension.withVary( List.of( DEVICE, LANGUAGE ),
+                                             List.of( "Accept-Encoding, user-agent", "Accept-Language" ) ) );
+    }
+
+    @Test
+    void withVary_none()
+    {
+        assertEquals( List.of( LANGUAGE ), KeyDimension.withVary( List.of( LANGUAGE ), null ) );
+    }
+
+    @Test
+    void mapKeyDimensions()
+    {
+        final PropertyTree data = new PropertyTree();
+        final PropertySet header = data.addSet( "keyHeaders" );
+        header.setString( "name", "User-Agent" );
+        final PropertySet bucket = header.addSet( "buckets" );
+        bucket.setString( "pattern", ".*\\bmobile\\b.*" );
+        bucket.setString( "value", "mobile" );
+        data.addSet( "keyHeaders" ).setString( "name", " " );
+        data.addSet( "keyCookies" ).setString( "name", "lang" );
+
+        assertEquals( List.of( new KeyDimension( KeyDimension.Source.HEADER, "User-Agent",
+                                                 List.of( new KeyDimension.Bucket( ".*\\bmobile\\b.*", "mobile" ) ) ), LANGUAGE ),
+                      KeyDimensionMapper.mapKeyDimensions( data.getSets( "keyHeaders" ), data.getSets( "keyCookies" ) ) );
+    }
+}
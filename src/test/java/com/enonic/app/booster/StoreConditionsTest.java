@@ -96,7 +96,20 @@ class StoreConditionsTest
         when( request.getMethod() ).thenReturn( "GET" );
         when( request.getSession( false ) ).thenReturn( null );
         when( response.getStatus() ).thenReturn( 200 );
-        when( response.getCachedHeaders() ).thenReturn( Map.of( "vary", List.of( "Accept" ) ) );
+        when( response.getCachedHeaders() ).thenReturn( Map.of( "vary", List.of( "Accept, Accept-Language" ) ) );
+        when( response.getFreshness() ).thenReturn( freshFreshness() );
+
+        StoreConditions storeConditions = new StoreConditions();
+        assertTrue( storeConditions.check( request, response ) );
+    }
+
+    @Test
+    public void storeConditions_vary_any()
+    {
+        when( request.getMethod() ).thenReturn( "GET" );
+        when( request.getSession( false ) ).thenReturn( null );
+        when( response.getStatus() ).thenReturn( 200 );
+        when( response.getCachedHeaders() ).thenReturn( Map.of( "vary", List.of( "Accept, *" ) ) );
 
         StoreConditions storeConditions = new StoreConditions();
         assertFalse( storeConditions.check( request, response ) );
@@ -133,7 +146,7 @@ class StoreConditionsTest
         when( request.getMethod() ).thenReturn( "GET" );
         when( request.getSession( false ) ).thenReturn( null );
         when( response.getStatus() ).thenReturn( 200 );
-        when( response.getFreshness() ).thenReturn( new ResponseFreshness( null, null, false, true, false, Instant.now(), null ) );
+        when( response.getFreshness() ).thenReturn( new ResponseFreshness( null, null, false, true, false, Instant.now(), null, null, null ) );
 
         StoreConditions storeConditions = new StoreConditions();
         assertFalse( storeConditions.check( request, response ) );
@@ -457,6 +470,6 @@ class StoreConditionsTest
 
     private static ResponseFreshness freshFreshness()
     {
-        return new ResponseFreshness( null, null, false, false, false, Instant.now(), null );
+        return new ResponseFreshness( null, null, false, false, false, Instant.now(), null, null, null );
     }
 }
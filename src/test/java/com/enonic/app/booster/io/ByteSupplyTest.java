@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import com.google.common.io.ByteSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class ByteSupplyTest
 {
@@ -50,6 +51,21 @@ class ByteSupplyTest
         }
     }
 
+    @Test
+    void ofByteArray()
+        throws Exception
+    {
+        final byte[] bytes = "Hello, World!".getBytes( StandardCharsets.UTF_8 );
+        final ByteSupply byteSupply = ByteSupply.of( bytes );
+        assertEquals( 13, byteSupply.size() );
+
+        final ByteArrayOutputStream receiver = new ByteArrayOutputStream();
+        byteSupply.writeTo( receiver );
+        assertEquals( "Hello, World!", receiver.toString( StandardCharsets.UTF_8 ) );
+
+        assertSame( bytes, byteSupply.toByteArray() );
+    }
+
     @Test
     void asByteSource()
         throws Exception
@@ -0,0 +1,67 @@
+package com.enonic.app.booster.io;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionPolicyTest
+{
+    @Test
+    void smallBodiesNotCompressed()
+    {
+        final CompressionPolicy policy = new CompressionPolicy( 1024, 11, 3, () -> 0.5 );
+        assertFalse( policy.shouldCompress( 1023 ) );
+        assertTrue( policy.shouldCompress( 1024 ) );
+        assertEquals( CompressionPolicy.NO_COMPRESSION, policy.gzipLevel( 500 ) );
+        assertEquals( 6, policy.gzipLevel( 1024 ) );
+        assertEquals( 6, policy.gzipLevel( -1 ) );
+    }
+
+    @Test
+    void quiet()
+    {
+        final CompressionPolicy policy = new CompressionPolicy( 0, 11, 3, () -> 0.1 );
+        assertEquals( 9, policy.gzipLevel( 10_000 ) );
+        assertEquals( 6, policy.gzipLevel( 1024 * 1024 ) );
+        assertEquals( 11, policy.brotliQuality( 1024 * 1024 ) );
+        assertEquals( 3, policy.zstdLevel() );
+    }
+
+    @Test
+    void normal()
+    {
+        final CompressionPolicy policy = new CompressionPolicy( 0, 11, 3, () -> 0.5 );
+        assertEquals( 6, policy.gzipLevel( 10_000 ) );
+        assertEquals( 11, policy.brotliQuality( 10_000 ) );
+        assertEquals( 9, policy.brotliQuality( 1024 * 1024 ) );
+        assertEquals( 3, policy.zstdLevel() );
+    }
+
+    @Test
+    void busy()
+    {
+        final CompressionPolicy policy = new CompressionPolicy( 0, 11, 3, () -> 1.5 );
+        assertEquals( 1, policy.gzipLevel( 10_000 ) );
+        assertEquals( 4, policy.brotliQuality( 10_000 ) );
+        assertEquals( 1, policy.zstdLevel() );
+    }
+
+    @Test
+    void configuredLevelsNotExceeded()
+    {
+        final CompressionPolicy policy = new CompressionPolicy( 0, 2, 3, () -> 1.5 );
+        assertEquals( 2, policy.brotliQuality( 10_000 ) );
+    }
+
+    @Test
+    void unknownLoad()
+    {
+        final CompressionPolicy policy = new CompressionPolicy( 0, 11, 5, () -> Double.NaN );
+        assertEquals( 6, policy.gzipLevel( 10_000 ) );
+        assertEquals( 11, policy.brotliQuality( 10_000 ) );
+        assertEquals( 9, policy.brotliQuality( 1024 * 1024 ) );
+        assertEquals( 5, policy.zstdLevel() );
+    }
+}
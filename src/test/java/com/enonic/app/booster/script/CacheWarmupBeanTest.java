@@ -0,0 +1,177 @@
+package com.enonic.app.booster.script;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.enonic.app.booster.storage.NodeCacheStore;
+import com.enonic.xp.data.PropertyTree;
+import com.enonic.xp.node.FindNodesByQueryResult;
+import com.enonic.xp.node.Node;
+import com.enonic.xp.node.NodeHit;
+import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeIds;
+import com.enonic.xp.node.NodePath;
+import com.enonic.xp.node.NodeQuery;
+import com.enonic.xp.node.NodeService;
+import com.enonic.xp.node.Nodes;
+import com.enonic.xp.query.filter.BooleanFilter;
+import com.enonic.xp.query.filter.ExistsFilter;
+import com.enonic.xp.query.filter.ValueFilter;
+import com.enonic.xp.script.bean.BeanContext;
+import com.enonic.xp.web.vhost.VirtualHost;
+import com.enonic.xp.web.vhost.VirtualHostService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentCaptor.captor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CacheWarmupBeanTest
+{
+    @Mock
+    NodeService nodeService;
+
+    @Mock
+    NodeCacheStore nodeCacheStore;
+
+    @Mock
+    VirtualHostService virtualHostService;
+
+    @Mock
+    HttpClient httpClient;
+
+    CacheWarmupBean cacheWarmupBean;
+
+    @BeforeEach
+    void setUp()
+    {
+        final BeanContext beanContext = mock( BeanContext.class );
+        when( beanContext.getService( NodeService.class ) ).thenReturn( () -> nodeService );
+        when( beanContext.getService( NodeCacheStore.class ) ).thenReturn( () -> nodeCacheStore );
+        when( beanContext.getService( VirtualHostService.class ) ).thenReturn( () -> virtualHostService );
+        cacheWarmupBean = new CacheWarmupBean( httpClient );
+        cacheWarmupBean.initialize( beanContext );
+    }
+
+    @Test
+    void warmup()
+        throws Exception
+    {
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( FindNodesByQueryResult.create()
+                                                                                 .addNodeHit( NodeHit.create().nodeId( NodeId.from( "node1" ) ).build() )
+                                                                                 .addNodeHit( NodeHit.create().nodeId( NodeId.from( "node2" ) ).build() )
+                                                                                 .totalHits( 2 )
+                                                                                 .build() );
+        when( nodeService.getByIds( any( NodeIds.class ) ) ).thenReturn(
+            Nodes.from( node( "node1", "https://example.com/a" ), node( "node2", "https://example.com/b?q=1" ) ) );
+
+        final HttpResponse<Void> ok = mock();
+        when( ok.statusCode() ).thenReturn( 200 );
+        final HttpResponse<Void> notFound = mock();
+        when( notFound.statusCode() ).thenReturn( 404 );
+        when( httpClient.<Void>sendAsync( any(), any() ) ).thenReturn( CompletableFuture.completedFuture( ok ),
+                                                                       CompletableFuture.completedFuture( notFound ) );
+
+        when( nodeCacheStore.generations() ).thenReturn( Map.of( "project:project1", 10L ) );
+
+        assertEquals( 2, cacheWarmupBean.prepare( List.of( "project1" ), 100 ) );
+
+        final ArgumentCaptor<NodeQuery> queryCaptor = captor();
+        verify( nodeService ).findByQuery( queryCaptor.capture() );
+        assertThat( queryCaptor.getValue().getQueryFilters().stream().filter( f -> f instanceof BooleanFilter ) ).map(
+            f -> (BooleanFilter) f ).singleElement().satisfies( filter -> {
+            assertThat( filter.getShould() ).first()
+                .isInstanceOfSatisfying( ExistsFilter.class,
+                                         exists -> assertThat( exists.getFieldName() ).isEqualTo( "invalidatedTime" ) );
+            // marked items and items of the invalidated project, stamped with a lower generation or not stamped
+            assertThat( filter.getShould() ).hasSize( 2 );
+            assertThat( filter.getShould().get( 1 ) ).isInstanceOfSatisfying( BooleanFilter.class, scope -> {
+                assertThat( scope.getMust() ).first()
+                    .isInstanceOfSatisfying( ValueFilter.class, value -> assertThat( value.getFieldName() ).isEqualTo( "project" ) );
+                assertThat( scope.getMust() ).last()
+                    .isInstanceOfSatisfying( BooleanFilter.class, generation -> assertThat( generation.getShould() ).hasSize( 2 ) );
+            } );
+        } );
+
+        assertEquals( 2, cacheWarmupBean.warmup( 10, 2, 0, null ) );
+        assertEquals( 0, cacheWarmupBean.warmup( 10, 2, 0, null ) );
+        assertEquals( 1, cacheWarmupBean.getFailed() );
+
+        // requests go to the local web server, not to cached URLs
+        final ArgumentCaptor<HttpRequest> requestCaptor = captor();
+        verify( httpClient, times( 2 ) ).sendAsync( requestCaptor.capture(), any() );
+        assertThat( requestCaptor.getAllValues() ).map( HttpRequest::uri )
+            .containsExactly( URI.create( "http://localhost:8080/a" ), URI.create( "http://localhost:8080/b?q=1" ) );
+        assertThat( requestCaptor.getAllValues() ).allSatisfy(
+            request -> assertThat( request.headers().firstValue( "X-Forwarded-Host" ) ).hasValue( "example.com" ) );
+    }
+
+    @Test
+    void warmup_unmapped_host()
+        throws Exception
+    {
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( FindNodesByQueryResult.create()
+                                                                                 .addNodeHit( NodeHit.create().nodeId( NodeId.from( "node1" ) ).build() )
+                                                                                 .addNodeHit( NodeHit.create().nodeId( NodeId.from( "node2" ) ).build() )
+                                                                                 .addNodeHit( NodeHit.create().nodeId( NodeId.from( "node3" ) ).build() )
+                                                                                 .totalHits( 3 )
+                                                                                 .build() );
+        when( nodeService.getByIds( any( NodeIds.class ) ) ).thenReturn(
+            Nodes.from( node( "node1", "https://example.com/news/a" ), node( "node2", "https://evil.com/news/a" ),
+                        node( "node3", "https://example.com/admin" ) ) );
+
+        final VirtualHost virtualHost = mock( VirtualHost.class );
+        when( virtualHost.getHost() ).thenReturn( "Example.com" );
+        when( virtualHost.getSource() ).thenReturn( "/news" );
+        when( virtualHostService.isEnabled() ).thenReturn( true );
+        when( virtualHostService.getVirtualHosts() ).thenReturn( List.of( virtualHost ) );
+
+        final HttpResponse<Void> ok = mock();
+        when( ok.statusCode() ).thenReturn( 200 );
+        when( httpClient.<Void>sendAsync( any(), any() ) ).thenReturn( CompletableFuture.completedFuture( ok ) );
+
+        when( nodeCacheStore.generations() ).thenReturn( Map.of() );
+
+        assertEquals( 3, cacheWarmupBean.prepare( List.of(), 100 ) );
+        assertEquals( 1, cacheWarmupBean.warmup( 10, 2, 0, "http://127.0.0.1:8888" ) );
+        assertEquals( 2, cacheWarmupBean.getFailed() );
+
+        final ArgumentCaptor<HttpRequest> requestCaptor = captor();
+        verify( httpClient ).sendAsync( requestCaptor.capture(), any() );
+        assertEquals( URI.create( "http://127.0.0.1:8888/news/a" ), requestCaptor.getValue().uri() );
+    }
+
+    @Test
+    void buildRequest_baseUrl()
+    {
+        final HttpRequest request = CacheWarmupBean.buildRequest( URI.create( "https://example.com:8443/a/b?q=1" ), "http://localhost:8081" );
+
+        assertEquals( URI.create( "http://localhost:8081/a/b?q=1" ), request.uri() );
+        assertThat( request.headers().firstValue( "X-Forwarded-Host" ) ).hasValue( "example.com:8443" );
+        assertThat( request.headers().firstValue( "X-Forwarded-Proto" ) ).hasValue( "https" );
+    }
+
+    private static Node node( final String id, final String url )
+    {
+        final PropertyTree data = new PropertyTree();
+        data.setString( "url", url );
+        return Node.create().id( NodeId.from( id ) ).parentPath( NodePath.ROOT ).name( id ).data( data ).build();
+    }
+}
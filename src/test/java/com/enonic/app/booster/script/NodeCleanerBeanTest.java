@@ -1,6 +1,7 @@
 package com.enonic.app.booster.script;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,6 +10,9 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.enonic.app.booster.InvalidationMetrics;
+import com.enonic.app.booster.storage.NodeCacheInvalidator;
+import com.enonic.app.booster.storage.NodeCacheStore;
 import com.enonic.xp.data.PropertyTree;
 import com.enonic.xp.data.Value;
 import com.enonic.xp.node.DeleteNodeParams;
@@ -17,11 +21,16 @@ import com.enonic.xp.node.FindNodesByQueryResult;
 import com.enonic.xp.node.Node;
 import com.enonic.xp.node.NodeHit;
 import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeNotFoundException;
 import com.enonic.xp.node.NodeQuery;
 import com.enonic.xp.node.NodeService;
+import com.enonic.xp.node.RefreshMode;
 import com.enonic.xp.node.UpdateNodeParams;
 import com.enonic.xp.query.expr.CompareExpr;
+import com.enonic.xp.query.expr.FieldOrderExpr;
 import com.enonic.xp.query.expr.LogicalExpr;
+import com.enonic.xp.query.filter.BooleanFilter;
+import com.enonic.xp.query.filter.RangeFilter;
 import com.enonic.xp.query.filter.ValueFilter;
 import com.enonic.xp.script.bean.BeanContext;
 
@@ -30,7 +39,10 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentCaptor.captor;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -42,6 +54,12 @@ class NodeCleanerBeanTest
     @Mock
     NodeService nodeService;
 
+    @Mock
+    NodeCacheStore nodeCacheStore;
+
+    @Mock
+    InvalidationMetrics invalidationMetrics;
+
     NodeCleanerBean nodeCleanerBean;
 
     @BeforeEach
@@ -49,6 +67,9 @@ class NodeCleanerBeanTest
     {
         final BeanContext beanContext = mock( BeanContext.class );
         when( beanContext.getService( NodeService.class ) ).thenReturn( () -> nodeService );
+        when( beanContext.getService( NodeCacheStore.class ) ).thenReturn( () -> nodeCacheStore );
+        when( beanContext.getService( NodeCacheInvalidator.class ) ).thenReturn(
+            () -> new NodeCacheInvalidator( nodeService, nodeCacheStore, invalidationMetrics ) );
         nodeCleanerBean = new NodeCleanerBean();
         nodeCleanerBean.initialize( beanContext );
     }
@@ -56,18 +77,53 @@ class NodeCleanerBeanTest
     @Test
     void invalidateAll()
     {
-        verifyBasicInvalidate( nodeCleanerBean::invalidateAll );
+        nodeCleanerBean.invalidateAll();
+        verify( nodeCacheStore ).invalidateScopes( List.of( "all" ) );
+        verifyNoInteractions( nodeService, invalidationMetrics );
     }
 
     @Test
     void invalidateProjects()
     {
-        final NodeQuery nodeQuery = verifyBasicInvalidate( () -> nodeCleanerBean.invalidateProjects( List.of( "project1", "project2" ) ) );
-        assertThat( nodeQuery.getQueryFilters().stream().filter( f -> f instanceof ValueFilter ) ).map( f -> (ValueFilter) f )
-            .anySatisfy( filter -> {
-                assertThat( filter.getFieldName() ).isEqualTo( "project" );
-                assertThat( filter.getValues() ).map( Value::toString ).containsExactlyInAnyOrder( "project1", "project2" );
-            } );
+        nodeCleanerBean.invalidateProjects( List.of( "project1", "project2" ) );
+        verify( nodeCacheStore ).invalidateScopes( List.of( "project:project1", "project:project2" ) );
+        verifyNoInteractions( nodeService );
+    }
+
+    @Test
+    void invalidateContent_already_deleted()
+    {
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn(
+            FindNodesByQueryResult.create().addNodeHit( NodeHit.create().nodeId( NodeId.from( "node1" ) ).build() ).totalHits( 1 ).build() );
+        when( nodeService.update( any( UpdateNodeParams.class ) ) ).thenThrow( new NodeNotFoundException( "not found" ) );
+
+        nodeCleanerBean.invalidateContent( "project1", "content1" );
+
+        verify( nodeCacheStore ).evict( List.of( "node1" ) );
+        verify( nodeService, never() ).refresh( any() );
+    }
+
+    @Test
+    void invalidateContent_pages()
+    {
+        final FindNodesByQueryResult.Builder firstPage = FindNodesByQueryResult.create().totalHits( 501 );
+        IntStream.range( 0, 500 )
+            .forEach( i -> firstPage.addNodeHit( NodeHit.create().nodeId( NodeId.from( String.format( "node%04d", i ) ) ).build() ) );
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( firstPage.build(), FindNodesByQueryResult.create()
+            .addNodeHit( NodeHit.create().nodeId( NodeId.from( "node9999" ) ).build() )
+            .totalHits( 1 )
+            .build() );
+
+        nodeCleanerBean.invalidateContent( "project1", "content1" );
+
+        final ArgumentCaptor<NodeQuery> queryCaptor = captor();
+        verify( nodeService, times( 2 ) ).findByQuery( queryCaptor.capture() );
+        assertThat( queryCaptor.getAllValues().get( 1 ).getQueryFilters() ).filteredOn( RangeFilter.class::isInstance )
+            .map( RangeFilter.class::cast )
+            .anySatisfy( filter -> assertThat( filter.getFrom().asString() ).isEqualTo( "node0499" ) );
+        verify( nodeService, times( 501 ) ).update( any( UpdateNodeParams.class ) );
+        verify( nodeService ).refresh( RefreshMode.SEARCH );
+        verify( invalidationMetrics ).invalidated( eq( 501 ), anyLong() );
     }
 
     @Test
@@ -77,6 +133,34 @@ class NodeCleanerBeanTest
         verifyNoInteractions( nodeService );
     }
 
+    @Test
+    void invalidateDependents()
+    {
+        final NodeQuery nodeQuery =
+            verifyBasicInvalidate( () -> nodeCleanerBean.invalidateDependents( "project1", List.of( "content1", "content2" ), List.of() ) );
+        assertThat( nodeQuery.getQueryFilters().stream().filter( f -> f instanceof BooleanFilter ) ).map( f -> (BooleanFilter) f )
+            .anySatisfy( filter -> assertThat( filter.getShould() ).map( f -> (ValueFilter) f )
+                .allSatisfy( should -> assertThat( should.getValues() ).map( Value::toString ).containsExactly( "content1", "content2" ) )
+                .map( ValueFilter::getFieldName )
+                .containsExactly( "contentId", "siteId", "dependsOn" ) );
+        verify( nodeCacheStore, never() ).invalidateScopes( any() );
+    }
+
+    @Test
+    void invalidateDependents_paths()
+    {
+        final NodeQuery nodeQuery = verifyBasicInvalidate(
+            () -> nodeCleanerBean.invalidateDependents( "project1", List.of( "content1" ), List.of( "/site/a", "/site" ) ) );
+        assertThat( nodeQuery.getQueryFilters().stream().filter( f -> f instanceof BooleanFilter ) ).map( f -> (BooleanFilter) f )
+            .anySatisfy( filter -> assertThat( filter.getShould() ).map( f -> (ValueFilter) f )
+                .anySatisfy( should -> {
+                    assertThat( should.getFieldName() ).isEqualTo( "contentPath" );
+                    assertThat( should.getValues() ).map( Value::toString ).containsExactly( "/site/a", "/site" );
+                } )
+                .map( ValueFilter::getFieldName )
+                .containsExactly( "contentId", "siteId", "dependsOn", "contentPath" ) );
+    }
+
     @Test
     void invalidateContent()
     {
@@ -95,27 +179,17 @@ class NodeCleanerBeanTest
     @Test
     void invalidateSite()
     {
-        final NodeQuery nodeQuery = verifyBasicInvalidate( () -> nodeCleanerBean.invalidateSite( "project1", "site1" ) );
-        assertThat( nodeQuery.getQueryFilters().stream().filter( f -> f instanceof ValueFilter ) ).map( f -> (ValueFilter) f )
-            .anySatisfy( filter -> {
-                assertThat( filter.getFieldName() ).isEqualTo( "project" );
-                assertThat( filter.getValues() ).map( Value::toString ).containsExactly( "project1" );
-            } )
-            .anySatisfy( filter -> {
-                assertThat( filter.getFieldName() ).isEqualTo( "siteId" );
-                assertThat( filter.getValues() ).map( Value::toString ).containsExactly( "site1" );
-            } );
+        nodeCleanerBean.invalidateSite( "project1", "site1" );
+        verify( nodeCacheStore ).invalidateScopes( List.of( "site:project1/site1" ) );
+        verifyNoInteractions( nodeService );
     }
 
     @Test
     void invalidateDomain()
     {
-        final NodeQuery nodeQuery = verifyBasicInvalidate( () -> nodeCleanerBean.invalidateDomain( "example.com" ) );
-        assertThat( nodeQuery.getQueryFilters().stream().filter( f -> f instanceof ValueFilter ) ).map( f -> (ValueFilter) f )
-            .anySatisfy( filter -> {
-                assertThat( filter.getFieldName() ).isEqualTo( "domain" );
-                assertThat( filter.getValues() ).map( Value::toString ).containsExactly( "example.com" );
-            } );
+        nodeCleanerBean.invalidateDomain( "example.com" );
+        verify( nodeCacheStore ).invalidateScopes( List.of( "domain:example.com" ) );
+        verifyNoInteractions( nodeService );
     }
 
     @Test
@@ -151,16 +225,21 @@ class NodeCleanerBeanTest
     void purgeAll()
     {
         when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn(
-                FindNodesByQueryResult.create().addNodeHit( NodeHit.create().nodeId( NodeId.from( "node1" ) ).build() ).totalHits( 1 ).build() )
-            .thenReturn( FindNodesByQueryResult.create().totalHits( 0 ).build() );
+            FindNodesByQueryResult.create().addNodeHit( NodeHit.create().nodeId( NodeId.from( "node1" ) ).build() ).totalHits( 1 ).build() );
 
         nodeCleanerBean.purgeAll();
 
-        verify( nodeService, times( 2 ) ).findByQuery( any( NodeQuery.class ) );
+        final ArgumentCaptor<NodeQuery> queryCaptor = captor();
+        verify( nodeService ).findByQuery( queryCaptor.capture() );
+        assertEquals( 500, queryCaptor.getValue().getSize() );
+        assertThat( queryCaptor.getValue().getOrderBys() ).map( orderExpr -> ( (FieldOrderExpr) orderExpr ).getField().getPath() )
+            .containsExactly( "_id" );
 
         final ArgumentCaptor<DeleteNodeParams> captor = captor();
         verify( nodeService ).delete( captor.capture() );
         assertThat( captor.getValue().getNodeId() ).asString().isEqualTo( "node1" );
+        verify( nodeCacheStore ).evict( List.of( "node1" ) );
+        verify( nodeService ).refresh( RefreshMode.SEARCH );
     }
 
 
@@ -241,17 +320,16 @@ class NodeCleanerBeanTest
     private NodeQuery verifyBasicInvalidate( Runnable runnable )
     {
         when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn(
-                FindNodesByQueryResult.create().addNodeHit( NodeHit.create().nodeId( NodeId.from( "node1" ) ).build() ).totalHits( 1 ).build() )
-            .thenReturn( FindNodesByQueryResult.create().totalHits( 0 ).build() );
+            FindNodesByQueryResult.create().addNodeHit( NodeHit.create().nodeId( NodeId.from( "node1" ) ).build() ).totalHits( 1 ).build() );
 
         runnable.run();
 
         final ArgumentCaptor<NodeQuery> findByQueryCaptor = captor();
         final ArgumentCaptor<UpdateNodeParams> updateCaptor = captor();
-        verify( nodeService, times( 2 ) ).findByQuery( findByQueryCaptor.capture() );
+        verify( nodeService ).findByQuery( findByQueryCaptor.capture() );
         final NodeQuery nodeQuery = findByQueryCaptor.getValue();
         assertEquals( "/cache", nodeQuery.getParent().toString() );
-        assertEquals( 10000, nodeQuery.getSize() );
+        assertEquals( 500, nodeQuery.getSize() );
 
         verify( nodeService ).update( updateCaptor.capture() );
         final UpdateNodeParams updateNodeParams = updateCaptor.getValue();
@@ -261,6 +339,9 @@ class NodeCleanerBeanTest
         final EditableNode toBeEdited = new EditableNode( node );
         updateNodeParams.getEditor().edit( toBeEdited );
         assertNotNull( toBeEdited.data.getInstant( "invalidatedTime" ) );
+        verify( nodeCacheStore ).evict( List.of( "node1" ) );
+        verify( nodeService ).refresh( RefreshMode.SEARCH );
+        verify( invalidationMetrics ).invalidated( eq( 1 ), anyLong() );
         return nodeQuery;
     }
 }
@@ -15,12 +15,17 @@ class AcceptEncodingParserTest
 {
     private static AcceptEncoding parse( final String... headers )
     {
-        return AcceptEncodingParser.parse( Collections.enumeration( List.of( headers ) ) );
+        return AcceptEncodingParser.parse( Collections.enumeration( List.of( headers ) ) ).get( 0 );
     }
 
     private static AcceptEncoding parse( final Enumeration<String> headers )
     {
-        return AcceptEncodingParser.parse( headers );
+        return AcceptEncodingParser.parse( headers ).get( 0 );
+    }
+
+    private static List<AcceptEncoding> parseAll( final String... headers )
+    {
+        return AcceptEncodingParser.parse( Collections.enumeration( List.of( headers ) ) );
     }
 
     // ── null / empty header ───────────────────────────────────────────────
@@ -68,7 +73,38 @@ class AcceptEncodingParserTest
     {
         assertThat( parse( "gzip, br" ) ).isEqualTo( AcceptEncoding.BROTLI );
         assertThat( parse( "br, gzip" ) ).isEqualTo( AcceptEncoding.BROTLI );
-        assertThat( parse( "gzip;q=1.0, br;q=0.1" ) ).isEqualTo( AcceptEncoding.BROTLI );
+    }
+
+    @Test
+    void zstd_only()
+    {
+        assertThat( parse( "zstd" ) ).isEqualTo( AcceptEncoding.ZSTD );
+        assertThat( parse( "ZSTD;q=0.5" ) ).isEqualTo( AcceptEncoding.ZSTD );
+    }
+
+    @Test
+    void equal_q_ordered_by_server_preference()
+    {
+        assertThat( parseAll( "gzip, deflate, br, zstd" ) ).containsExactly( AcceptEncoding.BROTLI, AcceptEncoding.ZSTD,
+                                                                            AcceptEncoding.GZIP, AcceptEncoding.UNSPECIFIED );
+        assertThat( parseAll( "gzip, zstd" ) ).containsExactly( AcceptEncoding.ZSTD, AcceptEncoding.GZIP, AcceptEncoding.UNSPECIFIED );
+    }
+
+    @Test
+    void higher_q_preferred()
+    {
+        assertThat( parse( "gzip;q=1.0, br;q=0.1" ) ).isEqualTo( AcceptEncoding.GZIP );
+        assertThat( parseAll( "br;q=0.5, zstd;q=0.8, gzip;q=0.1" ) ).containsExactly( AcceptEncoding.ZSTD, AcceptEncoding.BROTLI,
+                                                                                     AcceptEncoding.GZIP, AcceptEncoding.UNSPECIFIED );
+        assertThat( parseAll( "br;q=0.5, gzip;q=0.50" ) ).containsExactly( AcceptEncoding.BROTLI, AcceptEncoding.GZIP,
+                                                                         AcceptEncoding.UNSPECIFIED );
+    }
+
+    @Test
+    void rejected_encodings_not_listed()
+    {
+        assertThat( parseAll( "br;q=0, zstd, gzip;q=0" ) ).containsExactly( AcceptEncoding.ZSTD, AcceptEncoding.UNSPECIFIED );
+        assertThat( parseAll( "deflate" ) ).containsExactly( AcceptEncoding.UNSPECIFIED );
     }
 
     @Test
@@ -89,8 +125,8 @@ class AcceptEncodingParserTest
     @Test
     void ows_around_comma_and_semicolon()
     {
-        assertThat( parse( "br ; q=0.5 , gzip" ) ).isEqualTo( AcceptEncoding.BROTLI );
-        assertThat( parse( "\tbr\t;\tq=0.5\t,\tgzip" ) ).isEqualTo( AcceptEncoding.BROTLI );
+        assertThat( parse( "br ; q=0.5 , gzip" ) ).isEqualTo( AcceptEncoding.GZIP );
+        assertThat( parse( "\tbr\t;\tq=0.5\t,\tgzip" ) ).isEqualTo( AcceptEncoding.GZIP );
         assertThat( parse( "  br  ,  gzip  " ) ).isEqualTo( AcceptEncoding.BROTLI );
     }
 
@@ -261,6 +297,24 @@ class AcceptEncodingParserTest
         assertThat( parse( "*" ) ).isEqualTo( AcceptEncoding.GZIP );
     }
 
+    @Test
+    void wildcard_does_not_elevate_zstd()
+    {
+        assertThat( parseAll( "*" ) ).containsExactly( AcceptEncoding.GZIP, AcceptEncoding.UNSPECIFIED );
+        assertThat( parseAll( "*;q=0.5, zstd;q=0.2" ) ).containsExactly( AcceptEncoding.GZIP, AcceptEncoding.ZSTD,
+                                                                        AcceptEncoding.UNSPECIFIED );
+    }
+
+    @Test
+    void dcz_preferred_on_equal_q()
+    {
+        assertThat( parseAll( "gzip, deflate, br, zstd, dcb, dcz" ) ).containsExactly( AcceptEncoding.DCZ, AcceptEncoding.BROTLI,
+                                                                                      AcceptEncoding.ZSTD, AcceptEncoding.GZIP,
+                                                                                      AcceptEncoding.UNSPECIFIED );
+        assertThat( parseAll( "br, dcz;q=0.5" ) ).containsExactly( AcceptEncoding.BROTLI, AcceptEncoding.DCZ, AcceptEncoding.UNSPECIFIED );
+        assertThat( parseAll( "*" ) ).doesNotContain( AcceptEncoding.DCZ );
+    }
+
     @Test
     void wildcard_alongside_explicit_br_picks_brotli()
     {
@@ -318,7 +372,7 @@ class AcceptEncodingParserTest
     @Test
     void identity_only_is_unspecified()
     {
-        // We only emit br/gzip/UNSPECIFIED — identity (always implicitly available per RFC) is
+        // We only emit br/zstd/gzip/UNSPECIFIED — identity (always implicitly available per RFC) is
         // irrelevant for our compression-selection purpose.
         assertThat( parse( "identity" ) ).isEqualTo( AcceptEncoding.UNSPECIFIED );
     }
@@ -365,6 +419,7 @@ class AcceptEncodingParserTest
     {
         assertThat( parse( "brotli" ) ).isEqualTo( AcceptEncoding.UNSPECIFIED );
         assertThat( parse( "gzipx" ) ).isEqualTo( AcceptEncoding.UNSPECIFIED );
+        assertThat( parse( "zst" ) ).isEqualTo( AcceptEncoding.UNSPECIFIED );
     }
 
     @Test
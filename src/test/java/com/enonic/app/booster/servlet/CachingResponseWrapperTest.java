@@ -4,6 +4,8 @@ import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 
 import org.junit.jupiter.api.Test;
@@ -12,18 +14,23 @@ import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import com.aayushatharva.brotli4j.decoder.BrotliInputStream;
-
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import com.enonic.app.booster.BoosterConfig;
 import com.enonic.app.booster.BoosterConfigParsed;
+import com.enonic.app.booster.io.CompressionPolicy;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -63,11 +70,48 @@ class CachingResponseWrapperTest
         assertEquals( 13, wrapper.getSize() );
         assertEquals( "Hello, World!", new String(
             new GZIPInputStream( new ByteArrayInputStream( wrapper.getCachedGzipBody().openStream().readAllBytes() ) ).readAllBytes() ) );
-        assertEquals( "Hello, World!", new String( new BrotliInputStream(
-            new ByteArrayInputStream( wrapper.getCachedBrBody().orElseThrow().openStream().readAllBytes() ) ).readAllBytes() ) );
         assertEquals( "dffd6021bb2bd5b0af676290809ec3a5", wrapper.getEtag() );
     }
 
+    @Test
+    void outputBody_smallNotCompressed()
+        throws Exception
+    {
+        when( response.getOutputStream() ).thenReturn( servletOutputStream );
+
+        final CachingResponseWrapper wrapper = new CachingResponseWrapper( request, response, ( req, res ) -> true, res -> {
+        }, false, new CompressionPolicy( 1024, 11, 3, () -> 0.5 ) );
+        try (wrapper)
+        {
+            wrapper.getOutputStream().write( "Hello, World!".getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        assertEquals( CompressionPolicy.NO_COMPRESSION, wrapper.getGzipLevel() );
+        assertEquals( "Hello, World!", new String(
+            new GZIPInputStream( new ByteArrayInputStream( wrapper.getCachedGzipBody().openStream().readAllBytes() ) ).readAllBytes() ) );
+        assertEquals( "dffd6021bb2bd5b0af676290809ec3a5", wrapper.getEtag() );
+    }
+
+    @Test
+    void outputBody_busyFastestLevel()
+        throws Exception
+    {
+        when( response.getOutputStream() ).thenReturn( servletOutputStream );
+
+        final CachingResponseWrapper wrapper = new CachingResponseWrapper( request, response, ( req, res ) -> true, res -> {
+        }, false, new CompressionPolicy( 8, 11, 3, () -> 2.0 ) );
+        try (wrapper)
+        {
+            wrapper.getOutputStream().write( "Hello, ".getBytes( StandardCharsets.UTF_8 ) );
+            wrapper.getOutputStream().write( "World!".getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        assertEquals( Deflater.BEST_SPEED, wrapper.getGzipLevel() );
+        assertEquals( 13, wrapper.getSize() );
+        assertEquals( "Hello, World!", new String(
+            new GZIPInputStream( new ByteArrayInputStream( wrapper.getCachedGzipBody().openStream().readAllBytes() ) ).readAllBytes() ) );
+    }
+
     @Test
     void headers_add()
         throws Exception
@@ -123,4 +167,56 @@ class CachingResponseWrapperTest
         }
         assertEquals( Map.of(), wrapper.getCachedHeaders() );
     }
+
+    @Test
+    void headers_dependsOn()
+        throws Exception
+    {
+        final CachingResponseWrapper wrapper = new CachingResponseWrapper( request, response, ( req, res ) -> true, res -> {
+        } );
+        try (wrapper)
+        {
+            wrapper.addHeader( "X-Booster-Depends", "id1, id2" );
+            wrapper.addHeader( "x-booster-depends", "id3" );
+        }
+        assertEquals( Set.of( "id1", "id2", "id3" ), wrapper.getDependsOn() );
+        assertEquals( Map.of(), wrapper.getCachedHeaders() );
+        verify( response, never() ).addHeader( anyString(), anyString() );
+    }
+
+    @Test
+    void intercept_server_error()
+        throws Exception
+    {
+        final CachingResponseWrapper wrapper = new CachingResponseWrapper( request, response, ( req, res ) -> true, res -> {
+        }, true );
+        try (wrapper)
+        {
+            wrapper.sendError( 404 );
+            assertFalse( wrapper.isErrorIntercepted() );
+
+            wrapper.sendError( 503, "Service Unavailable" );
+            assertTrue( wrapper.isErrorIntercepted() );
+        }
+        verify( response ).sendError( 404 );
+        verify( response, never() ).sendError( eq( 503 ), anyString() );
+        assertFalse( wrapper.isStore() );
+    }
+
+    @Test
+    void intercept_server_error_body()
+        throws Exception
+    {
+        when( response.getStatus() ).thenReturn( 500 );
+
+        final CachingResponseWrapper wrapper = new CachingResponseWrapper( request, response, ( req, res ) -> true, res -> {
+        }, true );
+        try (wrapper)
+        {
+            wrapper.getOutputStream().write( "Error".getBytes( StandardCharsets.UTF_8 ) );
+        }
+        verify( response, never() ).getOutputStream();
+        assertTrue( wrapper.isErrorIntercepted() );
+        assertFalse( wrapper.isStore() );
+    }
 }
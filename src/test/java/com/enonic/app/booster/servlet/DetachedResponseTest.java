@@ -0,0 +1,42 @@
+package com.enonic.app.booster.servlet;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class DetachedResponseTest
+{
+    @Test
+    void doesNotTouchClientResponse()
+        throws Exception
+    {
+        final HttpServletResponse response = mock( HttpServletResponse.class );
+        final DetachedResponse detached = new DetachedResponse( response );
+
+        detached.setStatus( 404 );
+        detached.setContentType( "text/html" );
+        detached.setHeader( "Cache-Control", "max-age=60" );
+        detached.addHeader( "cache-control", "stale-while-revalidate=30" );
+        detached.setDateHeader( "Date", 1000 );
+        detached.getOutputStream().write( new byte[]{1, 2, 3} );
+        detached.flushBuffer();
+
+        assertEquals( 404, detached.getStatus() );
+        assertEquals( "text/html", detached.getContentType() );
+        assertEquals( List.of( "max-age=60", "stale-while-revalidate=30" ), detached.getHeaders( "Cache-Control" ) );
+        assertEquals( "Thu, 1 Jan 1970 00:00:01 GMT", detached.getHeader( "date" ) );
+        assertFalse( detached.isCommitted() );
+        verifyNoInteractions( response );
+
+        detached.setHeader( "Cache-Control", null );
+        assertNull( detached.getHeader( "Cache-Control" ) );
+    }
+}
@@ -0,0 +1,40 @@
+package com.enonic.app.booster.servlet;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.servlet.WriteListener;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class NullServletOutputStreamTest
+{
+    @Test
+    void setWriteListener()
+        throws Exception
+    {
+        final NullServletOutputStream outputStream = new NullServletOutputStream();
+        final WriteListener writeListener = mock( WriteListener.class );
+
+        outputStream.setWriteListener( writeListener );
+
+        verify( writeListener ).onWritePossible();
+    }
+
+    @Test
+    void setWriteListener_error()
+        throws Exception
+    {
+        final NullServletOutputStream outputStream = new NullServletOutputStream();
+        final WriteListener writeListener = mock( WriteListener.class );
+        final IOException error = new IOException();
+        doThrow( error ).when( writeListener ).onWritePossible();
+
+        outputStream.setWriteListener( writeListener );
+
+        verify( writeListener ).onError( error );
+    }
+}
@@ -11,6 +11,7 @@ import jakarta.servlet.http.HttpServletRequest;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -110,6 +111,27 @@ class RequestUtilsTest
         assertEquals( RequestUtils.AcceptEncoding.UNSPECIFIED, RequestUtils.acceptEncoding( request ) );
     }
 
+    @Test
+    void availableDictionary()
+    {
+        HttpServletRequest request = mock( HttpServletRequest.class );
+        when( request.getHeader( "Available-Dictionary" ) ).thenReturn( ":pZGm1Av0IEBKARczz7exkNYsZb8LzaMrV7J32a2fFG4=:" );
+
+        assertEquals( "a591a6d40bf420404a011733cfb7b190d62c65bf0bcda32b57b277d9ad9f146e", RequestUtils.availableDictionary( request ) );
+    }
+
+    @Test
+    void availableDictionary_malformed()
+    {
+        HttpServletRequest request = mock( HttpServletRequest.class );
+        when( request.getHeader( "Available-Dictionary" ) ).thenReturn( ":not base64:", ":AAAA:", "pZGm1Av0IEBKARczz7exkNYsZb8LzaMrV7J32a2fFG4=" );
+
+        assertNull( RequestUtils.availableDictionary( request ) );
+        assertNull( RequestUtils.availableDictionary( request ) );
+        assertNull( RequestUtils.availableDictionary( request ) );
+        assertNull( RequestUtils.availableDictionary( mock( HttpServletRequest.class ) ) );
+    }
+
     @Test
     void isComponentRequest_withComponentPath_returnsTrue()
     {
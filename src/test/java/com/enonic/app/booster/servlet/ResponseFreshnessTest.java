@@ -53,6 +53,18 @@ class ResponseFreshnessTest
         assertEquals( 11, expiresTime.getEpochSecond() );
     }
 
+    @Test
+    void staleDirectives()
+    {
+        final HttpServletResponse response = mock( HttpServletResponse.class );
+        when( response.getHeaders( "Cache-Control" ) ).thenReturn(
+            List.of( "max-age=600, stale-while-revalidate=30", "stale-if-error=86400" ) );
+        final ResponseFreshness freshness = ResponseFreshness.build( response );
+        assertEquals( 600, freshness.maxAge() );
+        assertEquals( 30, freshness.staleWhileRevalidate() );
+        assertEquals( 86400, freshness.staleIfError() );
+    }
+
     @Test
     void notCacheable_public()
     {
@@ -1,15 +1,18 @@
 package com.enonic.app.booster.storage;
 
+import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -18,11 +21,15 @@ import com.enonic.xp.app.ApplicationKey;
 import com.enonic.xp.event.Event;
 import com.enonic.xp.index.IndexService;
 import com.enonic.xp.project.ProjectName;
-import com.enonic.xp.task.TaskId;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentCaptor.captor;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -44,13 +51,18 @@ class BoosterInvalidatorTest
     @Mock
     BoosterProjectMatchers boosterProjectMatchers;
 
+    @Mock
+    NodeCacheStore nodeCacheStore;
+
+    @Mock
+    NodeCacheInvalidator nodeCacheInvalidator;
+
     @Test
     void application_installed_event_invalidate_all()
     {
         when( indexService.isMaster() ).thenReturn( true );
-        BoosterInvalidator boosterInvalidator =
-            new BoosterInvalidator( boosterTasksFacade, indexService, boosterProjectMatchers, scheduledExecutorService );
-        final BoosterConfig boosterConfig = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        final BoosterConfig boosterConfig = config();
         when( boosterConfig.appsForceInvalidateOnInstall() ).thenReturn( "somekey" );
         boosterInvalidator.activate( boosterConfig );
 
@@ -61,17 +73,18 @@ class BoosterInvalidatorTest
         verify( scheduledExecutorService ).schedule( captor.capture(), eq( 0L ), eq( TimeUnit.SECONDS ) );
 
         captor.getValue().run();
+        invalidateQueued().run();
 
-        verify( boosterTasksFacade ).invalidateAll();
+        verify( nodeCacheInvalidator ).invalidateAll();
+        verifyNoMoreInteractions( nodeCacheInvalidator );
     }
 
     @Test
     void application_installed_not_master()
     {
         when( indexService.isMaster() ).thenReturn( false );
-        BoosterInvalidator boosterInvalidator =
-            new BoosterInvalidator( boosterTasksFacade, indexService, boosterProjectMatchers, scheduledExecutorService );
-        final BoosterConfig boosterConfig = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        final BoosterConfig boosterConfig = config();
         when( boosterConfig.appsForceInvalidateOnInstall() ).thenReturn( "somekey" );
         boosterInvalidator.activate( boosterConfig );
 
@@ -82,15 +95,15 @@ class BoosterInvalidatorTest
         verify( scheduledExecutorService ).schedule( captor.capture(), eq( 0L ), eq( TimeUnit.SECONDS ) );
 
         captor.getValue().run();
-        verifyNoInteractions( boosterTasksFacade );
+        invalidateQueued().run();
+        verifyNoInteractions( nodeCacheInvalidator, boosterTasksFacade );
     }
 
     @Test
     void application_installed_event_invalidate_app()
     {
         when( indexService.isMaster() ).thenReturn( true );
-        BoosterInvalidator boosterInvalidator =
-            new BoosterInvalidator( boosterTasksFacade, indexService, boosterProjectMatchers, scheduledExecutorService );
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
         final BoosterConfig boosterConfig = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
         when( boosterConfig.appsForceInvalidateOnInstall() ).thenReturn( "someotherkey" );
         boosterInvalidator.activate( boosterConfig );
@@ -104,35 +117,30 @@ class BoosterInvalidatorTest
         verify( scheduledExecutorService ).schedule( captor.capture(), eq( 0L ), eq( TimeUnit.SECONDS ) );
 
         captor.getValue().run();
-        verify( boosterTasksFacade ).invalidate( List.of( ProjectName.from( "someproject" ) ) );
+        // app installs are urgent and do not wait for the quiet period
+        invalidateQueued().run();
+        verify( nodeCacheInvalidator ).invalidateProjects( List.of( "someproject" ) );
     }
 
     @Test
     void repository_events_invalidate_projects()
     {
-        BoosterInvalidator boosterInvalidator =
-            new BoosterInvalidator( boosterTasksFacade, indexService, boosterProjectMatchers, scheduledExecutorService );
-        final BoosterConfig boosterConfig = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
-        boosterInvalidator.activate( boosterConfig );
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        boosterInvalidator.activate( config() );
 
         boosterInvalidator.onEvent(
             Event.create( "repository.update" ).value( "id", "com.enonic.cms.repo1" ).value( "applicationKey", "somekey" ).build() );
         boosterInvalidator.onEvent( Event.create( "repository.delete" ).value( "id", "com.enonic.cms.repo2" ).build() );
 
-        final ArgumentCaptor<Runnable> captor = captor();
-        verify( scheduledExecutorService ).scheduleWithFixedDelay( captor.capture(), eq( 10L ), eq( 10L ), eq( TimeUnit.SECONDS ) );
-
-        captor.getValue().run();
-        verify( boosterTasksFacade ).invalidate( eq( Set.of( ProjectName.from( "repo1" ), ProjectName.from( "repo2" ) ) ) );
+        invalidateQueued().run();
+        verifyInvalidateProjects( "repo1", "repo2" );
     }
 
     @Test
     void node_events_invalidate_projects()
     {
-        BoosterInvalidator boosterInvalidator =
-            new BoosterInvalidator( boosterTasksFacade, indexService, boosterProjectMatchers, scheduledExecutorService );
-        final BoosterConfig boosterConfig = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
-        boosterInvalidator.activate( boosterConfig );
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        boosterInvalidator.activate( config() );
 
         boosterInvalidator.onEvent( Event.create( "node.pushed" )
                                         .value( "nodes", List.of( Map.of( "repo", "com.enonic.cms.repo1", "branch", "master" ) ) )
@@ -142,61 +150,289 @@ class BoosterInvalidatorTest
                                         .value( "nodes", List.of( Map.of( "repo", "com.enonic.cms.repo2", "branch", "master" ) ) )
                                         .build() );
 
-        final ArgumentCaptor<Runnable> captor = captor();
-        verify( scheduledExecutorService ).scheduleWithFixedDelay( captor.capture(), eq( 10L ), eq( 10L ), eq( TimeUnit.SECONDS ) );
+        invalidateQueued().run();
+        verifyInvalidateProjects( "repo1", "repo2" );
+        verifyNoInteractions( boosterTasksFacade );
+    }
 
-        captor.getValue().run();
-        verify( boosterTasksFacade ).invalidate( eq( Set.of( ProjectName.from( "repo1" ), ProjectName.from( "repo2" ) ) ) );
+    @Test
+    void node_events_debounced()
+    {
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        boosterInvalidator.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
+
+        boosterInvalidator.onEvent( Event.create( "node.pushed" )
+                                        .value( "nodes", List.of( Map.of( "repo", "com.enonic.cms.repo1", "branch", "master" ) ) )
+                                        .build() );
+
+        // default quiet period has not passed yet
+        invalidateQueued().run();
+        verifyNoInteractions( nodeCacheInvalidator );
+    }
+
+    @Test
+    void node_events_invalidate_dependents()
+    {
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        final BoosterConfig boosterConfig = config();
+        when( boosterConfig.invalidationScope() ).thenReturn( "content" );
+        boosterInvalidator.activate( boosterConfig );
+
+        final List<Map<String, String>> nodes = List.of( Map.of( "id", "content1", "repo", "com.enonic.cms.repo1", "branch", "master" ),
+                                                         Map.of( "id", "content2", "repo", "com.enonic.cms.repo1", "branch", "master" ),
+                                                         Map.of( "id", "content3", "repo", "com.enonic.cms.repo2", "branch", "master" ) );
+        boosterInvalidator.onEvent( Event.create( "node.pushed" ).value( "nodes", nodes ).build() );
+        boosterInvalidator.onEvent( Event.create( "repository.update" ).value( "id", "com.enonic.cms.repo2" ).build() );
+
+        invalidateQueued().run();
+
+        // project scope runs first and subsumes content of the same project
+        final InOrder inOrder = inOrder( nodeCacheInvalidator );
+        inOrder.verify( nodeCacheInvalidator ).invalidateProjects( List.of( "repo2" ) );
+        inOrder.verify( nodeCacheInvalidator ).invalidateDependents( "repo1", Set.of( "content1", "content2" ), Set.of() );
+        verifyNoMoreInteractions( nodeCacheInvalidator );
+    }
+
+    @Test
+    void node_events_invalidate_paths()
+    {
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        final BoosterConfig boosterConfig = config();
+        when( boosterConfig.invalidationScope() ).thenReturn( "path" );
+        when( boosterConfig.alwaysInvalidatePaths() ).thenReturn( "/site/menu" );
+        boosterInvalidator.activate( boosterConfig );
+
+        final List<Map<String, String>> nodes = List.of(
+            Map.of( "id", "content1", "path", "/content/site/news/article", "repo", "com.enonic.cms.repo1", "branch", "master" ),
+            Map.of( "id", "content2", "path", "/archive/old", "repo", "com.enonic.cms.repo1", "branch", "master" ) );
+        boosterInvalidator.onEvent( Event.create( "node.pushed" ).value( "nodes", nodes ).build() );
+
+        invalidateQueued().run();
+        verify( nodeCacheInvalidator ).invalidateDependents( "repo1", Set.of( "content1", "content2" ),
+                                                             Set.of( "/site/news/article", "/site/news", "/site", "/site/menu" ) );
+        verifyNoMoreInteractions( nodeCacheInvalidator );
+    }
+
+    @Test
+    void node_events_too_many_dependents()
+    {
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        final BoosterConfig boosterConfig = config();
+        when( boosterConfig.invalidationScope() ).thenReturn( "content" );
+        boosterInvalidator.activate( boosterConfig );
+
+        final List<Map<String, String>> nodes = IntStream.rangeClosed( 0, InvalidationQueue.MAX_DEPENDENTS )
+            .mapToObj( i -> Map.of( "id", "content" + i, "repo", "com.enonic.cms.repo1", "branch", "master" ) )
+            .toList();
+        boosterInvalidator.onEvent( Event.create( "node.pushed" ).value( "nodes", nodes ).build() );
+
+        invalidateQueued().run();
+        verify( nodeCacheInvalidator ).invalidateProjects( List.of( "repo1" ) );
+        verifyNoMoreInteractions( nodeCacheInvalidator );
     }
 
     @Test
     void invalidate_scheduled()
     {
         when( indexService.isMaster() ).thenReturn( true );
-        BoosterInvalidator boosterInvalidator =
-            new BoosterInvalidator( boosterTasksFacade, indexService, boosterProjectMatchers, scheduledExecutorService );
-        final BoosterConfig boosterConfig = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
-        boosterInvalidator.activate( boosterConfig );
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        boosterInvalidator.activate( config() );
 
         boosterInvalidator.onEvent( Event.create( "node.pushed" )
                                         .value( "nodes", List.of( Map.of( "repo", "com.enonic.cms.repo1", "branch", "master" ) ) )
                                         .build() );
 
-        when( boosterProjectMatchers.findScheduledForInvalidation() ).thenReturn(
+        when( boosterProjectMatchers.findScheduledForInvalidation( any() ) ).thenReturn(
             Collections.singletonList( ProjectName.from( "someproject" ) ) );
 
+        loadSchedule().run();
+        invalidateQueued().run();
+        verifyInvalidateProjects( "repo1", "someproject" );
 
-        final ArgumentCaptor<Runnable> captor = captor();
-        verify( scheduledExecutorService ).scheduleWithFixedDelay( captor.capture(), eq( 10L ), eq( 10L ), eq( TimeUnit.SECONDS ) );
-
-        captor.getValue().run();
-        verify( boosterTasksFacade ).invalidate( eq( Set.of( ProjectName.from( "repo1" ), ProjectName.from( "someproject" ) ) ) );
+        // missed content is looked for only when tracking starts
+        loadSchedule().run();
+        verify( boosterProjectMatchers ).findScheduledForInvalidation( any() );
+        verify( boosterProjectMatchers ).findScheduled( any(), any() );
     }
 
     @Test
-    void reinvalidate()
+    void invalidate_scheduled_on_time()
     {
-        BoosterInvalidator boosterInvalidator =
-            new BoosterInvalidator( boosterTasksFacade, indexService, boosterProjectMatchers, scheduledExecutorService );
+        when( indexService.isMaster() ).thenReturn( true );
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
         final BoosterConfig boosterConfig = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( boosterConfig.invalidationScope() ).thenReturn( "content" );
         boosterInvalidator.activate( boosterConfig );
 
+        final PublishSchedule.Content content =
+            new PublishSchedule.Content( ProjectName.from( "repo1" ), "content1", "/content/site/content1" );
+        when( boosterProjectMatchers.findScheduled( any(), any() ) ).thenReturn(
+            Map.of( content, List.of( Instant.now().minusSeconds( 1 ) ) ) );
+
+        loadSchedule().run();
+        // scheduled content does not wait for the quiet period
+        invalidateQueued().run();
+
+        verify( nodeCacheInvalidator ).invalidateDependents( "repo1", Set.of( "content1" ), Set.of() );
+    }
+
+    @Test
+    void pushed_content_rescheduled()
+    {
+        when( indexService.isMaster() ).thenReturn( true );
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        boosterInvalidator.activate( config() );
+        loadSchedule().run();
+
         boosterInvalidator.onEvent( Event.create( "node.pushed" )
-                                        .value( "nodes", List.of( Map.of( "repo", "com.enonic.cms.repo1", "branch", "master" ) ) )
+                                        .localOrigin( false )
+                                        .value( "nodes", List.of( Map.of( "id", "content1", "repo", "com.enonic.cms.repo1", "branch",
+                                                                          "master" ) ) )
+                                        .build() );
+        boosterInvalidator.onEvent( Event.create( "node.deleted" )
+                                        .localOrigin( false )
+                                        .value( "nodes", List.of( Map.of( "id", "content2", "repo", "com.enonic.cms.repo1", "branch",
+                                                                          "master" ) ) )
                                         .build() );
 
         final ArgumentCaptor<Runnable> captor = captor();
+        verify( scheduledExecutorService, times( 2 ) ).execute( captor.capture() );
+        captor.getAllValues().forEach( Runnable::run );
 
-        // first attempt fails and should be retired on the next run
-        when( boosterTasksFacade.invalidate( eq( Set.of( ProjectName.from( "repo1" ) ) ) ) ).thenReturn( null, TaskId.from( "id" ) );
+        verify( boosterProjectMatchers ).findScheduled( eq( ProjectName.from( "repo1" ) ), eq( Set.of( "content1" ) ), any(), any() );
+        verify( boosterProjectMatchers, never() ).findScheduled( any(), eq( Set.of( "content2" ) ), any(), any() );
+    }
 
-        verify( scheduledExecutorService ).scheduleWithFixedDelay( captor.capture(), eq( 10L ), eq( 10L ), eq( TimeUnit.SECONDS ) );
+    @Test
+    void schedule_not_tracked_on_other_nodes()
+    {
+        when( indexService.isMaster() ).thenReturn( false );
+        newInvalidator();
+
+        loadSchedule().run();
+
+        verifyNoInteractions( boosterProjectMatchers );
+    }
+
+    @Test
+    void invalidate_warmup()
+    {
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        final BoosterConfig boosterConfig = config();
+        when( boosterConfig.warmupLimit() ).thenReturn( 100 );
+        boosterInvalidator.activate( boosterConfig );
+
+        boosterInvalidator.onEvent( Event.create( "repository.update" ).value( "id", "com.enonic.cms.repo1" ).build() );
+
+        invalidateQueued().run();
+        verify( nodeCacheInvalidator ).invalidateProjects( List.of( "repo1" ) );
+        verify( boosterTasksFacade ).warmup( Set.of( ProjectName.from( "repo1" ) ), 100, "" );
+    }
+
+    @Test
+    void reinvalidate()
+    {
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        boosterInvalidator.activate( config() );
+
+        boosterInvalidator.onEvent( Event.create( "node.pushed" )
+                                        .value( "nodes", List.of( Map.of( "repo", "com.enonic.cms.repo1", "branch", "master" ) ) )
+                                        .build() );
+
+        // first attempt fails and should be retried on the next run
+        doThrow( new RuntimeException( "failed" ) ).doNothing().when( nodeCacheInvalidator ).invalidateProjects( List.of( "repo1" ) );
 
         // simulate 3 runs
-        captor.getValue().run();
-        captor.getValue().run();
-        captor.getValue().run();
+        final Runnable invalidateQueued = invalidateQueued();
+        invalidateQueued.run();
+        invalidateQueued.run();
+        invalidateQueued.run();
+
+        verify( nodeCacheInvalidator, times( 2 ) ).invalidateProjects( List.of( "repo1" ) );
+    }
+
+    @Test
+    void evict_event_from_other_node()
+    {
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+
+        boosterInvalidator.onEvent(
+            Event.create( "custom.booster.evict" ).distributed( true ).value( "keys", List.of( "key1", "key2" ) ).build() );
+        verifyNoInteractions( nodeCacheStore );
+
+        boosterInvalidator.onEvent( Event.create( "custom.booster.evict" )
+                                        .distributed( true )
+                                        .localOrigin( false )
+                                        .value( "keys", List.of( "key1", "key2" ) )
+                                        .build() );
+        verify( nodeCacheStore ).evictLocally( List.of( "key1", "key2" ) );
+    }
+
+    @Test
+    void node_event_from_other_node_invalidates_project_index()
+    {
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+        boosterInvalidator.activate( config() );
+
+        boosterInvalidator.onEvent( Event.create( "node.pushed" )
+                                        .localOrigin( false )
+                                        .value( "nodes", List.of( Map.of( "repo", "com.enonic.cms.repo1", "branch", "master" ),
+                                                                  Map.of( "repo", "com.enonic.cms.repo2", "branch", "draft" ) ) )
+                                        .build() );
+
+        verify( boosterProjectMatchers ).invalidateIndex( ProjectName.from( "repo1" ) );
+        verify( boosterProjectMatchers, never() ).invalidateIndex( ProjectName.from( "repo2" ) );
+
+        invalidateQueued().run();
+        verifyNoInteractions( nodeCacheInvalidator );
+    }
+
+    @Test
+    void generation_event_from_other_node()
+    {
+        final BoosterInvalidator boosterInvalidator = newInvalidator();
+
+        boosterInvalidator.onEvent( Event.create( "custom.booster.generation" )
+                                        .distributed( true )
+                                        .localOrigin( false )
+                                        .value( "scopes", List.of( "project:repo1" ) )
+                                        .value( "generation", 5L )
+                                        .build() );
+        verify( nodeCacheStore ).applyGenerations( List.of( "project:repo1" ), 5L );
+    }
 
-        verify( boosterTasksFacade, times( 2 ) ).invalidate( eq( Set.of( ProjectName.from( "repo1" ) ) ) );
+    private BoosterInvalidator newInvalidator()
+    {
+        return new BoosterInvalidator( boosterTasksFacade, indexService, boosterProjectMatchers, nodeCacheStore, nodeCacheInvalidator,
+                                       scheduledExecutorService );
+    }
+
+    private static BoosterConfig config()
+    {
+        final BoosterConfig boosterConfig = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        // release queued invalidations on the next run
+        when( boosterConfig.invalidationQuietPeriod() ).thenReturn( 0L );
+        return boosterConfig;
+    }
+
+    private Runnable invalidateQueued()
+    {
+        final ArgumentCaptor<Runnable> captor = captor();
+        verify( scheduledExecutorService ).scheduleWithFixedDelay( captor.capture(), eq( 1L ), eq( 1L ), eq( TimeUnit.SECONDS ) );
+        return captor.getValue();
+    }
+
+    private Runnable loadSchedule()
+    {
+        final ArgumentCaptor<Runnable> captor = captor();
+        verify( scheduledExecutorService ).scheduleWithFixedDelay( captor.capture(), eq( 10L ), eq( 10L ), eq( TimeUnit.SECONDS ) );
+        return captor.getValue();
+    }
+
+    private void verifyInvalidateProjects( final String... projects )
+    {
+        final ArgumentCaptor<List<String>> captor = captor();
+        verify( nodeCacheInvalidator ).invalidateProjects( captor.capture() );
+        assertThat( captor.getValue() ).containsExactlyInAnyOrder( projects );
     }
 }
@@ -2,22 +2,40 @@ package com.enonic.app.booster.storage;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
 
+import com.enonic.xp.aggregation.Aggregations;
+import com.enonic.xp.aggregation.Bucket;
+import com.enonic.xp.aggregation.BucketAggregation;
+import com.enonic.xp.aggregation.Buckets;
 import com.enonic.xp.app.ApplicationKey;
+import com.enonic.xp.context.ContextAccessor;
 import com.enonic.xp.data.PropertyTree;
 import com.enonic.xp.node.FindNodesByQueryResult;
 import com.enonic.xp.node.Node;
+import com.enonic.xp.node.NodeHit;
 import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeIds;
+import com.enonic.xp.node.NodePath;
 import com.enonic.xp.node.NodeQuery;
 import com.enonic.xp.node.NodeService;
+import com.enonic.xp.node.Nodes;
 import com.enonic.xp.node.UpdateNodeParams;
 import com.enonic.xp.project.Project;
 import com.enonic.xp.project.ProjectName;
@@ -28,11 +46,14 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentCaptor.captor;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
 class BoosterProjectMatchersTest
 {
     @Mock
@@ -44,8 +65,15 @@ class BoosterProjectMatchersTest
     @InjectMocks
     BoosterProjectMatchers boosterProjectMatchers;
 
-    @Test
-    void findScheduledForInvalidation()
+    // projects queried for content published since the last check
+    final List<String> checkedProjects = new ArrayList<>();
+
+    final Set<String> publishedProjects = new HashSet<>();
+
+    final List<Node> nodes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp()
     {
         when( projectService.list() ).thenReturn( Projects.from( List.of( Project.create().name( ProjectName.from( "project1" ) ).build(),
                                                                           Project.create()
@@ -54,41 +82,130 @@ class BoosterProjectMatchersTest
 
         final PropertyTree data = new PropertyTree();
         data.setInstant( "lastChecked", Instant.now().minus( 1, ChronoUnit.DAYS ) );
-        final NodeId nodeId = NodeId.from( "some-id" );
         when( nodeService.getByPath( any() ) ).thenReturn(
-            Node.create().id( nodeId ).parentPath( BoosterContext.SCHEDULED_PARENT_NODE ).data( data ).build() );
+            Node.create().id( NodeId.from( "some-id" ) ).parentPath( BoosterContext.SCHEDULED_PARENT_NODE ).data( data ).build() );
+
+        when( nodeService.findByQuery( argThat( appsQuery() ) ) ).thenReturn(
+            FindNodesByQueryResult.create().aggregations( Aggregations.empty() ).build() );
+        when( nodeService.findByQuery( argThat( scheduledQuery() ) ) ).thenReturn( FindNodesByQueryResult.create().build() );
+        when( nodeService.getByIds( any() ) ).thenAnswer( invocation -> {
+            final NodeIds ids = invocation.getArgument( 0 );
+            return Nodes.from( nodes.stream().filter( node -> ids.contains( node.id() ) ).toList() );
+        } );
+        when( nodeService.findByQuery( argThat( checkQuery() ) ) ).thenAnswer( invocation -> {
+            final String project = ProjectName.from( ContextAccessor.current().getRepositoryId() ).toString();
+            checkedProjects.add( project );
+            return FindNodesByQueryResult.create().totalHits( publishedProjects.contains( project ) ? 2 : 0 ).build();
+        } );
+    }
 
-        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( FindNodesByQueryResult.create().totalHits( 0 ).build() )
-            .thenReturn( FindNodesByQueryResult.create().totalHits( 2 ).build() );
+    @Test
+    void findScheduledForInvalidation()
+    {
+        publishedProjects.add( "project2" );
 
-        final List<ProjectName> scheduled = boosterProjectMatchers.findScheduledForInvalidation();
+        final List<ProjectName> scheduled = boosterProjectMatchers.findScheduledForInvalidation( Instant.now() );
 
         assertThat( scheduled ).containsExactly( ProjectName.from( "project2" ) );
 
         verify( nodeService ).getByPath( BoosterContext.SCHEDULED_PARENT_NODE );
 
-        verify( nodeService, times( 2 ) ).findByQuery( any( NodeQuery.class ) );
+        assertThat( checkedProjects ).containsExactly( "project1", "project2" );
 
         final ArgumentCaptor<UpdateNodeParams> captor = captor();
         verify( nodeService ).update( captor.capture() );
         assertEquals( "some-id", captor.getValue().getId().toString() );
     }
 
+    @Test
+    void findScheduled()
+    {
+        final Instant after = Instant.parse( "2024-01-01T10:00:00Z" );
+        final Instant until = after.plus( 1, ChronoUnit.HOURS );
+        final Node content = mockContent( "content1", after.plusSeconds( 60 ), until.plusSeconds( 60 ) );
+        when( nodeService.findByQuery( argThat( inProject( "project2", scheduledQuery() ) ) ) ).thenReturn(
+            FindNodesByQueryResult.create().addNodeHit( NodeHit.create().nodeId( content.id() ).build() ).totalHits( 1 ).build() );
+
+        final Map<PublishSchedule.Content, List<Instant>> scheduled = boosterProjectMatchers.findScheduled( after, until );
+
+        assertThat( scheduled ).containsExactly(
+            Map.entry( new PublishSchedule.Content( ProjectName.from( "project2" ), "content1", "/content/site/content1" ),
+                       List.of( after.plusSeconds( 60 ) ) ) );
+    }
+
+    @Test
+    void findScheduled_content()
+    {
+        final Instant now = Instant.parse( "2024-01-01T10:00:00Z" );
+        final Instant until = now.plus( 1, ChronoUnit.HOURS );
+        mockContent( "content1", now.minusSeconds( 60 ), null );
+        mockContent( "content2", now.plusSeconds( 60 ), now.plusSeconds( 120 ) );
+
+        final Map<PublishSchedule.Content, List<Instant>> scheduled =
+            boosterProjectMatchers.findScheduled( ProjectName.from( "project1" ), List.of( "content1", "content2" ), now, until );
+
+        assertThat( scheduled ).containsExactly(
+            Map.entry( new PublishSchedule.Content( ProjectName.from( "project1" ), "content2", "/content/site/content2" ),
+                       List.of( now.plusSeconds( 60 ), now.plusSeconds( 120 ) ) ) );
+    }
+
     @Test
     void findByAppForInvalidation()
     {
-        when( projectService.list() ).thenReturn( Projects.from( List.of( Project.create().name( ProjectName.from( "project1" ) ).build(),
-                                                                          Project.create()
-                                                                              .name( ProjectName.from( "project2" ) )
-                                                                              .build() ) ) );
+        final Bucket bucket = mock( Bucket.class );
+        when( bucket.getKey() ).thenReturn( "someApp" );
+        final Buckets buckets = mock( Buckets.class );
+        when( buckets.stream() ).thenReturn( Stream.of( bucket ) );
+        final BucketAggregation aggregation = mock( BucketAggregation.class );
+        when( aggregation.getBuckets() ).thenReturn( buckets );
+        final Aggregations aggregations = mock( Aggregations.class );
+        when( aggregations.get( "apps" ) ).thenReturn( aggregation );
+        when( nodeService.findByQuery( argThat( inProject( "project2", appsQuery() ) ) ) ).thenReturn(
+            FindNodesByQueryResult.create().aggregations( aggregations ).build() );
+
+        final List<ProjectName> projects = boosterProjectMatchers.findByAppForInvalidation( List.of( ApplicationKey.from( "someApp" ) ) );
+
+        assertThat( projects ).containsExactly( ProjectName.from( "project2" ) );
+
+        // index is reused
+        boosterProjectMatchers.findByAppForInvalidation( List.of( ApplicationKey.from( "someApp" ) ) );
+        verify( nodeService, times( 2 ) ).findByQuery( argThat( appsQuery() ) );
+    }
 
-        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( FindNodesByQueryResult.create().totalHits( 0 ).build() )
-            .thenReturn( FindNodesByQueryResult.create().totalHits( 2 ).build() );
+    private Node mockContent( final String id, final Instant publishFrom, final Instant publishTo )
+    {
+        final PropertyTree data = new PropertyTree();
+        data.setInstant( "publish.from", publishFrom );
+        data.setInstant( "publish.to", publishTo );
+        final Node node = Node.create()
+            .id( NodeId.from( id ) )
+            .parentPath( new NodePath( "/content/site" ) )
+            .name( id )
+            .data( data )
+            .build();
+        nodes.add( node );
+        return node;
+    }
 
-        final List<ProjectName> scheduled = boosterProjectMatchers.findByAppForInvalidation( List.of( ApplicationKey.from( "someApp" ) ) );
+    private static ArgumentMatcher<NodeQuery> appsQuery()
+    {
+        return query -> query != null && !query.getAggregationQueries().isEmpty();
+    }
 
-        assertThat( scheduled ).containsExactly( ProjectName.from( "project2" ) );
+    private static ArgumentMatcher<NodeQuery> scheduledQuery()
+    {
+        return query -> query != null && query.getSize() > 0;
+    }
 
-        verify( nodeService, times( 2 ) ).findByQuery( any( NodeQuery.class ) );
+    private static ArgumentMatcher<NodeQuery> checkQuery()
+    {
+        return query -> query != null && query.getSize() == 0 && query.getAggregationQueries().isEmpty();
+    }
+
+    // queries are made in context of the project repository
+    private static ArgumentMatcher<NodeQuery> inProject( final String project, final ArgumentMatcher<NodeQuery> matcher )
+    {
+        return query -> ProjectName.from( project ).getRepoId().equals( ContextAccessor.current().getRepositoryId() ) &&
+            matcher.matches( query );
     }
 }
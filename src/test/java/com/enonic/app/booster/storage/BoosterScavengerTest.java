@@ -1,5 +1,8 @@
 package com.enonic.app.booster.storage;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.junit.jupiter.api.Test;
@@ -9,20 +12,33 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.enonic.app.booster.BoosterConfig;
+import com.enonic.xp.aggregation.Aggregations;
+import com.enonic.xp.aggregation.StatsAggregation;
+import com.enonic.xp.data.PropertyTree;
+import com.enonic.xp.index.IndexService;
 import com.enonic.xp.node.DeleteNodeParams;
+import com.enonic.xp.node.EditableNode;
 import com.enonic.xp.node.FindNodesByQueryResult;
+import com.enonic.xp.node.Node;
 import com.enonic.xp.node.NodeHit;
 import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeIds;
+import com.enonic.xp.node.NodePath;
 import com.enonic.xp.node.NodeQuery;
 import com.enonic.xp.node.NodeService;
+import com.enonic.xp.node.Nodes;
 import com.enonic.xp.node.RefreshMode;
+import com.enonic.xp.node.UpdateNodeParams;
+import com.enonic.xp.query.expr.FieldOrderExpr;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentCaptor.captor;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
@@ -32,6 +48,12 @@ class BoosterScavengerTest
     @Mock
     NodeService nodeService;
 
+    @Mock
+    NodeCacheStore nodeCacheStore;
+
+    @Mock
+    IndexService indexService;
+
     @Mock
     ScheduledExecutorService schedulerService;
 
@@ -41,7 +63,7 @@ class BoosterScavengerTest
         final BoosterConfig configMock = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
         when( configMock.cacheSize() ).thenReturn( 1 );
 
-        final BoosterScavenger boosterScavenger = new BoosterScavenger( nodeService, schedulerService );
+        final BoosterScavenger boosterScavenger = new BoosterScavenger( nodeService, nodeCacheStore, indexService, schedulerService );
         boosterScavenger.activate( configMock );
 
         when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( FindNodesByQueryResult.create()
@@ -52,20 +74,209 @@ class BoosterScavengerTest
                                                                                                    .nodeId( NodeId.from( "node2" ) )
                                                                                                    .build() )
                                                                                   .totalHits( 2 )
-                                                                                  .build() )
-            .thenReturn( FindNodesByQueryResult.create()
-                             .addNodeHit( NodeHit.create().nodeId( NodeId.from( "node1" ) ).build() )
-                             .totalHits( 1 )
-                             .build() );
+                                                                                  .build() );
 
         boosterScavenger.scavenge();
 
-        verify( nodeService, times( 2 ) ).findByQuery( any( NodeQuery.class ) );
+        final ArgumentCaptor<NodeQuery> queryCaptor = captor();
+        verify( nodeService, times( 2 ) ).findByQuery( queryCaptor.capture() );
+        assertThat( queryCaptor.getAllValues() ).map( NodeQuery::getSize ).containsExactly( 0, 1 );
         verify( nodeService ).refresh( RefreshMode.SEARCH );
         final ArgumentCaptor<DeleteNodeParams> captor = captor();
         verify( nodeService ).delete( captor.capture() );
         assertThat( captor.getValue().getNodeId() ).asString().isEqualTo( "node1" );
+        verify( nodeCacheStore ).flushHits();
+        verify( nodeCacheStore ).evict( List.of( "node1" ) );
         verifyNoMoreInteractions( nodeService );
     }
 
+    @Test
+    void scavenge_underLimits()
+    {
+        final BoosterConfig configMock = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( configMock.cacheSize() ).thenReturn( 2 );
+
+        final BoosterScavenger boosterScavenger = new BoosterScavenger( nodeService, nodeCacheStore, indexService, schedulerService );
+        boosterScavenger.activate( configMock );
+
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( FindNodesByQueryResult.create().totalHits( 2 ).build() );
+
+        boosterScavenger.scavenge();
+
+        final ArgumentCaptor<NodeQuery> queryCaptor = captor();
+        verify( nodeService ).findByQuery( queryCaptor.capture() );
+        assertThat( queryCaptor.getValue().getSize() ).isEqualTo( 0 );
+        verifyNoMoreInteractions( nodeService );
+    }
+
+    @Test
+    void scavenge_markStale()
+    {
+        final BoosterConfig configMock = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+
+        final BoosterScavenger boosterScavenger = new BoosterScavenger( nodeService, nodeCacheStore, indexService, schedulerService );
+        boosterScavenger.activate( configMock );
+
+        when( nodeCacheStore.generations() ).thenReturn( Map.of( "project:project1", 10L ) );
+        when( nodeCacheStore.resolveInvalidatedTime( any() ) ).thenReturn( Instant.ofEpochMilli( 10 ) );
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( FindNodesByQueryResult.create()
+                                                                                  .addNodeHit( NodeHit.create()
+                                                                                                   .nodeId( NodeId.from( "node1" ) )
+                                                                                                   .build() )
+                                                                                  .totalHits( 1 )
+                                                                                  .build() );
+
+        boosterScavenger.scavenge();
+
+        final ArgumentCaptor<NodeQuery> queryCaptor = captor();
+        verify( nodeService, times( 2 ) ).findByQuery( queryCaptor.capture() );
+        assertThat( queryCaptor.getAllValues().get( 0 ).getSize() ).isEqualTo( 2_000 );
+
+        final ArgumentCaptor<UpdateNodeParams> updateCaptor = captor();
+        verify( nodeService ).update( updateCaptor.capture() );
+        assertThat( updateCaptor.getValue().getId() ).asString().isEqualTo( "node1" );
+        final EditableNode editableNode = new EditableNode( node( "node1", 1, 1 ) );
+        updateCaptor.getValue().getEditor().edit( editableNode );
+        assertThat( editableNode.data.getInstant( "invalidatedTime" ) ).isEqualTo( Instant.ofEpochMilli( 10 ) );
+        verify( nodeService ).refresh( RefreshMode.SEARCH );
+    }
+
+    @Test
+    void scavenge_greedyDual()
+    {
+        final BoosterConfig configMock = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( configMock.cacheSize() ).thenReturn( 1 );
+        when( configMock.cacheEvictionPolicy() ).thenReturn( "GREEDY_DUAL" );
+
+        final BoosterScavenger boosterScavenger = new BoosterScavenger( nodeService, nodeCacheStore, indexService, schedulerService );
+        boosterScavenger.activate( configMock );
+
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( FindNodesByQueryResult.create()
+                                                                                  .addNodeHit( NodeHit.create()
+                                                                                                   .nodeId( NodeId.from( "small" ) )
+                                                                                                   .build() )
+                                                                                  .addNodeHit( NodeHit.create()
+                                                                                                   .nodeId( NodeId.from( "large" ) )
+                                                                                                   .build() )
+                                                                                  .totalHits( 2 )
+                                                                                  .build() );
+        when( nodeService.getByIds( any( NodeIds.class ) ) ).thenReturn(
+            Nodes.from( node( "small", 10, 1_000 ), node( "large", 10, 100_000 ) ) );
+
+        boosterScavenger.scavenge();
+
+        final ArgumentCaptor<NodeQuery> queryCaptor = captor();
+        verify( nodeService, times( 2 ) ).findByQuery( queryCaptor.capture() );
+        assertThat( queryCaptor.getValue().getSize() ).isEqualTo( 10_000 );
+        assertThat( queryCaptor.getValue().getOrderBys() ).map( orderExpr -> ( (FieldOrderExpr) orderExpr ).getField().getPath() )
+            .containsExactly( "invalidatedTime", "lastAccess", "cachedTime" );
+
+        final ArgumentCaptor<DeleteNodeParams> captor = captor();
+        verify( nodeService ).delete( captor.capture() );
+        assertThat( captor.getValue().getNodeId() ).asString().isEqualTo( "large" );
+        verify( nodeCacheStore ).evict( List.of( "large" ) );
+    }
+
+    @Test
+    void scavenge_greedyDual_aging()
+    {
+        final BoosterConfig configMock = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( configMock.cacheSize() ).thenReturn( 1 );
+        when( configMock.cacheEvictionPolicy() ).thenReturn( "GREEDY_DUAL" );
+
+        final BoosterScavenger boosterScavenger = new BoosterScavenger( nodeService, nodeCacheStore, indexService, schedulerService );
+        boosterScavenger.activate( configMock );
+
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( FindNodesByQueryResult.create()
+                                                                                  .addNodeHit( NodeHit.create()
+                                                                                                   .nodeId( NodeId.from( "hot" ) )
+                                                                                                   .build() )
+                                                                                  .addNodeHit( NodeHit.create()
+                                                                                                   .nodeId( NodeId.from( "other" ) )
+                                                                                                   .build() )
+                                                                                  .totalHits( 2 )
+                                                                                  .build() );
+        // formerly hot page is not requested anymore and keeps its stamp, while inflation grows with evictions of other pages
+        when( nodeService.getByIds( any( NodeIds.class ) ) ).thenReturn(
+            Nodes.from( node( "hot", 1_000, 1_000, 0 ), node( "other", 0, 1_000, 0 ) ),
+            Nodes.from( node( "hot", 1_000, 1_000, 0 ), node( "other", 1, 1_000, 2.0 ) ) );
+
+        boosterScavenger.scavenge();
+        boosterScavenger.scavenge();
+
+        final ArgumentCaptor<DeleteNodeParams> captor = captor();
+        verify( nodeService, times( 2 ) ).delete( captor.capture() );
+        assertThat( captor.getAllValues() ).map( params -> params.getNodeId().toString() ).containsExactly( "other", "hot" );
+        verify( nodeCacheStore ).inflate( 0.001 );
+        verify( nodeCacheStore ).inflate( 1.001 );
+    }
+
+    @Test
+    void scavenge_maxBytes()
+    {
+        final BoosterConfig configMock = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( configMock.cacheMaxBytes() ).thenReturn( 50_000L );
+
+        final BoosterScavenger boosterScavenger = new BoosterScavenger( nodeService, nodeCacheStore, indexService, schedulerService );
+        boosterScavenger.activate( configMock );
+
+        final FindNodesByQueryResult candidates = FindNodesByQueryResult.create()
+            .addNodeHit( NodeHit.create().nodeId( NodeId.from( "small" ) ).build() )
+            .addNodeHit( NodeHit.create().nodeId( NodeId.from( "large" ) ).build() )
+            .totalHits( 2 )
+            .build();
+        when( nodeService.findByQuery( argThat( query -> query.getAggregationQueries().isEmpty() ) ) ).thenReturn( candidates );
+        when( nodeService.findByQuery( argThat( query -> !query.getAggregationQueries().isEmpty() ) ) ).thenReturn(
+            storedSizeResult( 101_000 ) );
+        when( nodeService.getByIds( any( NodeIds.class ) ) ).thenReturn(
+            Nodes.from( node( "small", 10, 1_000 ), node( "large", 10, 100_000 ) ) );
+
+        boosterScavenger.scavenge();
+
+        final ArgumentCaptor<DeleteNodeParams> captor = captor();
+        verify( nodeService ).delete( captor.capture() );
+        assertThat( captor.getValue().getNodeId() ).asString().isEqualTo( "large" );
+        verify( nodeCacheStore ).evict( List.of( "large" ) );
+        verify( nodeService ).refresh( RefreshMode.SEARCH );
+    }
+
+    @Test
+    void trainDictionaries_not_master()
+    {
+        final BoosterConfig configMock = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( configMock.compressionDictionaries() ).thenReturn( true );
+
+        final BoosterScavenger boosterScavenger = new BoosterScavenger( nodeService, nodeCacheStore, indexService, schedulerService );
+        boosterScavenger.activate( configMock );
+
+        when( indexService.isMaster() ).thenReturn( false );
+
+        boosterScavenger.trainDictionaries();
+
+        verifyNoInteractions( nodeService, nodeCacheStore );
+    }
+
+    private static FindNodesByQueryResult storedSizeResult( final double sum )
+    {
+        final StatsAggregation stats = mock( StatsAggregation.class );
+        when( stats.getSum() ).thenReturn( sum );
+        final Aggregations aggregations = mock( Aggregations.class );
+        when( aggregations.get( "storedSize" ) ).thenReturn( stats );
+        return FindNodesByQueryResult.create().aggregations( aggregations ).build();
+    }
+
+    private static Node node( final String id, final long hits, final long storedSize )
+    {
+        final PropertyTree data = new PropertyTree();
+        data.setLong( "hits", hits );
+        data.setLong( "storedSize", storedSize );
+        return Node.create().id( NodeId.from( id ) ).name( id ).parentPath( NodePath.ROOT ).data( data ).build();
+    }
+
+    private static Node node( final String id, final long hits, final long storedSize, final double inflation )
+    {
+        final Node node = node( id, hits, storedSize );
+        node.data().setDouble( "inflation", inflation );
+        return node;
+    }
 }
@@ -23,9 +23,12 @@ import com.enonic.xp.task.TaskState;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentCaptor.captor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,70 +38,93 @@ class BoosterTasksFacadeTest
     TaskService taskService;
 
     @Test
-    void invalidate()
+    void warmup()
     {
         BoosterTasksFacade boosterTasksFacade = new BoosterTasksFacade( taskService );
 
-        boosterTasksFacade.invalidate( Set.of( ProjectName.from( "proj1" ), ProjectName.from( "proj2" ) ) );
+        boosterTasksFacade.warmup( Set.of( ProjectName.from( "proj1" ), ProjectName.from( "proj2" ) ), 100, "http://localhost:8080" );
 
         final ArgumentCaptor<SubmitTaskParams> captor = captor();
         verify( taskService ).submitTask( captor.capture() );
 
         final SubmitTaskParams params = captor.getValue();
-        assertThat( params.getDescriptorKey() ).isEqualTo( DescriptorKey.from( "com.enonic.app.booster:invalidate" ) );
-        assertThat( params.getName() ).isEqualTo( "com.enonic.app.booster:invalidate~f256ebccd4d9f771cd3e50b4938eeab4" );
+        assertThat( params.getDescriptorKey() ).isEqualTo( DescriptorKey.from( "com.enonic.app.booster:warmup" ) );
+        assertThat( params.getName() ).isEqualTo( "com.enonic.app.booster:warmup~f256ebccd4d9f771cd3e50b4938eeab4" );
         assertThat( params.getData().getStrings( "project" ) ).containsExactlyInAnyOrder( "proj1", "proj2" );
+        assertEquals( 100L, params.getData().getLong( "limit" ) );
+        assertEquals( "http://localhost:8080", params.getData().getString( "baseUrl" ) );
     }
 
-
     @Test
-    void invalidate_task_exists()
+    void warmup_task_exists()
     {
         BoosterTasksFacade boosterTasksFacade = new BoosterTasksFacade( taskService );
+        when( taskService.submitTask( any() ) ).thenReturn( TaskId.from( "id" ) );
+        when( taskService.getTaskInfo( TaskId.from( "id" ) ) ).thenReturn( taskInfo( TaskState.RUNNING ) );
+
+        final Set<ProjectName> projects = Set.of( ProjectName.from( "proj1" ), ProjectName.from( "proj2" ) );
+        assertEquals( TaskId.from( "id" ), boosterTasksFacade.warmup( projects, 100, null ) );
+        assertNull( boosterTasksFacade.warmup( projects, 100, null ) );
 
-        when( taskService.getAllTasks() ).thenReturn( Collections.singletonList( TaskInfo.create()
-                                                                                     .name(
-                                                                                         "com.enonic.app.booster:invalidate~f256ebccd4d9f771cd3e50b4938eeab4" )
-                                                                                     .id( TaskId.from( "id" ) )
-                                                                                     .application( ApplicationKey.from( "app" ) )
-                                                                                     .startTime( Instant.now() )
-                                                                                     .state( TaskState.WAITING )
-                                                                                     .build() ) );
+        verify( taskService ).submitTask( any() );
+        verify( taskService, never() ).getAllTasks();
+    }
+
+    @Test
+    void warmup_task_done()
+    {
+        BoosterTasksFacade boosterTasksFacade = new BoosterTasksFacade( taskService );
+        when( taskService.submitTask( any() ) ).thenReturn( TaskId.from( "id" ) );
+        when( taskService.getTaskInfo( TaskId.from( "id" ) ) ).thenReturn( taskInfo( TaskState.FINISHED ) );
 
-        boosterTasksFacade.invalidate( Set.of( ProjectName.from( "proj1" ), ProjectName.from( "proj2" ) ) );
+        final List<ProjectName> projects = List.of( ProjectName.from( "proj1" ) );
+        boosterTasksFacade.warmup( projects, 100, null );
+        boosterTasksFacade.warmup( projects, 100, null );
 
-        verifyNoMoreInteractions( taskService );
+        verify( taskService, times( 2 ) ).submitTask( any() );
     }
 
     @Test
-    void invalidate_one()
+    void warmup_one()
     {
         BoosterTasksFacade boosterTasksFacade = new BoosterTasksFacade( taskService );
 
-        boosterTasksFacade.invalidate( List.of( ProjectName.from( "proj1" ) ) );
+        boosterTasksFacade.warmup( List.of( ProjectName.from( "proj1" ) ), 100, null );
 
         final ArgumentCaptor<SubmitTaskParams> captor = captor();
         verify( taskService ).submitTask( captor.capture() );
 
         final SubmitTaskParams params = captor.getValue();
-        assertEquals( DescriptorKey.from( "com.enonic.app.booster:invalidate" ), params.getDescriptorKey() );
-        assertEquals( "com.enonic.app.booster:invalidate~proj1", params.getName() );
+        assertEquals( DescriptorKey.from( "com.enonic.app.booster:warmup" ), params.getDescriptorKey() );
+        assertEquals( "com.enonic.app.booster:warmup~proj1", params.getName() );
         assertThat( params.getData().getStrings( "project" ) ).containsExactly( "proj1" );
+        assertFalse( params.getData().hasProperty( "baseUrl" ) );
     }
 
     @Test
-    void invalidate_all()
+    void warmup_all()
     {
         BoosterTasksFacade boosterTasksFacade = new BoosterTasksFacade( taskService );
 
-        boosterTasksFacade.invalidate( Collections.emptyList() );
+        boosterTasksFacade.warmup( Collections.emptyList(), 100, null );
 
         final ArgumentCaptor<SubmitTaskParams> captor = captor();
         verify( taskService ).submitTask( captor.capture() );
 
         final SubmitTaskParams params = captor.getValue();
-        assertEquals( DescriptorKey.from( "com.enonic.app.booster:invalidate" ), params.getDescriptorKey() );
-        assertThat( params.getName() ).startsWith( "com.enonic.app.booster:invalidate~all" );
+        assertEquals( DescriptorKey.from( "com.enonic.app.booster:warmup" ), params.getDescriptorKey() );
+        assertEquals( "com.enonic.app.booster:warmup~all", params.getName() );
         assertFalse( params.getData().hasProperty( "project" ) );
     }
+
+    private static TaskInfo taskInfo( final TaskState state )
+    {
+        return TaskInfo.create()
+            .name( "com.enonic.app.booster:warmup" )
+            .id( TaskId.from( "id" ) )
+            .application( ApplicationKey.from( "app" ) )
+            .startTime( Instant.now() )
+            .state( state )
+            .build();
+    }
 }
@@ -0,0 +1,24 @@
+package com.enonic.app.booster.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CacheKeyAlgorithmTest
+{
+    @Test
+    void key()
+    {
+        assertEquals( "9f348cc2269b0ab5bd415398b25dcba4", CacheKeyAlgorithm.MURMUR3.key( "https://example.com/" ) );
+        assertEquals( "0f115db062b7c0dd030b16878c99dea5", CacheKeyAlgorithm.SHA256.key( "https://example.com/" ) );
+    }
+
+    @Test
+    void from()
+    {
+        assertEquals( CacheKeyAlgorithm.SHA256, CacheKeyAlgorithm.from( null ) );
+        assertEquals( CacheKeyAlgorithm.MURMUR3, CacheKeyAlgorithm.from( "murmur3" ) );
+        assertEquals( CacheKeyAlgorithm.SHA256, CacheKeyAlgorithm.from( "SHA-256" ) );
+        assertEquals( CacheKeyAlgorithm.SHA256, CacheKeyAlgorithm.from( "md5" ) );
+    }
+}
@@ -0,0 +1,110 @@
+package com.enonic.app.booster.storage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.enonic.xp.node.DeleteNodeParams;
+import com.enonic.xp.node.FindNodesByQueryResult;
+import com.enonic.xp.node.NodeHit;
+import com.enonic.xp.node.NodeId;
+import com.enonic.xp.node.NodeNotFoundException;
+import com.enonic.xp.node.NodeQuery;
+import com.enonic.xp.node.NodeService;
+import com.enonic.xp.node.RefreshMode;
+import com.enonic.xp.query.filter.RangeFilter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentCaptor.captor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CacheNodeDeleterTest
+{
+    @Mock
+    NodeService nodeService;
+
+    @Mock
+    NodeCacheStore nodeCacheStore;
+
+    @Test
+    void delete()
+    {
+        final List<NodeId> nodeIds =
+            IntStream.range( 0, CacheNodeDeleter.BATCH_SIZE + 1 ).mapToObj( i -> NodeId.from( "node" + i ) ).toList();
+
+        final int deleted = new CacheNodeDeleter( nodeService, nodeCacheStore ).delete( nodeIds );
+
+        assertEquals( CacheNodeDeleter.BATCH_SIZE + 1, deleted );
+        verify( nodeService, times( CacheNodeDeleter.BATCH_SIZE + 1 ) ).delete( any( DeleteNodeParams.class ) );
+        verify( nodeCacheStore, times( 2 ) ).evict( anyList() );
+        verify( nodeCacheStore ).evict( List.of( "node" + CacheNodeDeleter.BATCH_SIZE ) );
+        verify( nodeService ).refresh( RefreshMode.SEARCH );
+    }
+
+    @Test
+    void deleteAll()
+    {
+        final FindNodesByQueryResult.Builder firstPage = FindNodesByQueryResult.create().totalHits( CacheNodeDeleter.BATCH_SIZE + 1 );
+        IntStream.range( 0, CacheNodeDeleter.BATCH_SIZE )
+            .forEach( i -> firstPage.addNodeHit( NodeHit.create().nodeId( NodeId.from( String.format( "node%04d", i ) ) ).build() ) );
+        final FindNodesByQueryResult secondPage =
+            FindNodesByQueryResult.create().addNodeHit( NodeHit.create().nodeId( NodeId.from( "node9999" ) ).build() ).totalHits( 1 ).build();
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn( firstPage.build(), secondPage );
+
+        final int deleted = new CacheNodeDeleter( nodeService, nodeCacheStore ).deleteAll( Map.of(), Instant.now() );
+
+        assertEquals( CacheNodeDeleter.BATCH_SIZE + 1, deleted );
+        final ArgumentCaptor<NodeQuery> queryCaptor = captor();
+        verify( nodeService, times( 2 ) ).findByQuery( queryCaptor.capture() );
+        assertThat( queryCaptor.getAllValues().get( 0 ).getQueryFilters() ).noneMatch( RangeFilter.class::isInstance );
+        assertThat( queryCaptor.getAllValues().get( 1 ).getQueryFilters() ).filteredOn( RangeFilter.class::isInstance )
+            .map( RangeFilter.class::cast )
+            .anySatisfy( filter -> {
+                assertEquals( "_id", filter.getFieldName() );
+                assertEquals( "node0499", filter.getFrom().asString() );
+            } );
+        verify( nodeService, times( CacheNodeDeleter.BATCH_SIZE + 1 ) ).delete( any( DeleteNodeParams.class ) );
+        verify( nodeCacheStore, times( 2 ) ).evict( anyList() );
+        verify( nodeService ).refresh( RefreshMode.SEARCH );
+    }
+
+    @Test
+    void delete_already_deleted()
+    {
+        when( nodeService.delete( argThat( params -> params.getNodeId().toString().equals( "node1" ) ) ) ).thenThrow(
+            new NodeNotFoundException( "not found" ) );
+
+        final int deleted = new CacheNodeDeleter( nodeService, nodeCacheStore ).delete( List.of( NodeId.from( "node1" ) ) );
+
+        assertEquals( 0, deleted );
+        final ArgumentCaptor<List<String>> captor = captor();
+        verify( nodeCacheStore ).evict( captor.capture() );
+        assertThat( captor.getValue() ).containsExactly( "node1" );
+        verify( nodeService ).delete( any( DeleteNodeParams.class ) );
+        verify( nodeService, never() ).refresh( any() );
+    }
+
+    @Test
+    void delete_empty()
+    {
+        assertEquals( 0, new CacheNodeDeleter( nodeService, nodeCacheStore ).delete( List.of() ) );
+
+        verifyNoInteractions( nodeService, nodeCacheStore );
+    }
+}
@@ -0,0 +1,66 @@
+package com.enonic.app.booster.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionDictionaryTest
+{
+    private static final String ID = "a591a6d40bf420404a011733cfb7b190d62c65bf0bcda32b57b277d9ad9f146e";
+
+    @Test
+    void create()
+    {
+        final CompressionDictionary dictionary = CompressionDictionary.create( "site", "https://example.com", "/news/", Instant.EPOCH,
+                                                                               "Hello World".getBytes( StandardCharsets.UTF_8 ) );
+        assertEquals( ID, dictionary.id() );
+        assertEquals( 32, dictionary.hash().length );
+        assertEquals( "/news/_/booster/dictionary/" + ID, dictionary.url() );
+    }
+
+    @Test
+    void idFromPath()
+    {
+        assertEquals( ID, CompressionDictionary.idFromPath( "/site/project/master/mysite/_/booster/dictionary/" + ID ) );
+        assertEquals( ID, CompressionDictionary.idFromPath( "/site/project/master/_/booster/dictionary/" + ID.toUpperCase() ) );
+        assertNull( CompressionDictionary.idFromPath( "/site/project/master/mysite/_/booster/dictionary/abc" ) );
+        assertNull( CompressionDictionary.idFromPath( "/site/project/master/mysite/_/booster/dictionary/" + ID + "/x" ) );
+        assertNull( CompressionDictionary.idFromPath( "/site/project/master/mysite/page" ) );
+    }
+
+    @Test
+    void origin()
+    {
+        assertEquals( "https://example.com:8080", CompressionDictionary.origin( "https://example.com:8080/news/a?b=c" ) );
+        assertEquals( "https://example.com", CompressionDictionary.origin( "https://example.com" ) );
+        assertNull( CompressionDictionary.origin( "/news/a" ) );
+    }
+
+    @Test
+    void matches()
+    {
+        final CompressionDictionary dictionary = CompressionDictionary.create( "site", "https://example.com", "/news/", Instant.EPOCH,
+                                                                               new byte[]{1} );
+        assertTrue( dictionary.matches( "https://example.com/news/a" ) );
+        assertFalse( dictionary.matches( "https://example.com/sport/a" ) );
+        assertFalse( dictionary.matches( "http://example.com/news/a" ) );
+        assertFalse( dictionary.matches( "https://example.com.evil/news/a" ) );
+    }
+
+    @Test
+    void useAsDictionary()
+    {
+        assertEquals( "match=\"/news/*\", match-dest=(\"document\")",
+                      CompressionDictionary.create( "site", "https://example.com", "/news/", Instant.EPOCH, new byte[]{1} )
+                          .useAsDictionary() );
+        assertEquals( "match=\"/a\\\\:b\\\\(c\\\\)/*\", match-dest=(\"document\")",
+                      CompressionDictionary.create( "site", "https://example.com", "/a:b(c)/", Instant.EPOCH, new byte[]{1} )
+                          .useAsDictionary() );
+    }
+}
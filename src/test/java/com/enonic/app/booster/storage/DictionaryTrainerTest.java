@@ -0,0 +1,48 @@
+package com.enonic.app.booster.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DictionaryTrainerTest
+{
+    @Test
+    void train()
+    {
+        final List<byte[]> samples = List.of( page( "first" ), page( "second" ), page( "third" ), page( "fourth" ) );
+
+        assertEquals( "<html><head><title>News</title>\n<body><nav>Home</nav><p><footer>Contact</footer></body></html>",
+                      new String( DictionaryTrainer.train( samples, 1024 ), StandardCharsets.ISO_8859_1 ) );
+    }
+
+    @Test
+    void train_limited_size()
+    {
+        final List<byte[]> samples =
+            List.of( bytes( "<a><b>" ), bytes( "<a><b>" ), bytes( "<a><c>" ), bytes( "<a><d>" ), bytes( "<x><y>" ) );
+
+        // <b> is found in less than half of the samples
+        assertEquals( "<a>", new String( DictionaryTrainer.train( samples, 1024 ), StandardCharsets.ISO_8859_1 ) );
+        assertEquals( "", new String( DictionaryTrainer.train( samples, 2 ), StandardCharsets.ISO_8859_1 ) );
+    }
+
+    @Test
+    void train_too_few_samples()
+    {
+        assertEquals( 0, DictionaryTrainer.train( List.of( page( "first" ), page( "second" ) ), 1024 ).length );
+    }
+
+    private static byte[] page( final String text )
+    {
+        return bytes( "<html><head><title>News</title>\n<body><nav>Home</nav><p>" + text +
+                          "</p><footer>Contact</footer></body></html>" );
+    }
+
+    private static byte[] bytes( final String text )
+    {
+        return text.getBytes( StandardCharsets.UTF_8 );
+    }
+}
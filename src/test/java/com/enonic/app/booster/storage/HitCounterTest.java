@@ -0,0 +1,74 @@
+package com.enonic.app.booster.storage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitCounterTest
+{
+    @Test
+    void recordAndDrain()
+    {
+        final HitCounter hitCounter = new HitCounter();
+        hitCounter.record( "a", Instant.ofEpochSecond( 20 ) );
+        hitCounter.record( "a", Instant.ofEpochSecond( 10 ) );
+        hitCounter.record( "b", Instant.ofEpochSecond( 30 ) );
+
+        final Map<String, HitCounter.Hits> drained = hitCounter.drain( Instant.ofEpochSecond( 30 ), 0, Duration.ZERO, 10 );
+        assertEquals( Map.of( "a", new HitCounter.Hits( 2, Instant.ofEpochSecond( 20 ) ), "b",
+                              new HitCounter.Hits( 1, Instant.ofEpochSecond( 30 ) ) ), drained );
+        assertTrue( hitCounter.drain( Instant.ofEpochSecond( 30 ), 0, Duration.ZERO, 10 ).isEmpty() );
+    }
+
+    @Test
+    void drain_due()
+    {
+        final HitCounter hitCounter = new HitCounter();
+        hitCounter.record( "frequent", Instant.ofEpochSecond( 100 ) );
+        hitCounter.record( "frequent", Instant.ofEpochSecond( 110 ) );
+        hitCounter.record( "old", Instant.ofEpochSecond( 10 ) );
+        hitCounter.record( "recent", Instant.ofEpochSecond( 100 ) );
+
+        assertEquals( Set.of( "frequent", "old" ),
+                      hitCounter.drain( Instant.ofEpochSecond( 120 ), 2, Duration.ofSeconds( 60 ), 10 ).keySet() );
+
+        // not due yet hits are kept
+        hitCounter.record( "recent", Instant.ofEpochSecond( 150 ) );
+        assertEquals( Map.of( "recent", new HitCounter.Hits( 2, Instant.ofEpochSecond( 150 ) ) ),
+                      hitCounter.drain( Instant.ofEpochSecond( 160 ), 10, Duration.ofSeconds( 60 ), 10 ) );
+    }
+
+    @Test
+    void drain_limit()
+    {
+        final HitCounter hitCounter = new HitCounter();
+        hitCounter.record( "c", Instant.ofEpochSecond( 30 ) );
+        hitCounter.record( "a", Instant.ofEpochSecond( 10 ) );
+        hitCounter.record( "b", Instant.ofEpochSecond( 20 ) );
+
+        // longest waiting first, the rest is carried over to next drains
+        assertEquals( Set.of( "a", "b" ), hitCounter.drain( Instant.ofEpochSecond( 40 ), 1, Duration.ZERO, 2 ).keySet() );
+        assertEquals( 1, hitCounter.size() );
+        assertEquals( Set.of( "c" ), hitCounter.drain( Instant.ofEpochSecond( 40 ), 1, Duration.ZERO, 2 ).keySet() );
+    }
+
+    @Test
+    void limited()
+    {
+        final HitCounter hitCounter = new HitCounter();
+        for ( int i = 0; i < HitCounter.MAX_KEYS + 10; i++ )
+        {
+            hitCounter.record( "key" + i, Instant.now() );
+        }
+        hitCounter.record( "key0", Instant.now() );
+
+        assertEquals( HitCounter.MAX_KEYS, hitCounter.size() );
+        assertEquals( 2, hitCounter.drain( Instant.now(), 0, Duration.ZERO, HitCounter.MAX_KEYS ).get( "key0" ).hits() );
+    }
+}
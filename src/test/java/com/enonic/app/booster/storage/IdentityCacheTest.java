@@ -0,0 +1,131 @@
+package com.enonic.app.booster.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.enonic.app.booster.CacheItem;
+import com.enonic.app.booster.io.ByteSupply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class IdentityCacheTest
+{
+    @Test
+    void disabled()
+        throws Exception
+    {
+        final IdentityCache identityCache = new IdentityCache( 0 );
+        final CacheItem item = item( "etag", 100 );
+
+        assertNull( identityCache.get( "a", item ) );
+        assertNull( identityCache.get( "a", item ) );
+        assertEquals( 0, identityCache.size() );
+    }
+
+    @Test
+    void repeatedRequests()
+        throws Exception
+    {
+        final IdentityCache identityCache = new IdentityCache( 8_000 );
+        final CacheItem item = item( "etag", 100 );
+
+        assertNull( identityCache.get( "a", item ) );
+
+        final ByteSupply body = identityCache.get( "a", item );
+        assertNotNull( body );
+        assertArrayEquals( new byte[100], body.toByteArray() );
+        assertEquals( 100, identityCache.weightedSize() );
+
+        assertSame( body, identityCache.get( "a", item ) );
+    }
+
+    @Test
+    void replacedResponse()
+        throws Exception
+    {
+        final IdentityCache identityCache = new IdentityCache( 8_000 );
+        identityCache.get( "a", item( "etag", 100 ) );
+        assertNotNull( identityCache.get( "a", item( "etag", 100 ) ) );
+
+        final CacheItem replaced = item( "etag2", 200 );
+        assertNull( identityCache.get( "a", replaced ) );
+        assertEquals( 200, identityCache.get( "a", replaced ).size() );
+        assertEquals( 200, identityCache.weightedSize() );
+    }
+
+    @Test
+    void rejectsLargeEntries()
+        throws Exception
+    {
+        final IdentityCache identityCache = new IdentityCache( 8_000 );
+        final CacheItem item = item( "etag", 1_001 );
+
+        assertNull( identityCache.get( "a", item ) );
+        assertNull( identityCache.get( "a", item ) );
+        assertEquals( 0, identityCache.size() );
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed()
+        throws Exception
+    {
+        final IdentityCache identityCache = new IdentityCache( 2_000 );
+        for ( String key : List.of( "a", "b", "c", "a", "b", "c" ) )
+        {
+            identityCache.get( key, item( "etag", 200 ) );
+        }
+        assertEquals( 3, identityCache.size() );
+
+        identityCache.get( "a", item( "etag", 200 ) );
+        for ( String key : List.of( "d", "e", "f", "g", "h", "i", "j" ) )
+        {
+            identityCache.get( key, item( "etag", 200 ) );
+            identityCache.get( key, item( "etag", 200 ) );
+        }
+        assertEquals( 2_000, identityCache.weightedSize() );
+        assertEquals( 10, identityCache.size() );
+
+        identityCache.get( "k", item( "etag", 200 ) );
+        identityCache.get( "k", item( "etag", 200 ) );
+        assertEquals( 10, identityCache.size() );
+        // "b" is the least recently used
+        assertNull( identityCache.get( "b", item( "etag", 200 ) ) );
+    }
+
+    @Test
+    void remove()
+        throws Exception
+    {
+        final IdentityCache identityCache = new IdentityCache( 8_000 );
+        final CacheItem item = item( "etag", 100 );
+        identityCache.get( "a", item );
+        identityCache.get( "a", item );
+
+        identityCache.remove( "a" );
+        assertEquals( 0, identityCache.size() );
+        assertEquals( 0, identityCache.weightedSize() );
+        assertNull( identityCache.get( "a", item ) );
+    }
+
+    private static CacheItem item( final String etag, final int length )
+        throws IOException
+    {
+        final ByteArrayOutputStream gzipData = new ByteArrayOutputStream();
+        try (GZIPOutputStream os = new GZIPOutputStream( gzipData ))
+        {
+            os.write( new byte[length] );
+        }
+        return new CacheItem( 200, "text/html", Map.of(), Instant.now(), null, null, null, length, etag, null, null, List.of(),
+                              List.of(), ByteSupply.of( gzipData ), null, null, null );
+    }
+}
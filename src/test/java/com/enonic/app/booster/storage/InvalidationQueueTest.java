@@ -0,0 +1,107 @@
+package com.enonic.app.booster.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.enonic.xp.project.ProjectName;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvalidationQueueTest
+{
+    private static final ProjectName PROJECT1 = ProjectName.from( "project1" );
+
+    private static final ProjectName PROJECT2 = ProjectName.from( "project2" );
+
+    @Test
+    void poll_empty()
+    {
+        assertNull( new InvalidationQueue().poll( 0, 0, 0 ) );
+    }
+
+    @Test
+    void poll_quiet_period()
+    {
+        final InvalidationQueue queue = new InvalidationQueue();
+        queue.addProjects( List.of( PROJECT1 ), 0, false );
+        queue.addProjects( List.of( PROJECT2 ), 5, false );
+
+        assertNull( queue.poll( 10, 10, 100 ) );
+
+        final InvalidationQueue.Batch batch = queue.poll( 15, 10, 100 );
+        assertNotNull( batch );
+        assertEquals( Set.of( PROJECT1, PROJECT2 ), batch.projects() );
+        assertNull( queue.poll( 100, 10, 100 ) );
+    }
+
+    @Test
+    void poll_max_delay()
+    {
+        final InvalidationQueue queue = new InvalidationQueue();
+        for ( int nanos = 0; nanos < 100; nanos += 5 )
+        {
+            queue.addProjects( List.of( PROJECT1 ), nanos, false );
+            assertNull( queue.poll( nanos, 10, 100 ) );
+        }
+        assertNotNull( queue.poll( 100, 10, 100 ) );
+    }
+
+    @Test
+    void poll_urgent()
+    {
+        final InvalidationQueue queue = new InvalidationQueue();
+        queue.addProjects( List.of( PROJECT1 ), 0, true );
+
+        assertNotNull( queue.poll( 0, 10, 100 ) );
+    }
+
+    @Test
+    void all_subsumes_projects_and_content()
+    {
+        final InvalidationQueue queue = new InvalidationQueue();
+        queue.addProjects( List.of( PROJECT1 ), 0, false );
+        queue.addContent( PROJECT2, List.of( "content1" ), List.of(), 0, false );
+        queue.addAll( 0, false );
+
+        final InvalidationQueue.Batch batch = queue.poll( 10, 10, 100 );
+        assertTrue( batch.all() );
+        assertTrue( batch.projects().isEmpty() );
+        assertTrue( batch.contentIds().isEmpty() );
+    }
+
+    @Test
+    void project_subsumes_content()
+    {
+        final InvalidationQueue queue = new InvalidationQueue();
+        queue.addContent( PROJECT1, List.of( "content1" ), List.of( "/site" ), 0, false );
+        queue.addContent( PROJECT2, List.of( "content2" ), List.of( "/site" ), 0, false );
+        queue.addProjects( List.of( PROJECT1 ), 0, false );
+
+        final InvalidationQueue.Batch batch = queue.poll( 10, 10, 100 );
+        assertFalse( batch.all() );
+        assertEquals( Set.of( PROJECT1 ), batch.projects() );
+        assertEquals( Map.of( PROJECT2, Set.of( "content2" ) ), batch.contentIds() );
+        assertEquals( Map.of( PROJECT2, Set.of( "/site" ) ), batch.contentPaths() );
+        assertEquals( Set.of( PROJECT1, PROJECT2 ), batch.allProjects() );
+    }
+
+    @Test
+    void requeue()
+    {
+        final InvalidationQueue queue = new InvalidationQueue();
+        queue.addContent( PROJECT1, List.of( "content1" ), List.of(), 0, false );
+        final InvalidationQueue.Batch batch = queue.poll( 10, 10, 100 );
+
+        queue.addContent( PROJECT1, List.of( "content2" ), List.of(), 20, false );
+        queue.requeue( batch, 20 );
+
+        assertEquals( Map.of( PROJECT1, Set.of( "content1", "content2" ) ), queue.poll( 30, 10, 100 ).contentIds() );
+    }
+}
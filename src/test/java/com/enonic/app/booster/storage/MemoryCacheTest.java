@@ -0,0 +1,108 @@
+package com.enonic.app.booster.storage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.enonic.app.booster.CacheItem;
+import com.enonic.app.booster.io.ByteSupply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryCacheTest
+{
+    @Test
+    void disabled()
+    {
+        final MemoryCache memoryCache = new MemoryCache( 0 );
+        assertFalse( memoryCache.isEnabled() );
+
+        memoryCache.put( "a", item( 10 ) );
+        assertNull( memoryCache.get( "a" ) );
+        assertEquals( 0, memoryCache.size() );
+    }
+
+    @Test
+    void putGetRemove()
+    {
+        final MemoryCache memoryCache = new MemoryCache( 80_000 );
+        final CacheItem item = item( 100 );
+        memoryCache.put( "a", item );
+
+        assertSame( item, memoryCache.get( "a" ) );
+        assertEquals( MemoryCache.ENTRY_OVERHEAD + 100, memoryCache.weightedSize() );
+
+        memoryCache.remove( "a" );
+        assertNull( memoryCache.get( "a" ) );
+        assertEquals( 0, memoryCache.weightedSize() );
+    }
+
+    @Test
+    void rejectsLargeEntries()
+    {
+        final MemoryCache memoryCache = new MemoryCache( 80_000 );
+        assertTrue( memoryCache.accepts( 10_000 ) );
+        assertFalse( memoryCache.accepts( 10_001 ) );
+
+        memoryCache.put( "a", item( 20_000 ) );
+        assertNull( memoryCache.get( "a" ) );
+    }
+
+    @Test
+    void evictsColdBeforeHot()
+    {
+        // room for 8 entries of 9024 bytes
+        final MemoryCache memoryCache = new MemoryCache( 80_000 );
+        memoryCache.put( "hot", item( 8_000 ) );
+        assertNotNull( memoryCache.get( "hot" ) );
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            memoryCache.put( "cold" + i, item( 8_000 ) );
+        }
+
+        assertNotNull( memoryCache.get( "hot" ) );
+        assertNull( memoryCache.get( "cold0" ) );
+        assertNotNull( memoryCache.get( "cold19" ) );
+        assertTrue( memoryCache.weightedSize() <= 80_000 );
+    }
+
+    @Test
+    void loadIgnoredAfterConcurrentModification()
+    {
+        final MemoryCache memoryCache = new MemoryCache( 80_000 );
+        final long version = memoryCache.version();
+        memoryCache.remove( "a" );
+
+        memoryCache.load( "a", item( 100 ), version );
+        assertNull( memoryCache.get( "a" ) );
+
+        memoryCache.load( "a", item( 100 ), memoryCache.version() );
+        assertNotNull( memoryCache.get( "a" ) );
+    }
+
+    @Test
+    void clear()
+    {
+        final MemoryCache memoryCache = new MemoryCache( 80_000 );
+        memoryCache.put( "a", item( 100 ) );
+        memoryCache.put( "b", item( 100 ) );
+        memoryCache.clear();
+
+        assertEquals( 0, memoryCache.size() );
+        assertEquals( 0, memoryCache.weightedSize() );
+    }
+
+    private static CacheItem item( final int size )
+    {
+        return new CacheItem( 200, "text/html", Map.of(), Instant.now(), null, null, null, size, "etag", null, null, List.of(),
+                              List.of(), ByteSupply.of( new byte[size] ), null, null, null );
+    }
+}
@@ -1,9 +1,17 @@
 package com.enonic.app.booster.storage;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import org.assertj.core.groups.Tuple;
 import org.junit.jupiter.api.Test;
@@ -12,32 +20,50 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.aayushatharva.brotli4j.decoder.BrotliInputStream;
+import com.github.luben.zstd.ZstdInputStream;
 import com.google.common.io.ByteSource;
 
+import com.enonic.app.booster.BoosterConfig;
 import com.enonic.app.booster.CacheItem;
 import com.enonic.app.booster.CacheMeta;
+import com.enonic.app.booster.CompressionMetrics;
 import com.enonic.app.booster.EntryPattern;
+import com.enonic.app.booster.KeyDimension;
 import com.enonic.app.booster.io.ByteSupply;
 import com.enonic.xp.data.PropertySet;
 import com.enonic.xp.data.PropertyTree;
+import com.enonic.xp.event.Event;
+import com.enonic.xp.event.EventPublisher;
 import com.enonic.xp.node.CreateNodeParams;
 import com.enonic.xp.node.DeleteNodeParams;
+import com.enonic.xp.node.EditableNode;
+import com.enonic.xp.node.FindNodesByQueryResult;
 import com.enonic.xp.node.Node;
+import com.enonic.xp.node.NodeHit;
 import com.enonic.xp.node.NodeId;
 import com.enonic.xp.node.NodeNotFoundException;
 import com.enonic.xp.node.NodePath;
+import com.enonic.xp.node.NodeQuery;
 import com.enonic.xp.node.NodeService;
 import com.enonic.xp.node.UpdateNodeParams;
 import com.enonic.xp.util.BinaryReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentCaptor.captor;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -46,18 +72,17 @@ class NodeCacheStoreTest
     @Mock
     NodeService nodeService;
 
-    @Test
-    void generateCacheKey()
-    {
-        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService );
-        final String cacheKey = nodeCacheStore.generateCacheKey( "https://example.com/" );
-        assertEquals( "0f115db062b7c0dd030b16878c99dea5", cacheKey );
-    }
+    @Mock
+    EventPublisher eventPublisher;
+
+    final List<Runnable> compressTasks = new ArrayList<>();
+
+    final CompressionMetrics compressionMetrics = new CompressionMetrics();
 
     @Test
     void remove()
     {
-        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService );
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
         nodeCacheStore.remove( "0f115db062b7c0dd030b16878c99dea5" );
 
         final ArgumentCaptor<DeleteNodeParams> captor = captor();
@@ -68,7 +93,7 @@ class NodeCacheStoreTest
     @Test
     void remove_failsafe()
     {
-        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService );
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
         when( nodeService.delete( any() ) ).thenThrow( NodeNotFoundException.class );
         assertDoesNotThrow( () -> nodeCacheStore.remove( "0f115db062b7c0dd030b16878c99dea5" ) );
 
@@ -81,7 +106,7 @@ class NodeCacheStoreTest
     @Test
     void get_not_found()
     {
-        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService );
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
         NodeId nodeId = NodeId.from( "0f115db062b7c0dd030b16878c99dea5" );
 
         when( nodeService.getById( nodeId ) ).thenThrow( NodeNotFoundException.class );
@@ -94,7 +119,7 @@ class NodeCacheStoreTest
     @Test
     void get()
     {
-        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService );
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
         NodeId nodeId = NodeId.from( "0f115db062b7c0dd030b16878c99dea5" );
         Node.Builder nodeBuilder = Node.create().id( nodeId ).name( "0f115db062b7c0dd030b16878c99dea5" ).parentPath( NodePath.ROOT );
 
@@ -145,7 +170,7 @@ class NodeCacheStoreTest
     @Test
     void get_brotli_optional()
     {
-        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService );
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
         NodeId nodeId = NodeId.from( "0f115db062b7c0dd030b16878c99dea5" );
         Node.Builder nodeBuilder =
             Node.create().id( nodeId ).name( "0f115db062b7c0dd030b16878c99dea5" ).parentPath( new NodePath( "/cache" ) );
@@ -183,16 +208,17 @@ class NodeCacheStoreTest
     @Test
     void put()
     {
-        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService );
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
         final CacheItem cacheItem =
             new CacheItem( 200, "text/html", Map.of( "header1", List.of( "value1" ) ), Instant.now(), null, null, null, 1234, "1234567890",
-                           List.of( new EntryPattern( "Pragma", "no-cache", false ),
-                                    new EntryPattern( "User-Agent", "(?i).*googlebot.*", true ) ),
+                           null, null, List.of( new EntryPattern( "Pragma", "no-cache", false ),
+                                                new EntryPattern( "User-Agent", "(?i).*googlebot.*", true ) ),
                            List.of( new EntryPattern( "RememberMe", ".*", false ), new EntryPattern( "ForgetMe", "^$", true ) ),
-                           ByteSupply.of( new ByteArrayOutputStream() ), ByteSupply.of( new ByteArrayOutputStream() ) );
+                           ByteSupply.of( new ByteArrayOutputStream() ), ByteSupply.of( new ByteArrayOutputStream() ), null, null );
 
         final CacheMeta cacheMeta =
-            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath" );
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath",
+                           Set.of( "fragment1" ), 0 );
 
         nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
 
@@ -210,7 +236,10 @@ class NodeCacheStoreTest
         assertEquals( "1234567890", createNodeParams.getData().getString( "etag" ) );
         assertEquals( "project", createNodeParams.getData().getString( "project" ) );
         assertEquals( "siteId", createNodeParams.getData().getString( "siteId" ) );
+        assertEquals( 0L, createNodeParams.getData().getLong( "generation" ) );
+        assertThat( createNodeParams.getData().getStrings( "dependsOn" ) ).containsExactly( "fragment1" );
         assertEquals( "contentId", createNodeParams.getData().getString( "contentId" ) );
+        assertNull( createNodeParams.getData().getLong( "staleWhileRevalidate" ) );
         assertThat( createNodeParams.getData().getSets( "configBypassCookies" ) ).map( p -> p.getString( "name" ),
                                                                                        p -> p.getString( "pattern" ),
                                                                                        p -> p.getBoolean( "invert" ) )
@@ -233,14 +262,14 @@ class NodeCacheStoreTest
     @Test
     void put_update()
     {
-        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService );
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
         final CacheItem cacheItem =
             new CacheItem( 200, "text/html", Map.of( "header1", List.of( "value1" ) ), Instant.now(), null, null, null, 1234, "1234567890",
-                           List.of(), List.of(), ByteSupply.of( new ByteArrayOutputStream() ),
-                           ByteSupply.of( new ByteArrayOutputStream() ) );
+                           null, null, List.of(), List.of(), ByteSupply.of( new ByteArrayOutputStream() ),
+                           ByteSupply.of( new ByteArrayOutputStream() ), null, null );
 
         final CacheMeta cacheMeta =
-            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath" );
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
 
         when( nodeService.nodeExists( NodeId.from( "0f115db062b7c0dd030b16878c99dea5" ) ) ).thenReturn( true );
         nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
@@ -255,4 +284,606 @@ class NodeCacheStoreTest
         assertEquals( BinaryReference.from( "data.br" ),
                       updateNodeParams.getBinaryAttachments().get( BinaryReference.from( "data.br" ) ).getReference() );
     }
+
+    @Test
+    void put_brotli_in_background()
+        throws Exception
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final ByteArrayOutputStream gzipData = new ByteArrayOutputStream();
+        try (GZIPOutputStream os = new GZIPOutputStream( gzipData ))
+        {
+            os.write( "Hello World!".getBytes( StandardCharsets.UTF_8 ) );
+        }
+        final Instant cachedTime = Instant.now();
+        final CacheItem cacheItem =
+            new CacheItem( 200, "text/html", Map.of(), cachedTime, null, null, null, 12, "1234567890", null, null, List.of(), List.of(),
+                           ByteSupply.of( gzipData ), null, null, null );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
+
+        final ArgumentCaptor<CreateNodeParams> createCaptor = captor();
+        verify( nodeService ).create( createCaptor.capture() );
+        assertNull( createCaptor.getValue().getData().getBinaryReference( "brotliData" ) );
+        assertNull( createCaptor.getValue().getBinaryAttachments().get( BinaryReference.from( "data.br" ) ) );
+
+        // zstd, then brotli
+        assertEquals( 2, compressTasks.size() );
+        compressTasks.get( 1 ).run();
+
+        final ArgumentCaptor<UpdateNodeParams> captor = captor();
+        verify( nodeService ).update( captor.capture() );
+        final ByteSource brotliBody = captor.getValue().getBinaryAttachments().get( BinaryReference.from( "data.br" ) ).getByteSource();
+        try (BrotliInputStream is = new BrotliInputStream( brotliBody.openStream() ))
+        {
+            assertEquals( "Hello World!", new String( is.readAllBytes(), StandardCharsets.UTF_8 ) );
+        }
+
+        final EditableNode editableNode = new EditableNode( Node.create().data( createCaptor.getValue().getData().copy() ).build() );
+        captor.getValue().getEditor().edit( editableNode );
+        assertEquals( BinaryReference.from( "data.br" ), editableNode.data.getBinaryReference( "brotliData" ) );
+        assertEquals( createCaptor.getValue().getData().getLong( "storedSize" ) + brotliBody.size(),
+                      editableNode.data.getLong( "storedSize" ) );
+
+        final PropertyTree replaced = createCaptor.getValue().getData().copy();
+        replaced.setString( "etag", "0987654321" );
+        final EditableNode replacedNode = new EditableNode( Node.create().data( replaced ).build() );
+        captor.getValue().getEditor().edit( replacedNode );
+        assertNull( replacedNode.data.getBinaryReference( "brotliData" ) );
+    }
+
+    @Test
+    void put_zstd_in_background()
+        throws Exception
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", gzipItem( "Hello World!" ), cacheMeta );
+
+        final ArgumentCaptor<CreateNodeParams> createCaptor = captor();
+        verify( nodeService ).create( createCaptor.capture() );
+        assertNull( createCaptor.getValue().getData().getBinaryReference( "zstdData" ) );
+        assertNull( createCaptor.getValue().getBinaryAttachments().get( BinaryReference.from( "data.zst" ) ) );
+        assertEquals( Map.of(), compressionMetrics.getLevelCount() );
+
+        compressTasks.get( 0 ).run();
+
+        final ArgumentCaptor<UpdateNodeParams> captor = captor();
+        verify( nodeService ).update( captor.capture() );
+        final ByteSource zstdBody = captor.getValue().getBinaryAttachments().get( BinaryReference.from( "data.zst" ) ).getByteSource();
+        try (ZstdInputStream is = new ZstdInputStream( zstdBody.openStream() ))
+        {
+            assertEquals( "Hello World!", new String( is.readAllBytes(), StandardCharsets.UTF_8 ) );
+        }
+        assertEquals( Map.of( "zstd-3", 1L ), compressionMetrics.getLevelCount() );
+
+        final EditableNode editableNode = new EditableNode( Node.create().data( createCaptor.getValue().getData().copy() ).build() );
+        captor.getValue().getEditor().edit( editableNode );
+        assertEquals( BinaryReference.from( "data.zst" ), editableNode.data.getBinaryReference( "zstdData" ) );
+        assertEquals( createCaptor.getValue().getData().getLong( "storedSize" ) + zstdBody.size(),
+                      editableNode.data.getLong( "storedSize" ) );
+
+        final PropertyTree replaced = createCaptor.getValue().getData().copy();
+        replaced.setInstant( "cachedTime", Instant.now().plusSeconds( 1 ) );
+        final EditableNode replacedNode = new EditableNode( Node.create().data( replaced ).build() );
+        captor.getValue().getEditor().edit( replacedNode );
+        assertNull( replacedNode.data.getBinaryReference( "zstdData" ) );
+    }
+
+    @Test
+    void put_small_body_not_compressed()
+        throws Exception
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        nodeCacheStore.activate( mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() ) );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", gzipItem( "Hello World!" ), cacheMeta );
+
+        final ArgumentCaptor<CreateNodeParams> captor = captor();
+        verify( nodeService ).create( captor.capture() );
+        assertNull( captor.getValue().getData().getBinaryReference( "zstdData" ) );
+        assertTrue( compressTasks.isEmpty() );
+        assertEquals( Map.of( "br", 1L, "zstd", 1L ), compressionMetrics.getSkippedCount() );
+        assertEquals( Map.of(), compressionMetrics.getCompressedCount() );
+    }
+
+    @Test
+    void put_zstd_excluded_mime_type()
+        throws Exception
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final BoosterConfig config = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( config.zstdExcludeMimeTypes() ).thenReturn( "text/*" );
+        when( config.brotliExcludeMimeTypes() ).thenReturn( "text/html" );
+        when( config.compressionMinBytes() ).thenReturn( 0 );
+        nodeCacheStore.activate( config );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", gzipItem( "Hello World!" ), cacheMeta );
+
+        final ArgumentCaptor<CreateNodeParams> captor = captor();
+        verify( nodeService ).create( captor.capture() );
+        assertNull( captor.getValue().getData().getBinaryReference( "zstdData" ) );
+        assertNull( captor.getValue().getBinaryAttachments().get( BinaryReference.from( "data.zst" ) ) );
+        assertTrue( compressTasks.isEmpty() );
+    }
+
+    @Test
+    void get_variants()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        NodeId nodeId = NodeId.from( "0f115db062b7c0dd030b16878c99dea5" );
+
+        PropertyTree data = new PropertyTree();
+        data.addBoolean( "variants", true );
+        data.addString( "url", "https://example.com/" );
+        final PropertySet keyHeader = data.addSet( "keyHeaders" );
+        keyHeader.addString( "name", "Accept-Language" );
+        final PropertySet bucket = keyHeader.addSet( "buckets" );
+        bucket.addString( "pattern", "no.*" );
+        bucket.addString( "value", "no" );
+        Node node = Node.create().id( nodeId ).name( "0f115db062b7c0dd030b16878c99dea5" ).parentPath( NodePath.ROOT ).data( data ).build();
+
+        when( nodeService.getById( nodeId ) ).thenReturn( node );
+
+        assertThat( nodeCacheStore.keyDimensions( "0f115db062b7c0dd030b16878c99dea5" ) ).isEmpty();
+        assertNull( nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" ) );
+        assertEquals( List.of( new KeyDimension( KeyDimension.Source.HEADER, "Accept-Language",
+                                                 List.of( new KeyDimension.Bucket( "no.*", "no" ) ) ) ),
+                      nodeCacheStore.keyDimensions( "0f115db062b7c0dd030b16878c99dea5" ) );
+        verify( nodeService, never() ).getBinary( any(), any() );
+    }
+
+    @Test
+    void putVariant()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final CacheItem variant =
+            new CacheItem( 200, "text/html", Map.of(), Instant.now(), null, null, null, 1234, "1234567890", null, null, List.of(),
+                           List.of(), ByteSupply.of( new byte[]{1, 2, 3} ), null, null, null );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+        final List<KeyDimension> dimensions = List.of( new KeyDimension( KeyDimension.Source.COOKIE, "device", List.of() ) );
+
+        nodeCacheStore.putVariant( "0f115db062b7c0dd030b16878c99dea5", dimensions, "variant1", variant, cacheMeta );
+        // known variants are not written again
+        nodeCacheStore.putVariant( "0f115db062b7c0dd030b16878c99dea5", dimensions, "variant1", variant, cacheMeta );
+
+        final ArgumentCaptor<CreateNodeParams> captor = captor();
+        verify( nodeService ).create( captor.capture() );
+
+        final CreateNodeParams createNodeParams = captor.getValue();
+        assertEquals( NodeId.from( "0f115db062b7c0dd030b16878c99dea5" ), createNodeParams.getNodeId() );
+        assertTrue( createNodeParams.getData().getBoolean( "variants" ) );
+        assertEquals( "https://example.com/", createNodeParams.getData().getString( "url" ) );
+        assertEquals( "project", createNodeParams.getData().getString( "project" ) );
+        assertEquals( 0L, createNodeParams.getData().getLong( "storedSize" ) );
+        assertThat( createNodeParams.getData().getSets( "keyCookies" ) ).map( p -> p.getString( "name" ) ).containsExactly( "device" );
+        assertThat( createNodeParams.getData().getStrings( "variantKeys" ) ).containsExactly( "variant1" );
+        assertTrue( createNodeParams.getBinaryAttachments().isEmpty() );
+        assertEquals( dimensions, nodeCacheStore.keyDimensions( "0f115db062b7c0dd030b16878c99dea5" ) );
+
+        // primary key holds a response again
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", variant, cacheMeta );
+        assertThat( nodeCacheStore.keyDimensions( "0f115db062b7c0dd030b16878c99dea5" ) ).isEmpty();
+    }
+
+    @Test
+    void putVariant_max_variants()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final BoosterConfig config = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( config.maxVariants() ).thenReturn( 2 );
+        nodeCacheStore.activate( config );
+
+        final CacheItem variant =
+            new CacheItem( 200, "text/html", Map.of(), Instant.now(), null, null, null, 1234, "1234567890", null, null, List.of(),
+                           List.of(), ByteSupply.of( new byte[]{1, 2, 3} ), null, null, null );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+        final List<KeyDimension> dimensions = List.of( new KeyDimension( KeyDimension.Source.HEADER, "Accept-Language", List.of() ) );
+
+        nodeCacheStore.putVariant( "0f115db062b7c0dd030b16878c99dea5", dimensions, "variant1", variant, cacheMeta );
+        nodeCacheStore.putVariant( "0f115db062b7c0dd030b16878c99dea5", dimensions, "variant2", variant, cacheMeta );
+        verify( nodeService, never() ).delete( any() );
+
+        nodeCacheStore.putVariant( "0f115db062b7c0dd030b16878c99dea5", dimensions, "variant3", variant, cacheMeta );
+
+        final ArgumentCaptor<DeleteNodeParams> captor = captor();
+        verify( nodeService ).delete( captor.capture() );
+        assertEquals( NodeId.from( "variant1" ), captor.getValue().getNodeId() );
+
+        // variants keyed by previous dimensions are removed
+        nodeCacheStore.putVariant( "0f115db062b7c0dd030b16878c99dea5", List.of(
+            new KeyDimension( KeyDimension.Source.COOKIE, "lang", List.of() ) ), "variant4", variant, cacheMeta );
+        final ArgumentCaptor<DeleteNodeParams> allCaptor = captor();
+        verify( nodeService, times( 3 ) ).delete( allCaptor.capture() );
+        assertThat( allCaptor.getAllValues() ).map( DeleteNodeParams::getNodeId )
+            .containsExactly( NodeId.from( "variant1" ), NodeId.from( "variant2" ), NodeId.from( "variant3" ) );
+    }
+
+    @Test
+    void get_memory()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        nodeCacheStore.activate( memoryCacheConfig() );
+
+        NodeId nodeId = NodeId.from( "0f115db062b7c0dd030b16878c99dea5" );
+        PropertyTree data = new PropertyTree();
+        data.addString( "contentType", "text/html" );
+        data.addLong( "contentLength", 1234L );
+        data.addInstant( "cachedTime", Instant.now() );
+        Node node = Node.create().id( nodeId ).name( "0f115db062b7c0dd030b16878c99dea5" ).parentPath( NodePath.ROOT ).data( data ).build();
+
+        when( nodeService.getById( nodeId ) ).thenReturn( node );
+        when( nodeService.getBinary( nodeId, BinaryReference.from( "data.gzip" ) ) ).thenReturn( ByteSource.wrap( new byte[]{1, 2, 3} ) );
+        when( nodeService.getBinary( nodeId, BinaryReference.from( "data.br" ) ) ).thenReturn( null );
+
+        final CacheItem first = nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" );
+        final CacheItem second = nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" );
+
+        assertNotNull( first );
+        assertSame( first, second );
+        assertEquals( 3, second.gzipData().size() );
+        verify( nodeService, times( 1 ) ).getById( nodeId );
+
+        nodeCacheStore.evictLocally( List.of( "0f115db062b7c0dd030b16878c99dea5" ) );
+        nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" );
+        verify( nodeService, times( 2 ) ).getById( nodeId );
+        verifyNoInteractions( eventPublisher );
+    }
+
+    @Test
+    void put_memory()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        nodeCacheStore.activate( memoryCacheConfig() );
+
+        final CacheItem cacheItem =
+            new CacheItem( 200, "text/html", Map.of(), Instant.now(), null, null, null, 1234, "1234567890", null, null,
+                           List.of(), List.of(), ByteSupply.of( new byte[]{1, 2, 3} ), null, null, null );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
+
+        final CacheItem result = nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" );
+        assertNotNull( result );
+        assertEquals( "1234567890", result.etag() );
+        verify( nodeService, never() ).getById( any() );
+
+        nodeCacheStore.remove( "0f115db062b7c0dd030b16878c99dea5" );
+        when( nodeService.getById( any() ) ).thenThrow( NodeNotFoundException.class );
+        assertNull( nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" ) );
+
+        // pending eviction of the stored response is superseded by the removal
+        nodeCacheStore.flushEvictions();
+
+        final ArgumentCaptor<Event> captor = captor();
+        verify( eventPublisher ).publish( captor.capture() );
+        assertEquals( "custom.booster.evict", captor.getValue().getType() );
+        assertTrue( captor.getValue().isDistributed() );
+        assertEquals( List.of( "0f115db062b7c0dd030b16878c99dea5" ), captor.getValue().getData().get( "keys" ) );
+    }
+
+    @Test
+    void put_evictions_batched()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+
+        final CacheItem cacheItem =
+            new CacheItem( 200, "text/html", Map.of(), Instant.now(), null, null, null, 1234, "1234567890", null, null,
+                           List.of(), List.of(), ByteSupply.of( new byte[]{1, 2, 3} ), null, null, null );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
+        nodeCacheStore.put( "1f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
+        verifyNoInteractions( eventPublisher );
+
+        nodeCacheStore.flushEvictions();
+        nodeCacheStore.flushEvictions();
+
+        final ArgumentCaptor<Event> captor = captor();
+        verify( eventPublisher ).publish( captor.capture() );
+        assertEquals( "custom.booster.evict", captor.getValue().getType() );
+        assertThat( (List<?>) captor.getValue().getData().get( "keys" ) ).containsExactlyInAnyOrder( "0f115db062b7c0dd030b16878c99dea5",
+                                                                                                   "1f115db062b7c0dd030b16878c99dea5" );
+    }
+
+    @Test
+    void flushHits()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        nodeCacheStore.activate( memoryCacheConfig() );
+
+        final CacheItem cacheItem =
+            new CacheItem( 200, "text/html", Map.of(), Instant.now(), null, null, null, 1234, "1234567890", null, null,
+                           List.of(), List.of(), ByteSupply.of( new byte[]{1, 2, 3} ), null, null, null );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
+        nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" );
+        nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" );
+
+        // few hits wait in memory
+        nodeCacheStore.flushHits();
+        verify( nodeService, never() ).update( any() );
+
+        nodeCacheStore.flushHits( Instant.now().plus( Duration.ofMinutes( 10 ) ) );
+
+        final ArgumentCaptor<UpdateNodeParams> captor = captor();
+        verify( nodeService ).update( captor.capture() );
+        assertEquals( NodeId.from( "0f115db062b7c0dd030b16878c99dea5" ), captor.getValue().getId() );
+
+        final PropertyTree data = new PropertyTree();
+        data.setLong( "hits", 3L );
+        final EditableNode editableNode = new EditableNode( Node.create().data( data ).build() );
+        captor.getValue().getEditor().edit( editableNode );
+        assertEquals( 5L, editableNode.data.getLong( "hits" ) );
+        assertNotNull( editableNode.data.getInstant( "lastAccess" ) );
+        assertEquals( 0.0, editableNode.data.getDouble( "inflation" ) );
+
+        nodeCacheStore.flushHits();
+        verify( nodeService ).update( any() );
+    }
+
+    @Test
+    void put_update_keeps_hits()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final CacheItem cacheItem =
+            new CacheItem( 200, "text/html", Map.of(), Instant.now(), null, null, null, 1234, "1234567890", null, null,
+                           List.of(), List.of(), ByteSupply.of( new byte[]{1, 2, 3} ), null, null, null );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+
+        when( nodeService.nodeExists( NodeId.from( "0f115db062b7c0dd030b16878c99dea5" ) ) ).thenReturn( true );
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
+
+        final ArgumentCaptor<UpdateNodeParams> captor = captor();
+        verify( nodeService ).update( captor.capture() );
+
+        final PropertyTree data = new PropertyTree();
+        data.setLong( "hits", 3L );
+        data.setInstant( "lastAccess", Instant.EPOCH );
+        final EditableNode editableNode = new EditableNode( Node.create().data( data ).build() );
+        captor.getValue().getEditor().edit( editableNode );
+        assertEquals( 3L, editableNode.data.getLong( "hits" ) );
+        assertEquals( Instant.EPOCH, editableNode.data.getInstant( "lastAccess" ) );
+        assertEquals( "1234567890", editableNode.data.getString( "etag" ) );
+    }
+
+    @Test
+    void evict_memory_disabled()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        nodeCacheStore.evict( List.of( "0f115db062b7c0dd030b16878c99dea5" ) );
+
+        final ArgumentCaptor<Event> eventCaptor = captor();
+        verify( eventPublisher ).publish( eventCaptor.capture() );
+        assertEquals( "custom.booster.evict", eventCaptor.getValue().getType() );
+        assertEquals( List.of( "0f115db062b7c0dd030b16878c99dea5" ), eventCaptor.getValue().getData().get( "keys" ) );
+    }
+
+    @Test
+    void invalidateScopes()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final Node cacheParentNode = Node.create().id( NodeId.from( "cache" ) ).name( "cache" ).parentPath( NodePath.ROOT ).build();
+        when( nodeService.getByPath( BoosterContext.CACHE_PARENT_NODE ) ).thenReturn( cacheParentNode );
+
+        final long before = nodeCacheStore.generation();
+        nodeCacheStore.invalidateScopes( List.of( "project:project" ) );
+        final long generation = nodeCacheStore.generation();
+        assertTrue( generation > before );
+
+        final ArgumentCaptor<UpdateNodeParams> updateCaptor = captor();
+        verify( nodeService ).update( updateCaptor.capture() );
+        final EditableNode editableNode = new EditableNode( cacheParentNode );
+        updateCaptor.getValue().getEditor().edit( editableNode );
+        assertThat( editableNode.data.getSets( "generations" ) ).singleElement().satisfies( set -> {
+            assertEquals( "project:project", set.getString( "scope" ) );
+            assertEquals( generation, set.getLong( "generation" ) );
+        } );
+
+        final ArgumentCaptor<Event> eventCaptor = captor();
+        verify( eventPublisher ).publish( eventCaptor.capture() );
+        assertEquals( "custom.booster.generation", eventCaptor.getValue().getType() );
+        assertEquals( List.of( "project:project" ), eventCaptor.getValue().getData().get( "scopes" ) );
+        assertEquals( generation, eventCaptor.getValue().getData().get( "generation" ) );
+
+        final NodeId nodeId = NodeId.from( "0f115db062b7c0dd030b16878c99dea5" );
+        when( nodeService.getById( nodeId ) ).thenReturn( stampedNode( nodeId, before ), stampedNode( nodeId, generation ) );
+        when( nodeService.getBinary( nodeId, BinaryReference.from( "data.gzip" ) ) ).thenReturn( ByteSource.empty() );
+
+        // rendered before invalidation
+        assertEquals( Instant.ofEpochMilli( generation ), nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" ).invalidatedTime() );
+        // rendered after invalidation
+        assertNull( nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" ).invalidatedTime() );
+    }
+
+    private static Node stampedNode( final NodeId nodeId, final long generation )
+    {
+        final PropertyTree data = new PropertyTree();
+        data.addLong( "contentLength", 1234L );
+        data.addInstant( "cachedTime", Instant.now() );
+        data.addString( "project", "project" );
+        data.addLong( "generation", generation );
+        return Node.create().id( nodeId ).name( nodeId.toString() ).parentPath( NodePath.ROOT ).data( data ).build();
+    }
+
+    @Test
+    void reloadGenerations()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final PropertyTree data = new PropertyTree();
+        final PropertySet set = data.addSet( "generations" );
+        set.setString( "scope", "all" );
+        set.setLong( "generation", 42L );
+        when( nodeService.getByPath( BoosterContext.CACHE_PARENT_NODE ) ).thenReturn(
+            Node.create().id( NodeId.from( "cache" ) ).name( "cache" ).parentPath( NodePath.ROOT ).data( data ).build() );
+
+        nodeCacheStore.reloadGenerations();
+
+        assertEquals( 42L, nodeCacheStore.generation() );
+    }
+
+    @Test
+    void flushHits_frequent()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        nodeCacheStore.activate( memoryCacheConfig() );
+
+        final CacheItem cacheItem =
+            new CacheItem( 200, "text/html", Map.of(), Instant.now(), null, null, null, 1234, "1234567890", null, null,
+                           List.of(), List.of(), ByteSupply.of( new byte[]{1, 2, 3} ), null, null, null );
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
+        for ( int i = 0; i < 10; i++ )
+        {
+            nodeCacheStore.get( "0f115db062b7c0dd030b16878c99dea5" );
+        }
+
+        nodeCacheStore.flushHits();
+
+        final ArgumentCaptor<UpdateNodeParams> captor = captor();
+        verify( nodeService ).update( captor.capture() );
+        final EditableNode editableNode = new EditableNode( Node.create().data( new PropertyTree() ).build() );
+        captor.getValue().getEditor().edit( editableNode );
+        assertEquals( 10L, editableNode.data.getLong( "hits" ) );
+    }
+
+    @Test
+    void inflate()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final Node cacheParentNode = Node.create().id( NodeId.from( "cache" ) ).name( "cache" ).parentPath( NodePath.ROOT ).build();
+        when( nodeService.getByPath( BoosterContext.CACHE_PARENT_NODE ) ).thenReturn( cacheParentNode );
+
+        nodeCacheStore.inflate( 1.5 );
+        nodeCacheStore.inflate( 0.5 );
+
+        assertEquals( 1.5, nodeCacheStore.inflation() );
+        final ArgumentCaptor<UpdateNodeParams> updateCaptor = captor();
+        verify( nodeService ).update( updateCaptor.capture() );
+        final EditableNode editableNode = new EditableNode( cacheParentNode );
+        updateCaptor.getValue().getEditor().edit( editableNode );
+        assertEquals( 1.5, editableNode.data.getDouble( "inflation" ) );
+    }
+
+    @Test
+    void reloadGenerations_inflation()
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final PropertyTree data = new PropertyTree();
+        data.setDouble( "inflation", 2.5 );
+        when( nodeService.getByPath( BoosterContext.CACHE_PARENT_NODE ) ).thenReturn(
+            Node.create().id( NodeId.from( "cache" ) ).name( "cache" ).parentPath( NodePath.ROOT ).data( data ).build() );
+
+        nodeCacheStore.reloadGenerations();
+
+        assertEquals( 2.5, nodeCacheStore.inflation() );
+    }
+
+    @Test
+    void put_dictionary_compressed()
+        throws Exception
+    {
+        final NodeCacheStore nodeCacheStore = new NodeCacheStore( nodeService, eventPublisher, compressTasks::add, compressionMetrics );
+        final BoosterConfig config = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( config.compressionDictionaries() ).thenReturn( true );
+        when( config.compressionMinBytes() ).thenReturn( 0 );
+        nodeCacheStore.activate( config );
+
+        final byte[] dictionaryData = "<html><head><title>Hello World".getBytes( StandardCharsets.UTF_8 );
+        final CompressionDictionary dictionary =
+            CompressionDictionary.create( "siteId", "https://example.com", "/", Instant.now(), dictionaryData );
+        final NodeId dictionaryNodeId = NodeId.from( dictionary.id() );
+        final PropertyTree dictionaryNodeData = new PropertyTree();
+        dictionaryNodeData.setString( "siteId", "siteId" );
+        dictionaryNodeData.setString( "origin", "https://example.com" );
+        dictionaryNodeData.setString( "pathPrefix", "/" );
+        dictionaryNodeData.setInstant( "createdTime", dictionary.createdTime() );
+        when( nodeService.findByQuery( any( NodeQuery.class ) ) ).thenReturn(
+            FindNodesByQueryResult.create().addNodeHit( NodeHit.create().nodeId( dictionaryNodeId ).build() ).totalHits( 1 ).build() );
+        when( nodeService.getById( dictionaryNodeId ) ).thenReturn( Node.create()
+                                                                       .id( dictionaryNodeId )
+                                                                       .name( dictionary.id() )
+                                                                       .parentPath( new NodePath( "/dictionaries" ) )
+                                                                       .data( dictionaryNodeData )
+                                                                       .build() );
+        when( nodeService.getBinary( dictionaryNodeId, NodeCacheStore.DICTIONARY_BINARY_REFERENCE ) ).thenReturn(
+            ByteSource.wrap( dictionaryData ) );
+
+        nodeCacheStore.putDictionary( dictionary, List.of() );
+        assertEquals( dictionary, nodeCacheStore.dictionary( dictionary.id() ) );
+        assertEquals( dictionary, nodeCacheStore.latestDictionary( "siteId", "https://example.com" ) );
+
+        final CacheMeta cacheMeta =
+            new CacheMeta( "https://example.com/", "example.com", "/", "project", "siteId", "contentId", "/contentpath", Set.of(), 0 );
+        final CacheItem cacheItem = gzipItem( "<html><head><title>Hello World!" );
+        nodeCacheStore.put( "0f115db062b7c0dd030b16878c99dea5", cacheItem, cacheMeta );
+
+        final ArgumentCaptor<CreateNodeParams> captor = captor();
+        verify( nodeService, times( 2 ) ).create( captor.capture() );
+        final CreateNodeParams created = captor.getAllValues().get( 1 );
+        assertNull( created.getData().getString( "dictionaryId" ) );
+        assertNull( created.getBinaryAttachments().get( BinaryReference.from( "data.dcz" ) ) );
+
+        // zstd, dictionary, then brotli
+        assertEquals( 3, compressTasks.size() );
+        final NodeId nodeId = NodeId.from( "0f115db062b7c0dd030b16878c99dea5" );
+        when( nodeService.getById( nodeId ) ).thenReturn(
+            Node.create().id( nodeId ).name( "0f115db062b7c0dd030b16878c99dea5" ).parentPath( NodePath.ROOT ).data( created.getData() ).build() );
+        when( nodeService.getBinary( nodeId, NodeCacheStore.GZIP_DATA_BINARY_REFERENCE ) ).thenReturn(
+            ByteSource.wrap( cacheItem.gzipData().toByteArray() ) );
+        compressTasks.get( 1 ).run();
+
+        final ArgumentCaptor<UpdateNodeParams> updateCaptor = captor();
+        verify( nodeService ).update( updateCaptor.capture() );
+        final EditableNode editableNode = new EditableNode( Node.create().data( created.getData().copy() ).build() );
+        updateCaptor.getValue().getEditor().edit( editableNode );
+        assertEquals( dictionary.id(), editableNode.data.getString( "dictionaryId" ) );
+        assertEquals( "/_/booster/dictionary/" + dictionary.id(), editableNode.data.getString( "dictionaryUrl" ) );
+        final byte[] dczBody =
+            updateCaptor.getValue().getBinaryAttachments().get( BinaryReference.from( "data.dcz" ) ).getByteSource().read();
+        assertArrayEquals( new byte[]{0x5e, 0x2a, 0x4d, 0x18, 0x20, 0x00, 0x00, 0x00}, Arrays.copyOf( dczBody, 8 ) );
+        assertArrayEquals( dictionary.hash(), Arrays.copyOfRange( dczBody, 8, 40 ) );
+        try (ZstdInputStream is = new ZstdInputStream( new ByteArrayInputStream( dczBody, 40, dczBody.length - 40 ) ))
+        {
+            is.setDict( dictionaryData );
+            assertEquals( "<html><head><title>Hello World!", new String( is.readAllBytes(), StandardCharsets.UTF_8 ) );
+        }
+    }
+
+    private static CacheItem gzipItem( final String body )
+        throws IOException
+    {
+        final ByteArrayOutputStream gzipData = new ByteArrayOutputStream();
+        try (GZIPOutputStream os = new GZIPOutputStream( gzipData ))
+        {
+            os.write( body.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        return new CacheItem( 200, "text/html; charset=utf-8", Map.of(), Instant.now(), null, null, null, body.length(), "1234567890",
+                              null, null, List.of(), List.of(), ByteSupply.of( gzipData ), null, null, null );
+    }
+
+    private static BoosterConfig memoryCacheConfig()
+    {
+        final BoosterConfig config = mock( BoosterConfig.class, invocation -> invocation.getMethod().getDefaultValue() );
+        when( config.memoryCacheMaxBytes() ).thenReturn( 1024 * 1024L );
+        return config;
+    }
 }
@@ -0,0 +1,84 @@
+package com.enonic.app.booster.storage;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.enonic.xp.project.ProjectName;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PublishScheduleTest
+{
+    private static final ProjectName PROJECT = ProjectName.from( "project1" );
+
+    private static final Instant T1 = Instant.parse( "2024-01-01T10:00:00Z" );
+
+    private static final Instant T2 = Instant.parse( "2024-01-01T11:00:00Z" );
+
+    private static final PublishSchedule.Content CONTENT1 = new PublishSchedule.Content( PROJECT, "content1", "/content/site/a" );
+
+    private static final PublishSchedule.Content CONTENT2 = new PublishSchedule.Content( PROJECT, "content2", "/content/site/b" );
+
+    @Test
+    void poll_in_time_order()
+    {
+        final PublishSchedule schedule = new PublishSchedule();
+        schedule.put( CONTENT1, List.of( T2 ) );
+        schedule.put( CONTENT2, List.of( T1 ) );
+
+        assertTrue( schedule.poll( T1.minusSeconds( 1 ) ).isEmpty() );
+        assertEquals( List.of( CONTENT2 ), schedule.poll( T1 ) );
+        assertTrue( schedule.poll( T1 ).isEmpty() );
+        assertEquals( List.of( CONTENT1 ), schedule.poll( T2.plusSeconds( 1 ) ) );
+        assertEquals( 0, schedule.size() );
+    }
+
+    @Test
+    void poll_publish_and_expire()
+    {
+        final PublishSchedule schedule = new PublishSchedule();
+        schedule.put( CONTENT1, List.of( T1, T2 ) );
+
+        assertEquals( List.of( CONTENT1 ), schedule.poll( T1 ) );
+        assertEquals( 1, schedule.size() );
+        assertEquals( List.of( CONTENT1 ), schedule.poll( T2 ) );
+        assertEquals( 0, schedule.size() );
+    }
+
+    @Test
+    void poll_once_per_content()
+    {
+        final PublishSchedule schedule = new PublishSchedule();
+        schedule.put( CONTENT1, List.of( T1, T2 ) );
+
+        assertEquals( List.of( CONTENT1 ), schedule.poll( T2 ) );
+    }
+
+    @Test
+    void put_replaces()
+    {
+        final PublishSchedule schedule = new PublishSchedule();
+        schedule.put( CONTENT1, List.of( T1 ) );
+
+        final PublishSchedule.Content moved = new PublishSchedule.Content( PROJECT, "content1", "/content/site/c" );
+        schedule.put( moved, List.of( T2 ) );
+
+        assertTrue( schedule.poll( T1 ).isEmpty() );
+        assertEquals( List.of( moved ), schedule.poll( T2 ) );
+    }
+
+    @Test
+    void remove()
+    {
+        final PublishSchedule schedule = new PublishSchedule();
+        schedule.put( CONTENT1, List.of( T1 ) );
+        schedule.put( CONTENT2, List.of( T1 ) );
+
+        schedule.remove( PROJECT, "content1" );
+
+        assertEquals( List.of( CONTENT2 ), schedule.poll( T1 ) );
+    }
+}
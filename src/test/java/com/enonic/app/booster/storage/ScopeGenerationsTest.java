@@ -0,0 +1,66 @@
+package com.enonic.app.booster.storage;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScopeGenerationsTest
+{
+    @Test
+    void of()
+    {
+        final ScopeGenerations generations = new ScopeGenerations();
+        assertEquals( 0, generations.of( "project1", "site1", "example.com" ) );
+
+        assertTrue( generations.merge( List.of( ScopeGenerations.project( "project1" ) ), 10 ) );
+        assertTrue( generations.merge( List.of( ScopeGenerations.site( "project1", "site1" ) ), 20 ) );
+        assertTrue( generations.merge( List.of( ScopeGenerations.domain( "example.org" ) ), 30 ) );
+
+        assertEquals( 20, generations.of( "project1", "site1", "example.com" ) );
+        assertEquals( 10, generations.of( "project1", "site2", "example.com" ) );
+        assertEquals( 30, generations.of( "project2", null, "example.org" ) );
+        assertEquals( 0, generations.of( null, null, null ) );
+        assertEquals( 30, generations.latest() );
+
+        assertTrue( generations.merge( List.of( ScopeGenerations.ALL ), 40 ) );
+        assertEquals( 40, generations.of( null, null, null ) );
+    }
+
+    @Test
+    void merge_ignores_lower()
+    {
+        final ScopeGenerations generations = new ScopeGenerations();
+        assertTrue( generations.merge( Map.of( "project:project1", 20L ) ) );
+        assertFalse( generations.merge( Map.of( "project:project1", 10L ) ) );
+        assertFalse( generations.merge( Map.of( "project:project1", 20L ) ) );
+
+        assertEquals( Map.of( "project:project1", 20L ), generations.snapshot() );
+    }
+
+    @Test
+    void next()
+    {
+        final ScopeGenerations generations = new ScopeGenerations();
+        final long future = System.currentTimeMillis() + 60_000;
+        generations.merge( List.of( ScopeGenerations.ALL ), future );
+
+        assertEquals( future + 1, generations.next() );
+    }
+
+    @Test
+    void fields()
+    {
+        assertEquals( Map.of(), ScopeGenerations.fields( ScopeGenerations.ALL ) );
+        assertEquals( Map.of( "project", "project1" ), ScopeGenerations.fields( ScopeGenerations.project( "project1" ) ) );
+        assertEquals( Map.of( "project", "project1", "siteId", "site1" ),
+                      ScopeGenerations.fields( ScopeGenerations.site( "project1", "site1" ) ) );
+        assertEquals( Map.of( "domain", "example.com" ), ScopeGenerations.fields( ScopeGenerations.domain( "example.com" ) ) );
+        assertNull( ScopeGenerations.fields( "unknown" ) );
+    }
+}
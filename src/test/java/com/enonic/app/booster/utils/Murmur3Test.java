@@ -0,0 +1,29 @@
+package com.enonic.app.booster.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Murmur3Test
+{
+    @Test
+    void hash128Hex()
+    {
+        assertEquals( "00000000000000000000000000000000", Murmur3.hash128Hex( "" ) );
+        assertEquals( "6c1b07bc7bbc4be347939ac4a93c437a", Murmur3.hash128Hex( "The quick brown fox jumps over the lazy dog" ) );
+    }
+
+    @Test
+    void hash128Hex_tail()
+    {
+        // full block, and full block with one byte tail
+        assertEquals( "23b74c22a33ccac41aeb31b395d63343", Murmur3.hash128Hex( "abcdefghijklmnop" ) );
+        assertEquals( "57a6bd887f746475e40d11a19d49daec", Murmur3.hash128Hex( "abcdefghijklmnopq" ) );
+    }
+
+    @Test
+    void hash128Hex_non_latin1()
+    {
+        assertEquals( Murmur3.hash128Hex( "https://example.com/?" ), Murmur3.hash128Hex( "https://example.com/\u20ac" ) );
+    }
+}